@@ -0,0 +1,32 @@
+package com.stephengilbane.hotel;
+
+/**
+ * Lightweight command line entry point, for one-shot queries.
+ *
+ * Unlike {@link HotelDealFinderApplication}, this does not start a Spring context, and it is
+ * packaged in a plain jar by the appcds build profile, so that neither classpath scanning nor the
+ * nested jar loader is paid for on every query. Only JDK and finder classes are loaded, which
+ * lets the profile's class data sharing archive cover the whole run.
+ *
+ * Usage is the same as {@link HotelDealFinder#main(String[])}. Invalid input is reported in one
+ * line, with exit status 2, rather than as a stack trace.
+ */
+public final class BestHotelDeal
+{
+    private BestHotelDeal()
+    {
+    }
+
+    public static void main(String[] args)
+    {
+        try
+        {
+            HotelDealFinder.main(args);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            System.out.println(ex.getMessage());
+            System.exit(2);
+        }
+    }
+}
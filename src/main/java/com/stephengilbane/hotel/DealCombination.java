@@ -0,0 +1,108 @@
+package com.stephengilbane.hotel;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.stephengilbane.hotel.deals.Deal;
+
+/**
+ * Result of a search for the best combination of deals: the deals applied to a stay, in the
+ * order they are applied, and the final price.
+ */
+public class DealCombination
+{
+    private final Hotel hotel;
+    private final List<Deal> deals;
+    private final LocalDate checkInDate;
+    private final int stayLength;
+    private final int customerPrice;
+
+    /**
+     * Constructor.
+     * @param hotel Hotel of results, or null if the hotel is unknown.
+     * @param deals Deals applied, in order. Empty if none applies.
+     * @param dt Date of check in.
+     * @param stayLength Length of stay in days.
+     * @param price Price of the stay for the customer.
+     */
+    public DealCombination(Hotel hotel, List<Deal> deals, LocalDate dt, int stayLength, int price)
+    {
+        this.hotel = hotel;
+        this.deals = Collections.unmodifiableList(new ArrayList<Deal>(deals));
+        this.checkInDate = dt;
+        this.stayLength = stayLength;
+        this.customerPrice = price;
+    }
+
+    /**
+     * @return the hotel of this result, or null if the hotel is unknown.
+     */
+    public Hotel getHotel()
+    {
+        return hotel;
+    }
+
+    /**
+     * @return the deals applied, in the order they are applied.
+     */
+    public List<Deal> getDeals()
+    {
+        return deals;
+    }
+
+    /**
+     * @return true if at least one deal applies.
+     */
+    public boolean hasDeal()
+    {
+        return !deals.isEmpty();
+    }
+
+    /**
+     * @return the original check-in date for this result
+     */
+    public LocalDate getCheckinDate()
+    {
+        return checkInDate;
+    }
+
+    /**
+     * @return the Length of stay in days for this result
+     */
+    public int getStayLength()
+    {
+        return stayLength;
+    }
+
+    /**
+     * @return Price of the stay for the customer with all deals applied.
+     */
+    public int getCustomerPrice()
+    {
+        return customerPrice;
+    }
+
+    /**
+     * Override toString: the promotional texts of the deals applied.
+     */
+    @Override
+    public String toString()
+    {
+        if (this.deals.isEmpty())
+        {
+            return Deal.NO_DEAL.getPromotionalText();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Deal d : this.deals)
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(" + ");
+            }
+            sb.append(d.getPromotionalText());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,581 @@
+package com.stephengilbane.hotel;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealPartition;
+import com.stephengilbane.hotel.deals.DealSelection;
+
+/**
+ * Precomputed lower envelope of the linear deals of one hotel.
+ *
+ * The final price of every linear deal is a line in the base price of the stay:
+ *      price * 100 = basePrice * rateMultiplierPercent + 100 * flatAdjustment
+ *
+ * The timeline is cut into date segments at every deal start and end, so that the set of
+ * deals applicable to any check-in date within a segment is fixed. Within a segment, deals
+ * are grouped into tiers by minimum stay length: tier j holds every deal whose minimum stay
+ * is at most the j-th smallest minimum stay of the segment. For each tier only the lines that
+ * form the lower envelope are kept, so the cheapest deal for a query is found with two binary
+ * searches instead of evaluating every candidate.
+ *
+ * Final prices are whole monetary units, rounded down, so a line above the envelope can still
+ * round to the same price as the cheapest one. Ties go to the deal configured first, as in a
+ * scan of all deals, so each envelope line also keeps the earlier lines of its tier whose values
+ * can fall between whole prices and come within one monetary unit of it over the base prices
+ * where it is cheapest. Only those are checked, so a query never scans the whole tier.
+ *
+ * Instances are immutable; a hotel rebuilds its envelope after its deals change.
+ */
+public final class DealEnvelope
+{
+    /** Envelope of a hotel with no linear deals. */
+    public static final DealEnvelope EMPTY = new DealEnvelope(new long[0], new int[] { 0 }, new int[0], new int[] { 0 },
+            new long[0], new long[0], new Deal[0], new int[0], new int[] { 0 }, new long[0], new long[0], new Deal[0],
+            new int[0]);
+
+    // Segment s covers epoch days [segmentStarts[s], segmentStarts[s + 1]). The last entry only ends the last segment.
+    private final long[] segmentStarts;
+    // Tiers of segment s are [segmentTiers[s], segmentTiers[s + 1]).
+    private final int[] segmentTiers;
+    private final int[] tierMinStay;
+    // Lines of tier t are [tierLines[t], tierLines[t + 1]), in order of decreasing slope.
+    private final int[] tierLines;
+    private final long[] slopes;
+    private final long[] intercepts;
+    private final Deal[] deals;
+    private final int[] indexes;
+    // Rounding candidates of envelope line l are [lineRounded[l], lineRounded[l + 1]), in configuration order.
+    private final int[] lineRounded;
+    private final long[] roundedSlopes;
+    private final long[] roundedIntercepts;
+    private final Deal[] roundedDeals;
+    private final int[] roundedIndexes;
+
+    private DealEnvelope(long[] segmentStarts, int[] segmentTiers, int[] tierMinStay, int[] tierLines, long[] slopes,
+            long[] intercepts, Deal[] deals, int[] indexes, int[] lineRounded, long[] roundedSlopes,
+            long[] roundedIntercepts, Deal[] roundedDeals, int[] roundedIndexes)
+    {
+        this.segmentStarts = segmentStarts;
+        this.segmentTiers = segmentTiers;
+        this.tierMinStay = tierMinStay;
+        this.tierLines = tierLines;
+        this.slopes = slopes;
+        this.intercepts = intercepts;
+        this.deals = deals;
+        this.indexes = indexes;
+        this.lineRounded = lineRounded;
+        this.roundedSlopes = roundedSlopes;
+        this.roundedIntercepts = roundedIntercepts;
+        this.roundedDeals = roundedDeals;
+        this.roundedIndexes = roundedIndexes;
+    }
+
+    /**
+     * Build the envelope of all deals in the linear partitions given.
+     * @param partitions Deal partitions of a hotel. Null entries and non-linear partitions are skipped.
+     * @return new envelope.
+     */
+    public static DealEnvelope build(DealPartition[] partitions)
+    {
+        List<Line> lines = new ArrayList<Line>();
+        TreeSet<Long> boundaries = new TreeSet<Long>();
+        for (DealPartition p : partitions)
+        {
+            if (p == null || !p.isLinear())
+            {
+                continue;
+            }
+            for (int i = 0; i < p.size(); i++)
+            {
+                Deal deal = p.getDeal(i);
+                long start = deal.getStartDate().toEpochDay();
+                long end = deal.getEndDate().toEpochDay();
+                if (end < start)
+                {
+                    // Start date after end date: Deal.isCheckInDateApplicable() still accepts
+                    // exactly the start and end dates themselves.
+                    addLine(lines, boundaries, new Line(deal, p.getIndex(i), end, end + 1));
+                    addLine(lines, boundaries, new Line(deal, p.getIndex(i), start, start + 1));
+                }
+                else
+                {
+                    addLine(lines, boundaries, new Line(deal, p.getIndex(i), start, end + 1));
+                }
+            }
+        }
+        if (lines.isEmpty())
+        {
+            return EMPTY;
+        }
+
+        long[] segmentStarts = new long[boundaries.size()];
+        int s = 0;
+        for (Long b : boundaries)
+        {
+            segmentStarts[s++] = b;
+        }
+        int segmentCount = segmentStarts.length - 1;
+
+        // Collect the deals active in each segment.
+        List<List<Line>> active = new ArrayList<List<Line>>(segmentCount);
+        for (int i = 0; i < segmentCount; i++)
+        {
+            active.add(new ArrayList<Line>());
+        }
+        for (Line line : lines)
+        {
+            int first = Arrays.binarySearch(segmentStarts, line.startDay);
+            for (int i = first; i < segmentCount && segmentStarts[i] < line.endDay; i++)
+            {
+                active.get(i).add(line);
+            }
+        }
+
+        int[] segmentTiers = new int[segmentCount + 1];
+        List<Integer> tierMinStay = new ArrayList<Integer>();
+        List<Integer> tierLines = new ArrayList<Integer>();
+        List<Line> hullLines = new ArrayList<Line>();
+        List<Integer> lineRounded = new ArrayList<Integer>();
+        List<Line> roundedLines = new ArrayList<Line>();
+        for (int i = 0; i < segmentCount; i++)
+        {
+            segmentTiers[i] = tierMinStay.size();
+            List<Line> segmentLines = active.get(i);
+            TreeSet<Integer> minStays = new TreeSet<Integer>();
+            for (Line line : segmentLines)
+            {
+                minStays.add(line.minStay);
+            }
+            for (Integer minStay : minStays)
+            {
+                List<Line> tier = new ArrayList<Line>();
+                for (Line line : segmentLines)
+                {
+                    if (line.minStay <= minStay)
+                    {
+                        tier.add(line);
+                    }
+                }
+                tierMinStay.add(minStay);
+                tierLines.add(hullLines.size());
+                List<Line> hull = lowerEnvelope(tier);
+                List<Line> candidates = roundingCandidates(tier);
+                for (int k = 0; k < hull.size(); k++)
+                {
+                    lineRounded.add(roundedLines.size());
+                    addRoundingTies(hull, k, candidates, roundedLines);
+                }
+                hullLines.addAll(hull);
+            }
+        }
+        segmentTiers[segmentCount] = tierMinStay.size();
+        tierLines.add(hullLines.size());
+        lineRounded.add(roundedLines.size());
+
+        int n = hullLines.size();
+        long[] slopes = new long[n];
+        long[] intercepts = new long[n];
+        Deal[] deals = new Deal[n];
+        int[] indexes = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            Line line = hullLines.get(i);
+            slopes[i] = line.slope;
+            intercepts[i] = line.intercept;
+            deals[i] = line.deal;
+            indexes[i] = line.index;
+        }
+        int r = roundedLines.size();
+        long[] roundedSlopes = new long[r];
+        long[] roundedIntercepts = new long[r];
+        Deal[] roundedDeals = new Deal[r];
+        int[] roundedIndexes = new int[r];
+        for (int i = 0; i < r; i++)
+        {
+            Line line = roundedLines.get(i);
+            roundedSlopes[i] = line.slope;
+            roundedIntercepts[i] = line.intercept;
+            roundedDeals[i] = line.deal;
+            roundedIndexes[i] = line.index;
+        }
+        return new DealEnvelope(segmentStarts, segmentTiers, toArray(tierMinStay), toArray(tierLines), slopes,
+                intercepts, deals, indexes, toArray(lineRounded), roundedSlopes,
+                roundedIntercepts, roundedDeals, roundedIndexes);
+    }
+
+    private static void addLine(List<Line> lines, TreeSet<Long> boundaries, Line line)
+    {
+        lines.add(line);
+        boundaries.add(line.startDay);
+        boundaries.add(line.endDay);
+    }
+
+    /**
+     * Offer the cheapest linear deal applicable to a stay to a selection.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Input stay length in days.
+     * @param basePrice Price of the stay before any deal, in monetary units.
+     * @param selection Selection to offer the cheapest deal to.
+     */
+    public void selectBest(LocalDate checkInDate, int stayLengthDays, long basePrice, DealSelection selection)
+    {
+        if (this.deals.length == 0)
+        {
+            return;
+        }
+        if (checkInDate == null)
+        {
+            throw new IllegalArgumentException("Invalid null check -in date!");
+        }
+        int tier = findTier(checkInDate.toEpochDay(), stayLengthDays);
+        if (tier < 0)
+        {
+            return;
+        }
+        int cheapest = findCheapest(tier, basePrice);
+        int line = findFirstTied(tier, cheapest, basePrice);
+        int price = priceOf(line, basePrice);
+        int rounded = findRoundingTie(cheapest, price, this.indexes[line], basePrice);
+        if (rounded >= 0)
+        {
+            selection.offer(this.roundedDeals[rounded], price, this.roundedIndexes[rounded]);
+        }
+        else
+        {
+            selection.offer(this.deals[line], price, this.indexes[line]);
+        }
+    }
+
+    /**
+     * Find the tier of deals applicable to a stay.
+     * @param epochDay Check-in date as an epoch day.
+     * @param stayLengthDays Stay length in days.
+     * @return tier number, or -1 if no linear deal applies.
+     */
+    int findTier(long epochDay, int stayLengthDays)
+    {
+        int segment = findSegment(epochDay);
+        if (segment < 0)
+        {
+            return -1;
+        }
+        int tier = -1;
+        for (int t = this.segmentTiers[segment]; t < this.segmentTiers[segment + 1]; t++)
+        {
+            if (this.tierMinStay[t] > stayLengthDays)
+            {
+                break;
+            }
+            tier = t;
+        }
+        return tier;
+    }
+
+    /**
+     * Find the envelope line of a tier that is cheapest for a stay.
+     * @param tier Tier number.
+     * @param basePrice Price of the stay before any deal.
+     * @return line number.
+     */
+    int findLine(int tier, long basePrice)
+    {
+        return findFirstTied(tier, findCheapest(tier, basePrice), basePrice);
+    }
+
+    /**
+     * Find the first envelope line of a tier that is cheapest for a stay.
+     */
+    private int findCheapest(int tier, long basePrice)
+    {
+        // Lines after the cheapest one are never cheaper than their predecessor at this price,
+        // lines before it always are: binary search for the first line not beaten by its successor.
+        int lo = this.tierLines[tier];
+        int hi = this.tierLines[tier + 1] - 1;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (valueOf(mid + 1, basePrice) < valueOf(mid, basePrice))
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Where lines meet, several are equally cheap: prefer the one configured first, as a scan would.
+     */
+    private int findFirstTied(int tier, int lo, long basePrice)
+    {
+        int best = lo;
+        long bestValue = valueOf(lo, basePrice);
+        for (int i = lo + 1; i < this.tierLines[tier + 1] && valueOf(i, basePrice) == bestValue; i++)
+        {
+            if (this.indexes[i] < this.indexes[best])
+            {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find a deal configured before the cheapest line whose price rounds down to the same amount.
+     * @param line First envelope line that is cheapest for the stay.
+     * @param price Price of the cheapest line.
+     * @param index Position of the deal of the chosen cheapest line within its hotel.
+     * @param basePrice Price of the stay before any deal.
+     * @return rounding candidate number, or -1 if there is none.
+     */
+    private int findRoundingTie(int line, int price, int index, long basePrice)
+    {
+        for (int i = this.lineRounded[line]; i < this.lineRounded[line + 1] && this.roundedIndexes[i] < index; i++)
+        {
+            if ((this.roundedSlopes[i] * basePrice + this.roundedIntercepts[i]) / 100 == price)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the date segment containing a check-in date.
+     * @param epochDay Check-in date as an epoch day.
+     * @return segment number, or -1 if no linear deal applies on that date.
+     */
+    int findSegment(long epochDay)
+    {
+        int pos = Arrays.binarySearch(this.segmentStarts, epochDay);
+        int segment = (pos >= 0) ? pos : -pos - 2;
+        if (segment < 0 || segment >= this.segmentStarts.length - 1)
+        {
+            return -1;
+        }
+        return segment;
+    }
+
+    /**
+     * @param line Line number.
+     * @param basePrice Price of the stay before any deal.
+     * @return final price of the stay with the deal of the line applied.
+     */
+    int priceOf(int line, long basePrice)
+    {
+        return (int) (valueOf(line, basePrice) / 100);
+    }
+
+    /**
+     * @return number of lines kept over all segments and tiers.
+     */
+    public int getLineCount()
+    {
+        return this.deals.length;
+    }
+
+    /**
+     * @return number of date segments.
+     */
+    public int getSegmentCount()
+    {
+        return Math.max(0, this.segmentStarts.length - 1);
+    }
+
+    private long valueOf(int line, long basePrice)
+    {
+        return this.slopes[line] * basePrice + this.intercepts[line];
+    }
+
+    /**
+     * Compute the lower envelope of a set of lines for non-negative base prices.
+     * @param lines Lines to consider.
+     * @return lines of the envelope, in order of decreasing slope.
+     */
+    private static List<Line> lowerEnvelope(List<Line> lines)
+    {
+        List<Line> sorted = new ArrayList<Line>(lines);
+        Collections.sort(sorted, LINE_ORDER);
+        List<Line> hull = new ArrayList<Line>();
+        for (Line line : sorted)
+        {
+            int size = hull.size();
+            if (size > 0 && hull.get(size - 1).slope == line.slope)
+            {
+                // Same slope, higher or equal intercept, later in the hotel: never cheaper.
+                continue;
+            }
+            // With no cost at a base price of zero, an earlier line with an intercept at least as
+            // high is never cheaper than this one.
+            while (size > 0 && hull.get(size - 1).intercept >= line.intercept)
+            {
+                hull.remove(--size);
+            }
+            while (size >= 2 && isRedundant(hull.get(size - 2), hull.get(size - 1), line))
+            {
+                hull.remove(--size);
+            }
+            hull.add(line);
+        }
+        return hull;
+    }
+
+    /**
+     * Collect the lines whose values can fall between whole prices, so that a line above the
+     * envelope may round to the same price as the cheapest one. Only the first deal of each
+     * line is kept, as later ones always price the same.
+     * @param lines Lines of a tier.
+     * @return candidate lines, in configuration order.
+     */
+    private static List<Line> roundingCandidates(List<Line> lines)
+    {
+        List<Line> candidates = new ArrayList<Line>();
+        List<Line> sorted = new ArrayList<Line>(lines);
+        Collections.sort(sorted, INDEX_ORDER);
+        Set<Long> seen = new HashSet<Long>();
+        for (Line line : sorted)
+        {
+            // Intercepts are whole prices; only a fractional slope rounds.
+            if (line.slope % 100 != 0 && seen.add(line.key()))
+            {
+                candidates.add(line);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Add the rounding candidates of an envelope line: those configured before it that come
+     * within one monetary unit of it somewhere over the base prices where it is cheapest.
+     * Elsewhere the candidate is at least a whole price dearer than the envelope, so it cannot
+     * round to the same price.
+     * @param hull Envelope of a tier, in order of decreasing slope.
+     * @param k Position of the line within the envelope.
+     * @param candidates Rounding candidates of the tier, in configuration order.
+     * @param out List to add the candidates of the line to.
+     */
+    private static void addRoundingTies(List<Line> hull, int k, List<Line> candidates, List<Line> out)
+    {
+        Line line = hull.get(k);
+        double from = (k == 0) ? 0 : Math.max(0, meet(hull.get(k - 1), line));
+        // A line kept only where its neighbours meet may get an empty range from rounding errors.
+        double to = (k == hull.size() - 1) ? Double.POSITIVE_INFINITY : Math.max(from, meet(line, hull.get(k + 1)));
+        for (Line c : candidates)
+        {
+            if (c.index >= line.index)
+            {
+                break;
+            }
+            // The gap is linear in the base price, so it is smallest at an end of the range.
+            // Compare with some slack, as the ends are not exact.
+            long dSlope = c.slope - line.slope;
+            long dIntercept = c.intercept - line.intercept;
+            double gap = (to == Double.POSITIVE_INFINITY)
+                    ? ((dSlope < 0) ? Double.NEGATIVE_INFINITY : dSlope * from + dIntercept)
+                    : Math.min(dSlope * from + dIntercept, dSlope * to + dIntercept);
+            if (gap < 101)
+            {
+                out.add(c);
+            }
+        }
+    }
+
+    /**
+     * @return base price at which two lines of different slopes have the same value.
+     */
+    private static double meet(Line a, Line b)
+    {
+        return (double) (b.intercept - a.intercept) / (a.slope - b.slope);
+    }
+
+    /**
+     * Is the middle of three lines of decreasing slope above the lower envelope of the other two
+     * everywhere? A line that only touches the envelope where the other two meet is kept, so that
+     * ties can still be resolved by configuration order.
+     */
+    private static boolean isRedundant(Line a, Line b, Line c)
+    {
+        // b is redundant if c overtakes a before b does.
+        return (c.intercept - a.intercept) * (a.slope - b.slope) < (b.intercept - a.intercept) * (a.slope - c.slope);
+    }
+
+    private static int[] toArray(List<Integer> list)
+    {
+        int[] a = new int[list.size()];
+        for (int i = 0; i < a.length; i++)
+        {
+            a[i] = list.get(i);
+        }
+        return a;
+    }
+
+    // Decreasing slope, then increasing intercept, then order within the hotel.
+    private static final Comparator<Line> LINE_ORDER = new Comparator<Line>()
+    {
+        @Override
+        public int compare(Line a, Line b)
+        {
+            if (a.slope != b.slope)
+            {
+                return (a.slope > b.slope) ? -1 : 1;
+            }
+            if (a.intercept != b.intercept)
+            {
+                return (a.intercept < b.intercept) ? -1 : 1;
+            }
+            return Integer.compare(a.index, b.index);
+        }
+    };
+
+    private static final Comparator<Line> INDEX_ORDER = new Comparator<Line>()
+    {
+        @Override
+        public int compare(Line a, Line b)
+        {
+            return Integer.compare(a.index, b.index);
+        }
+    };
+
+    /**
+     * Line of a single deal, used while building the envelope.
+     */
+    private static final class Line
+    {
+        final Deal deal;
+        final int index;
+        final long slope;
+        final long intercept;
+        final long startDay;
+        final long endDay;
+        final int minStay;
+
+        Line(Deal deal, int index, long startDay, long endDay)
+        {
+            this.deal = deal;
+            this.index = index;
+            this.slope = deal.getRateMultiplierPercent();
+            this.intercept = 100L * deal.getFlatAdjustment();
+            this.startDay = startDay;
+            this.endDay = endDay;
+            this.minStay = deal.getMinStayDays();
+        }
+
+        /** @return key equal for lines of the same slope and intercept. */
+        long key()
+        {
+            return (this.slope << 32) ^ (this.intercept / 100 & 0xFFFFFFFFL);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.stephengilbane.hotel;
+
+import java.time.LocalDate;
+
+/**
+ * Immutable best-value query: a hotel, check-in date and stay length. Equal queries have equal
+ * answers at any one time, so that they may be answered once, as by
+ * {@link HotelDealFinder#findBestValues(java.util.List)}.
+ */
+public final class DealQuery
+{
+    private final String hotelName;
+    private final LocalDate checkInDate;
+    private final int stayLength;
+
+    /**
+     * Constructor.
+     * @param name Name of the hotel to search.
+     * @param dt Check-in date.
+     * @param stay Stay length in days. Must be positive.
+     * @throws IllegalArgumentException on invalid input.
+     */
+    public DealQuery(String name, LocalDate dt, int stay)
+    {
+        if (name == null || dt == null || stay <= 0)
+        {
+            throw new IllegalArgumentException("Invalid query " + name + ", " + dt + ", " + stay);
+        }
+        this.hotelName = name;
+        this.checkInDate = dt;
+        this.stayLength = stay;
+    }
+
+    /** @return name of the hotel to search. */
+    public String getHotelName() { return hotelName; }
+
+    /** @return check-in date. */
+    public LocalDate getCheckInDate() { return checkInDate; }
+
+    /** @return stay length in days. */
+    public int getStayLength() { return stayLength; }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof DealQuery))
+        {
+            return false;
+        }
+        DealQuery q = (DealQuery) o;
+        return this.stayLength == q.stayLength && this.hotelName.equals(q.hotelName)
+                && this.checkInDate.equals(q.checkInDate);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (this.hotelName.hashCode() * 31 + this.checkInDate.hashCode()) * 31 + this.stayLength;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s, %s, %d nights", this.hotelName, ParserUtils.formatDate(this.checkInDate),
+                this.stayLength);
+    }
+}
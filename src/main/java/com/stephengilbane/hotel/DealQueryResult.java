@@ -0,0 +1,80 @@
+package com.stephengilbane.hotel;
+
+import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealSelection;
+
+/**
+ * Reusable holder for the result of a query, filled in by
+ * {@link HotelDealFinder#findBestValue(String, java.time.LocalDate, int, DealQueryResult)}.
+ * A holder may be reused for any number of queries, so that a query allocates nothing.
+ * It must not be shared between threads.
+ */
+public final class DealQueryResult
+{
+    private final DealSelection selection = new DealSelection();
+    private Hotel hotel;
+    private int price;
+
+    /**
+     * Prepare this holder for a new query.
+     * @return selection to collect the deals of the query in.
+     */
+    DealSelection begin()
+    {
+        this.selection.reset();
+        this.hotel = null;
+        this.price = 0;
+        return this.selection;
+    }
+
+    /**
+     * Record the outcome of a query.
+     * @param h Hotel searched, or null if not found.
+     * @param fullPrice Price of the stay without a deal.
+     */
+    void complete(Hotel h, int fullPrice)
+    {
+        this.hotel = h;
+        this.price = this.selection.hasDeal() ? this.selection.getBestPrice() : fullPrice;
+    }
+
+    /**
+     * @return true if the last query found a deal.
+     */
+    public boolean hasDeal()
+    {
+        return this.selection.hasDeal();
+    }
+
+    /**
+     * @return the hotel of the last query, or null if it was not found.
+     */
+    public Hotel getHotel()
+    {
+        return this.hotel;
+    }
+
+    /**
+     * @return the Deal of the last query, or Deal.NO_DEAL if none was found.
+     */
+    public Deal getDeal()
+    {
+        return this.selection.getBestDeal();
+    }
+
+    /**
+     * @return position of the deal within its hotel (see {@link Hotel#getDeal(int)}), or -1 if none was found.
+     */
+    public int getDealIndex()
+    {
+        return this.selection.getBestIndex();
+    }
+
+    /**
+     * @return Price for the customer with the deal applied, or the full price if no deal was found.
+     */
+    public int getCustomerPrice()
+    {
+        return this.price;
+    }
+}
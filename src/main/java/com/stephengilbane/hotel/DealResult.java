@@ -13,6 +13,8 @@ public class DealResult
     private final Deal deal;
     private final int stayLength;
     private final LocalDate checkInDate;
+    private final boolean priced;
+    private final int customerPrice;
     
     /**
      * Constructor.
@@ -27,6 +29,26 @@ public class DealResult
          this.deal = deal;
          this.stayLength =  stayLength;
          this.checkInDate = dt;
+         this.priced = false;
+         this.customerPrice = 0;
+    }
+
+    /**
+     * Constructor for a result whose price was already computed while selecting the deal.
+     * @param hotel Hotel of results.
+     * @param deal Deal of result.
+     * @param dt Date of check in.
+     * @param stayLength Length of stay in days.
+     * @param price Price for this deal for the customer.
+     */
+    public DealResult(Hotel hotel,  Deal deal, LocalDate dt, int  stayLength, int price)
+    {
+         this.hotel = hotel;
+         this.deal = deal;
+         this.stayLength =  stayLength;
+         this.checkInDate = dt;
+         this.priced = true;
+         this.customerPrice = price;
     }
 
     /**
@@ -66,7 +88,11 @@ public class DealResult
      */
     public int getCustomerPrice()
     {
-        return deal.calculateFinalValue(hotel.getNightlyRate(), stayLength);
+        if (this.priced)
+        {
+            return this.customerPrice;
+        }
+        return deal.calculateFinalValueForBase(hotel.getBasePrice(checkInDate, stayLength), stayLength);
     }
 
     /**
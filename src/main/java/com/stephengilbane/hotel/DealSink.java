@@ -0,0 +1,35 @@
+package com.stephengilbane.hotel;
+
+import com.stephengilbane.hotel.deals.Deal;
+
+/**
+ * Destination for the deals read from a hotel deal configuration.
+ */
+public interface DealSink
+{
+    /**
+     * Called before the deals of a load are added. Promotional text codes of the deals of that
+     * load refer to the given dictionary. Does nothing by default.
+     * @param dictionary Dictionary of the load.
+     */
+    default void beginLoad(StringDictionary dictionary)
+    {
+        // Nothing to do.
+    }
+
+    /**
+     * Called after all deals of a load have been added. Does nothing by default.
+     */
+    default void endLoad()
+    {
+        // Nothing to do.
+    }
+
+    /**
+     * Add a deal to a hotel. If the hotel does not exist, create it.
+     * @param hotelName Name of hotel. Must be unique.
+     * @param rate  Nightly rate of this hotel.
+     * @param deal  Deal to add.
+     */
+    void addDeal(String hotelName, int rate, Deal deal);
+}
@@ -0,0 +1,231 @@
+package com.stephengilbane.hotel;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.StackingOrder;
+import com.stephengilbane.hotel.deals.StackingRule;
+
+/**
+ * Finds the cheapest combination of stackable deals of one hotel.
+ *
+ * Within a stacking group, a percentage deal with a lower multiplier and a flat deal with a
+ * larger rebate are never worse choices, whatever else is in the stack. So for a stay the best
+ * stack of at most k deals uses the a cheapest applicable percentage deals and the k - a largest
+ * applicable rebates for some a: with each group's deals presorted that way, a query walks
+ * the sorted deals until it has k applicable ones of each kind and then tries the k + 1 splits,
+ * instead of enumerating subsets. Deals that can only raise the price are never stacked.
+ *
+ * Percentages are applied one at a time, largest discount first, each rounded down like a
+ * single percentage deal. A stack never prices a stay below zero.
+ *
+ * Instances are immutable; a hotel rebuilds its stacker after its deals change.
+ */
+public final class DealStacker
+{
+    /** Stacker of a hotel with no stackable deals. */
+    public static final DealStacker EMPTY = new DealStacker(new Group[0]);
+
+    private final Group[] groups;
+
+    private DealStacker(Group[] groups)
+    {
+        this.groups = groups;
+    }
+
+    /**
+     * Build the stacker of a hotel's deals.
+     * @param deals Deals of the hotel, in configuration order. Deals without a stacking rule are skipped.
+     *        A group takes the rule of its first deal; a later deal of the group with a different
+     *        rule is not stacked, with a warning.
+     * @return new stacker.
+     */
+    public static DealStacker build(List<Deal> deals)
+    {
+        Map<String, StackingRule> rules = new LinkedHashMap<String, StackingRule>();
+        Map<String, List<Deal>> percents = new LinkedHashMap<String, List<Deal>>();
+        Map<String, List<Deal>> flats = new LinkedHashMap<String, List<Deal>>();
+        for (Deal d : deals)
+        {
+            StackingRule rule = d.getStackingRule();
+            if (rule == null)
+            {
+                continue;
+            }
+            StackingRule known = rules.get(rule.getGroup());
+            if (known == null)
+            {
+                rules.put(rule.getGroup(), rule);
+                percents.put(rule.getGroup(), new ArrayList<Deal>());
+                flats.put(rule.getGroup(), new ArrayList<Deal>());
+            }
+            else if (!known.equals(rule))
+            {
+                // One bad line must not spoil the group, or the hotel: the deal stands alone.
+                System.out.println("Warning: deal " + d.getPromotionalText() + " of stacking group "
+                        + rule.getGroup() + " is not stacked: its rule " + rule + " differs from " + known);
+                continue;
+            }
+            if (d.getRateMultiplierPercent() < 100)
+            {
+                percents.get(rule.getGroup()).add(d);
+            }
+            else if (d.getFlatAdjustment() < 0)
+            {
+                flats.get(rule.getGroup()).add(d);
+            }
+        }
+        if (rules.isEmpty())
+        {
+            return EMPTY;
+        }
+
+        Group[] groups = new Group[rules.size()];
+        int g = 0;
+        for (StackingRule rule : rules.values())
+        {
+            // Sorting is stable, so equal deals stay in configuration order.
+            List<Deal> p = percents.get(rule.getGroup());
+            List<Deal> f = flats.get(rule.getGroup());
+            Collections.sort(p, MULTIPLIER_ORDER);
+            Collections.sort(f, ADJUSTMENT_ORDER);
+            groups[g++] = new Group(rule, p.toArray(new Deal[p.size()]), f.toArray(new Deal[f.size()]));
+        }
+        return new DealStacker(groups);
+    }
+
+    /**
+     * Find the cheapest stack of deals applicable to a stay, over all stacking groups.
+     * @param hotel Hotel of the deals.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Input stay length in days.
+     * @return cheapest stack, or null if no stackable deal applies.
+     */
+    public DealCombination findBest(Hotel hotel, LocalDate checkInDate, int stayLengthDays)
+    {
+        long basePrice = hotel.getBasePrice(checkInDate, stayLengthDays);
+        List<Deal> best = null;
+        long bestPrice = Long.MAX_VALUE;
+        for (Group group : this.groups)
+        {
+            int k = group.rule.getMaxPerStay();
+            List<Deal> p = collect(group.percents, checkInDate, stayLengthDays, k);
+            List<Deal> f = collect(group.flats, checkInDate, stayLengthDays, k);
+            long[] rebates = new long[f.size() + 1];
+            for (int b = 0; b < f.size(); b++)
+            {
+                rebates[b + 1] = rebates[b] + f.get(b).getFlatAdjustment();
+            }
+            for (int a = 0; a <= p.size() && a <= k; a++)
+            {
+                int b = Math.min(k - a, f.size());
+                if (a + b == 0)
+                {
+                    continue;
+                }
+                long price;
+                if (group.rule.getOrder() == StackingOrder.PERCENT_FIRST)
+                {
+                    price = Math.max(0, applyPercents(basePrice, p, a) + rebates[b]);
+                }
+                else
+                {
+                    price = applyPercents(Math.max(0, basePrice + rebates[b]), p, a);
+                }
+                if (price < bestPrice)
+                {
+                    bestPrice = price;
+                    best = new ArrayList<Deal>(a + b);
+                    if (group.rule.getOrder() == StackingOrder.PERCENT_FIRST)
+                    {
+                        best.addAll(p.subList(0, a));
+                        best.addAll(f.subList(0, b));
+                    }
+                    else
+                    {
+                        best.addAll(f.subList(0, b));
+                        best.addAll(p.subList(0, a));
+                    }
+                }
+            }
+        }
+        if (best == null)
+        {
+            return null;
+        }
+        return new DealCombination(hotel, best, checkInDate, stayLengthDays, (int) bestPrice);
+    }
+
+    /**
+     * @return number of stacking groups.
+     */
+    public int getGroupCount()
+    {
+        return this.groups.length;
+    }
+
+    private static List<Deal> collect(Deal[] sorted, LocalDate checkInDate, int stayLengthDays, int max)
+    {
+        List<Deal> found = new ArrayList<Deal>(Math.min(max, sorted.length));
+        for (int i = 0; i < sorted.length && found.size() < max; i++)
+        {
+            Deal d = sorted[i];
+            if (d.isStayLengthApplicable(stayLengthDays) && d.isCheckInDateApplicable(checkInDate))
+            {
+                found.add(d);
+            }
+        }
+        return found;
+    }
+
+    private static long applyPercents(long price, List<Deal> percents, int count)
+    {
+        long p = Math.max(0, price);
+        for (int i = 0; i < count; i++)
+        {
+            p = p * percents.get(i).getRateMultiplierPercent() / 100;
+        }
+        return p;
+    }
+
+    private static final Comparator<Deal> MULTIPLIER_ORDER = new Comparator<Deal>()
+    {
+        @Override
+        public int compare(Deal a, Deal b)
+        {
+            return Integer.compare(a.getRateMultiplierPercent(), b.getRateMultiplierPercent());
+        }
+    };
+
+    private static final Comparator<Deal> ADJUSTMENT_ORDER = new Comparator<Deal>()
+    {
+        @Override
+        public int compare(Deal a, Deal b)
+        {
+            return Integer.compare(a.getFlatAdjustment(), b.getFlatAdjustment());
+        }
+    };
+
+    /**
+     * Stackable deals of one group, each kind sorted from best to worst.
+     */
+    private static final class Group
+    {
+        final StackingRule rule;
+        final Deal[] percents;
+        final Deal[] flats;
+
+        Group(StackingRule rule, Deal[] percents, Deal[] flats)
+        {
+            this.rule = rule;
+            this.percents = percents;
+            this.flats = flats;
+        }
+    }
+}
@@ -2,11 +2,23 @@ package com.stephengilbane.hotel;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealFilter;
+import com.stephengilbane.hotel.deals.DealInventory;
+import com.stephengilbane.hotel.deals.DealPartition;
+import com.stephengilbane.hotel.deals.DealProvider;
+import com.stephengilbane.hotel.deals.DealRanking;
+import com.stephengilbane.hotel.deals.DealRegistry;
+import com.stephengilbane.hotel.deals.DealSelection;
+import com.stephengilbane.hotel.deals.DealType;
+import com.stephengilbane.hotel.trace.CandidateOutcome;
+import com.stephengilbane.hotel.trace.QueryExplanation;
 
 /**
  * Class representing a hotel participating in this deal program.
@@ -19,6 +31,16 @@ public class Hotel
     private final String name;
     private final int ratePerDay;
     private final List<Deal> dealList = new ArrayList<Deal>();
+    // Deals grouped by type, indexed by DealType ordinal. Null where this hotel has no deal of a type.
+    private final DealPartition[] partitions = new DealPartition[DealType.values().length];
+    // Lower envelope of the linear deals. Built on first use, discarded when deals change.
+    private DealEnvelope envelope;
+    // Rates by night, or null if every night is charged ratePerDay.
+    private RateCalendar rateCalendar;
+    // Stackable deals by group. Built on first use, discarded when deals change.
+    private DealStacker stacker;
+    // Set once this hotel is shared read-only, such as by a DealVersion.
+    private boolean frozen;
 
     /**
      * Constructor
@@ -52,6 +74,47 @@ public class Hotel
         return ratePerDay;
     }
 
+    /**
+     * @return rates of this hotel by night, or null if every night is charged the nightly rate.
+     */
+    public RateCalendar getRateCalendar()
+    {
+        return this.rateCalendar;
+    }
+
+    /**
+     * Set the rate of a range of nights, creating this hotel's rate calendar if needed.
+     * Nights without a rate of their own are charged the nightly rate.
+     * @param from First night, inclusive.
+     * @param to Last night, inclusive.
+     * @param rate Rate of each night in the range.
+     */
+    public void setNightlyRate(LocalDate from, LocalDate to, int rate)
+    {
+        checkNotFrozen();
+        if (this.rateCalendar == null)
+        {
+            this.rateCalendar = new RateCalendar(this.ratePerDay);
+        }
+        this.rateCalendar.setRate(from, to, rate);
+    }
+
+    /**
+     * Compute the price of a stay before any deal, in constant time.
+     * @param checkInDate Date of the first night.
+     * @param stayLengthDays Number of nights.
+     * @return sum of the rates of the nights of the stay.
+     */
+    public long getBasePrice(LocalDate checkInDate, int stayLengthDays)
+    {
+        RateCalendar calendar = this.rateCalendar;
+        if (calendar == null)
+        {
+            return (long) this.ratePerDay * stayLengthDays;
+        }
+        return calendar.getStayPrice(checkInDate, stayLengthDays);
+    }
+
     /**
      * Add a deal to this hotel's set of deals.
      * 
@@ -59,7 +122,179 @@ public class Hotel
      **/
     public void addDeal(Deal deal)
     {
+        checkNotFrozen();
+        addToPartition(deal, this.dealList.size());
         this.dealList.add(deal);
+        this.envelope = null;
+        this.stacker = null;
+    }
+
+    /**
+     * Remove a deal from this hotel's set of deals. The positions of the later deals move up by one.
+     * 
+     * @param deal  Deal to remove, compared by identity.
+     * @return false if this hotel does not have the deal.
+     **/
+    public boolean removeDeal(Deal deal)
+    {
+        checkNotFrozen();
+        int index = indexOf(deal);
+        if (index < 0)
+        {
+            return false;
+        }
+        this.dealList.remove(index);
+        rebuildPartitions();
+        return true;
+    }
+
+    /**
+     * Replace a deal of this hotel by another one, in the same position.
+     * 
+     * @param oldDeal  Deal to replace, compared by identity.
+     * @param newDeal  Deal to put in its place. Must not be null.
+     * @return false if this hotel does not have the old deal.
+     **/
+    public boolean replaceDeal(Deal oldDeal, Deal newDeal)
+    {
+        checkNotFrozen();
+        int index = indexOf(oldDeal);
+        if (index < 0)
+        {
+            return false;
+        }
+        this.dealList.set(index, newDeal);
+        rebuildPartitions();
+        return true;
+    }
+
+    /**
+     * Copy this hotel with all its deals and rates, for copy-on-write updates. The copy is not
+     * frozen.
+     * @param rate Nightly rate of the copy.
+     * @return new Hotel.
+     */
+    Hotel copy(int rate)
+    {
+        Hotel h = new Hotel(this.name, rate);
+        for (Deal d : this.dealList)
+        {
+            h.addDeal(d);
+        }
+        if (this.rateCalendar != null)
+        {
+            h.rateCalendar = this.rateCalendar.copy(rate);
+        }
+        return h;
+    }
+
+    /**
+     * Compare this hotel with another, such as the same hotel in two loads of a feed.
+     * @param other Hotel to compare with.
+     * @return true if both have the same name and nightly rate, no rate calendar, and deals with
+     *         the same terms in the same order.
+     */
+    public boolean hasSameContent(Hotel other)
+    {
+        if (other == this)
+        {
+            return true;
+        }
+        if (other == null || !other.name.equals(this.name) || other.ratePerDay != this.ratePerDay
+                || other.rateCalendar != null || this.rateCalendar != null
+                || other.dealList.size() != this.dealList.size())
+        {
+            return false;
+        }
+        for (int i = 0; i < this.dealList.size(); i++)
+        {
+            if (!this.dealList.get(i).hasSameTerms(other.dealList.get(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build every structure that is otherwise built on first use, so that queries never write
+     * to this hotel. Called before a hotel is shared with other threads.
+     */
+    public void prepare()
+    {
+        getEnvelope();
+        getStacker();
+        if (this.rateCalendar != null)
+        {
+            this.rateCalendar.prepare();
+        }
+    }
+
+    /**
+     * Prepare this hotel, then make it read-only: adding, removing or replacing deals, or
+     * setting rates, throws an IllegalStateException from now on. Called before a hotel is
+     * shared with readers that must not see it change.
+     */
+    public void freeze()
+    {
+        prepare();
+        this.frozen = true;
+    }
+
+    /**
+     * @return true if this hotel is read-only.
+     */
+    public boolean isFrozen()
+    {
+        return this.frozen;
+    }
+
+    private void checkNotFrozen()
+    {
+        if (this.frozen)
+        {
+            throw new IllegalStateException("Hotel " + this.name + " is frozen");
+        }
+    }
+
+    private int indexOf(Deal deal)
+    {
+        for (int i = 0; i < this.dealList.size(); i++)
+        {
+            if (this.dealList.get(i) == deal)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void rebuildPartitions()
+    {
+        Arrays.fill(this.partitions, null);
+        for (int i = 0; i < this.dealList.size(); i++)
+        {
+            addToPartition(this.dealList.get(i), i);
+        }
+        this.envelope = null;
+        this.stacker = null;
+    }
+
+    private void addToPartition(Deal deal, int index)
+    {
+        DealType type = deal.getDealType();
+        DealPartition p = this.partitions[type.ordinal()];
+        if (p == null)
+        {
+            DealProvider provider = DealRegistry.forType(type);
+            if (provider == null)
+            {
+                throw new IllegalArgumentException("No provider registered for deal type " + type.getToken());
+            }
+            p = provider.createPartition();
+            this.partitions[type.ordinal()] = p;
+        }
+        p.add(deal, index);
     }
     
     /**
@@ -72,6 +307,51 @@ public class Hotel
         return   deals;
     }
 
+    /**
+     * @return the lower envelope of this hotel's linear deals, building it if needed.
+     */
+    public DealEnvelope getEnvelope()
+    {
+        DealEnvelope env = this.envelope;
+        if (env == null)
+        {
+            env = DealEnvelope.build(this.partitions);
+            this.envelope = env;
+        }
+        return env;
+    }
+
+    /**
+     * @return the stacker of this hotel's stackable deals, building it if needed.
+     */
+    public DealStacker getStacker()
+    {
+        DealStacker s = this.stacker;
+        if (s == null)
+        {
+            s = DealStacker.build(this.dealList);
+            this.stacker = s;
+        }
+        return s;
+    }
+
+    /**
+     * @return number of deals of this hotel, including any Deal.NO_DEAL entries.
+     */
+    public int getDealCount()
+    {
+        return this.dealList.size();
+    }
+
+    /**
+     * @param index Position of a deal within this hotel, in the order deals were added.
+     * @return Deal at that position.
+     */
+    public Deal getDeal(int index)
+    {
+        return this.dealList.get(index);
+    }
+
     /**
      * Find the best deal offered by this hotel given the input.
      * @param checkInDate Input check-in date.
@@ -80,26 +360,226 @@ public class Hotel
      */
     public Deal findBestDeal(LocalDate checkInDate, int stayLengthDays)
     {
-        int bestValue = Integer.MAX_VALUE;
-        Deal bestDeal = Deal.NO_DEAL;
-        for (Deal d : this.dealList)
+        DealSelection selection = new DealSelection();
+        selectBestDeal(checkInDate, stayLengthDays, selection);
+        return selection.getBestDeal();
+    }
+
+    /**
+     * Find the best deal offered by this hotel given the input, with the price of the stay.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Input stay length in days.
+     * @return best deal and its price, or Deal.NO_DEAL at the full price.
+     */
+    public DealResult findBestValue(LocalDate checkInDate, int stayLengthDays)
+    {
+        DealSelection selection = new DealSelection();
+        selectBestDeal(checkInDate, stayLengthDays, selection);
+        int price = selection.hasDeal() ? selection.getBestPrice() : (int) getBasePrice(checkInDate, stayLengthDays);
+        return new DealResult(this, selection.getBestDeal(), checkInDate, stayLengthDays, price);
+    }
+
+    /**
+     * Find the best deal offered by this hotel given the input, without allocating.
+     * Linear deals are selected through the hotel's DealEnvelope; deals of any other type are scanned.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Input stay length in days.
+     * @param selection Selection to offer the applicable deals to. Not reset first.
+     */
+    public void selectBestDeal(LocalDate checkInDate, int stayLengthDays, DealSelection selection)
+    {
+        RateCalendar calendar = this.rateCalendar;
+        long basePrice = (calendar == null) ? (long) this.ratePerDay * stayLengthDays
+                : calendar.getStayPrice(checkInDate, stayLengthDays);
+        getEnvelope().selectBest(checkInDate, stayLengthDays, basePrice, selection);
+        for (DealPartition p : this.partitions)
         {
-            if (!d.isStayLengthApplicable(stayLengthDays))
+            if (p != null && !p.isLinear())
             {
-                 continue;                
+                if (calendar == null)
+                {
+                    p.selectBest(checkInDate, stayLengthDays, this.ratePerDay, selection);
+                }
+                else
+                {
+                    p.selectBestForBase(checkInDate, stayLengthDays, basePrice, selection);
+                }
             }
-            if (!d.isCheckInDateApplicable(checkInDate))
+        }
+    }
+
+    /**
+     * Rank the deals that apply to a stay, best first. Partitions of deal types the filter
+     * rejects are not scanned.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Input stay length in days.
+     * @param ranking Ranking to offer the applicable deals to. Not reset first; sorted on return.
+     */
+    public void rankDeals(LocalDate checkInDate, int stayLengthDays, DealRanking ranking)
+    {
+        long basePrice = getBasePrice(checkInDate, stayLengthDays);
+        DealFilter filter = ranking.getFilter();
+        for (DealPartition p : this.partitions)
+        {
+            if (p != null && filter.acceptsType(p.getDealType()))
             {
-                continue; 
+                p.rank(checkInDate, stayLengthDays, basePrice, ranking);
             }
-            int val = d.calculateFinalValue(this.ratePerDay, stayLengthDays);
-            if (val < bestValue)
+        }
+        ranking.sort();
+    }
+
+    /**
+     * Find the best deals that apply to a stay.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Input stay length in days.
+     * @param k Maximum number of deals to return. Must be positive.
+     * @param filter Filter the deals must pass.
+     * @return up to k deals with their prices, best first; empty if no deal applies.
+     */
+    public List<DealResult> findTopDeals(LocalDate checkInDate, int stayLengthDays, int k, DealFilter filter)
+    {
+        DealRanking ranking = new DealRanking(k, filter);
+        rankDeals(checkInDate, stayLengthDays, ranking);
+        List<DealResult> results = new ArrayList<DealResult>(ranking.size());
+        for (int i = 0; i < ranking.size(); i++)
+        {
+            results.add(new DealResult(this, ranking.getDeal(i), checkInDate, stayLengthDays, ranking.getPrice(i)));
+        }
+        return results;
+    }
+
+    /**
+     * Claim a unit of the best deal for a stay. When the best deal has a limited quantity and is
+     * sold out, the next best deal still available is claimed instead, down to the full price if
+     * none is left. Safe to call from many threads at once; no lock is taken.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Input stay length in days.
+     * @return claimed deal and its price, or Deal.NO_DEAL at the full price.
+     */
+    public DealResult claimBestDeal(LocalDate checkInDate, int stayLengthDays)
+    {
+        DealSelection selection = new DealSelection();
+        selectBestDeal(checkInDate, stayLengthDays, selection);
+        long basePrice = getBasePrice(checkInDate, stayLengthDays);
+        if (!selection.hasDeal())
+        {
+            return new DealResult(this, Deal.NO_DEAL, checkInDate, stayLengthDays, (int) basePrice);
+        }
+        DealInventory inventory = selection.getBestDeal().getInventory();
+        if (inventory == null || inventory.tryClaim())
+        {
+            return new DealResult(this, selection.getBestDeal(), checkInDate, stayLengthDays, selection.getBestPrice());
+        }
+
+        // Sold out: scan for the best deal with units left, in the same order as the selection.
+        while (true)
+        {
+            Deal best = null;
+            int bestPrice = Integer.MAX_VALUE;
+            for (Deal d : this.dealList)
             {
-                bestValue = val;
-                bestDeal = d;
+                if (d == Deal.NO_DEAL || !d.isStayLengthApplicable(stayLengthDays) || !d.isCheckInDateApplicable(checkInDate)
+                        || (d.getInventory() != null && d.getInventory().isSoldOut()))
+                {
+                    continue;
+                }
+                int price = d.calculateFinalValueForBase(basePrice, stayLengthDays);
+                if (price < bestPrice)
+                {
+                    best = d;
+                    bestPrice = price;
+                }
             }
+            if (best == null)
+            {
+                return new DealResult(this, Deal.NO_DEAL, checkInDate, stayLengthDays, (int) basePrice);
+            }
+            if (best.getInventory() == null || best.getInventory().tryClaim())
+            {
+                return new DealResult(this, best, checkInDate, stayLengthDays, bestPrice);
+            }
+        }
+    }
+
+    /**
+     * Find the cheapest way to price a stay: either the best single deal, or a stack of deals of
+     * one stacking group if that is strictly cheaper.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Input stay length in days.
+     * @return best combination; empty if no deal applies.
+     */
+    public DealCombination findBestCombination(LocalDate checkInDate, int stayLengthDays)
+    {
+        DealSelection selection = new DealSelection();
+        selectBestDeal(checkInDate, stayLengthDays, selection);
+        DealCombination best;
+        if (selection.hasDeal())
+        {
+            best = new DealCombination(this, Collections.singletonList(selection.getBestDeal()), checkInDate,
+                    stayLengthDays, selection.getBestPrice());
         }
+        else
+        {
+            best = new DealCombination(this, Collections.<Deal>emptyList(), checkInDate, stayLengthDays,
+                    (int) getBasePrice(checkInDate, stayLengthDays));
+        }
+        DealCombination stack = getStacker().findBest(this, checkInDate, stayLengthDays);
+        return (stack != null && stack.getCustomerPrice() < best.getCustomerPrice()) ? stack : best;
+    }
 
-        return bestDeal;
+    /**
+     * Find the cheapest way to book a stay as up to a given number of consecutive segments, each
+     * a separate stay with its own check-in date and best deal.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Input stay length in days.
+     * @param maxSegments Maximum number of segments; 1 gives the same price as findBestDeal().
+     * @return cheapest segmentation.
+     */
+    public SplitStay findBestSplitStay(LocalDate checkInDate, int stayLengthDays, int maxSegments)
+    {
+        return SplitStayPlanner.plan(this, checkInDate, stayLengthDays, maxSegments);
+    }
+
+    /**
+     * Explain the best deal for a stay: every deal of this hotel is recorded with its price and
+     * the reason it was or was not selected. Much slower than findBestDeal(); intended for support
+     * and sampled tracing.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Input stay length in days.
+     * @return explanation of the query.
+     */
+    public QueryExplanation explainBestDeal(LocalDate checkInDate, int stayLengthDays)
+    {
+        QueryExplanation explanation = new QueryExplanation(this.name, checkInDate, stayLengthDays, true,
+                this.ratePerDay);
+        DealSelection selection = new DealSelection();
+        selectBestDeal(checkInDate, stayLengthDays, selection);
+        long basePrice = getBasePrice(checkInDate, stayLengthDays);
+        for (int i = 0; i < this.dealList.size(); i++)
+        {
+            Deal d = this.dealList.get(i);
+            CandidateOutcome outcome;
+            if (!d.isStayLengthApplicable(stayLengthDays))
+            {
+                outcome = CandidateOutcome.REJECTED_STAY_LENGTH;
+            }
+            else if (!d.isCheckInDateApplicable(checkInDate))
+            {
+                outcome = CandidateOutcome.REJECTED_CHECK_IN_DATE;
+            }
+            else if (i == selection.getBestIndex())
+            {
+                outcome = CandidateOutcome.SELECTED;
+            }
+            else
+            {
+                outcome = CandidateOutcome.NOT_BEST;
+            }
+            explanation.addCandidate(d, i, outcome, d.calculateFinalValueForBase(basePrice, stayLengthDays));
+        }
+        int price = selection.hasDeal() ? selection.getBestPrice() : (int) basePrice;
+        explanation.setResult(selection.getBestDeal(), price);
+        return explanation;
     }
 }
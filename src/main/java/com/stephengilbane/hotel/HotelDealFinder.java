@@ -1,12 +1,35 @@
 package com.stephengilbane.hotel;
 
+import java.io.File;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
+import com.stephengilbane.hotel.analytics.EffectivenessReport;
 import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealFilter;
+import com.stephengilbane.hotel.deals.DealSelection;
+import com.stephengilbane.hotel.index.DateBucketing;
+import com.stephengilbane.hotel.index.FeedOffsetIndex;
+import com.stephengilbane.hotel.index.HotelDateIndex;
+import com.stephengilbane.hotel.lint.FeedLinter;
+import com.stephengilbane.hotel.lint.LintIssue;
+import com.stephengilbane.hotel.lint.LintReport;
+import com.stephengilbane.hotel.trace.QueryExplanation;
+import com.stephengilbane.hotel.trace.SampledQueryTracer;
+import com.stephengilbane.hotel.watch.DealChangeListener;
+import com.stephengilbane.hotel.watch.DealSubscription;
+import com.stephengilbane.hotel.watch.SubscriptionIndex;
 
 /**
  * Finds best deal for a given hotel, stay date, and stay length.
@@ -23,9 +46,19 @@ import com.stephengilbane.hotel.deals.Deal;
  *
  */
 public class HotelDealFinder
+implements DealSink
 {
     private String originalHotelConfigText;
     private Map<String, Hotel> hotelMap;
+    // One lock per hotel, taken by the concurrent update methods only.
+    private final ConcurrentHashMap<String, Object> hotelLocks = new ConcurrentHashMap<String, Object>();
+    // Counts changes to the hotels, so that an index built across one is not used.
+    private final AtomicLong updateCount = new AtomicLong();
+    private StringDictionary dictionary;
+    private SampledQueryTracer tracer;
+    private volatile DateIndexHolder dateIndex;
+    private SubscriptionIndex subscriptions;
+    private volatile HotelSource hotelSource;
 
     /**
      * Constructor
@@ -34,7 +67,7 @@ public class HotelDealFinder
      */
     public HotelDealFinder()
     {
-        hotelMap = new HashMap<String, Hotel>();
+        hotelMap = new ConcurrentHashMap<String, Hotel>();
     }
     
     /**
@@ -52,23 +85,437 @@ public class HotelDealFinder
           this.originalHotelConfigText = txt;
       }
       
+     /**
+      * Remember the dictionary of the most recent load, for reporting.
+      * @param dict Dictionary of the load.
+      */
+     @Override
+     public void beginLoad(StringDictionary dict)
+     {
+         this.dictionary = dict;
+         if (this.subscriptions != null)
+         {
+             this.subscriptions.beginBatch();
+         }
+     }
+
+     /**
+      * Prepare the hotels of the load, then evaluate the subscriptions affected by its deals,
+      * once each.
+      */
+     @Override
+     public void endLoad()
+     {
+         prepareHotels();
+         if (this.subscriptions != null)
+         {
+             this.subscriptions.endBatch();
+         }
+     }
+
+     /**
+      * @return dictionary of the strings of the most recent load, or null if nothing was loaded.
+      */
+     public StringDictionary getDictionary()
+     {
+         return this.dictionary;
+     }
+      
      /**
       * Add a deal to a hotel. If the hotel does not exist, created it.
+      * The hotel is prepared for queries at the end of the load, or by prepareHotels().
       * @param hotelName Name of hotel. Must be unique.
       * @param rate  Nightly rate of this hotel.
       * @param deal  Deal to add.
       */
+     @Override
      public void addDeal(String hotelName, int rate, Deal deal)
      {
          Hotel h = hotelMap.get(hotelName);
-         if (h == null)
+         boolean created = (h == null);
+         if (created)
          {
              h = new Hotel(hotelName, rate);
              hotelMap.put(hotelName, h);
          }
          h.addDeal(deal);
+         this.updateCount.incrementAndGet();
+         if (this.subscriptions != null)
+         {
+             if (created)
+             {
+                 this.subscriptions.changed(hotelName);
+             }
+             else if (deal != Deal.NO_DEAL)
+             {
+                 this.subscriptions.changed(hotelName, deal.getStartDate(), deal.getEndDate());
+             }
+         }
+     }
+
+     /**
+      * Remove a deal from a hotel.
+      * @param hotelName Name of hotel.
+      * @param deal Deal to remove, compared by identity.
+      * @return false if the hotel is unknown or does not have the deal.
+      */
+     public boolean removeDeal(String hotelName, Deal deal)
+     {
+         Hotel h = hotelMap.get(hotelName);
+         if (h == null || !h.removeDeal(deal))
+         {
+             return false;
+         }
+         this.updateCount.incrementAndGet();
+         if (this.subscriptions != null && deal != Deal.NO_DEAL)
+         {
+             this.subscriptions.changed(hotelName, deal.getStartDate(), deal.getEndDate());
+         }
+         return true;
      }
      
+     /**
+      * Set the nightly rate of a hotel for a range of nights.
+      * @param hotelName Name of hotel.
+      * @param from First night, inclusive.
+      * @param to Last night, inclusive.
+      * @param rate Rate of each night in the range.
+      * @return false if the hotel is unknown.
+      */
+     public boolean setNightlyRate(String hotelName, LocalDate from, LocalDate to, int rate)
+     {
+         Hotel h = hotelMap.get(hotelName);
+         if (h == null)
+         {
+             return false;
+         }
+         h.setNightlyRate(from, to, rate);
+         if (this.subscriptions != null)
+         {
+             this.subscriptions.ratesChanged(hotelName, from, to);
+         }
+         return true;
+     }
+     
+     /**
+      * Add a deal to a hotel while other threads may be querying or updating this Finder.
+      * If the hotel does not exist, create it.
+      * 
+      * Each concurrent update copies the hotel, changes the copy, builds its lookup structures and
+      * then publishes it in place of the original, under a lock of that hotel only. Queries never
+      * wait: they see either the hotel before or after the update. Updates to one hotel take effect
+      * in the order their locks were taken, and never wait for updates to other hotels.
+      * Deals loaded with addDeal() must all be added before queries start.
+      * @param hotelName Name of hotel.
+      * @param rate  Nightly rate of the hotel, if it is created.
+      * @param deal  Deal to add.
+      */
+     public void addDealConcurrently(String hotelName, int rate, Deal deal)
+     {
+         // Hotels are never removed, so a hotel known now is known after the update.
+         boolean known = this.hotelMap.containsKey(hotelName);
+         updateHotel(hotelName, rate, h -> {
+             h.addDeal(deal);
+             return true;
+         });
+         if (known)
+         {
+             notifyDealChanged(hotelName, deal);
+         }
+         else
+         {
+             notifyChanged(hotelName);
+         }
+     }
+
+     /**
+      * Remove a deal from a hotel while other threads may be querying or updating this Finder.
+      * See {@link #addDealConcurrently(String, int, Deal)}.
+      * @param hotelName Name of hotel.
+      * @param deal Deal to remove, compared by identity.
+      * @return false if the hotel is unknown or does not have the deal.
+      */
+     public boolean removeDealConcurrently(String hotelName, Deal deal)
+     {
+         if (!updateHotel(hotelName, -1, h -> h.removeDeal(deal)))
+         {
+             return false;
+         }
+         notifyDealChanged(hotelName, deal);
+         return true;
+     }
+
+     /**
+      * Replace a deal of a hotel, keeping its position, while other threads may be querying or
+      * updating this Finder. See {@link #addDealConcurrently(String, int, Deal)}.
+      * @param hotelName Name of hotel.
+      * @param oldDeal Deal to replace, compared by identity.
+      * @param newDeal Deal to put in its place.
+      * @return false if the hotel is unknown or does not have the old deal.
+      */
+     public boolean replaceDealConcurrently(String hotelName, Deal oldDeal, Deal newDeal)
+     {
+         if (!updateHotel(hotelName, -1, h -> h.replaceDeal(oldDeal, newDeal)))
+         {
+             return false;
+         }
+         notifyDealChanged(hotelName, oldDeal);
+         notifyDealChanged(hotelName, newDeal);
+         return true;
+     }
+
+     /**
+      * Change the nightly rate of a hotel while other threads may be querying or updating this
+      * Finder. Nights with a rate of their own keep it. See {@link #addDealConcurrently(String, int, Deal)}.
+      * @param hotelName Name of hotel.
+      * @param rate New nightly rate.
+      * @return false if the hotel is unknown.
+      */
+     public boolean updateNightlyRate(String hotelName, int rate)
+     {
+         if (!this.hotelMap.containsKey(hotelName))
+         {
+             return false;
+         }
+         Object lock = this.hotelLocks.computeIfAbsent(hotelName, k -> new Object());
+         synchronized (lock)
+         {
+             Hotel current = this.hotelMap.get(hotelName);
+             if (current == null)
+             {
+                 return false;
+             }
+             publish(current.copy(rate));
+         }
+         notifyChanged(hotelName);
+         return true;
+     }
+
+     /**
+      * Set the rate of a range of nights of a hotel while other threads may be querying or
+      * updating this Finder. See {@link #addDealConcurrently(String, int, Deal)}.
+      * @param hotelName Name of hotel.
+      * @param from First night, inclusive.
+      * @param to Last night, inclusive.
+      * @param rate Rate of each night in the range.
+      * @return false if the hotel is unknown.
+      */
+     public boolean updateNightlyRate(String hotelName, LocalDate from, LocalDate to, int rate)
+     {
+         if (!updateHotel(hotelName, -1, h -> {
+             h.setNightlyRate(from, to, rate);
+             return true;
+         }))
+         {
+             return false;
+         }
+         SubscriptionIndex subs = this.subscriptions;
+         if (subs != null)
+         {
+             synchronized (subs)
+             {
+                 subs.ratesChanged(hotelName, from, to);
+             }
+         }
+         return true;
+     }
+
+     /**
+      * Change a copy of a hotel and publish it in place of the original.
+      * @param hotelName Name of hotel.
+      * @param rate Nightly rate to create the hotel with, or negative to not create it.
+      * @param change Change to make to the copy. Returns false to publish nothing.
+      * @return true if a changed hotel was published.
+      */
+     private boolean updateHotel(String hotelName, int rate, Predicate<Hotel> change)
+     {
+         // Hotels are never removed, so an unknown hotel needs no lock unless it is created.
+         if (rate < 0 && !this.hotelMap.containsKey(hotelName))
+         {
+             return false;
+         }
+         Object lock = this.hotelLocks.computeIfAbsent(hotelName, k -> new Object());
+         synchronized (lock)
+         {
+             Hotel current = this.hotelMap.get(hotelName);
+             if (current == null && rate < 0)
+             {
+                 return false;
+             }
+             Hotel next = (current == null) ? new Hotel(hotelName, rate) : current.copy(current.getNightlyRate());
+             if (!change.test(next))
+             {
+                 return false;
+             }
+             publish(next);
+             return true;
+         }
+     }
+
+     private void publish(Hotel h)
+     {
+         h.prepare();
+         this.hotelMap.put(h.getName(), h);
+         // Counted after the put, so an index built before the count is read again is not used.
+         this.updateCount.incrementAndGet();
+     }
+
+     /**
+      * Build the lookup structures of every hotel now, so that queries never write to a hotel.
+      * Called at the end of each load; call it after changing hotels with addDeal(),
+      * removeDeal() or setNightlyRate() outside a load, before queries start.
+      */
+     public void prepareHotels()
+     {
+         for (Hotel h : this.hotelMap.values())
+         {
+             h.prepare();
+         }
+     }
+
+     private void notifyDealChanged(String hotelName, Deal deal)
+     {
+         SubscriptionIndex subs = this.subscriptions;
+         if (subs != null && deal != Deal.NO_DEAL)
+         {
+             synchronized (subs)
+             {
+                 subs.changed(hotelName, deal.getStartDate(), deal.getEndDate());
+             }
+         }
+     }
+
+     private void notifyChanged(String hotelName)
+     {
+         SubscriptionIndex subs = this.subscriptions;
+         if (subs != null)
+         {
+             synchronized (subs)
+             {
+                 subs.changed(hotelName);
+             }
+         }
+     }
+
+     /**
+      * Register a standing query for the best deal of a stay. The listener is told whenever
+      * adding or removing deals, or changing rates, changes the best deal or price of the stay.
+      * @param hotelName Name of hotel. Need not be known yet.
+      * @param checkInDate Check-in date.
+      * @param stayLengthDays Stay length in days. Must be positive.
+      * @param listener Listener told about changes.
+      * @return the subscription, holding the current best deal.
+      */
+     public DealSubscription subscribe(String hotelName, LocalDate checkInDate, int stayLengthDays,
+             DealChangeListener listener)
+     {
+         SubscriptionIndex subs = getSubscriptions();
+         synchronized (subs)
+         {
+             return subs.subscribe(hotelName, checkInDate, stayLengthDays, listener);
+         }
+     }
+
+     /**
+      * Remove a standing query.
+      * @param sub Subscription returned by subscribe().
+      * @return false if it was not registered.
+      */
+     public boolean unsubscribe(DealSubscription sub)
+     {
+         SubscriptionIndex subs = getSubscriptions();
+         synchronized (subs)
+         {
+             return subs.unsubscribe(sub);
+         }
+     }
+
+     /**
+      * @return standing query subscriptions of this Finder, creating them if needed.
+      */
+     public synchronized SubscriptionIndex getSubscriptions()
+     {
+         if (this.subscriptions == null)
+         {
+             this.subscriptions = new SubscriptionIndex(this);
+         }
+         return this.subscriptions;
+     }
+
+     /**
+      * Load hotels on demand: a query for a hotel this Finder does not have asks the source for
+      * its deals first. Hotels loaded this way are published like concurrent updates.
+      * getAllHotels() and the other bulk methods only see hotels already loaded.
+      * @param source Source of hotels, or null to not load hotels on demand.
+      */
+     public void setHotelSource(HotelSource source)
+     {
+         this.hotelSource = source;
+     }
+
+     /**
+      * @return source of hotels loaded on demand, or null.
+      */
+     public HotelSource getHotelSource()
+     {
+         return this.hotelSource;
+     }
+
+     /**
+      * Find a hotel for a query, loading it from the hotel source if needed.
+      * @param hotelName Name of hotel.
+      * @return the hotel, or null if it is unknown.
+      */
+     private Hotel findHotel(String hotelName)
+     {
+         Hotel h = this.hotelMap.get(hotelName);
+         HotelSource source = this.hotelSource;
+         // Unknown names are turned away before a lock is made for them, so the locks are
+         // bounded by the hotels of the source.
+         if (h != null || source == null || hotelName == null || !source.mayHaveHotel(hotelName))
+         {
+             return h;
+         }
+         Object lock = this.hotelLocks.computeIfAbsent(hotelName, k -> new Object());
+         synchronized (lock)
+         {
+             h = this.hotelMap.get(hotelName);
+             if (h != null)
+             {
+                 return h;
+             }
+             Hotel[] loaded = new Hotel[1];
+             source.loadHotel(hotelName, (name, rate, deal) -> {
+                 if (!name.equals(hotelName))
+                 {
+                     return;
+                 }
+                 if (loaded[0] == null)
+                 {
+                     loaded[0] = new Hotel(name, rate);
+                 }
+                 loaded[0].addDeal(deal);
+             });
+             if (loaded[0] != null)
+             {
+                 publish(loaded[0]);
+             }
+             return loaded[0];
+         }
+     }
+
+     /**
+      * Visit every hotel of this Finder without copying the hotel collection.
+      * @param visitor Called once for each hotel.
+      */
+     public void forEachHotel(Consumer<Hotel> visitor)
+     {
+         for (Hotel h : this.hotelMap.values())
+         {
+             visitor.accept(h);
+         }
+     }
+
      /**
       * @return  all hotels configured for this   Finder.
       */
@@ -79,6 +526,60 @@ public class HotelDealFinder
          return  hotels;
      }
 
+    /**
+     * @return index of the hotels with deals by check-in date, built on first use after a change.
+     */
+    public HotelDateIndex getDateIndex()
+    {
+        long updates = this.updateCount.get();
+        DateIndexHolder holder = this.dateIndex;
+        if (holder == null || holder.updates != updates)
+        {
+            // Read before the build, so a change made during it makes the index out of date.
+            holder = new DateIndexHolder(updates, HotelDateIndex.build(this.hotelMap.values(), DateBucketing.DAY));
+            this.dateIndex = holder;
+        }
+        return holder.index;
+    }
+
+    /**
+     * Find all hotels that have an applicable deal for a stay, without visiting the others.
+     * @param checkInDate  Input check-in date.
+     * @param stayLengthDays Length in days of requested stay.
+     * @return hotels with a deal for the stay. Never returns null.
+     */
+    public List<Hotel> findHotelsWithDeals(LocalDate checkInDate, int stayLengthDays)
+    {
+        return getDateIndex().findHotelsWithDeals(checkInDate, stayLengthDays);
+    }
+
+    /** First argument that selects the feed linter on the command line. */
+    public static final String LINT_COMMAND = "lint";
+    /** First argument that writes the sidecar index of a feed on the command line. */
+    public static final String INDEX_COMMAND = "index";
+    /** First argument that reports where each deal of a feed wins on the command line. */
+    public static final String EFFECTIVENESS_COMMAND = "effectiveness";
+
+    /** Packed result of a query that found no deal. */
+    public static final long NO_DEAL_PACKED = -1L;
+
+    // Order of the results of cross-hotel top deal queries.
+    private static final Comparator<DealResult> TOP_DEAL_ORDER = Comparator
+            .comparingInt(DealResult::getCustomerPrice).thenComparing(r -> r.getHotel().getName());
+    // Worst first, for the bounded heap of cross-hotel top deal queries.
+    private static final Comparator<RankedResult> WORST_RANKED_FIRST = Comparator
+            .comparing((RankedResult c) -> c.result, TOP_DEAL_ORDER).thenComparingInt(c -> c.rank).reversed();
+
+    // Scratch selection for packed queries, so that they allocate nothing.
+    private static final ThreadLocal<DealSelection> packedSelection = new ThreadLocal<DealSelection>()
+    {
+        @Override
+        protected DealSelection initialValue()
+        {
+            return new DealSelection();
+        }
+    };
+
     /**
      * Find the best value given the input values for all the hotels that have
      * registered with having a deal.
@@ -91,32 +592,333 @@ public class HotelDealFinder
      */
     public DealResult findBestValue(String hotelName, LocalDate checkInDate, int stayLengthDays)
     {
-        DealResult result = new DealResult(null, Deal.NO_DEAL, checkInDate, stayLengthDays);
-        for (Hotel h : this.hotelMap.values())
+        if (this.tracer != null && this.tracer.shouldSample())
         {
-            //  Filter out hotels by name.
-            if (!h.getName().equals(hotelName))
+            QueryExplanation explanation = explainBestValue(hotelName, checkInDate, stayLengthDays);
+            this.tracer.record(explanation);
+        }
+        Hotel h = findHotel(hotelName);
+        if (h == null)
+        {
+            return new DealResult(null, Deal.NO_DEAL, checkInDate, stayLengthDays);
+        }
+        return h.findBestValue(checkInDate, stayLengthDays);
+    }
+
+    /**
+     * Find the best value of each of a list of queries, as findBestValue() would.
+     * A hotel is resolved once for a run of queries of the same hotel, so that callers answering
+     * many queries together should order them by hotel.
+     *
+     * @param queries Queries to answer.
+     * @return results in the order of the queries. Never null.
+     */
+    public List<DealResult> findBestValues(List<DealQuery> queries)
+    {
+        List<DealResult> results = new ArrayList<DealResult>(queries.size());
+        DealSelection selection = new DealSelection();
+        String hotelName = null;
+        Hotel h = null;
+        for (DealQuery q : queries)
+        {
+            LocalDate dt = q.getCheckInDate();
+            int stay = q.getStayLength();
+            if (this.tracer != null && this.tracer.shouldSample())
             {
+                this.tracer.record(explainBestValue(q.getHotelName(), dt, stay));
+            }
+            if (!q.getHotelName().equals(hotelName))
+            {
+                hotelName = q.getHotelName();
+                h = findHotel(hotelName);
+            }
+            if (h == null)
+            {
+                results.add(new DealResult(null, Deal.NO_DEAL, dt, stay));
                 continue;
             }
-            Deal d = h.findBestDeal(checkInDate, stayLengthDays);
-            result = new DealResult(h, d, checkInDate, stayLengthDays);
+            selection.reset();
+            h.selectBestDeal(dt, stay, selection);
+            int price = selection.hasDeal() ? selection.getBestPrice() : (int) h.getBasePrice(dt, stay);
+            results.add(new DealResult(h, selection.getBestDeal(), dt, stay, price));
+        }
+        return results;
+    }
+
+    /**
+     * Find the best deals for a stay, ranked by final price.
+     * 
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate  Input check-in date.
+     * @param stayLengthDays Length in days of requested stay. Must be positive
+     *            integer.
+     * @param k Maximum number of deals to return. Must be positive.
+     * @param filter Filter the deals must pass, such as DealFilter.ALL.
+     * @return up to k deals, best first. Never returns null.
+     */
+    public List<DealResult> findTopDeals(String hotelName, LocalDate checkInDate, int stayLengthDays, int k,
+            DealFilter filter)
+    {
+        Hotel h = findHotel(hotelName);
+        if (h == null)
+        {
+            return Collections.<DealResult>emptyList();
+        }
+        return h.findTopDeals(checkInDate, stayLengthDays, k, filter);
+    }
+
+    /**
+     * Find the best deals for a stay across all hotels, ranked by final price, then by hotel
+     * name, then by rank within the hotel. Only hotels the date index lists for the stay are
+     * searched.
+     * 
+     * @param checkInDate  Input check-in date.
+     * @param stayLengthDays Length in days of requested stay. Must be positive
+     *            integer.
+     * @param k Maximum number of deals to return. Must be positive.
+     * @param filter Filter the deals must pass, such as DealFilter.ALL.
+     * @return up to k deals, best first. Never returns null.
+     */
+    public List<DealResult> findTopDeals(LocalDate checkInDate, int stayLengthDays, int k, DealFilter filter)
+    {
+        // Bounded heap of the k best so far, worst at the root, as in DealRanking.
+        PriorityQueue<RankedResult> best = new PriorityQueue<RankedResult>(Math.min(k, 64), WORST_RANKED_FIRST);
+        for (Hotel h : findHotelsWithDeals(checkInDate, stayLengthDays))
+        {
+            List<DealResult> ranked = h.findTopDeals(checkInDate, stayLengthDays, k, filter);
+            for (int rank = 0; rank < ranked.size(); rank++)
+            {
+                RankedResult c = new RankedResult(ranked.get(rank), rank);
+                if (best.size() < k)
+                {
+                    best.add(c);
+                }
+                else if (WORST_RANKED_FIRST.compare(c, best.peek()) > 0)
+                {
+                    best.poll();
+                    best.add(c);
+                }
+                else
+                {
+                    // The rest of this hotel's deals rank lower still.
+                    break;
+                }
+            }
         }
-        return result;
+        DealResult[] results = new DealResult[best.size()];
+        for (int i = results.length - 1; i >= 0; i--)
+        {
+            results[i] = best.poll().result;
+        }
+        return new ArrayList<DealResult>(Arrays.asList(results));
+    }
+
+    /**
+     * Claim a unit of the best deal still available for a stay. Deals with a limited quantity
+     * fall back to the next best deal once sold out. Safe for concurrent callers.
+     * 
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate  Input check-in date.
+     * @param stayLengthDays Length in days of requested stay. Must be positive
+     *            integer.
+     * @return DealResult of the claimed deal. Never returns null.
+     */
+    public DealResult claimBestDeal(String hotelName, LocalDate checkInDate, int stayLengthDays)
+    {
+        Hotel h = findHotel(hotelName);
+        if (h == null)
+        {
+            return new DealResult(null, Deal.NO_DEAL, checkInDate, stayLengthDays);
+        }
+        return h.claimBestDeal(checkInDate, stayLengthDays);
+    }
+
+    /**
+     * Find the best value for a stay when deals of the same stacking group may be combined.
+     * 
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate  Input check-in date.
+     * @param stayLengthDays Length in days of requested stay. Must be positive
+     *            integer.
+     * @return best single deal or stack of deals. Never returns null.
+     */
+    public DealCombination findBestCombination(String hotelName, LocalDate checkInDate, int stayLengthDays)
+    {
+        Hotel h = findHotel(hotelName);
+        if (h == null)
+        {
+            return new DealCombination(null, Collections.<Deal>emptyList(), checkInDate, stayLengthDays, 0);
+        }
+        return h.findBestCombination(checkInDate, stayLengthDays);
+    }
+
+    /**
+     * Find the cheapest way to book a stay as up to a given number of consecutive segments,
+     * each checked in separately so that it can qualify for a different deal.
+     * 
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate  Input check-in date.
+     * @param stayLengthDays Length in days of requested stay. Must be positive
+     *            integer.
+     * @param maxSegments Maximum number of segments. Must be positive.
+     * @return cheapest segmentation. Never returns null.
+     */
+    public SplitStay findBestSplitStay(String hotelName, LocalDate checkInDate, int stayLengthDays, int maxSegments)
+    {
+        Hotel h = findHotel(hotelName);
+        if (h == null)
+        {
+            return new SplitStay(null, checkInDate, stayLengthDays, Collections.<DealResult>emptyList(), 0);
+        }
+        return h.findBestSplitStay(checkInDate, stayLengthDays, maxSegments);
+    }
+
+    /**
+     * Find the best value for a stay into a caller-supplied holder, without allocating.
+     * The final price is computed once, while selecting the deal.
+     * 
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate  Input check-in date.
+     * @param stayLengthDays Length in days of requested stay. Must be positive
+     *            integer.
+     * @param result Holder to fill in. Must not be null.
+     * @return true if a deal was found.
+     */
+    public boolean findBestValue(String hotelName, LocalDate checkInDate, int stayLengthDays, DealQueryResult result)
+    {
+        if (this.tracer != null && this.tracer.shouldSample())
+        {
+            QueryExplanation explanation = explainBestValue(hotelName, checkInDate, stayLengthDays);
+            this.tracer.record(explanation);
+        }
+        DealSelection selection = result.begin();
+        Hotel h = findHotel(hotelName);
+        if (h == null)
+        {
+            return false;
+        }
+        h.selectBestDeal(checkInDate, stayLengthDays, selection);
+        result.complete(h, (int) h.getBasePrice(checkInDate, stayLengthDays));
+        return result.hasDeal();
+    }
+
+    /**
+     * Find the best value for a stay as a packed long, without allocating. The upper 32 bits hold
+     * the position of the deal within its hotel (see {@link Hotel#getDeal(int)}) and the lower 32 bits
+     * the final price; use {@link #unpackDealIndex(long)} and {@link #unpackPrice(long)}.
+     * 
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate  Input check-in date.
+     * @param stayLengthDays Length in days of requested stay. Must be positive
+     *            integer.
+     * @return packed result, or NO_DEAL_PACKED if the hotel is unknown or has no applicable deal.
+     */
+    public long findBestValuePacked(String hotelName, LocalDate checkInDate, int stayLengthDays)
+    {
+        Hotel h = findHotel(hotelName);
+        if (h == null)
+        {
+            return NO_DEAL_PACKED;
+        }
+        DealSelection selection = packedSelection.get();
+        selection.reset();
+        h.selectBestDeal(checkInDate, stayLengthDays, selection);
+        if (!selection.hasDeal())
+        {
+            return NO_DEAL_PACKED;
+        }
+        return ((long) selection.getBestIndex() << 32) | (selection.getBestPrice() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Explain a best value query: which deals of the hotel were rejected and why, and what
+     * each of them priced to.
+     * 
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate  Input check-in date.
+     * @param stayLengthDays Length in days of requested stay.
+     * @return explanation of the query. Never returns null.
+     */
+    public QueryExplanation explainBestValue(String hotelName, LocalDate checkInDate, int stayLengthDays)
+    {
+        Hotel h = findHotel(hotelName);
+        if (h == null)
+        {
+            return new QueryExplanation(hotelName, checkInDate, stayLengthDays, false, 0);
+        }
+        return h.explainBestDeal(checkInDate, stayLengthDays);
+    }
+
+    /**
+     * Install a tracer that records explanations of a sample of findBestValue() queries.
+     * @param t Tracer to install, or null to turn tracing off.
+     */
+    public void setQueryTracer(SampledQueryTracer t)
+    {
+        this.tracer = t;
+    }
+
+    /**
+     * @return installed query tracer, or null if tracing is off.
+     */
+    public SampledQueryTracer getQueryTracer()
+    {
+        return this.tracer;
+    }
+
+    /**
+     * @param packed Result of findBestValuePacked().
+     * @return position of the deal within its hotel, or -1 for NO_DEAL_PACKED.
+     */
+    public static int unpackDealIndex(long packed)
+    {
+        return (int) (packed >> 32);
+    }
+
+    /**
+     * @param packed Result of findBestValuePacked(), other than NO_DEAL_PACKED.
+     * @return final price of the stay.
+     */
+    public static int unpackPrice(long packed)
+    {
+        return (int) packed;
     }
 
     /**
      * MAIN
      * 
-     *    Usage: HotelDealFinder [configFile] [hotelName] [checkinDate]  [stayLengthInDays]
+     *    Usage: HotelDealFinder [configFile] [hotelName] [checkinDate]  [stayLengthInDays] [rateFile]
+     *           HotelDealFinder lint [configFile]
+     *           HotelDealFinder index [configFile]
+     *           HotelDealFinder effectiveness [configFile] [maxStayLengthInDays]
      * 
      * @param args runtime arguments.
      */
     public static void main(String[] args)
     {
+        if (args.length == 2 && LINT_COMMAND.equals(args[0]))
+        {
+            lint(ParserUtils.validateStringArg(args[1], "Filename containing hotel deals must be provided!"));
+            return;
+        }
+        if (args.length == 2 && INDEX_COMMAND.equals(args[0]))
+        {
+            writeIndex(ParserUtils.validateStringArg(args[1], "Filename containing hotel deals must be provided!"));
+            return;
+        }
+        if (args.length == 3 && EFFECTIVENESS_COMMAND.equals(args[0]))
+        {
+            String filename = ParserUtils.validateStringArg(args[1], "Filename containing hotel deals must be provided!");
+            int maxStay = ParserUtils.validateIntegerArg(args[2], "Maximum stay length in days must be provided.");
+            EffectivenessReport.build(new HotelDealParser().createFromFile(filename), maxStay).print();
+            return;
+        }
         if (args.length < 4)
         {
-            System.out.println("Usage: HotelDealFinder [configFile] [hotelName] [checkinDate]  [stayLengthInDays]");
+            System.out.println("Usage: HotelDealFinder [configFile] [hotelName] [checkinDate]  [stayLengthInDays] [rateFile]");
+            System.out.println("       HotelDealFinder " + LINT_COMMAND + " [configFile]");
+            System.out.println("       HotelDealFinder " + INDEX_COMMAND + " [configFile]");
+            System.out.println("       HotelDealFinder " + EFFECTIVENESS_COMMAND + " [configFile] [maxStayLengthInDays]");
             return;
         }
         
@@ -127,11 +929,98 @@ public class HotelDealFinder
         int stayLength = ParserUtils.validateIntegerArg(args[3], "Stay length in days must be provided.");
 
         HotelDealParser hdParser = new HotelDealParser();
-        HotelDealFinder hdf = hdParser.createFromFile(filename);
+        // Only the requested hotel is needed: skip the lines of all others unparsed.
+        HotelDealFinder hdf = hdParser.createFromFile(filename, hotelName);
+        if (args.length > 4)
+        {
+            hdParser.loadRateCalendars(args[4], hdf, hotelName);
+        }
         DealResult res = hdf.findBestValue(hotelName, checkInDate, stayLength);
 
         System.out.println(res);
     }
 
+    /**
+     * Lint a deal file, printing every issue found and a summary.
+     * Exits with status 1 if there were issues, so that it can gate uploads.
+     * @param filename Name of configuration file.
+     */
+    private static void lint(String filename)
+    {
+        File f = new File(filename);
+        if (!f.exists())
+        {
+            throw new IllegalArgumentException(String.format("File %s must exist and be readable!", filename));
+        }
+        try
+        {
+            LintReport report = new FeedLinter().lint(f);
+            for (LintIssue issue : report.getIssues())
+            {
+                System.out.println(issue);
+            }
+            System.out.println(report.getSummary());
+            if (!report.isClean())
+            {
+                System.exit(1);
+            }
+        }
+        catch (IOException ex)
+        {
+            System.out.println("Invalid file " + filename + ": " + ex.getMessage());
+            System.exit(2);
+        }
+    }
 
+    /**
+     * Write the sidecar index of a configuration file next to it, so that later single-hotel
+     * loads of the file can seek to the hotel's lines.
+     * @param filename Name of configuration file.
+     */
+    private static void writeIndex(String filename)
+    {
+        File f = new File(filename);
+        if (!f.exists())
+        {
+            throw new IllegalArgumentException(String.format("File %s must exist and be readable!", filename));
+        }
+        try
+        {
+            FeedOffsetIndex index = FeedOffsetIndex.build(f);
+            File idx = FeedOffsetIndex.sidecarFor(f);
+            index.write(idx);
+            System.out.println("Wrote " + idx + ": " + index);
+        }
+        catch (IOException ex)
+        {
+            System.out.println("Invalid file " + filename + ": " + ex.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /** Date index, with the update count read before it was built. */
+    private static final class DateIndexHolder
+    {
+        final long updates;
+        final HotelDateIndex index;
+
+        DateIndexHolder(long u, HotelDateIndex i)
+        {
+            this.updates = u;
+            this.index = i;
+        }
+    }
+
+    /** Result of a cross-hotel top deal query, with its rank within its hotel. */
+    private static final class RankedResult
+    {
+        final DealResult result;
+        final int rank;
+
+        RankedResult(DealResult r, int i)
+        {
+            this.result = r;
+            this.rank = i;
+        }
+    }
 }
@@ -3,20 +3,25 @@ package com.stephengilbane.hotel;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
-import java.util.StringTokenizer;
+import java.util.Arrays;
 
 import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealProvider;
+import com.stephengilbane.hotel.deals.DealRegistry;
+import com.stephengilbane.hotel.deals.DealTerms;
 import com.stephengilbane.hotel.deals.DealType;
-import com.stephengilbane.hotel.deals.FlatRebateDeal;
-import com.stephengilbane.hotel.deals.FlatRebateThreePlusDeal;
-import com.stephengilbane.hotel.deals.PercentRebateDeal;
+import com.stephengilbane.hotel.index.FeedOffsetIndex;
+import com.stephengilbane.hotel.storage.OffHeapDealStore;
 
 /**
  * From the problem statement:
@@ -27,9 +32,27 @@ import com.stephengilbane.hotel.deals.PercentRebateDeal;
  * 
  * You may assume the entire deal file fits in memory.
  *
+ * A deal line may end with optional terms of the deal, each a name=value field:
+ *
+ *      stack=group/maxPerStay/order       lets the deal stack with deals of the same group; the
+ *                                         order is percent_first or flat_first
+ *      qty=quantity                       limits the deal to a number of redemptions
+ *
+ * Nightly rates that vary by date may be loaded from a second CSV file, in the format:
+ *
+ *      hotel_name, nightly_rate, start_date, end_date
+ *
  */
 public class HotelDealParser
 {
+    /** Number of fields of a rate calendar line. */
+    public static final int RATE_TOKEN_COUNT = 4;
+
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+    private static final int NAME_MATCH = 0;
+    private static final int NAME_MISMATCH = 1;
+    private static final int NAME_UNDECIDED = 2;
+
     /**
      * Constructor
      */
@@ -71,6 +94,81 @@ public class HotelDealParser
         }
     }
 
+    /**
+     * Factory method for creating a new HotelDealFinder holding the deals of a single hotel.
+     * Lines of other hotels are skipped after comparing their first field, without being
+     * decoded or parsed, which makes loading a large configuration for one query a plain scan.
+     * If the file has a fresh sidecar {@link FeedOffsetIndex}, only the hotel's lines are read.
+     * @param configFilename Name of configuration file.
+     * @param hotelName Name of the only hotel to load.
+     * @return configured HotelDealFinder object, or null if the file could not be read.
+     * @throws IllegalArgumentException if the file name is missing, or the file does not exist.
+     */
+    public HotelDealFinder createFromFile(String configFilename, String hotelName)
+    {
+        if (isBlank(configFilename) || isBlank(hotelName))
+        {
+            throw new IllegalArgumentException();
+        }
+        File f = new File(configFilename);
+        if (!f.exists())
+        {
+            throw new IllegalArgumentException(String.format("File %s must exist and be readable!", configFilename));
+        }
+
+        // With a fresh sidecar index, only the hotel's own lines are read.
+        FeedOffsetIndex index = FeedOffsetIndex.openFresh(f);
+        try (InputStream in = (index != null) ? new ByteArrayInputStream(index.readLines(f, hotelName))
+                : new FileInputStream(f))
+        {
+            HotelDealFinder hdf = new HotelDealFinder();
+            parseDealsForHotel(in, hotelName, hdf);
+            return hdf;
+        }
+        catch (IOException ex)
+        {
+            System.out.println("Invalid file " + configFilename + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Factory method for creating a new HotelDealFinder that loads each hotel from a configuration
+     * file the first time it is queried, through the file's sidecar {@link FeedOffsetIndex}.
+     * If the sidecar index is missing or stale, an index is built in memory instead.
+     * @param configFilename Name of configuration file.
+     * @return HotelDealFinder with no hotels loaded yet, or null if the file could not be read.
+     * @throws IllegalArgumentException if the file name is missing, or the file does not exist.
+     */
+    public HotelDealFinder createLazyFromFile(String configFilename)
+    {
+        if (isBlank(configFilename))
+        {
+            throw new IllegalArgumentException();
+        }
+        File f = new File(configFilename);
+        if (!f.exists())
+        {
+            throw new IllegalArgumentException(String.format("File %s must exist and be readable!", configFilename));
+        }
+        try
+        {
+            FeedOffsetIndex index = FeedOffsetIndex.openFresh(f);
+            if (index == null)
+            {
+                index = FeedOffsetIndex.build(f);
+            }
+            HotelDealFinder hdf = new HotelDealFinder();
+            hdf.setHotelSource(new IndexedFeedSource(f, index));
+            return hdf;
+        }
+        catch (IOException ex)
+        {
+            System.out.println("Invalid file " + configFilename + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Create a new HotelDealFinder from a configuration file.
      * @param f File to parse.
@@ -105,14 +203,183 @@ public class HotelDealParser
     {
         HotelDealFinder hdf = new HotelDealFinder();
         StringBuilder sb = new StringBuilder();
+        parseDeals(in, hdf, sb);
+
+        // Record original input, for debugging.
+        hdf.setConfigFileText(sb.toString());
+        
+        return hdf;
+    }
+
+    /**
+     * Load nightly rates that vary by date into the hotels of a finder.
+     * 
+     * @param rateFilename Name of rate calendar file.
+     * @param hdf Finder whose hotels to set rates for.
+     * @return number of rate lines applied.
+     * @throws IllegalArgumentException if the file name is missing, or the file
+     *             cannot be read.
+     */
+    public int loadRateCalendars(String rateFilename, HotelDealFinder hdf)
+    {
+        return loadRateCalendars(rateFilename, hdf, null);
+    }
+
+    /**
+     * Load the nightly rates of a single hotel from a rate calendar into a finder, such as one
+     * created for that hotel only. Lines of other hotels are skipped without a warning.
+     * 
+     * @param rateFilename Name of rate calendar file.
+     * @param hdf Finder whose hotels to set rates for.
+     * @param hotelName Name of the only hotel to load rates for, or null to load every hotel.
+     * @return number of rate lines applied.
+     * @throws IllegalArgumentException if the file name is missing, or the file
+     *             cannot be read.
+     */
+    public int loadRateCalendars(String rateFilename, HotelDealFinder hdf, String hotelName)
+    {
+        if (isBlank(rateFilename))
+        {
+            throw new IllegalArgumentException();
+        }
+        File f = new File(rateFilename);
+        if (!f.exists())
+        {
+            throw new IllegalArgumentException(String.format("File %s must exist and be readable!", rateFilename));
+        }
+
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8")))
+        {
+            return parseRates(in, hdf, hotelName);
+        }
+        catch (IOException ex)
+        {
+            System.out.println("Invalid file " + rateFilename + ": " + ex.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Parse every line of a rate calendar into the hotels of a finder. Lines for hotels the
+     * finder does not know are skipped with a warning, as are malformed lines. The hotels are
+     * prepared for queries afterwards.
+     * @param in Data to parse.
+     * @param hdf Finder whose hotels to set rates for.
+     * @return number of rate lines applied.
+     * @throws IOException on any input I/O problem.
+     */
+    public int parseRates(BufferedReader in, HotelDealFinder hdf) throws IOException
+    {
+        return parseRates(in, hdf, null);
+    }
+
+    /**
+     * Parse the lines of a rate calendar for one hotel into a finder. Lines for other hotels are
+     * skipped silently; lines for the hotel are parsed as by {@link #parseRates(BufferedReader, HotelDealFinder)}.
+     * @param in Data to parse.
+     * @param hdf Finder whose hotels to set rates for.
+     * @param hotelName Name of the only hotel to set rates for, or null to set rates for every hotel.
+     * @return number of rate lines applied.
+     * @throws IOException on any input I/O problem.
+     */
+    public int parseRates(BufferedReader in, HotelDealFinder hdf, String hotelName) throws IOException
+    {
+        String only = (hotelName == null) ? null : hotelName.trim();
+        int applied = 0;
+        String line;
+        while ((line = in.readLine()) != null)
+        {
+            if (isBlank(line))
+            {
+                continue;
+            }
+            try
+            {
+                String[] fields = line.split(ParserUtils.FIELD_DELIM);
+                if (only != null && !fields[0].trim().equals(only))
+                {
+                    continue;
+                }
+                if (fields.length != RATE_TOKEN_COUNT)
+                {
+                    throw new IllegalArgumentException("Invalid rate line: " + line);
+                }
+                String name = ParserUtils.validateStringArg(fields[0].trim(), "Hotel name must be provided!");
+                int rate = ParserUtils.validateIntegerArg(fields[1].trim(), "nightly rate");
+                LocalDate from = ParserUtils.validateDateArg(fields[2].trim(), "start date");
+                LocalDate to = ParserUtils.validateDateArg(fields[3].trim(), "end date");
+                if (!hdf.setNightlyRate(name, from, to, rate))
+                {
+                    throw new IllegalArgumentException("Unknown hotel in rate calendar: " + name);
+                }
+                applied++;
+            }
+            catch (Exception ex)
+            {
+                System.out.println("Warning: " + ex.getMessage());
+            }
+        }
+        hdf.prepareHotels();
+        return applied;
+    }
+
+    /**
+     * Factory method for creating a new OffHeapDealStore from a configuration file.
+     * 
+     * @param configFilename Name of configuration file.
+     * @return OffHeapDealStore created from file.
+     * @throws IllegalArgumentException if the file name is missing, or the file
+     *             cannot be read.
+     */
+    public OffHeapDealStore createStoreFromFile(String configFilename)
+    {
+        if (isBlank(configFilename))
+        {
+            throw new IllegalArgumentException();
+        }
+        File f = new File(configFilename);
+        if (!f.exists())
+        {
+            throw new IllegalArgumentException(String.format("File %s must exist and be readable!", configFilename));
+        }
+
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8")))
+        {
+            OffHeapDealStore store = new OffHeapDealStore();
+            parseDeals(in, store, null);
+            return store;
+        }
+        catch (IOException ex)
+        {
+            System.out.println("Invalid file " + configFilename + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Parse every line of a Hotel Deal configuration into a DealSink. Hotel names and promotional
+     * texts are encoded in a dictionary scoped to this load, so repeated strings share one instance.
+     * @param in Data to parse.
+     * @param sink Destination of the parsed deals.
+     * @param text Buffer to record the original input in, or null to not record it.
+     * @return dictionary of the strings of this load.
+     */
+    public StringDictionary parseDeals(BufferedReader in, DealSink sink, StringBuilder text)
+    {
+        StringDictionary dict = new StringDictionary();
+        int[] bounds = new int[2 * ParserUtils.MAX_LINE_TOKEN_COUNT];
+        sink.beginLoad(dict);
         String s = null;
         try
         {
             while ((s = in.readLine()) != null)
             {
-                sb.append(s);
-                sb.append('\n');
-                parseLine(hdf, s);
+                if (text != null)
+                {
+                    text.append(s);
+                    text.append('\n');
+                }
+                parseLine(sink, dict, bounds, s);
             }
         }
         catch (IOException ioEx)
@@ -121,46 +388,190 @@ public class HotelDealParser
             System.out.println("Warning: " + ioEx.getMessage());
             // bail out to ...
         }
+        finally
+        {
+            sink.endLoad();
+        }
+        return dict;
+    }
 
-        // Record original input, for debugging.
-        hdf.setConfigFileText(sb.toString());
-        
-        return hdf;
+    /**
+     * Parse the lines of one hotel of a UTF-8 Hotel Deal configuration into a DealSink.
+     *
+     * The first field of each line is compared byte by byte with the encoded hotel name, with
+     * the same trimming as a full parse. A line that does not match is skipped up to the next
+     * newline without decoding it, so malformed lines of other hotels are not reported. Only
+     * matching lines are decoded and parsed as usual.
+     * @param in Data to parse.
+     * @param hotelName Name of the hotel to load.
+     * @param sink Destination of the parsed deals.
+     * @return dictionary of the strings of this load.
+     * @throws IOException on any input I/O problem.
+     */
+    public StringDictionary parseDealsForHotel(InputStream in, String hotelName, DealSink sink) throws IOException
+    {
+        byte[] target = hotelName.trim().getBytes(StandardCharsets.UTF_8);
+        StringDictionary dict = new StringDictionary();
+        int[] bounds = new int[2 * ParserUtils.MAX_LINE_TOKEN_COUNT];
+        sink.beginLoad(dict);
+        try
+        {
+            byte[] buf = new byte[SCAN_BUFFER_SIZE];
+            int start = 0;
+            int end = 0;
+            // True while discarding the rest of a line that did not fit the buffer.
+            boolean skipping = false;
+            boolean eof = false;
+            while (true)
+            {
+                int nl = indexOfNewline(buf, start, end);
+                if (nl >= 0)
+                {
+                    if (!skipping && matchesHotel(buf, start, nl, target) == NAME_MATCH)
+                    {
+                        parseLine(sink, dict, bounds, new String(buf, start, nl - start, StandardCharsets.UTF_8));
+                    }
+                    skipping = false;
+                    start = nl + 1;
+                    continue;
+                }
+                if (eof)
+                {
+                    if (!skipping && start < end && matchesHotel(buf, start, end, target) == NAME_MATCH)
+                    {
+                        parseLine(sink, dict, bounds, new String(buf, start, end - start, StandardCharsets.UTF_8));
+                    }
+                    break;
+                }
+                // No whole line left: make room to read more.
+                if (skipping || (start == 0 && end == buf.length && matchesHotel(buf, start, end, target) == NAME_MISMATCH))
+                {
+                    skipping = true;
+                    start = 0;
+                    end = 0;
+                }
+                else if (start > 0)
+                {
+                    System.arraycopy(buf, start, buf, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+                else if (end == buf.length)
+                {
+                    buf = Arrays.copyOf(buf, 2 * buf.length);
+                }
+                int n = in.read(buf, end, buf.length - end);
+                if (n < 0)
+                {
+                    eof = true;
+                }
+                else
+                {
+                    end += n;
+                }
+            }
+        }
+        finally
+        {
+            sink.endLoad();
+        }
+        return dict;
+    }
+
+    private static int indexOfNewline(byte[] buf, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            if (buf[i] == '\n')
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compare the first field of a line with a hotel name, the way splitFields() and a String
+     * comparison would: leading delimiters are skipped and the field is trimmed.
+     * @param buf Buffer holding the line.
+     * @param from Start of line, inclusive.
+     * @param to End of the bytes available for the line, exclusive.
+     * @param target Encoded hotel name, already trimmed.
+     * @return NAME_MATCH, NAME_MISMATCH, or NAME_UNDECIDED if the field runs past the bytes available.
+     */
+    private static int matchesHotel(byte[] buf, int from, int to, byte[] target)
+    {
+        int i = from;
+        while (i < to && buf[i] == ParserUtils.FIELD_DELIM.charAt(0))
+        {
+            i++;
+        }
+        while (i < to && (buf[i] & 0xFF) <= ' ' && buf[i] != ParserUtils.FIELD_DELIM.charAt(0))
+        {
+            i++;
+        }
+        for (int k = 0; k < target.length; k++, i++)
+        {
+            if (i == to)
+            {
+                return NAME_UNDECIDED;
+            }
+            if (buf[i] != target[k])
+            {
+                return NAME_MISMATCH;
+            }
+        }
+        // Only trailing blanks may follow the name within the field.
+        for (; i < to && buf[i] != ParserUtils.FIELD_DELIM.charAt(0) && buf[i] != '\n'; i++)
+        {
+            if ((buf[i] & 0xFF) > ' ')
+            {
+                return NAME_MISMATCH;
+            }
+        }
+        return NAME_MATCH;
     }
 
     /**
      * Parse a single line of the hotel deal configuration file. Add any new
-     * Deal that has been defined to our HotelDealFinder.
+     * Deal that has been defined to our DealSink.
      * 
-     * @param hdf HotelDealFinder to configure.
+     * @param sink DealSink to configure.
+     * @param dict Dictionary of the current load.
+     * @param bounds Scratch array for field boundaries.
      * @param s String to parse.
      */
-    private static void parseLine(HotelDealFinder hdf, String s)
+    private static void parseLine(DealSink sink, StringDictionary dict, int[] bounds, String s)
     {
-        StringTokenizer tok = new StringTokenizer(s, ParserUtils.FIELD_DELIM);
-        int tokenCount = tok.countTokens();
-        if (tokenCount != ParserUtils.LINE_TOKEN_COUNT)
+        int tokenCount = splitFields(s, bounds);
+        if (tokenCount < ParserUtils.LINE_TOKEN_COUNT || tokenCount > ParserUtils.MAX_LINE_TOKEN_COUNT)
         {
             System.out.println("Warning: Improperly formatted deal line;  ignoring: " + s);
             return;
         }
         try
         {
-            String name = getNextInput(tok, "hotel name");
-            String rate = getNextInput(tok, "hotel nightly rate");
-            String promoTxt = getNextInput(tok, "promotional text");
-            String value = getNextInput(tok, "deal value");
-            String type = getNextInput(tok, "deal type");
-            String start = getNextInput(tok, "deal start date");
-            String end = getNextInput(tok, "deal and date");
+            String name = dict.decode(encodeInput(dict, s, bounds, 0, "hotel name"));
+            String rate = getInput(s, bounds, 1, "hotel nightly rate");
+            int promoCode = encodeInput(dict, s, bounds, 2, "promotional text");
+            String value = getInput(s, bounds, 3, "deal value");
+            String type = getInput(s, bounds, 4, "deal type");
+            String start = getInput(s, bounds, 5, "deal start date");
+            String end = getInput(s, bounds, 6, "deal and date");
 
             LocalDate startDate = ParserUtils.validateDateArg(start, "start date");
             LocalDate endDate = ParserUtils.validateDateArg(end, "end date");
             int rateVal = ParserUtils.validateIntegerArg(rate, "hotel rate");
             int valueVal = ParserUtils.validateIntegerArg(value, "discout value");
 
-            Deal deal = getDealFromType(type, promoTxt, valueVal, startDate, endDate);
-            hdf.addDeal(name, rateVal, deal);
+            DealTerms terms = DealTerms.NONE.withPromoCode(promoCode);
+            for (int f = ParserUtils.LINE_TOKEN_COUNT; f < tokenCount; f++)
+            {
+                terms = ParserUtils.validateDealOption(getInput(s, bounds, f, "deal term"), terms);
+            }
+
+            Deal deal = getDealFromType(type, dict.decode(promoCode), valueVal, startDate, endDate, terms);
+            sink.addDeal(name, rateVal, deal);
         }
         catch (Exception ex)
         {
@@ -170,54 +581,161 @@ public class HotelDealParser
     }
 
     /**
-     * Get a token of input and check for it being a blank.
-     * @param tok
+     * Find the fields of a line, the way a StringTokenizer on FIELD_DELIM would: empty fields
+     * are skipped. Each field is trimmed.
+     * @param s Line to split.
+     * @param bounds Receives start (inclusive) and end (exclusive) of the first fields.
+     * @return number of fields in the line, which may exceed the number recorded.
+     */
+    private static int splitFields(String s, int[] bounds)
+    {
+        int count = 0;
+        int len = s.length();
+        int i = 0;
+        while (i < len)
+        {
+            while (i < len && ParserUtils.FIELD_DELIM.indexOf(s.charAt(i)) >= 0)
+            {
+                i++;
+            }
+            if (i == len)
+            {
+                break;
+            }
+            int start = i;
+            while (i < len && ParserUtils.FIELD_DELIM.indexOf(s.charAt(i)) < 0)
+            {
+                i++;
+            }
+            int end = i;
+            if (2 * count < bounds.length)
+            {
+                // Same trimming as String.trim().
+                while (start < end && s.charAt(start) <= ' ')
+                {
+                    start++;
+                }
+                while (end > start && s.charAt(end - 1) <= ' ')
+                {
+                    end--;
+                }
+                bounds[2 * count] = start;
+                bounds[2 * count + 1] = end;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Get a field of input and check for it being a blank.
+     * @param s Line of input.
+     * @param bounds Field boundaries found by splitFields().
+     * @param field Number of field.
+     * @param fName  field name for error message
+     * @return field value,  trimmed.
+     * @throws IllegalArgumentException if field is blank.
+     */
+    private static String getInput(String s, int[] bounds, int field, String fName)
+    {
+        checkNotBlank(s, bounds, field, fName);
+        return s.substring(bounds[2 * field], bounds[2 * field + 1]);
+    }
+
+    /**
+     * Encode a field of input in the dictionary and check for it being a blank.
+     * @param dict Dictionary of the current load.
+     * @param s Line of input.
+     * @param bounds Field boundaries found by splitFields().
+     * @param field Number of field.
      * @param fName  field name for error message
-     * @return next field value,  trimmed.
+     * @return code of the trimmed field value.
      * @throws IllegalArgumentException if field is blank.
      */
-    private static String getNextInput(StringTokenizer tok, String fName)
+    private static int encodeInput(StringDictionary dict, String s, int[] bounds, int field, String fName)
+    {
+        checkNotBlank(s, bounds, field, fName);
+        return dict.encode(s, bounds[2 * field], bounds[2 * field + 1]);
+    }
+
+    private static void checkNotBlank(String s, int[] bounds, int field, String fName)
     {
-        String s = tok.nextToken().trim();
-        if (isBlank(s))
+        for (int i = bounds[2 * field]; i < bounds[2 * field + 1]; i++)
         {
-            throw new IllegalArgumentException("Missing field: " + fName);
+            if (!Character.isWhitespace(s.charAt(i)))
+            {
+                return;
+            }
         }
-        return s;
+        throw new IllegalArgumentException("Missing field: " + fName);
     }
 
     /**
-     * Central factory method for Deals.
+     * Central factory method for Deals. Deals are created by the DealProvider registered
+     * for the type token; see {@link DealRegistry}.
      * 
      * @param typeTok Token indicating DealType.
      * @param promoTxt Promotional text displayed to user.
      * @param val Deal value applied with each specific algorithm.
      * @param startDate Start of deal.
      * @param endDate End of deal.
+     * @param terms Optional terms of the deal.
      * @return Newly created Deal object.
      */
     private static Deal getDealFromType(String typeTok, String promoTxt, int val, LocalDate startDate,
-            LocalDate endDate)
+            LocalDate endDate, DealTerms terms)
     {
-        DealType dt = DealType.fromToken(typeTok);
-        if (dt == null)
+        DealProvider provider = DealRegistry.forToken(typeTok);
+        if (provider == null || provider.getDealType() == DealType.NO_DEAL)
         {
-            System.out.println("Warning:  Unsupported deal type " + typeTok);
-            return Deal.NO_DEAL;
-        }
-        switch (dt) {
-        case FLAT_REBATE:
-            return new FlatRebateDeal(promoTxt, val, startDate, endDate);
-        case FLAT_REBATE_3PLUS:
-            return new FlatRebateThreePlusDeal(promoTxt, val, startDate, endDate);
-        case REBATE_PERCENT:
-            return new PercentRebateDeal(promoTxt, val, startDate, endDate);
-        default:
             // We would reach here if we had defined a new DealType but there was no
-            // corresponding Deal class.
+            // corresponding DealProvider registered.
             System.out.println("Warning:  Unsupported deal type " + typeTok);
             return Deal.NO_DEAL;
         }
+        return provider.createDeal(promoTxt, val, startDate, endDate, terms);
     }
 
+
+    /**
+     * Loads single hotels from a configuration file through its offset index.
+     */
+    private final class IndexedFeedSource
+    implements HotelSource
+    {
+        private final File file;
+        private final FeedOffsetIndex index;
+
+        IndexedFeedSource(File f, FeedOffsetIndex idx)
+        {
+            this.file = f;
+            this.index = idx;
+        }
+
+        @Override
+        public boolean loadHotel(String hotelName, DealSink sink)
+        {
+            try
+            {
+                byte[] lines = this.index.readLines(this.file, hotelName);
+                if (lines.length == 0)
+                {
+                    return false;
+                }
+                parseDealsForHotel(new ByteArrayInputStream(lines), hotelName, sink);
+                return true;
+            }
+            catch (IOException ex)
+            {
+                System.out.println("Warning: cannot load hotel " + hotelName + ": " + ex.getMessage());
+                return false;
+            }
+        }
+
+        @Override
+        public boolean mayHaveHotel(String hotelName)
+        {
+            return this.index.mayContain(hotelName);
+        }
+    }
 }
@@ -0,0 +1,27 @@
+package com.stephengilbane.hotel;
+
+/**
+ * Source of the deals of hotels that a {@link HotelDealFinder} loads on demand, the first time
+ * a hotel is queried.
+ */
+public interface HotelSource
+{
+    /**
+     * Add every deal of a hotel to a sink.
+     * @param hotelName Name of hotel.
+     * @param sink Destination of the deals.
+     * @return false if the source does not know the hotel.
+     */
+    boolean loadHotel(String hotelName, DealSink sink);
+
+    /**
+     * Cheap check, made before a hotel is loaded, so that queries for names the source cannot
+     * know do not take a lock of their own.
+     * @param hotelName Name of hotel.
+     * @return false if the source certainly does not know the hotel.
+     */
+    default boolean mayHaveHotel(String hotelName)
+    {
+        return true;
+    }
+}
@@ -5,6 +5,10 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 
+import com.stephengilbane.hotel.deals.DealTerms;
+import com.stephengilbane.hotel.deals.StackingOrder;
+import com.stephengilbane.hotel.deals.StackingRule;
+
 /**
  * Utility class for parsing and validating input strings.
  * @author stephengilbane
@@ -18,6 +22,16 @@ public class ParserUtils
     public static final String FIELD_DELIM = ",";
     /** Number of fields in a configuration line. */
     public static final int LINE_TOKEN_COUNT = 7;
+    /** Number of fields in a configuration line with every optional deal term. */
+    public static final int MAX_LINE_TOKEN_COUNT = LINE_TOKEN_COUNT + 2;
+    /** Separates the name of an optional deal term from its value, as in "stack=spring/3/percent_first". */
+    public static final String OPTION_DELIM = "=";
+    /** Separates the parts of the value of an optional deal term. */
+    public static final String OPTION_PART_DELIM = "/";
+    /** Name of the deal term giving its stacking rule: group/maxPerStay/order. */
+    public static final String STACK_OPTION = "stack";
+    /** Name of the deal term limiting it to a number of redemptions. */
+    public static final String QUANTITY_OPTION = "qty";
     
     public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
 
@@ -105,6 +119,41 @@ public class ParserUtils
         return s;
     }
 
+    /**
+     * Validate an optional deal term of a configuration line, such as "stack=spring/3/percent_first"
+     * or "qty=100".
+     * 
+     * @param s Input string.
+     * @param terms Terms of the deal so far.
+     * @return terms with the input term added.
+     * @throws IllegalArgumentException if the term is unknown, malformed, or already given.
+     */
+    public static DealTerms validateDealOption(String s, DealTerms terms)
+    {
+        int eq = (s == null) ? -1 : s.indexOf(OPTION_DELIM);
+        if (eq <= 0)
+        {
+            throw new IllegalArgumentException("Invalid deal term " + s);
+        }
+        String name = s.substring(0, eq).trim();
+        String[] parts = s.substring(eq + 1).split(OPTION_PART_DELIM, -1);
+        if (STACK_OPTION.equals(name) && parts.length == 3)
+        {
+            int max = validateIntegerArg(parts[1].trim(), "Invalid maximum deals per stay in " + s);
+            StackingOrder order = StackingOrder.fromToken(parts[2].trim());
+            if (order == null)
+            {
+                throw new IllegalArgumentException("Invalid stacking order in " + s);
+            }
+            return terms.withStackingRule(new StackingRule(parts[0].trim(), max, order));
+        }
+        if (QUANTITY_OPTION.equals(name) && parts.length == 1)
+        {
+            return terms.withQuantityCap(validateIntegerArg(parts[0].trim(), "Invalid deal quantity in " + s));
+        }
+        throw new IllegalArgumentException("Invalid deal term " + s);
+    }
+
     // Class not instantiatable.
     private ParserUtils() {}
 }
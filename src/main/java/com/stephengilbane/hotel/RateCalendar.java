@@ -0,0 +1,156 @@
+package com.stephengilbane.hotel;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Nightly rates of one hotel that vary by date, such as weekend or seasonal rates.
+ *
+ * Rates are kept in an int array indexed by night, with a prefix sum array built from it on
+ * first use after a change, so that the base price of any stay is a difference of two prefix
+ * sums. Nights outside the calendar, or without a rate of their own, are charged the default rate.
+ */
+public final class RateCalendar
+{
+    private static final int NO_RATE = -1;
+
+    private final int defaultRate;
+    private long firstDay;
+    // Rate of each night, or NO_RATE for nights charged the default rate.
+    private int[] rates = new int[0];
+    // prefix[k] is the sum of the first k rates. Rebuilt on first use after a change.
+    private long[] prefix;
+
+    /**
+     * Constructor.
+     * @param rate Rate of nights without a rate of their own, usually the hotel's nightly rate.
+     */
+    public RateCalendar(int rate)
+    {
+        this.defaultRate = rate;
+    }
+
+    /**
+     * @return rate of nights without a rate of their own.
+     */
+    public int getDefaultRate()
+    {
+        return this.defaultRate;
+    }
+
+    /**
+     * Set the rate of a range of nights.
+     * @param from First night, inclusive.
+     * @param to Last night, inclusive. Must not be before from.
+     * @param rate Rate of each night in the range. Must not be negative.
+     */
+    public void setRate(LocalDate from, LocalDate to, int rate)
+    {
+        if (from == null || to == null || to.isBefore(from))
+        {
+            throw new IllegalArgumentException("Invalid rate date range " + from + " to " + to);
+        }
+        if (rate < 0)
+        {
+            throw new IllegalArgumentException("Invalid nightly rate " + rate);
+        }
+        long start = from.toEpochDay();
+        long end = to.toEpochDay() + 1;
+        cover(start, end);
+        Arrays.fill(this.rates, (int) (start - this.firstDay), (int) (end - this.firstDay), rate);
+        this.prefix = null;
+    }
+
+    /**
+     * @param night Date of a night.
+     * @return rate of that night.
+     */
+    public int getRate(LocalDate night)
+    {
+        long i = night.toEpochDay() - this.firstDay;
+        return (i >= 0 && i < this.rates.length) ? rateAt((int) i) : this.defaultRate;
+    }
+
+    /**
+     * Compute the base price of a stay, before any deal, in constant time.
+     * @param checkInDate Date of the first night.
+     * @param stayLengthDays Number of nights.
+     * @return sum of the rates of the nights of the stay.
+     */
+    public long getStayPrice(LocalDate checkInDate, int stayLengthDays)
+    {
+        long[] sums = prefixSums();
+        long start = checkInDate.toEpochDay() - this.firstDay;
+        long end = start + stayLengthDays;
+        long lo = Math.max(0, Math.min(start, this.rates.length));
+        long hi = Math.max(lo, Math.min(end, this.rates.length));
+        long covered = hi - lo;
+        return sums[(int) hi] - sums[(int) lo] + (long) this.defaultRate * (stayLengthDays - covered);
+    }
+
+    private long[] prefixSums()
+    {
+        long[] sums = this.prefix;
+        if (sums == null)
+        {
+            sums = new long[this.rates.length + 1];
+            for (int i = 0; i < this.rates.length; i++)
+            {
+                sums[i + 1] = sums[i] + rateAt(i);
+            }
+            this.prefix = sums;
+        }
+        return sums;
+    }
+
+    private int rateAt(int i)
+    {
+        int rate = this.rates[i];
+        return (rate == NO_RATE) ? this.defaultRate : rate;
+    }
+
+    /**
+     * Copy this calendar, keeping the rates of the nights that have one.
+     * @param rate Default rate of the copy.
+     * @return new calendar.
+     */
+    RateCalendar copy(int rate)
+    {
+        RateCalendar c = new RateCalendar(rate);
+        c.firstDay = this.firstDay;
+        c.rates = this.rates.clone();
+        return c;
+    }
+
+    /**
+     * Build the prefix sums now, so that the calendar is not written to by later queries.
+     */
+    void prepare()
+    {
+        prefixSums();
+    }
+
+    // Grow the rate array to cover epoch days [start, end), filling new nights with the default rate.
+    private void cover(long start, long end)
+    {
+        if (this.rates.length == 0)
+        {
+            this.firstDay = start;
+        }
+        long first = Math.min(this.firstDay, start);
+        long last = Math.max(this.firstDay + this.rates.length, end);
+        if (first == this.firstDay && last == this.firstDay + this.rates.length)
+        {
+            return;
+        }
+        if (last - first > Integer.MAX_VALUE - 1)
+        {
+            throw new IllegalArgumentException("Rate calendar range is too large");
+        }
+        int[] grown = new int[(int) (last - first)];
+        Arrays.fill(grown, NO_RATE);
+        System.arraycopy(this.rates, 0, grown, (int) (this.firstDay - first), this.rates.length);
+        this.rates = grown;
+        this.firstDay = first;
+    }
+}
@@ -0,0 +1,98 @@
+package com.stephengilbane.hotel;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a split-stay search: a stay booked as consecutive segments, each a separate stay
+ * with its own check-in date and best deal.
+ */
+public class SplitStay
+{
+    private final Hotel hotel;
+    private final LocalDate checkInDate;
+    private final int stayLength;
+    private final List<DealResult> segments;
+    private final int customerPrice;
+
+    /**
+     * Constructor.
+     * @param hotel Hotel of results, or null if the hotel is unknown.
+     * @param dt Date of check in of the whole stay.
+     * @param stayLength Length of the whole stay in days.
+     * @param segments Segments of the stay, in date order.
+     * @param price Total price of the stay for the customer.
+     */
+    public SplitStay(Hotel hotel, LocalDate dt, int stayLength, List<DealResult> segments, int price)
+    {
+        this.hotel = hotel;
+        this.checkInDate = dt;
+        this.stayLength = stayLength;
+        this.segments = Collections.unmodifiableList(new ArrayList<DealResult>(segments));
+        this.customerPrice = price;
+    }
+
+    /**
+     * @return the hotel of this result, or null if the hotel is unknown.
+     */
+    public Hotel getHotel()
+    {
+        return hotel;
+    }
+
+    /**
+     * @return the check-in date of the whole stay.
+     */
+    public LocalDate getCheckinDate()
+    {
+        return checkInDate;
+    }
+
+    /**
+     * @return the length in days of the whole stay.
+     */
+    public int getStayLength()
+    {
+        return stayLength;
+    }
+
+    /**
+     * @return segments of the stay in date order, each with its deal and price.
+     */
+    public List<DealResult> getSegments()
+    {
+        return segments;
+    }
+
+    /**
+     * @return total price of the stay for the customer.
+     */
+    public int getCustomerPrice()
+    {
+        return customerPrice;
+    }
+
+    /**
+     * Override toString: each segment with its deal.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (DealResult r : this.segments)
+        {
+            if (sb.length() > 0)
+            {
+                sb.append("; ");
+            }
+            sb.append(r.getStayLength());
+            sb.append(" nights from ");
+            sb.append(r.getCheckinDate());
+            sb.append(": ");
+            sb.append(r.getDeal().getPromotionalText());
+        }
+        return sb.toString();
+    }
+}
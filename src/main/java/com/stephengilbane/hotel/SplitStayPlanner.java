@@ -0,0 +1,230 @@
+package com.stephengilbane.hotel;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.stephengilbane.hotel.deals.Deal;
+
+/**
+ * Finds the cheapest way to book a stay at one hotel as up to k consecutive segments, each
+ * priced as a separate stay by the same rules as {@link Hotel#findBestDeal(LocalDate, int)}:
+ * the cheapest deal applicable to its check-in date and length, or the full rate if none applies.
+ *
+ * Dynamic programming over nights: cost[s][j] is the cheapest way to book the first j nights as
+ * s segments. With B(i) the base price of the first i nights, a linear deal prices a segment
+ * of nights [i, j) at
+ *      floor(mult * (B(j) - B(i)) / 100) + adj
+ * which, writing mult * B(i) = 100 * q(i) + r(i), is
+ *      q(j) - q(i) - (r(i) > r(j) ? 1 : 0) + adj
+ * so each deal keeps a running minimum of cost[s - 1][i] - q(i) over the start nights it applies
+ * to, along with the largest r(i) reaching that minimum. Each night then costs constant time
+ * per deal, and a whole search takes time proportional to k times nights times deals.
+ */
+final class SplitStayPlanner
+{
+    private static final long NONE = Long.MAX_VALUE / 4;
+
+    private SplitStayPlanner()
+    {
+    }
+
+    /**
+     * Find the cheapest segmentation of a stay.
+     * @param hotel Hotel of the stay.
+     * @param checkInDate Check-in date of the whole stay.
+     * @param stayLengthDays Length of the whole stay in days. Must be positive.
+     * @param maxSegments Maximum number of segments. Must be positive.
+     * @return cheapest segmentation; the fewest segments among equally cheap ones.
+     */
+    static SplitStay plan(Hotel hotel, LocalDate checkInDate, int stayLengthDays, int maxSegments)
+    {
+        if (checkInDate == null)
+        {
+            throw new IllegalArgumentException("Invalid null check -in date!");
+        }
+        if (stayLengthDays <= 0 || maxSegments <= 0)
+        {
+            throw new IllegalArgumentException("Stay length and maximum segments must be positive!");
+        }
+        int n = stayLengthDays;
+        int k = Math.min(maxSegments, n);
+        LocalDate[] dates = new LocalDate[n];
+        for (int i = 0; i < n; i++)
+        {
+            dates[i] = checkInDate.plusDays(i);
+        }
+        long[] base = new long[n + 1];
+        for (int i = 1; i <= n; i++)
+        {
+            base[i] = hotel.getBasePrice(checkInDate, i);
+        }
+
+        // Deals applicable to at least one start night, and the nights they apply to.
+        List<Deal> deals = new ArrayList<Deal>();
+        List<boolean[]> applies = new ArrayList<boolean[]>();
+        // Shortest segment starting at each night that some deal applies to.
+        int[] shortestDeal = new int[n];
+        Arrays.fill(shortestDeal, Integer.MAX_VALUE);
+        int longestMinStay = 0;
+        for (Deal d : hotel.getAllDeals())
+        {
+            boolean[] nights = new boolean[n];
+            boolean any = false;
+            for (int i = 0; i < n; i++)
+            {
+                if (d.isCheckInDateApplicable(dates[i]) && d.getMinStayDays() <= n - i)
+                {
+                    nights[i] = true;
+                    any = true;
+                    int shortest = Math.max(1, d.getMinStayDays());
+                    shortestDeal[i] = Math.min(shortestDeal[i], shortest);
+                    longestMinStay = Math.max(longestMinStay, shortest);
+                }
+            }
+            if (any)
+            {
+                deals.add(d);
+                applies.add(nights);
+            }
+        }
+        int dealCount = deals.size();
+        long[] mults = new long[dealCount];
+        long[] adjs = new long[dealCount];
+        int[] minStays = new int[dealCount];
+        for (int d = 0; d < dealCount; d++)
+        {
+            Deal deal = deals.get(d);
+            minStays[d] = Math.max(1, deal.getMinStayDays());
+            if (deal.isLinear())
+            {
+                mults[d] = deal.getRateMultiplierPercent();
+                adjs[d] = deal.getFlatAdjustment();
+            }
+        }
+
+        long[][] cost = new long[k + 1][n + 1];
+        int[][] from = new int[k + 1][n + 1];
+        // Deal of the last segment, as an index into deals, or -1 for the full rate.
+        int[][] via = new int[k + 1][n + 1];
+        for (long[] row : cost)
+        {
+            Arrays.fill(row, NONE);
+        }
+        cost[0][0] = 0;
+
+        long[] bestValue = new long[dealCount];
+        long[] bestRemainder = new long[dealCount];
+        int[] bestStart = new int[dealCount];
+        for (int s = 1; s <= k; s++)
+        {
+            long[] prev = cost[s - 1];
+            Arrays.fill(bestValue, NONE);
+            // Full rate is separable too: prev[i] - B(i), over nights no deal ever applies to.
+            long fullValue = NONE;
+            int fullStart = -1;
+            for (int j = 1; j <= n; j++)
+            {
+                long bestCost = NONE;
+                int bestFrom = -1;
+                int bestVia = -1;
+
+                for (int d = 0; d < dealCount; d++)
+                {
+                    int i = j - minStays[d];
+                    if (!deals.get(d).isLinear())
+                    {
+                        // No running minimum for other deal types: price every start night.
+                        for (int start = 0; start <= i; start++)
+                        {
+                            if (prev[start] < NONE && applies.get(d)[start])
+                            {
+                                long c = prev[start] + deals.get(d).calculateFinalValueForBase(base[j] - base[start],
+                                        j - start);
+                                if (c < bestCost)
+                                {
+                                    bestCost = c;
+                                    bestFrom = start;
+                                    bestVia = d;
+                                }
+                            }
+                        }
+                        continue;
+                    }
+                    if (i >= 0 && prev[i] < NONE && applies.get(d)[i])
+                    {
+                        long value = prev[i] - Math.floorDiv(mults[d] * base[i], 100);
+                        long remainder = Math.floorMod(mults[d] * base[i], 100);
+                        if (value < bestValue[d] || (value == bestValue[d] && remainder > bestRemainder[d]))
+                        {
+                            bestValue[d] = value;
+                            bestRemainder[d] = remainder;
+                            bestStart[d] = i;
+                        }
+                    }
+                    if (bestValue[d] < NONE)
+                    {
+                        long c = bestValue[d] + Math.floorDiv(mults[d] * base[j], 100) + adjs[d]
+                                - ((bestRemainder[d] > Math.floorMod(mults[d] * base[j], 100)) ? 1 : 0);
+                        if (c < bestCost)
+                        {
+                            bestCost = c;
+                            bestFrom = bestStart[d];
+                            bestVia = d;
+                        }
+                    }
+                }
+
+                int last = j - 1;
+                if (prev[last] < NONE && shortestDeal[last] == Integer.MAX_VALUE && prev[last] - base[last] < fullValue)
+                {
+                    fullValue = prev[last] - base[last];
+                    fullStart = last;
+                }
+                if (fullValue < NONE && fullValue + base[j] < bestCost)
+                {
+                    bestCost = fullValue + base[j];
+                    bestFrom = fullStart;
+                    bestVia = -1;
+                }
+                // Nights some deal applies to take the full rate only for segments too short for any deal.
+                for (int i = Math.max(0, j - longestMinStay + 1); i < j; i++)
+                {
+                    if (prev[i] < NONE && j - i < shortestDeal[i] && shortestDeal[i] != Integer.MAX_VALUE
+                            && prev[i] + base[j] - base[i] < bestCost)
+                    {
+                        bestCost = prev[i] + base[j] - base[i];
+                        bestFrom = i;
+                        bestVia = -1;
+                    }
+                }
+
+                cost[s][j] = bestCost;
+                from[s][j] = bestFrom;
+                via[s][j] = bestVia;
+            }
+        }
+
+        int segments = 1;
+        for (int s = 2; s <= k; s++)
+        {
+            if (cost[s][n] < cost[segments][n])
+            {
+                segments = s;
+            }
+        }
+        List<DealResult> result = new ArrayList<DealResult>(segments);
+        int j = n;
+        for (int s = segments; s > 0; s--)
+        {
+            int i = from[s][j];
+            Deal deal = (via[s][j] < 0) ? Deal.NO_DEAL : deals.get(via[s][j]);
+            result.add(new DealResult(hotel, deal, dates[i], j - i, (int) (cost[s][j] - cost[s - 1][i])));
+            j = i;
+        }
+        Collections.reverse(result);
+        return new SplitStay(hotel, checkInDate, n, result, (int) cost[segments][n]);
+    }
+}
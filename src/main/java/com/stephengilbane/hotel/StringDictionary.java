@@ -0,0 +1,189 @@
+package com.stephengilbane.hotel;
+
+import java.util.Arrays;
+
+/**
+ * Dictionary of the strings seen while loading a hotel deal configuration.
+ *
+ * Each distinct string gets a small int code, and every occurrence shares a single String
+ * instance. Strings are looked up directly from a range of the input line, so a line for an
+ * already known hotel or promotional text does not create a new String at all.
+ *
+ * A dictionary is scoped to one load and used by a single thread.
+ */
+public final class StringDictionary
+{
+    /** Code of a string that has not been encoded. */
+    public static final int NO_CODE = -1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private String[] strings = new String[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    // Hash slots hold code + 1; 0 marks an empty slot.
+    private int[] slots = new int[2 * INITIAL_CAPACITY];
+    private int size;
+    private long lookups;
+    private long bytesSaved;
+
+    /**
+     * Encode a string.
+     * @param s String to encode. Must not be null.
+     * @return code of the string.
+     */
+    public int encode(String s)
+    {
+        return encode(s, 0, s.length());
+    }
+
+    /**
+     * Encode the characters of a range of a sequence, without allocating if they are already known.
+     * @param src Sequence holding the characters.
+     * @param start Start of range, inclusive.
+     * @param end End of range, exclusive.
+     * @return code of the string.
+     */
+    public int encode(CharSequence src, int start, int end)
+    {
+        this.lookups++;
+        int hash = 0;
+        for (int i = start; i < end; i++)
+        {
+            hash = 31 * hash + src.charAt(i);
+        }
+        int mask = this.slots.length - 1;
+        int slot = mix(hash) & mask;
+        for (;; slot = (slot + 1) & mask)
+        {
+            int entry = this.slots[slot];
+            if (entry == 0)
+            {
+                break;
+            }
+            int code = entry - 1;
+            if (this.hashes[code] == hash && regionEquals(this.strings[code], src, start, end))
+            {
+                this.bytesSaved += estimateStringBytes(end - start);
+                return code;
+            }
+        }
+
+        int code = this.size;
+        if (code == this.strings.length)
+        {
+            this.strings = Arrays.copyOf(this.strings, 2 * code);
+            this.hashes = Arrays.copyOf(this.hashes, 2 * code);
+        }
+        this.strings[code] = src.subSequence(start, end).toString();
+        this.hashes[code] = hash;
+        this.size++;
+        if (2 * this.size > this.slots.length)
+        {
+            rehash();
+        }
+        else
+        {
+            this.slots[slot] = code + 1;
+        }
+        return code;
+    }
+
+    /**
+     * Decode a string.
+     * @param code Code returned by encode().
+     * @return shared instance of the encoded string.
+     * @throws IllegalArgumentException if the code is unknown.
+     */
+    public String decode(int code)
+    {
+        if (code < 0 || code >= this.size)
+        {
+            throw new IllegalArgumentException("Unknown string code " + code);
+        }
+        return this.strings[code];
+    }
+
+    /**
+     * @return number of distinct strings in this dictionary.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return number of strings encoded, including repeats.
+     */
+    public long getLookupCount()
+    {
+        return this.lookups;
+    }
+
+    /**
+     * @return estimated number of heap bytes saved by sharing repeated strings.
+     */
+    public long getBytesSaved()
+    {
+        return this.bytesSaved;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d distinct strings of %d encoded, about %d bytes saved", this.size, this.lookups,
+                this.bytesSaved);
+    }
+
+    /**
+     * Estimate the heap size of a String of a given length: object header and fields of the
+     * String, plus the header and contents of its char array.
+     * @param length Length of string.
+     * @return estimated size in bytes.
+     */
+    static long estimateStringBytes(int length)
+    {
+        return 24 + align(16 + 2L * length);
+    }
+
+    private static long align(long bytes)
+    {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static boolean regionEquals(String s, CharSequence src, int start, int end)
+    {
+        if (s.length() != end - start)
+        {
+            return false;
+        }
+        for (int i = start; i < end; i++)
+        {
+            if (s.charAt(i - start) != src.charAt(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash()
+    {
+        this.slots = new int[2 * this.slots.length];
+        int mask = this.slots.length - 1;
+        for (int code = 0; code < this.size; code++)
+        {
+            int slot = mix(this.hashes[code]) & mask;
+            while (this.slots[slot] != 0)
+            {
+                slot = (slot + 1) & mask;
+            }
+            this.slots[slot] = code + 1;
+        }
+    }
+
+    private static int mix(int hash)
+    {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,410 @@
+package com.stephengilbane.hotel.analytics;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.stephengilbane.hotel.Hotel;
+import com.stephengilbane.hotel.HotelDealFinder;
+import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealType;
+
+/**
+ * Aggregations over all deals of a {@link HotelDealFinder}, for reporting.
+ *
+ * A snapshot copies the deals once into primitive columns, one array per field, without going
+ * through the copying getters of the finder and its hotels. Every aggregation is then a
+ * fork-join reduction over ranges of rows: each leaf task folds its rows into primitive
+ * accumulators, and partial results are merged pairwise. Deal.NO_DEAL entries are left out.
+ *
+ * A snapshot is immutable and does not see deals added after it was taken.
+ */
+public final class DealAnalytics
+{
+    // Rows per leaf task.
+    private static final int LEAF_ROWS = 8192;
+    private static final DealType[] TYPES = DealType.values();
+
+    private final ForkJoinPool pool;
+    private final String[] hotelNames;
+    private final int[] hotelRates;
+    private final int rows;
+    private final int[] hotel;
+    private final byte[] type;
+    private final int[] value;
+    private final long[] startDay;
+    private final long[] endDay;
+    private final int[] startMonth;
+    private final int[] endMonth;
+    private final long[] discount;
+
+    private DealAnalytics(ForkJoinPool p, List<Hotel> hotels)
+    {
+        this.pool = p;
+        int total = 0;
+        for (Hotel h : hotels)
+        {
+            total += h.getDealCount();
+        }
+        this.hotelNames = new String[hotels.size()];
+        this.hotelRates = new int[hotels.size()];
+        this.hotel = new int[total];
+        this.type = new byte[total];
+        this.value = new int[total];
+        this.startDay = new long[total];
+        this.endDay = new long[total];
+        this.startMonth = new int[total];
+        this.endMonth = new int[total];
+        this.discount = new long[total];
+        int row = 0;
+        for (int id = 0; id < hotels.size(); id++)
+        {
+            Hotel h = hotels.get(id);
+            this.hotelNames[id] = h.getName();
+            this.hotelRates[id] = h.getNightlyRate();
+            for (int i = 0; i < h.getDealCount(); i++)
+            {
+                Deal d = h.getDeal(i);
+                if (d == Deal.NO_DEAL || d.getDealType() == DealType.NO_DEAL)
+                {
+                    continue;
+                }
+                int nights = Math.max(1, d.getMinStayDays());
+                long base = (long) h.getNightlyRate() * nights;
+                this.hotel[row] = id;
+                this.type[row] = (byte) d.getDealType().ordinal();
+                this.value[row] = d.getValue();
+                this.startDay[row] = d.getStartDate().toEpochDay();
+                this.endDay[row] = d.getEndDate().toEpochDay();
+                this.startMonth[row] = epochMonth(d.getStartDate());
+                this.endMonth[row] = epochMonth(d.getEndDate());
+                this.discount[row] = base - d.calculateFinalValueForBase(base, nights);
+                row++;
+            }
+        }
+        this.rows = row;
+    }
+
+    /**
+     * Take a snapshot of the deals of a finder, aggregated in the common fork-join pool.
+     * @param finder Finder to analyze.
+     * @return new snapshot.
+     */
+    public static DealAnalytics snapshot(HotelDealFinder finder)
+    {
+        return snapshot(finder, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Take a snapshot of the deals of a finder.
+     * @param finder Finder to analyze.
+     * @param pool Pool to run aggregations in.
+     * @return new snapshot.
+     */
+    public static DealAnalytics snapshot(HotelDealFinder finder, ForkJoinPool pool)
+    {
+        List<Hotel> hotels = new ArrayList<Hotel>();
+        finder.forEachHotel(hotels::add);
+        return new DealAnalytics(pool, hotels);
+    }
+
+    /**
+     * @return number of deals in this snapshot.
+     */
+    public int getDealCount()
+    {
+        return this.rows;
+    }
+
+    /**
+     * @return number of hotels in this snapshot.
+     */
+    public int getHotelCount()
+    {
+        return this.hotelNames.length;
+    }
+
+    /**
+     * Group the deals and aggregate a measure over each group.
+     * @param measure Measure to aggregate.
+     * @param groupBy Dimensions to group by. Empty for a single group of all deals.
+     * @return statistics by group, in no particular order. Empty if there are no deals.
+     */
+    public Map<GroupKey, DealStats> aggregate(Measure measure, Set<Dimension> groupBy)
+    {
+        boolean byHotel = groupBy.contains(Dimension.HOTEL);
+        boolean byType = groupBy.contains(Dimension.TYPE);
+        boolean byMonth = groupBy.contains(Dimension.MONTH);
+        StatsTable table = this.pool.invoke(new RowTask<StatsTable>(0, this.rows, new Reduction<StatsTable>()
+        {
+            @Override
+            public StatsTable leaf(int lo, int hi)
+            {
+                StatsTable t = new StatsTable();
+                for (int r = lo; r < hi; r++)
+                {
+                    long key = ((byHotel ? DealAnalytics.this.hotel[r] + 1L : 0L) << 28)
+                            | ((byType ? DealAnalytics.this.type[r] + 1L : 0L) << 24);
+                    long m = measure(measure, r);
+                    if (!byMonth)
+                    {
+                        t.add(key, m);
+                        continue;
+                    }
+                    int first = DealAnalytics.this.startMonth[r];
+                    int last = DealAnalytics.this.endMonth[r];
+                    if (DealAnalytics.this.startDay[r] > DealAnalytics.this.endDay[r])
+                    {
+                        // Inverted dates are only valid on the two dates themselves.
+                        t.add(key | (first + 1L), m);
+                        if (last != first)
+                        {
+                            t.add(key | (last + 1L), m);
+                        }
+                        continue;
+                    }
+                    for (int month = first; month <= last; month++)
+                    {
+                        t.add(key | (month + 1L), m);
+                    }
+                }
+                return t;
+            }
+
+            @Override
+            public StatsTable merge(StatsTable a, StatsTable b)
+            {
+                return a.merge(b);
+            }
+        }));
+
+        Map<GroupKey, DealStats> result = new LinkedHashMap<GroupKey, DealStats>();
+        for (int slot = 0; slot < table.capacity(); slot++)
+        {
+            if (table.isUsed(slot))
+            {
+                result.put(toGroupKey(table.keyAt(slot)), table.statsAt(slot));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return average, minimum and maximum discount by hotel, deal type and month.
+     */
+    public Map<GroupKey, DealStats> discountByHotelTypeAndMonth()
+    {
+        return aggregate(Measure.DISCOUNT, EnumSet.allOf(Dimension.class));
+    }
+
+    /**
+     * Count the deals valid for check-in on each day of a range.
+     * @param from First day, inclusive.
+     * @param to Last day, inclusive. Must not be before from.
+     * @return number of active deals, indexed by day from the first.
+     */
+    public int[] countActiveDealsPerDay(LocalDate from, LocalDate to)
+    {
+        long first = from.toEpochDay();
+        long last = to.toEpochDay();
+        if (last < first)
+        {
+            throw new IllegalArgumentException("Invalid date range " + from + " to " + to);
+        }
+        int days = (int) (last - first + 1);
+        int[] diff = this.pool.invoke(new RowTask<int[]>(0, this.rows, new Reduction<int[]>()
+        {
+            @Override
+            public int[] leaf(int lo, int hi)
+            {
+                // Difference array: +1 where a deal starts being active, -1 after it stops.
+                int[] d = new int[days + 1];
+                for (int r = lo; r < hi; r++)
+                {
+                    long s = DealAnalytics.this.startDay[r];
+                    long e = DealAnalytics.this.endDay[r];
+                    if (s <= e)
+                    {
+                        addRange(d, s, e, first, last);
+                    }
+                    else
+                    {
+                        // Inverted dates are only valid on the two dates themselves.
+                        addRange(d, s, s, first, last);
+                        addRange(d, e, e, first, last);
+                    }
+                }
+                return d;
+            }
+
+            @Override
+            public int[] merge(int[] a, int[] b)
+            {
+                for (int i = 0; i < a.length; i++)
+                {
+                    a[i] += b[i];
+                }
+                return a;
+            }
+        }));
+        int[] counts = new int[days];
+        int running = 0;
+        for (int i = 0; i < days; i++)
+        {
+            running += diff[i];
+            counts[i] = running;
+        }
+        return counts;
+    }
+
+    /**
+     * Find the hotels without any deal valid for check-in on a day of a range.
+     * @param from First day, inclusive.
+     * @param to Last day, inclusive.
+     * @return names of uncovered hotels, sorted.
+     */
+    public List<String> findHotelsWithoutCoverage(LocalDate from, LocalDate to)
+    {
+        long first = from.toEpochDay();
+        long last = to.toEpochDay();
+        BitSet covered = this.pool.invoke(new RowTask<BitSet>(0, this.rows, new Reduction<BitSet>()
+        {
+            @Override
+            public BitSet leaf(int lo, int hi)
+            {
+                BitSet b = new BitSet(DealAnalytics.this.hotelNames.length);
+                for (int r = lo; r < hi; r++)
+                {
+                    long s = DealAnalytics.this.startDay[r];
+                    long e = DealAnalytics.this.endDay[r];
+                    boolean hit = (s <= e) ? s <= last && e >= first
+                            : (s >= first && s <= last) || (e >= first && e <= last);
+                    if (hit)
+                    {
+                        b.set(DealAnalytics.this.hotel[r]);
+                    }
+                }
+                return b;
+            }
+
+            @Override
+            public BitSet merge(BitSet a, BitSet b)
+            {
+                a.or(b);
+                return a;
+            }
+        }));
+        List<String> names = new ArrayList<String>();
+        for (int id = covered.nextClearBit(0); id < this.hotelNames.length; id = covered.nextClearBit(id + 1))
+        {
+            names.add(this.hotelNames[id]);
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d deals of %d hotels", this.rows, this.hotelNames.length);
+    }
+
+    private long measure(Measure m, int r)
+    {
+        switch (m)
+        {
+        case DISCOUNT:
+            return this.discount[r];
+        case VALUE:
+            return this.value[r];
+        case NIGHTLY_RATE:
+            return this.hotelRates[this.hotel[r]];
+        case DURATION_DAYS:
+            long s = this.startDay[r];
+            long e = this.endDay[r];
+            return (s <= e) ? e - s + 1 : 2;
+        default:
+            throw new IllegalArgumentException("Unknown measure " + m);
+        }
+    }
+
+    private GroupKey toGroupKey(long key)
+    {
+        int hotelId = (int) (key >>> 28) - 1;
+        int typeId = (int) ((key >>> 24) & 0xF) - 1;
+        int month = (int) (key & 0xFFFFFF) - 1;
+        return new GroupKey((hotelId < 0) ? null : this.hotelNames[hotelId], (typeId < 0) ? null : TYPES[typeId],
+                (month < 0) ? null : YearMonth.of(month / 12, month % 12 + 1));
+    }
+
+    private static int epochMonth(LocalDate d)
+    {
+        return d.getYear() * 12 + d.getMonthValue() - 1;
+    }
+
+    private static void addRange(int[] diff, long s, long e, long first, long last)
+    {
+        long lo = Math.max(s, first);
+        long hi = Math.min(e, last);
+        if (lo <= hi)
+        {
+            diff[(int) (lo - first)]++;
+            diff[(int) (hi - first + 1)]--;
+        }
+    }
+
+    /**
+     * Fold of a range of rows into a partial result, and merge of two partial results.
+     */
+    private interface Reduction<T>
+    {
+        T leaf(int lo, int hi);
+
+        T merge(T a, T b);
+    }
+
+    /**
+     * Fork-join task running a reduction over a range of rows: ranges larger than a leaf are
+     * split in two halves whose results are merged.
+     */
+    private static final class RowTask<T>
+    extends RecursiveTask<T>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int lo;
+        private final int hi;
+        private final Reduction<T> reduction;
+
+        RowTask(int l, int h, Reduction<T> r)
+        {
+            this.lo = l;
+            this.hi = h;
+            this.reduction = r;
+        }
+
+        @Override
+        protected T compute()
+        {
+            if (this.hi - this.lo <= LEAF_ROWS)
+            {
+                return this.reduction.leaf(this.lo, this.hi);
+            }
+            int mid = (this.lo + this.hi) >>> 1;
+            RowTask<T> left = new RowTask<T>(this.lo, mid, this.reduction);
+            RowTask<T> right = new RowTask<T>(mid, this.hi, this.reduction);
+            left.fork();
+            T r = right.compute();
+            return this.reduction.merge(left.join(), r);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.stephengilbane.hotel.analytics;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.stephengilbane.hotel.deals.Deal;
+
+/**
+ * Where one deal of a hotel is the best deal, as found by an {@link EffectivenessReport}.
+ */
+public final class DealEffectiveness
+{
+    private final String hotelName;
+    private final Deal deal;
+    private final int index;
+    private final List<WinRegion> regions;
+
+    DealEffectiveness(String name, Deal d, int i, List<WinRegion> r)
+    {
+        this.hotelName = name;
+        this.deal = d;
+        this.index = i;
+        this.regions = Collections.unmodifiableList(r);
+    }
+
+    /** @return name of the hotel of the deal. */
+    public String getHotelName() { return hotelName; }
+
+    /** @return the deal. */
+    public Deal getDeal() { return deal; }
+
+    /** @return position of the deal within its hotel. */
+    public int getIndex() { return index; }
+
+    /** @return disjoint regions of stays the deal wins, by first check-in date, then stay length. */
+    public List<WinRegion> getRegions() { return regions; }
+
+    /**
+     * @return true if the deal is the best deal of at least one stay.
+     */
+    public boolean isWinning()
+    {
+        return !this.regions.isEmpty();
+    }
+
+    /**
+     * @return number of stays the deal wins.
+     */
+    public long getWinningStayCount()
+    {
+        long n = 0;
+        for (WinRegion r : this.regions)
+        {
+            n += r.getStayCount();
+        }
+        return n;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (!isWinning())
+        {
+            return this.hotelName + ", " + this.deal.getPromotionalText() + ": never wins";
+        }
+        return String.format("%s, %s: wins %d stays in %d regions", this.hotelName, this.deal.getPromotionalText(),
+                getWinningStayCount(), this.regions.size());
+    }
+}
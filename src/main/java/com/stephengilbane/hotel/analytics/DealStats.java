@@ -0,0 +1,54 @@
+package com.stephengilbane.hotel.analytics;
+
+/**
+ *  Count, sum, minimum and maximum of a measure over a group of deals.
+ */
+public final class DealStats
+{
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+
+    /**
+     * Constructor.
+     * @param n Number of deals.
+     * @param total Sum of the measure.
+     * @param lo Smallest value of the measure.
+     * @param hi Largest value of the measure.
+     */
+    public DealStats(long n, long total, long lo, long hi)
+    {
+        this.count = n;
+        this.sum = total;
+        this.min = lo;
+        this.max = hi;
+    }
+
+    /** @return number of deals in the group. */
+    public long getCount() { return count; }
+
+    /** @return sum of the measure. */
+    public long getSum() { return sum; }
+
+    /** @return smallest value of the measure. */
+    public long getMin() { return min; }
+
+    /** @return largest value of the measure. */
+    public long getMax() { return max; }
+
+    /**
+     * @return average value of the measure, or 0 for an empty group.
+     */
+    public double getAverage()
+    {
+        return (this.count == 0) ? 0 : (double) this.sum / this.count;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("count %d, sum %d, min %d, max %d, avg %.2f", this.count, this.sum, this.min, this.max,
+                getAverage());
+    }
+}
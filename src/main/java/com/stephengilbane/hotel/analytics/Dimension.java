@@ -0,0 +1,14 @@
+package com.stephengilbane.hotel.analytics;
+
+/**
+ *  Dimensions deals may be grouped by in an aggregation.
+ */
+public enum Dimension
+{
+    /** Hotel offering the deal. */
+    HOTEL,
+    /** DealType of the deal. */
+    TYPE,
+    /** Calendar month of check-in dates the deal is valid for. A deal counts once in each month it spans. */
+    MONTH;
+}
@@ -0,0 +1,423 @@
+package com.stephengilbane.hotel.analytics;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.stephengilbane.hotel.Hotel;
+import com.stephengilbane.hotel.HotelDealFinder;
+import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealType;
+
+/**
+ * For every deal, the stays for which it is the best deal of its hotel: regions of check-in
+ * dates and stay lengths, found without enumerating days.
+ *
+ * The deals of a hotel are swept once over their date boundaries. Between two consecutive
+ * boundaries the same deals apply on every check-in date, so the winner depends only on the
+ * stay length. Within such a segment, the winner can only change at a minimum stay of an active
+ * deal, or where the prices of two linear deals come within one monetary unit of each other,
+ * so that rounding decides between them; the winner is evaluated at those stay lengths only,
+ * and holds until the next one. A segment with a deal that is not linear is evaluated at every
+ * stay length, so hotels with such a deal are only analyzed up to NON_LINEAR_STAY_LIMIT nights.
+ * Regions of the same deal and stay lengths in adjacent segments are merged.
+ *
+ * Stays are priced at the flat nightly rate of the hotel. With a rate calendar the price of a
+ * stay depends on its dates as well, so hotels with one are not analyzed; the report lists
+ * them as skipped. Ties go to the deal added first, as in {@link Hotel#findBestDeal}.
+ */
+public final class EffectivenessReport
+{
+    /** Largest maximum stay length a report may cover. */
+    public static final int MAX_STAY_LIMIT = 1 << 20;
+    /** Largest maximum stay length a hotel with a deal that is not linear is analyzed for. */
+    public static final int NON_LINEAR_STAY_LIMIT = 1 << 12;
+
+    private static final Comparator<DealEffectiveness> ORDER = Comparator
+            .comparing(DealEffectiveness::getHotelName).thenComparingInt(DealEffectiveness::getIndex);
+    private static final Comparator<WinRegion> REGION_ORDER = Comparator.comparing(WinRegion::getFromDate)
+            .thenComparingInt(WinRegion::getMinStay);
+
+    private final int maxStayLength;
+    private final List<DealEffectiveness> deals;
+    private final List<String> skippedHotels;
+
+    private EffectivenessReport(int maxStay, List<DealEffectiveness> d, List<String> skipped)
+    {
+        this.maxStayLength = maxStay;
+        this.deals = Collections.unmodifiableList(d);
+        this.skippedHotels = Collections.unmodifiableList(skipped);
+    }
+
+    /**
+     * Build the report of every deal of every hotel that can be analyzed (see canAnalyze()).
+     * @param hdf Finder whose hotels to report on.
+     * @param maxStayLength Longest stay length to consider, in days.
+     * @return report, by hotel name, then position of the deal within its hotel.
+     * @throws IllegalArgumentException if maxStayLength is not between 1 and MAX_STAY_LIMIT.
+     */
+    public static EffectivenessReport build(HotelDealFinder hdf, int maxStayLength)
+    {
+        validateMaxStay(maxStayLength);
+        List<DealEffectiveness> all = new ArrayList<DealEffectiveness>();
+        List<String> skipped = new ArrayList<String>();
+        hdf.forEachHotel(h -> {
+            if (canAnalyze(h, maxStayLength))
+            {
+                all.addAll(analyzeHotel(h, maxStayLength));
+            }
+            else
+            {
+                skipped.add(h.getName());
+            }
+        });
+        all.sort(ORDER);
+        Collections.sort(skipped);
+        return new EffectivenessReport(maxStayLength, all, skipped);
+    }
+
+    /**
+     * @param h Hotel to analyze.
+     * @param maxStayLength Longest stay length to consider, in days.
+     * @return false if the hotel has a rate calendar, or has a deal that is not linear and the
+     *         stay length is over NON_LINEAR_STAY_LIMIT.
+     */
+    public static boolean canAnalyze(Hotel h, int maxStayLength)
+    {
+        if (h.getRateCalendar() != null)
+        {
+            return false;
+        }
+        if (maxStayLength <= NON_LINEAR_STAY_LIMIT)
+        {
+            return true;
+        }
+        for (int i = 0; i < h.getDealCount(); i++)
+        {
+            Deal d = h.getDeal(i);
+            if (d.getDealType() != DealType.NO_DEAL && !d.isLinear())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find where each deal of a hotel wins.
+     * @param h Hotel to analyze.
+     * @param maxStayLength Longest stay length to consider, in days.
+     * @return effectiveness of every deal of the hotel other than Deal.NO_DEAL, by position.
+     * @throws IllegalArgumentException if maxStayLength is not between 1 and MAX_STAY_LIMIT, or
+     *             the hotel cannot be analyzed (see canAnalyze()).
+     */
+    public static List<DealEffectiveness> analyzeHotel(Hotel h, int maxStayLength)
+    {
+        validateMaxStay(maxStayLength);
+        if (!canAnalyze(h, maxStayLength))
+        {
+            throw new IllegalArgumentException("Cannot analyze hotel " + h.getName() + " for stays up to "
+                    + maxStayLength + " nights");
+        }
+        int n = h.getDealCount();
+        Deal[] ds = new Deal[n];
+        List<long[]> events = new ArrayList<long[]>();
+        for (int i = 0; i < n; i++)
+        {
+            Deal d = h.getDeal(i);
+            ds[i] = d;
+            if (d.getDealType() == DealType.NO_DEAL)
+            {
+                continue;
+            }
+            long start = d.getStartDate().toEpochDay();
+            long end = d.getEndDate().toEpochDay();
+            if (end >= start)
+            {
+                addSpan(events, i, start, end + 1);
+            }
+            else
+            {
+                // An inverted deal applies only on its two dates.
+                addSpan(events, i, end, end + 1);
+                addSpan(events, i, start, start + 1);
+            }
+        }
+        events.sort(Comparator.comparingLong(e -> e[0]));
+
+        List<List<WinRegion>> won = new ArrayList<List<WinRegion>>();
+        for (int i = 0; i < n; i++)
+        {
+            won.add(new ArrayList<WinRegion>());
+        }
+        int[] depth = new int[n];
+        BitSet active = new BitSet(n);
+        Map<Run, long[]> open = new HashMap<Run, long[]>();
+        int e = 0;
+        while (e < events.size())
+        {
+            long day = events.get(e)[0];
+            for (; e < events.size() && events.get(e)[0] == day; e++)
+            {
+                int i = (int) events.get(e)[1];
+                depth[i] += (int) events.get(e)[2];
+                active.set(i, depth[i] > 0);
+            }
+            // With no deal active there are no wins; the sweep ends at the last boundary.
+            Map<Run, long[]> next = new HashMap<Run, long[]>();
+            if (!active.isEmpty() && e < events.size())
+            {
+                long segmentEnd = events.get(e)[0] - 1;
+                for (Run r : findRuns(ds, active, h.getNightlyRate(), maxStayLength))
+                {
+                    long[] dates = open.remove(r);
+                    if (dates == null)
+                    {
+                        dates = new long[] { day, segmentEnd };
+                    }
+                    dates[1] = segmentEnd;
+                    next.put(r, dates);
+                }
+            }
+            close(open, won);
+            open = next;
+        }
+        close(open, won);
+
+        List<DealEffectiveness> res = new ArrayList<DealEffectiveness>();
+        for (int i = 0; i < n; i++)
+        {
+            if (ds[i].getDealType() != DealType.NO_DEAL)
+            {
+                won.get(i).sort(REGION_ORDER);
+                res.add(new DealEffectiveness(h.getName(), ds[i], i, won.get(i)));
+            }
+        }
+        return res;
+    }
+
+    /** @return longest stay length considered, in days. */
+    public int getMaxStayLength() { return maxStayLength; }
+
+    /** @return every deal, by hotel name, then position within its hotel. */
+    public List<DealEffectiveness> getDeals() { return deals; }
+
+    /** @return names of the hotels that could not be analyzed, in order; their deals are not reported. */
+    public List<String> getSkippedHotels() { return skippedHotels; }
+
+    /**
+     * @return the deals that are not the best deal of any stay up to the maximum stay length.
+     */
+    public List<DealEffectiveness> getNeverWinning()
+    {
+        List<DealEffectiveness> res = new ArrayList<DealEffectiveness>();
+        for (DealEffectiveness d : this.deals)
+        {
+            if (!d.isWinning())
+            {
+                res.add(d);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Print the report: each deal with its regions, then a summary.
+     */
+    public void print()
+    {
+        for (DealEffectiveness d : this.deals)
+        {
+            System.out.println(d);
+            for (WinRegion r : d.getRegions())
+            {
+                System.out.println("    " + r);
+            }
+        }
+        System.out.println(String.format("%d deals, %d never win for stays up to %d nights", this.deals.size(),
+                getNeverWinning().size(), this.maxStayLength));
+        if (!this.skippedHotels.isEmpty())
+        {
+            System.out.println("Warning: not analyzed, with a rate calendar or a deal that is not linear: "
+                    + String.join(", ", this.skippedHotels));
+        }
+    }
+
+    private static void validateMaxStay(int maxStayLength)
+    {
+        if (maxStayLength < 1 || maxStayLength > MAX_STAY_LIMIT)
+        {
+            throw new IllegalArgumentException("Invalid maximum stay length " + maxStayLength);
+        }
+    }
+
+    private static void addSpan(List<long[]> events, int i, long from, long to)
+    {
+        events.add(new long[] { from, i, 1 });
+        events.add(new long[] { to, i, -1 });
+    }
+
+    // Move the regions still open to the deals that won them.
+    private static void close(Map<Run, long[]> open, List<List<WinRegion>> won)
+    {
+        for (Iterator<Map.Entry<Run, long[]>> it = open.entrySet().iterator(); it.hasNext();)
+        {
+            Map.Entry<Run, long[]> en = it.next();
+            Run r = en.getKey();
+            won.get(r.index).add(new WinRegion(LocalDate.ofEpochDay(en.getValue()[0]),
+                    LocalDate.ofEpochDay(en.getValue()[1]), r.minStay, r.maxStay));
+            it.remove();
+        }
+    }
+
+    /**
+     * Split the stay lengths of a date segment into runs with the same winner.
+     * @return runs of stay lengths that some deal wins, in order.
+     */
+    private static List<Run> findRuns(Deal[] ds, BitSet active, int rate, int maxStay)
+    {
+        // Grown only as far as the last mark, rather than to the maximum stay length.
+        BitSet marks = new BitSet();
+        marks.set(1);
+        boolean linear = true;
+        for (int i = active.nextSetBit(0); i >= 0; i = active.nextSetBit(i + 1))
+        {
+            int m = ds[i].getMinStayDays();
+            if (m > 1 && m <= maxStay)
+            {
+                marks.set(m);
+            }
+            linear &= ds[i].isLinear();
+        }
+        if (linear)
+        {
+            for (int i = active.nextSetBit(0); i >= 0; i = active.nextSetBit(i + 1))
+            {
+                for (int j = active.nextSetBit(i + 1); j >= 0; j = active.nextSetBit(j + 1))
+                {
+                    markCrossing(ds[i], ds[j], rate, maxStay, marks);
+                }
+            }
+        }
+
+        List<Run> runs = new ArrayList<Run>();
+        int current = -1;
+        int from = 1;
+        for (int s = 1; s > 0 && s <= maxStay;)
+        {
+            int w = findWinner(ds, active, rate, s);
+            // Without linear prices, every stay length is a mark.
+            int nextMark = linear ? marks.nextSetBit(s + 1) : s + 1;
+            if (w != current)
+            {
+                if (current >= 0)
+                {
+                    runs.add(new Run(current, from, s - 1));
+                }
+                current = w;
+                from = s;
+            }
+            s = nextMark;
+        }
+        if (current >= 0)
+        {
+            runs.add(new Run(current, from, maxStay));
+        }
+        return runs;
+    }
+
+    /**
+     * Mark the stay lengths at which the order of two linear deals may change.
+     * The difference of their exact prices is dk * s / 100 + db; while it is at least one
+     * monetary unit away from zero, truncation cannot reverse it, and its sign is the same on
+     * either side of the crossing. So the stay lengths strictly within one unit, the last one
+     * before them and the first one after them are marked.
+     */
+    private static void markCrossing(Deal a, Deal b, int rate, int maxStay, BitSet marks)
+    {
+        long dk = (long) rate * (b.getRateMultiplierPercent() - a.getRateMultiplierPercent());
+        if (dk == 0)
+        {
+            // Parallel prices: the order is the same for every stay length.
+            return;
+        }
+        double db = (double) b.getFlatAdjustment() - a.getFlatAdjustment();
+        double lo = (-100.0 - 100.0 * db) / dk;
+        double hi = (100.0 - 100.0 * db) / dk;
+        if (lo > hi)
+        {
+            double t = lo;
+            lo = hi;
+            hi = t;
+        }
+        double from = Math.max(1.0, Math.floor(lo));
+        double to = Math.min(maxStay, Math.ceil(hi) + 1);
+        if (from <= to)
+        {
+            marks.set((int) from, (int) to + 1);
+        }
+    }
+
+    /**
+     * @return position of the cheapest active deal for the stay length, the first on ties, or
+     *         -1 if none applies.
+     */
+    private static int findWinner(Deal[] ds, BitSet active, int rate, int stayLength)
+    {
+        long basePrice = (long) rate * stayLength;
+        int best = -1;
+        int bestPrice = 0;
+        for (int i = active.nextSetBit(0); i >= 0; i = active.nextSetBit(i + 1))
+        {
+            if (!ds[i].isStayLengthApplicable(stayLength))
+            {
+                continue;
+            }
+            int price = ds[i].calculateFinalValueForBase(basePrice, stayLength);
+            if (best < 0 || price < bestPrice)
+            {
+                best = i;
+                bestPrice = price;
+            }
+        }
+        return best;
+    }
+
+    /** Stay lengths of a date segment won by one deal. */
+    private static final class Run
+    {
+        final int index;
+        final int minStay;
+        final int maxStay;
+
+        Run(int i, int lo, int hi)
+        {
+            this.index = i;
+            this.minStay = lo;
+            this.maxStay = hi;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Run))
+            {
+                return false;
+            }
+            Run r = (Run) o;
+            return r.index == this.index && r.minStay == this.minStay && r.maxStay == this.maxStay;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (this.index * 31 + this.minStay) * 31 + this.maxStay;
+        }
+    }
+}
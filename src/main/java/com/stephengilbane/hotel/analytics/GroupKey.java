@@ -0,0 +1,77 @@
+package com.stephengilbane.hotel.analytics;
+
+import java.time.YearMonth;
+
+import com.stephengilbane.hotel.deals.DealType;
+
+/**
+ *  Key of a group of an aggregation. Dimensions that were not grouped by are null.
+ */
+public final class GroupKey
+{
+    private final String hotelName;
+    private final DealType dealType;
+    private final YearMonth month;
+
+    /**
+     * Constructor.
+     * @param name Hotel name, or null.
+     * @param type Deal type, or null.
+     * @param m Month, or null.
+     */
+    public GroupKey(String name, DealType type, YearMonth m)
+    {
+        this.hotelName = name;
+        this.dealType = type;
+        this.month = m;
+    }
+
+    /** @return hotel name of the group, or null if not grouped by hotel. */
+    public String getHotelName() { return hotelName; }
+
+    /** @return deal type of the group, or null if not grouped by type. */
+    public DealType getDealType() { return dealType; }
+
+    /** @return month of the group, or null if not grouped by month. */
+    public YearMonth getMonth() { return month; }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof GroupKey))
+        {
+            return false;
+        }
+        GroupKey other = (GroupKey) o;
+        return equal(this.hotelName, other.hotelName) && this.dealType == other.dealType
+                && equal(this.month, other.month);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int h = (this.hotelName == null) ? 0 : this.hotelName.hashCode();
+        h = 31 * h + ((this.dealType == null) ? 0 : this.dealType.hashCode());
+        return 31 * h + ((this.month == null) ? 0 : this.month.hashCode());
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Object part : new Object[] { this.hotelName, (this.dealType == null) ? null : this.dealType.getToken(),
+                this.month })
+        {
+            if (part != null)
+            {
+                sb.append((sb.length() == 0) ? "" : ", ").append(part);
+            }
+        }
+        return (sb.length() == 0) ? "all" : sb.toString();
+    }
+
+    private static boolean equal(Object a, Object b)
+    {
+        return (a == null) ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,16 @@
+package com.stephengilbane.hotel.analytics;
+
+/**
+ *  Per-deal quantities that may be aggregated.
+ */
+public enum Measure
+{
+    /** Saving of the deal on a stay of its minimum length at the hotel's nightly rate. */
+    DISCOUNT,
+    /** Original input value of the deal. */
+    VALUE,
+    /** Nightly rate of the hotel offering the deal. */
+    NIGHTLY_RATE,
+    /** Number of check-in days the deal is valid for. */
+    DURATION_DAYS;
+}
@@ -0,0 +1,147 @@
+package com.stephengilbane.hotel.analytics;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table from a packed group key to count, sum, min and max, held in
+ * primitive arrays so that aggregating a row allocates nothing.
+ */
+final class StatsTable
+{
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private long[] counts;
+    private long[] sums;
+    private long[] mins;
+    private long[] maxes;
+    private int size;
+
+    StatsTable()
+    {
+        allocate(16);
+    }
+
+    /**
+     * Add a value to a group.
+     * @param key Packed group key. Must not be Long.MIN_VALUE.
+     * @param value Value of the measure.
+     */
+    void add(long key, long value)
+    {
+        int slot = find(key);
+        if (this.keys[slot] == EMPTY)
+        {
+            this.keys[slot] = key;
+            this.mins[slot] = value;
+            this.maxes[slot] = value;
+            if (++this.size * 2 > this.keys.length)
+            {
+                rehash();
+                slot = find(key);
+            }
+        }
+        this.counts[slot]++;
+        this.sums[slot] += value;
+        this.mins[slot] = Math.min(this.mins[slot], value);
+        this.maxes[slot] = Math.max(this.maxes[slot], value);
+    }
+
+    /**
+     * Add every group of another table to this one.
+     * @param other Table to merge in.
+     * @return this table.
+     */
+    StatsTable merge(StatsTable other)
+    {
+        for (int i = 0; i < other.keys.length; i++)
+        {
+            long key = other.keys[i];
+            if (key == EMPTY)
+            {
+                continue;
+            }
+            int slot = find(key);
+            if (this.keys[slot] == EMPTY)
+            {
+                this.keys[slot] = key;
+                this.mins[slot] = other.mins[i];
+                this.maxes[slot] = other.maxes[i];
+                if (++this.size * 2 > this.keys.length)
+                {
+                    rehash();
+                    slot = find(key);
+                }
+            }
+            this.counts[slot] += other.counts[i];
+            this.sums[slot] += other.sums[i];
+            this.mins[slot] = Math.min(this.mins[slot], other.mins[i]);
+            this.maxes[slot] = Math.max(this.maxes[slot], other.maxes[i]);
+        }
+        return this;
+    }
+
+    int capacity()
+    {
+        return this.keys.length;
+    }
+
+    long keyAt(int slot)
+    {
+        return this.keys[slot];
+    }
+
+    boolean isUsed(int slot)
+    {
+        return this.keys[slot] != EMPTY;
+    }
+
+    DealStats statsAt(int slot)
+    {
+        return new DealStats(this.counts[slot], this.sums[slot], this.mins[slot], this.maxes[slot]);
+    }
+
+    private int find(long key)
+    {
+        int mask = this.keys.length - 1;
+        long h = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while (this.keys[slot] != EMPTY && this.keys[slot] != key)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity)
+    {
+        this.keys = new long[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        this.counts = new long[capacity];
+        this.sums = new long[capacity];
+        this.mins = new long[capacity];
+        this.maxes = new long[capacity];
+    }
+
+    private void rehash()
+    {
+        long[] k = this.keys;
+        long[] c = this.counts;
+        long[] s = this.sums;
+        long[] lo = this.mins;
+        long[] hi = this.maxes;
+        allocate(2 * k.length);
+        for (int i = 0; i < k.length; i++)
+        {
+            if (k[i] != EMPTY)
+            {
+                int slot = find(k[i]);
+                this.keys[slot] = k[i];
+                this.counts[slot] = c[i];
+                this.sums[slot] = s[i];
+                this.mins[slot] = lo[i];
+                this.maxes[slot] = hi[i];
+            }
+        }
+    }
+}
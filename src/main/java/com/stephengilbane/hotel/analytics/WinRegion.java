@@ -0,0 +1,71 @@
+package com.stephengilbane.hotel.analytics;
+
+import java.time.LocalDate;
+
+import com.stephengilbane.hotel.ParserUtils;
+
+/**
+ * Rectangle of stays a deal wins: every check-in date of a range, with every stay length of
+ * a range. Both ranges are inclusive.
+ */
+public final class WinRegion
+{
+    private final LocalDate fromDate;
+    private final LocalDate toDate;
+    private final int minStay;
+    private final int maxStay;
+
+    /**
+     * Constructor.
+     * @param from First check-in date.
+     * @param to Last check-in date.
+     * @param lo Shortest stay length in days.
+     * @param hi Longest stay length in days.
+     */
+    public WinRegion(LocalDate from, LocalDate to, int lo, int hi)
+    {
+        this.fromDate = from;
+        this.toDate = to;
+        this.minStay = lo;
+        this.maxStay = hi;
+    }
+
+    /** @return first check-in date. */
+    public LocalDate getFromDate() { return fromDate; }
+
+    /** @return last check-in date. */
+    public LocalDate getToDate() { return toDate; }
+
+    /** @return shortest stay length in days. */
+    public int getMinStay() { return minStay; }
+
+    /** @return longest stay length in days. */
+    public int getMaxStay() { return maxStay; }
+
+    /**
+     * @param dt Check-in date.
+     * @param stayLengthDays Stay length in days.
+     * @return true if the stay is in this region.
+     */
+    public boolean contains(LocalDate dt, int stayLengthDays)
+    {
+        return !dt.isBefore(this.fromDate) && !dt.isAfter(this.toDate) && stayLengthDays >= this.minStay
+                && stayLengthDays <= this.maxStay;
+    }
+
+    /**
+     * @return number of stays in this region: check-in dates times stay lengths.
+     */
+    public long getStayCount()
+    {
+        long days = this.toDate.toEpochDay() - this.fromDate.toEpochDay() + 1;
+        return days * (this.maxStay - this.minStay + 1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s to %s, %d to %d nights", ParserUtils.formatDate(this.fromDate),
+                ParserUtils.formatDate(this.toDate), this.minStay, this.maxStay);
+    }
+}
@@ -0,0 +1,316 @@
+package com.stephengilbane.hotel.batch;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.stephengilbane.hotel.DealQuery;
+import com.stephengilbane.hotel.DealResult;
+import com.stephengilbane.hotel.HotelDealFinder;
+
+/**
+ * Asynchronous front end of a {@link HotelDealFinder} that answers concurrent queries in
+ * micro-batches.
+ *
+ * Queries are queued, and a dispatcher thread collects them into a batch until the batch is full
+ * or the oldest query of it has waited the configured time. Identical queries of a batch are
+ * answered once. The rest are ordered by hotel, date and stay length and answered by hotel, so
+ * that each hotel of a batch is resolved once and its deals are visited in date order. The
+ * futures of each hotel are completed as soon as that hotel is answered, before the next hotel of
+ * the batch; if answering a hotel fails, only its futures fail, and the rest of the batch is
+ * still answered.
+ *
+ * A query therefore waits at most the configured time before its batch is answered, plus the time
+ * to answer one batch. Batches are answered on the dispatcher thread, or on an executor if one is
+ * given, so that collecting the next batch overlaps answering the last. Dependent actions
+ * attached to the futures without an executor run on the thread answering the batch, and should
+ * be short; slow ones should use the *Async variants.
+ */
+public final class DealQueryBatcher
+implements AutoCloseable
+{
+    // Marks the end of the queue on close.
+    private static final Pending CLOSE = new Pending(null, null, 0);
+
+    private static final Comparator<DealQuery> QUERY_ORDER = Comparator.comparing(DealQuery::getHotelName)
+            .thenComparing(DealQuery::getCheckInDate).thenComparingInt(DealQuery::getStayLength);
+
+    private final HotelDealFinder finder;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final Executor executor;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<Pending>();
+    private final Thread dispatcher;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong evaluations = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Constructor. Batches are answered on the dispatcher thread.
+     * @param f Finder to query.
+     * @param batchSize Largest number of queries in a batch. Must be positive.
+     * @param maxWait Longest time a query waits for its batch to fill. Zero batches only the
+     *            queries already waiting.
+     * @param unit Unit of maxWait.
+     * @throws IllegalArgumentException on invalid input.
+     */
+    public DealQueryBatcher(HotelDealFinder f, int batchSize, long maxWait, TimeUnit unit)
+    {
+        this(f, batchSize, maxWait, unit, null);
+    }
+
+    /**
+     * Constructor.
+     * @param f Finder to query.
+     * @param batchSize Largest number of queries in a batch. Must be positive.
+     * @param maxWait Longest time a query waits for its batch to fill. Zero batches only the
+     *            queries already waiting.
+     * @param unit Unit of maxWait.
+     * @param exec Executor to answer batches on, or null to answer them on the dispatcher thread.
+     * @throws IllegalArgumentException on invalid input.
+     */
+    public DealQueryBatcher(HotelDealFinder f, int batchSize, long maxWait, TimeUnit unit, Executor exec)
+    {
+        if (f == null || unit == null)
+        {
+            throw new IllegalArgumentException("Finder and time unit must be provided!");
+        }
+        if (batchSize <= 0 || maxWait < 0)
+        {
+            throw new IllegalArgumentException("Invalid batch size " + batchSize + " or wait " + maxWait);
+        }
+        this.finder = f;
+        this.maxBatchSize = batchSize;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.executor = exec;
+        this.dispatcher = new Thread(this::dispatch, "deal-query-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queue a query for the best value of a stay.
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate Check-in date.
+     * @param stayLengthDays Stay length in days. Must be positive.
+     * @return future completed with the result findBestValue() gives, or exceptionally if the
+     *         finder failed.
+     * @throws IllegalArgumentException on invalid input.
+     * @throws IllegalStateException if this batcher is closed.
+     */
+    public CompletableFuture<DealResult> findBestValue(String hotelName, LocalDate checkInDate, int stayLengthDays)
+    {
+        DealQuery query = new DealQuery(hotelName, checkInDate, stayLengthDays);
+        if (this.closed)
+        {
+            throw new IllegalStateException("Batcher is closed");
+        }
+        Pending p = new Pending(query, new CompletableFuture<DealResult>(), System.nanoTime());
+        this.queue.add(p);
+        // If closed meanwhile, the query is answered only if the dispatcher already took it.
+        if (this.closed && this.queue.remove(p))
+        {
+            throw new IllegalStateException("Batcher is closed");
+        }
+        return p.future;
+    }
+
+    /**
+     * Answer the queries already queued and stop. Later queries are refused.
+     */
+    @Override
+    public void close()
+    {
+        if (this.closed)
+        {
+            return;
+        }
+        this.closed = true;
+        this.queue.add(CLOSE);
+        if (Thread.currentThread() != this.dispatcher)
+        {
+            try
+            {
+                this.dispatcher.join();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return number of batches answered, for monitoring.
+     */
+    public long getBatchCount()
+    {
+        return this.batches.get();
+    }
+
+    /**
+     * @return number of queries answered, for monitoring.
+     */
+    public long getQueryCount()
+    {
+        return this.queries.get();
+    }
+
+    /**
+     * @return number of distinct queries evaluated by the finder, for monitoring.
+     */
+    public long getEvaluationCount()
+    {
+        return this.evaluations.get();
+    }
+
+    private void dispatch()
+    {
+        boolean stopping = false;
+        while (!stopping)
+        {
+            List<Pending> batch = new ArrayList<Pending>(Math.min(this.maxBatchSize, 1024));
+            try
+            {
+                Pending first = this.queue.take();
+                if (first == CLOSE)
+                {
+                    stopping = true;
+                }
+                else
+                {
+                    batch.add(first);
+                    long deadline = first.arrival + this.maxWaitNanos;
+                    while (batch.size() < this.maxBatchSize)
+                    {
+                        long wait = deadline - System.nanoTime();
+                        Pending p = (wait > 0) ? this.queue.poll(wait, TimeUnit.NANOSECONDS) : this.queue.poll();
+                        if (p == null)
+                        {
+                            break;
+                        }
+                        if (p == CLOSE)
+                        {
+                            stopping = true;
+                            break;
+                        }
+                        batch.add(p);
+                    }
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                this.closed = true;
+                stopping = true;
+            }
+            if (stopping)
+            {
+                // Queries queued before the close still get answered.
+                List<Pending> rest = new ArrayList<Pending>();
+                this.queue.drainTo(rest);
+                rest.remove(CLOSE);
+                batch.addAll(rest);
+            }
+            if (!batch.isEmpty())
+            {
+                submit(batch);
+            }
+        }
+    }
+
+    private void submit(List<Pending> batch)
+    {
+        if (this.executor != null)
+        {
+            try
+            {
+                this.executor.execute(() -> answer(batch));
+                return;
+            }
+            catch (RejectedExecutionException ex)
+            {
+                // Answer it here rather than leave the futures incomplete.
+            }
+        }
+        answer(batch);
+    }
+
+    private void answer(List<Pending> batch)
+    {
+        Map<DealQuery, List<CompletableFuture<DealResult>>> waiting =
+                new HashMap<DealQuery, List<CompletableFuture<DealResult>>>();
+        for (Pending p : batch)
+        {
+            waiting.computeIfAbsent(p.query, q -> new ArrayList<CompletableFuture<DealResult>>(1)).add(p.future);
+        }
+        List<DealQuery> distinct = new ArrayList<DealQuery>(waiting.keySet());
+        Collections.sort(distinct, QUERY_ORDER);
+        // Counted first, so that the counts include a batch once its futures complete.
+        this.batches.incrementAndGet();
+        this.queries.addAndGet(batch.size());
+        this.evaluations.addAndGet(distinct.size());
+        int from = 0;
+        while (from < distinct.size())
+        {
+            String hotelName = distinct.get(from).getHotelName();
+            int to = from + 1;
+            while (to < distinct.size() && distinct.get(to).getHotelName().equals(hotelName))
+            {
+                to++;
+            }
+            // A failure only fails the queries of its hotel.
+            List<DealQuery> group = distinct.subList(from, to);
+            try
+            {
+                List<DealResult> results = this.finder.findBestValues(group);
+                for (int i = 0; i < group.size(); i++)
+                {
+                    for (CompletableFuture<DealResult> f : waiting.get(group.get(i)))
+                    {
+                        f.complete(results.get(i));
+                    }
+                }
+            }
+            catch (RuntimeException ex)
+            {
+                for (DealQuery q : group)
+                {
+                    for (CompletableFuture<DealResult> f : waiting.get(q))
+                    {
+                        f.completeExceptionally(ex);
+                    }
+                }
+            }
+            from = to;
+        }
+    }
+
+    /**
+     * Query waiting for its batch.
+     */
+    private static final class Pending
+    {
+        private final DealQuery query;
+        private final CompletableFuture<DealResult> future;
+        private final long arrival;
+
+        Pending(DealQuery q, CompletableFuture<DealResult> f, long t)
+        {
+            this.query = q;
+            this.future = f;
+            this.arrival = t;
+        }
+    }
+}
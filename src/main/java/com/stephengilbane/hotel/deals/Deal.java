@@ -1,6 +1,7 @@
 package com.stephengilbane.hotel.deals;
 
 import java.time.LocalDate;
+import java.util.Objects;
 
 /**
  *  Abstract class representing a hotel deal or discount.
@@ -14,6 +15,9 @@ public abstract class Deal
     private final int minStayDays;
     private final LocalDate startDate;
     private final LocalDate endDate;
+    private final int promoCode;
+    private final StackingRule stackingRule;
+    private final DealInventory inventory;
 
     /**
      * Constructor (for sub-types only).
@@ -25,11 +29,60 @@ public abstract class Deal
      */
     protected Deal(DealType type, String pTxt, LocalDate startDt, LocalDate endDt, int minDays)
     {
+        this(type, pTxt, startDt, endDt, minDays, DealTerms.NONE);
+    }
+
+    /**
+     * Constructor (for sub-types only).
+     * @param type DealType indicating type of deal.
+     * @param pTxt  Promotional text to display about this deal.
+     * @param startDt  Date when deal starts.
+     * @param endDt  Date when deal ends.
+     * @param minDays Minimum number of days required to apply this deal.
+     * @param terms Optional terms of this deal.
+     */
+    protected Deal(DealType type, String pTxt, LocalDate startDt, LocalDate endDt, int minDays, DealTerms terms)
+    {
+        if (terms == null)
+        {
+            throw new IllegalArgumentException("Deal terms must be provided!");
+        }
         this.dealType = type;
         this.promoText = pTxt;
         this.minStayDays = minDays;
         this.startDate = startDt;
         this.endDate = endDt;
+        this.promoCode = terms.getPromoCode();
+        this.stackingRule = terms.getStackingRule();
+        this.inventory = (terms.getQuantityCap() > 0) ? new DealInventory(terms.getQuantityCap()) : null;
+    }
+
+    /**
+     * Check the optional terms of this deal against its type and value. Sub-types whose
+     * constructors accept terms call this once their own fields are set.
+     * Only linear deals that are either a pure percentage or a pure flat adjustment can stack.
+     * @throws IllegalArgumentException if this deal cannot stack but has a stacking rule, or is
+     *             Deal.NO_DEAL with a quantity.
+     */
+    protected final void checkTerms()
+    {
+        if (this.inventory != null && this.dealType == DealType.NO_DEAL)
+        {
+            throw new IllegalArgumentException("Deal type " + getTypeToken() + " cannot be limited");
+        }
+        if (this.stackingRule != null && (this.dealType == DealType.NO_DEAL || !isLinear()
+                || (getRateMultiplierPercent() != 100 && getFlatAdjustment() != 0)))
+        {
+            throw new IllegalArgumentException("Deal type " + getTypeToken() + " cannot stack");
+        }
+    }
+
+    /**
+     * @return the DealType of this deal.
+     */
+    public final DealType getDealType()
+    {
+        return this.dealType;
     }
 
     /**
@@ -48,6 +101,31 @@ public abstract class Deal
          return this.promoText;
     }
     
+    /**
+     * @return  code of the promotional text in the StringDictionary of the load that created
+     *          this deal, or -1 if the text was not encoded.
+     */
+    public final int getPromoCode()
+    {
+         return this.promoCode;
+    }
+    
+    /**
+     * @return  rule for combining this deal with others, or null if it does not stack.
+     */
+    public final StackingRule getStackingRule()
+    {
+         return this.stackingRule;
+    }
+    
+    /**
+     * @return  remaining units of this deal, or null if its quantity is not limited.
+     */
+    public final DealInventory getInventory()
+    {
+         return this.inventory;
+    }
+
     /**
      * @return  start date for this deal.
      */
@@ -64,6 +142,43 @@ public abstract class Deal
          return this.endDate;
     }
     
+    /**
+     * @return minimum number of days required to apply this deal.
+     */
+    public final int getMinStayDays()
+    {
+        return this.minStayDays;
+    }
+
+    /**
+     * Compare the terms of two deals, such as the same line of two loads of a feed.
+     * @param other Deal to compare with.
+     * @return true if both are of the same type, with the same text, value, dates, stacking rule
+     *         and quantity, so that one may stand for the other.
+     */
+    public final boolean hasSameTerms(Deal other)
+    {
+        if (other == this)
+        {
+            return true;
+        }
+        if (other == null || other.getClass() != getClass() || other.getValue() != getValue()
+                || other.minStayDays != this.minStayDays)
+        {
+            return false;
+        }
+        if (!Objects.equals(other.promoText, this.promoText) || !Objects.equals(other.startDate, this.startDate)
+                || !Objects.equals(other.endDate, this.endDate) || !Objects.equals(other.stackingRule, this.stackingRule))
+        {
+            return false;
+        }
+        if (this.inventory == null || other.inventory == null)
+        {
+            return this.inventory == other.inventory;
+        }
+        return this.inventory.getCapacity() == other.inventory.getCapacity();
+    }
+
     /**
      * Does a length of stay qualified for this deal?
      * @param stayLengthDays Length of stay in days.
@@ -102,11 +217,59 @@ public abstract class Deal
      */
     abstract public int calculateFinalValue(int ratePerNight, int stayLength);
     
+    /**
+     * Calculate the value in monetary units that a customer would pay after applying this deal
+     * to a stay whose nights may have different rates.
+     * Linear deals apply exactly as to a flat rate; other deal types only know nightly rates, so
+     * they are given the average nightly rate of the stay, rounded down.
+     * @param basePrice Monetary units normally charged for the whole stay.
+     * @param stayLength number of nights of the requested stay.
+     * @return monetary units charged for the stay including discount.
+     */
+    public int calculateFinalValueForBase(long basePrice, int stayLength)
+    {
+        if (isLinear())
+        {
+            return (int) (basePrice * getRateMultiplierPercent() / 100 + getFlatAdjustment());
+        }
+        return calculateFinalValue((int) (basePrice / stayLength), stayLength);
+    }
+    
     /**
      * @return  Original input value for this deal;
      */
     abstract public int getValue();
 
+    /**
+     * Is the final value of this deal linear in the base price of the stay? If so, the final
+     * value is exactly (basePrice * getRateMultiplierPercent() + 100 * getFlatAdjustment()) / 100
+     * in integer arithmetic, which allows deals to be compared without evaluating each of them.
+     * Deal types that cannot be expressed this way must leave this false.
+     * @return True if this deal is linear in the base price.
+     */
+    public boolean isLinear()
+    {
+        return false;
+    }
+
+    /**
+     * @return percentage of the base price charged by a linear deal (100 means full price).
+     * @throws UnsupportedOperationException if this deal is not linear.
+     */
+    public int getRateMultiplierPercent()
+    {
+        throw new UnsupportedOperationException("Deal type " + getTypeToken() + " is not linear");
+    }
+
+    /**
+     * @return amount in monetary units added to the price by a linear deal.
+     * @throws UnsupportedOperationException if this deal is not linear.
+     */
+    public int getFlatAdjustment()
+    {
+        throw new UnsupportedOperationException("Deal type " + getTypeToken() + " is not linear");
+    }
+
     /** Static singleton representing no deal. */
     public static final Deal NO_DEAL = new NoDeal();
 
@@ -0,0 +1,96 @@
+package com.stephengilbane.hotel.deals;
+
+import java.util.EnumSet;
+
+/**
+ *  Restriction on the deals returned by a ranked query. Filters are immutable; the with...()
+ *  methods return a new filter.
+ *
+ *  A filter is checked inside the scan of a hotel's deals: deal types it rejects are skipped
+ *  a whole partition at a time, and prices it rejects never reach the ranking.
+ */
+public final class DealFilter
+{
+    /** Filter accepting every deal. */
+    public static final DealFilter ALL = new DealFilter(EnumSet.complementOf(EnumSet.of(DealType.NO_DEAL)),
+            Integer.MAX_VALUE);
+
+    private final EnumSet<DealType> types;
+    private final int maxPrice;
+
+    private DealFilter(EnumSet<DealType> t, int max)
+    {
+        this.types = t;
+        this.maxPrice = max;
+    }
+
+    /**
+     * @param t Deal types to accept. At least one must be given.
+     * @return filter accepting only deals of the given types, and the prices this one accepts.
+     */
+    public DealFilter withTypes(DealType... t)
+    {
+        if (t == null || t.length == 0)
+        {
+            throw new IllegalArgumentException("Deal types must be provided!");
+        }
+        EnumSet<DealType> set = EnumSet.noneOf(DealType.class);
+        for (DealType type : t)
+        {
+            if (type != DealType.NO_DEAL)
+            {
+                set.add(type);
+            }
+        }
+        return new DealFilter(set, this.maxPrice);
+    }
+
+    /**
+     * @param max Highest final price to accept, inclusive.
+     * @return filter accepting only stays priced at most max, and the types this one accepts.
+     */
+    public DealFilter withMaxPrice(int max)
+    {
+        return new DealFilter(this.types, max);
+    }
+
+    /**
+     * @param t Type of deal.
+     * @return true if deals of that type may be accepted.
+     */
+    public boolean acceptsType(DealType t)
+    {
+        return this.types.contains(t);
+    }
+
+    /**
+     * @param price Final price of a stay.
+     * @return true if the price is accepted.
+     */
+    public boolean acceptsPrice(int price)
+    {
+        return price <= this.maxPrice;
+    }
+
+    /**
+     * @return deal types accepted, as a copy.
+     */
+    public EnumSet<DealType> getTypes()
+    {
+        return EnumSet.copyOf(this.types);
+    }
+
+    /**
+     * @return highest final price accepted.
+     */
+    public int getMaxPrice()
+    {
+        return this.maxPrice;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "types " + this.types + ((this.maxPrice == Integer.MAX_VALUE) ? "" : ", price <= " + this.maxPrice);
+    }
+}
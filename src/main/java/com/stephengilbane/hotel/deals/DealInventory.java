@@ -0,0 +1,153 @@
+package com.stephengilbane.hotel.deals;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Remaining units of a deal with a limited quantity, such as "first 100 bookings only".
+ *
+ * The quantity is split across striped counters, each on its own cache line. A claimer starts at
+ * a stripe chosen by its thread and takes a unit with compare-and-set, moving on to the other
+ * stripes only when that one is empty. No lock is taken, claimers of the same hot deal mostly
+ * update different cache lines, and a unit can never be claimed twice: the deal is sold out
+ * exactly when every stripe is empty. A released unit goes back to a stripe below its share of
+ * the quantity, so the units left never exceed the quantity.
+ */
+public final class DealInventory
+{
+    // Ints per stripe, so that each counter sits on its own 64 byte cache line.
+    private static final int STRIDE = 16;
+    private static final int MAX_STRIPES = 64;
+
+    private final int capacity;
+    private final int stripeCount;
+    private final AtomicIntegerArray remaining;
+
+    /**
+     * Constructor.
+     * @param cap Number of units of the deal. Must be positive.
+     * @throws IllegalArgumentException if the quantity is not positive.
+     */
+    public DealInventory(int cap)
+    {
+        if (cap <= 0)
+        {
+            throw new IllegalArgumentException("Deal quantity must be positive: " + cap);
+        }
+        this.capacity = cap;
+        int stripes = 1;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        while (stripes < cpus && stripes < MAX_STRIPES && 2 * stripes <= cap)
+        {
+            stripes *= 2;
+        }
+        this.stripeCount = stripes;
+        this.remaining = new AtomicIntegerArray(stripes * STRIDE);
+        for (int s = 0; s < stripes; s++)
+        {
+            this.remaining.set(s * STRIDE, share(s));
+        }
+    }
+
+    /**
+     * @return number of units the deal was offered with.
+     */
+    public int getCapacity()
+    {
+        return this.capacity;
+    }
+
+    /**
+     * @return number of units not yet claimed. Only a snapshot while claims are in progress.
+     */
+    public int getRemaining()
+    {
+        int sum = 0;
+        for (int s = 0; s < this.stripeCount; s++)
+        {
+            sum += this.remaining.get(s * STRIDE);
+        }
+        return sum;
+    }
+
+    /**
+     * @return true if every unit has been claimed.
+     */
+    public boolean isSoldOut()
+    {
+        for (int s = 0; s < this.stripeCount; s++)
+        {
+            if (this.remaining.get(s * STRIDE) > 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Atomically claim one unit.
+     * @return true if a unit was claimed, false if the deal is sold out.
+     */
+    public boolean tryClaim()
+    {
+        int home = homeStripe();
+        for (int i = 0; i < this.stripeCount; i++)
+        {
+            int slot = ((home + i) & (this.stripeCount - 1)) * STRIDE;
+            int left;
+            while ((left = this.remaining.get(slot)) > 0)
+            {
+                if (this.remaining.compareAndSet(slot, left, left - 1))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return a claimed unit, for instance when a booking is cancelled. Must only be called once
+     * for each successful claim.
+     * @throws IllegalStateException if no unit is claimed, so that releasing one would exceed
+     *             the quantity.
+     */
+    public void release()
+    {
+        int home = homeStripe();
+        for (int i = 0; i < this.stripeCount; i++)
+        {
+            int s = (home + i) & (this.stripeCount - 1);
+            int share = share(s);
+            int left;
+            while ((left = this.remaining.get(s * STRIDE)) < share)
+            {
+                if (this.remaining.compareAndSet(s * STRIDE, left, left + 1))
+                {
+                    return;
+                }
+            }
+        }
+        throw new IllegalStateException("No claimed unit to release: " + this);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d of %d left", getRemaining(), this.capacity);
+    }
+
+    /**
+     * @return units of the quantity a stripe starts with, and may hold at most.
+     */
+    private int share(int stripe)
+    {
+        return this.capacity / this.stripeCount + ((stripe < this.capacity % this.stripeCount) ? 1 : 0);
+    }
+
+    private int homeStripe()
+    {
+        int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (this.stripeCount - 1);
+    }
+}
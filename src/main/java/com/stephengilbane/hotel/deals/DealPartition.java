@@ -0,0 +1,154 @@
+package com.stephengilbane.hotel.deals;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Holds all deals of a single DealType for one hotel.
+ * 
+ * Each concrete partition stores its deals in an array of the concrete Deal class and
+ * evaluates them in its own loop, so that the call to calculateFinalValue() in that loop
+ * only ever sees one receiver class and can be inlined.
+ */
+public abstract class DealPartition
+{
+    private static final int INITIAL_CAPACITY = 4;
+
+    /** Position of each deal within its hotel, parallel to the deal array of the subclass. */
+    protected int[] indexes = new int[INITIAL_CAPACITY];
+    /** Number of deals in this partition. */
+    protected int size;
+
+    /**
+     * @return DealType of all deals in this partition.
+     */
+    public abstract DealType getDealType();
+
+    /**
+     * Add a deal to this partition.
+     * @param deal Deal to add. Must be of this partition's DealType.
+     * @param index Position of the deal within its hotel.
+     * @throws IllegalArgumentException if the deal is of the wrong type.
+     */
+    public final void add(Deal deal, int index)
+    {
+        if (deal.getDealType() != getDealType())
+        {
+            throw new IllegalArgumentException("Deal of type " + deal.getTypeToken() + " does not belong in partition "
+                    + getDealType().getToken());
+        }
+        if (this.size == this.indexes.length)
+        {
+            int newCapacity = this.size * 2;
+            this.indexes = Arrays.copyOf(this.indexes, newCapacity);
+            growDeals(newCapacity);
+        }
+        storeDeal(this.size, deal);
+        this.indexes[this.size] = index;
+        this.size++;
+    }
+
+    /**
+     * @return number of deals in this partition.
+     */
+    public final int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @param slot Slot within this partition, from 0 to size() - 1.
+     * @return Deal stored in the slot.
+     */
+    public abstract Deal getDeal(int slot);
+
+    /**
+     * @param slot Slot within this partition, from 0 to size() - 1.
+     * @return Position within its hotel of the deal stored in the slot.
+     */
+    public final int getIndex(int slot)
+    {
+        return this.indexes[slot];
+    }
+
+    /**
+     * Are all deals of this partition linear in the base price (see {@link Deal#isLinear()})?
+     * Deals of linear partitions are selected through a hotel's DealEnvelope rather than
+     * by scanning the partition.
+     * @return True if every deal in this partition is linear.
+     */
+    public boolean isLinear()
+    {
+        return false;
+    }
+
+    /**
+     * Add every deal in this partition to a list.
+     * @param deals List to add to.
+     */
+    public abstract void addAllTo(List<Deal> deals);
+
+    /**
+     * Evaluate every deal in this partition and offer the applicable ones to a selection.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Input stay length in days.
+     * @param ratePerNight Nightly rate of the hotel.
+     * @param selection Selection to offer applicable deals to.
+     */
+    public abstract void selectBest(LocalDate checkInDate, int stayLengthDays, int ratePerNight,
+            DealSelection selection);
+
+    /**
+     * Evaluate every deal in this partition for a stay with a given base price, such as one from
+     * a rate calendar, and offer the applicable ones to a selection.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Input stay length in days.
+     * @param basePrice Price of the stay before any deal.
+     * @param selection Selection to offer applicable deals to.
+     */
+    public void selectBestForBase(LocalDate checkInDate, int stayLengthDays, long basePrice, DealSelection selection)
+    {
+        for (int i = 0; i < this.size; i++)
+        {
+            Deal d = getDeal(i);
+            if (d.isStayLengthApplicable(stayLengthDays) && d.isCheckInDateApplicable(checkInDate))
+            {
+                selection.offer(d, d.calculateFinalValueForBase(basePrice, stayLengthDays), this.indexes[i]);
+            }
+        }
+    }
+
+    /**
+     * Evaluate every deal in this partition and offer the applicable ones to a ranking.
+     * Deals are checked for date and stay length before any price is computed.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Input stay length in days.
+     * @param basePrice Price of the stay before any deal.
+     * @param ranking Ranking to offer applicable deals to.
+     */
+    public void rank(LocalDate checkInDate, int stayLengthDays, long basePrice, DealRanking ranking)
+    {
+        for (int i = 0; i < this.size; i++)
+        {
+            Deal d = getDeal(i);
+            if (d.isStayLengthApplicable(stayLengthDays) && d.isCheckInDateApplicable(checkInDate))
+            {
+                ranking.offer(d, d.calculateFinalValueForBase(basePrice, stayLengthDays), this.indexes[i]);
+            }
+        }
+    }
+
+    /**
+     * Grow the deal array of the subclass.
+     * @param newCapacity New capacity of the array.
+     */
+    protected abstract void growDeals(int newCapacity);
+
+    /**
+     * Store a deal in the deal array of the subclass.
+     * @param slot Slot in array.
+     * @param deal Deal to store. Already checked to be of this partition's type.
+     */
+    protected abstract void storeDeal(int slot, Deal deal);
+}
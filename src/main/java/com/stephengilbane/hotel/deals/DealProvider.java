@@ -0,0 +1,54 @@
+package com.stephengilbane.hotel.deals;
+
+import java.time.LocalDate;
+
+/**
+ * Service provider interface for a type of deal.
+ * 
+ * A provider creates deals of its type from the fields of a configuration line, and creates
+ * the partitions that hold and evaluate those deals for each hotel. Providers are registered
+ * with {@link DealRegistry}, either directly or through java.util.ServiceLoader by listing the
+ * class name in META-INF/services/com.stephengilbane.hotel.deals.DealProvider.
+ */
+public interface DealProvider
+{
+    /**
+     * @return DealType handled by this provider.
+     */
+    DealType getDealType();
+
+    /**
+     * Create a new deal of this provider's type.
+     * @param promoTxt Promotional text displayed to user.
+     * @param val Deal value applied with the type's specific algorithm.
+     * @param startDate Start of deal.
+     * @param endDate End of deal.
+     * @return Newly created Deal object.
+     */
+    Deal createDeal(String promoTxt, int val, LocalDate startDate, LocalDate endDate);
+
+    /**
+     * Create a new deal of this provider's type, with optional terms.
+     * Providers that do not override this only accept DealTerms.NONE.
+     * @param promoTxt Promotional text displayed to user.
+     * @param val Deal value applied with the type's specific algorithm.
+     * @param startDate Start of deal.
+     * @param endDate End of deal.
+     * @param terms Optional terms of the deal.
+     * @return Newly created Deal object.
+     * @throws IllegalArgumentException if this provider does not support the terms.
+     */
+    default Deal createDeal(String promoTxt, int val, LocalDate startDate, LocalDate endDate, DealTerms terms)
+    {
+        if (terms != DealTerms.NONE)
+        {
+            throw new IllegalArgumentException("Deal type " + getDealType().getToken() + " does not support deal terms");
+        }
+        return createDeal(promoTxt, val, startDate, endDate);
+    }
+
+    /**
+     * @return new, empty partition for deals of this provider's type.
+     */
+    DealPartition createPartition();
+}
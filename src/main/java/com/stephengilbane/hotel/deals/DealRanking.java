@@ -0,0 +1,222 @@
+package com.stephengilbane.hotel.deals;
+
+/**
+ * Mutable holder for the K best deals found so far while evaluating the deals of a hotel.
+ *
+ * Candidates are kept in a bounded max-heap ordered by price, then by position within the hotel,
+ * so offering N candidates costs O(N log K) without sorting them all. Ties are resolved like
+ * {@link DealSelection}: the deal added to the hotel first ranks higher.
+ */
+public final class DealRanking
+{
+    private final int capacity;
+    private final DealFilter filter;
+    private final Deal[] deals;
+    private final int[] prices;
+    private final int[] indexes;
+    private int size;
+    private boolean sorted;
+
+    /**
+     * Constructor. Ranking starts out empty.
+     * @param k Number of deals to keep. Must be positive.
+     * @param f Filter candidates must pass.
+     * @throws IllegalArgumentException if k is not positive or no filter is given.
+     */
+    public DealRanking(int k, DealFilter f)
+    {
+        if (k <= 0)
+        {
+            throw new IllegalArgumentException("Invalid number of deals " + k);
+        }
+        if (f == null)
+        {
+            throw new IllegalArgumentException("Deal filter must be provided!");
+        }
+        this.capacity = k;
+        this.filter = f;
+        this.deals = new Deal[k];
+        this.prices = new int[k];
+        this.indexes = new int[k];
+    }
+
+    /**
+     * @return filter candidates must pass.
+     */
+    public DealFilter getFilter()
+    {
+        return this.filter;
+    }
+
+    /**
+     * Clear this ranking so that it may be reused for another search.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < this.size; i++)
+        {
+            this.deals[i] = null;
+        }
+        this.size = 0;
+        this.sorted = false;
+    }
+
+    /**
+     * Offer a candidate deal to this ranking.
+     * @param deal Candidate deal.
+     * @param price Final price of the stay with this deal applied.
+     * @param index Position of the deal within its hotel, used to break ties.
+     * @throws IllegalStateException if the ranking was already sorted.
+     */
+    public void offer(Deal deal, int price, int index)
+    {
+        if (this.sorted)
+        {
+            throw new IllegalStateException("Ranking already sorted");
+        }
+        if (!this.filter.acceptsPrice(price))
+        {
+            return;
+        }
+        if (this.size < this.capacity)
+        {
+            int i = this.size++;
+            set(i, deal, price, index);
+            siftUp(i);
+        }
+        else if (isBefore(price, index, this.prices[0], this.indexes[0]))
+        {
+            set(0, deal, price, index);
+            siftDown(0, this.size);
+        }
+    }
+
+    /**
+     * Put the ranked deals in order, best first. No more candidates may be offered until reset.
+     */
+    public void sort()
+    {
+        if (this.sorted)
+        {
+            return;
+        }
+        // Heap sort: moving the worst deal to the end each time leaves the best one first.
+        for (int end = this.size - 1; end > 0; end--)
+        {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        this.sorted = true;
+    }
+
+    /**
+     * @return number of deals ranked, at most K.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @param rank Rank from 0 to size() - 1. The ranking must be sorted.
+     * @return deal of that rank.
+     */
+    public Deal getDeal(int rank)
+    {
+        checkSorted();
+        return this.deals[rank];
+    }
+
+    /**
+     * @param rank Rank from 0 to size() - 1. The ranking must be sorted.
+     * @return final price of the deal of that rank.
+     */
+    public int getPrice(int rank)
+    {
+        checkSorted();
+        return this.prices[rank];
+    }
+
+    /**
+     * @param rank Rank from 0 to size() - 1. The ranking must be sorted.
+     * @return position within its hotel of the deal of that rank.
+     */
+    public int getIndex(int rank)
+    {
+        checkSorted();
+        return this.indexes[rank];
+    }
+
+    private void checkSorted()
+    {
+        if (!this.sorted)
+        {
+            throw new IllegalStateException("Ranking must be sorted first");
+        }
+    }
+
+    private static boolean isBefore(int price, int index, int otherPrice, int otherIndex)
+    {
+        return price < otherPrice || (price == otherPrice && index < otherIndex);
+    }
+
+    // The heap keeps the worst ranked deal at the root.
+    private boolean isWorse(int a, int b)
+    {
+        return isBefore(this.prices[b], this.indexes[b], this.prices[a], this.indexes[a]);
+    }
+
+    private void siftUp(int i)
+    {
+        while (i > 0)
+        {
+            int parent = (i - 1) / 2;
+            if (!isWorse(i, parent))
+            {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int end)
+    {
+        while (true)
+        {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < end && isWorse(left, worst))
+            {
+                worst = left;
+            }
+            if (right < end && isWorse(right, worst))
+            {
+                worst = right;
+            }
+            if (worst == i)
+            {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void set(int i, Deal deal, int price, int index)
+    {
+        this.deals[i] = deal;
+        this.prices[i] = price;
+        this.indexes[i] = index;
+    }
+
+    private void swap(int a, int b)
+    {
+        Deal d = this.deals[a];
+        int p = this.prices[a];
+        int x = this.indexes[a];
+        set(a, this.deals[b], this.prices[b], this.indexes[b]);
+        set(b, d, p, x);
+    }
+}
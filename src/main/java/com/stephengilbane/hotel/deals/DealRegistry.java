@@ -0,0 +1,67 @@
+package com.stephengilbane.hotel.deals;
+
+import java.util.ServiceLoader;
+
+/**
+ * Registry of the DealProviders known to this application, indexed by DealType.
+ * 
+ * The built-in deal types are registered when this class is loaded. Additional providers are
+ * then picked up through java.util.ServiceLoader, and may replace a built-in provider for the
+ * same DealType.
+ */
+public final class DealRegistry
+{
+    private static final DealProvider[] providers = new DealProvider[DealType.values().length];
+
+    static
+    {
+        register(new NoDealPartition.Provider());
+        register(new FlatRebateDealPartition.Provider());
+        register(new FlatRebateThreePlusDealPartition.Provider());
+        register(new PercentRebateDealPartition.Provider());
+        for (DealProvider p : ServiceLoader.load(DealProvider.class))
+        {
+            register(p);
+        }
+    }
+
+    /**
+     * Register a provider, replacing any provider previously registered for its DealType.
+     * @param provider Provider to register. Must not be null.
+     */
+    public static synchronized void register(DealProvider provider)
+    {
+        if (provider == null || provider.getDealType() == null)
+        {
+            throw new IllegalArgumentException("Invalid null deal provider!");
+        }
+        providers[provider.getDealType().ordinal()] = provider;
+    }
+
+    /**
+     * Find the provider for a DealType.
+     * @param type DealType to look up.
+     * @return Corresponding provider, or null if none is registered.
+     */
+    public static synchronized DealProvider forType(DealType type)
+    {
+        if (type == null)
+        {
+            return null;
+        }
+        return providers[type.ordinal()];
+    }
+
+    /**
+     * Find the provider for a string token from the configuration file.
+     * @param token Token to look up.
+     * @return Corresponding provider, or null if the token is unknown or no provider is registered.
+     */
+    public static DealProvider forToken(String token)
+    {
+        return forType(DealType.fromToken(token));
+    }
+
+    // Class not instantiatable.
+    private DealRegistry() {}
+}
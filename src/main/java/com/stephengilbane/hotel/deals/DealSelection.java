@@ -0,0 +1,79 @@
+package com.stephengilbane.hotel.deals;
+
+/**
+ * Mutable holder for the best deal found so far while evaluating the deals of a hotel.
+ * Ties on price are resolved in favor of the deal that was added to the hotel first,
+ * which is the same order a simple scan of all deals would produce.
+ */
+public final class DealSelection
+{
+    private Deal bestDeal;
+    private int bestPrice;
+    private int bestIndex;
+
+    /**
+     * Constructor. Selection starts out empty.
+     */
+    public DealSelection()
+    {
+        reset();
+    }
+
+    /**
+     * Clear this selection so that it may be reused for another search.
+     */
+    public void reset()
+    {
+        this.bestDeal = Deal.NO_DEAL;
+        this.bestPrice = Integer.MAX_VALUE;
+        this.bestIndex = -1;
+    }
+
+    /**
+     * Offer a candidate deal to this selection.
+     * @param deal Candidate deal.
+     * @param price Final price of the stay with this deal applied.
+     * @param index Position of the deal within its hotel, used to break ties.
+     */
+    public void offer(Deal deal, int price, int index)
+    {
+        if (price < this.bestPrice || (price == this.bestPrice && index < this.bestIndex))
+        {
+            this.bestDeal = deal;
+            this.bestPrice = price;
+            this.bestIndex = index;
+        }
+    }
+
+    /**
+     * @return true if any deal has been selected.
+     */
+    public boolean hasDeal()
+    {
+        return this.bestIndex >= 0;
+    }
+
+    /**
+     * @return best deal found, or Deal.NO_DEAL if none was found.
+     */
+    public Deal getBestDeal()
+    {
+        return this.bestDeal;
+    }
+
+    /**
+     * @return final price of the best deal, or Integer.MAX_VALUE if none was found.
+     */
+    public int getBestPrice()
+    {
+        return this.bestPrice;
+    }
+
+    /**
+     * @return position of the best deal within its hotel, or -1 if none was found.
+     */
+    public int getBestIndex()
+    {
+        return this.bestIndex;
+    }
+}
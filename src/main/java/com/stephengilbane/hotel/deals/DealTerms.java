@@ -0,0 +1,98 @@
+package com.stephengilbane.hotel.deals;
+
+/**
+ *  Optional terms of a deal, given when the deal is created. Deals are shared between
+ *  partitions, envelopes and versions, so their terms cannot change afterwards.
+ *  Instances are immutable; each with...() method returns a copy.
+ */
+public final class DealTerms
+{
+    /** No optional terms. */
+    public static final DealTerms NONE = new DealTerms(-1, null, 0);
+
+    private final int promoCode;
+    private final StackingRule stackingRule;
+    private final int quantityCap;
+
+    private DealTerms(int code, StackingRule rule, int quantity)
+    {
+        this.promoCode = code;
+        this.stackingRule = rule;
+        this.quantityCap = quantity;
+    }
+
+    /**
+     * @return  code of the promotional text in the StringDictionary of the load that created
+     *          the deal, or -1 if the text was not encoded.
+     */
+    public int getPromoCode()
+    {
+        return this.promoCode;
+    }
+
+    /**
+     * @return  rule for combining the deal with others, or null if it does not stack.
+     */
+    public StackingRule getStackingRule()
+    {
+        return this.stackingRule;
+    }
+
+    /**
+     * @param code Dictionary code of the promotional text. Must not be negative.
+     * @return copy of these terms with the code.
+     */
+    public DealTerms withPromoCode(int code)
+    {
+        if (code < 0)
+        {
+            throw new IllegalArgumentException("Invalid promotional text code " + code);
+        }
+        return new DealTerms(code, this.stackingRule, this.quantityCap);
+    }
+
+    /**
+     * @param rule Stacking rule of the deal.
+     * @return copy of these terms with the rule.
+     * @throws IllegalArgumentException if no rule is given, or these terms already have one.
+     */
+    public DealTerms withStackingRule(StackingRule rule)
+    {
+        if (rule == null)
+        {
+            throw new IllegalArgumentException("Stacking rule must be provided!");
+        }
+        if (this.stackingRule != null)
+        {
+            throw new IllegalArgumentException("Stacking rule already set!");
+        }
+        return new DealTerms(this.promoCode, rule, this.quantityCap);
+    }
+
+    /**
+     * @return  number of redemptions the deal is limited to, or 0 if its quantity is not limited.
+     */
+    public int getQuantityCap()
+    {
+        return this.quantityCap;
+    }
+
+    /**
+     * @param quantity Number of redemptions the deal is limited to. Must be positive.
+     * @return copy of these terms with the quantity.
+     * @throws IllegalArgumentException if the quantity is not positive, or these terms already
+     *             have one.
+     */
+    public DealTerms withQuantityCap(int quantity)
+    {
+        if (quantity <= 0)
+        {
+            throw new IllegalArgumentException("Deal quantity must be positive: " + quantity);
+        }
+        if (this.quantityCap > 0)
+        {
+            throw new IllegalArgumentException("Deal quantity already set!");
+        }
+        return new DealTerms(this.promoCode, this.stackingRule, quantity);
+    }
+}
@@ -5,7 +5,7 @@ import java.time.LocalDate;
 /**
  *  Deal that represents a straight discount (i.e., fixed amount) off the total price of the stay.
  */
-public class FlatRebateDeal 
+public final class FlatRebateDeal 
 extends Deal
 {
     private int  rebateAmount;
@@ -19,8 +19,22 @@ extends Deal
      */
     public FlatRebateDeal(String pTxt, int amt, LocalDate startDt, LocalDate endDt)
     {
-        super(DealType.FLAT_REBATE, pTxt, startDt, endDt, 1);
+        this(pTxt, amt, startDt, endDt, DealTerms.NONE);
+    }
+
+    /**
+     * Constructor.
+     * @param pTxt Promotional text to display to user.
+     * @param amt Amount of straight discount. Negative values result in a discount; positive values are a premium.
+     * @param startDt Start date of discount.
+     * @param endDt End date of discount.
+     * @param terms Optional terms of the deal.
+     */
+    public FlatRebateDeal(String pTxt, int amt, LocalDate startDt, LocalDate endDt, DealTerms terms)
+    {
+        super(DealType.FLAT_REBATE, pTxt, startDt, endDt, 1, terms);
         this.rebateAmount = amt;
+        checkTerms();
     }
 
     /**
@@ -44,4 +58,22 @@ extends Deal
     {
         return this.rebateAmount;
     }
+
+    @Override
+    public boolean isLinear()
+    {
+        return true;
+    }
+
+    @Override
+    public int getRateMultiplierPercent()
+    {
+        return 100;
+    }
+
+    @Override
+    public int getFlatAdjustment()
+    {
+        return this.rebateAmount;
+    }
 }
@@ -6,7 +6,7 @@ import java.time.LocalDate;
  *  Deal that represents a straight discount (i.e., fixed amount) off the total price of any stay
  *  that is three days or longer in length.
  */
-public class FlatRebateThreePlusDeal 
+public final class FlatRebateThreePlusDeal 
 extends Deal
 {
     private int  rebateAmount;
@@ -20,8 +20,22 @@ extends Deal
      */
     public FlatRebateThreePlusDeal(String pTxt, int amt, LocalDate startDt, LocalDate endDt)
     {
-        super(DealType.FLAT_REBATE_3PLUS, pTxt, startDt, endDt, 3);
+        this(pTxt, amt, startDt, endDt, DealTerms.NONE);
+    }
+
+    /**
+     * Constructor.
+     * @param pTxt Promotional text to display to user.
+     * @param amt Amount of straight discount.  Negative values result in a discount; positive values are a premium.
+     * @param startDt Start date of discount.
+     * @param endDt End date of discount.
+     * @param terms Optional terms of the deal.
+     */
+    public FlatRebateThreePlusDeal(String pTxt, int amt, LocalDate startDt, LocalDate endDt, DealTerms terms)
+    {
+        super(DealType.FLAT_REBATE_3PLUS, pTxt, startDt, endDt, 3, terms);
         this.rebateAmount = amt;
+        checkTerms();
     }
 
     /**
@@ -45,5 +59,22 @@ extends Deal
     {
         return this.rebateAmount;
     }
-}
 
+    @Override
+    public boolean isLinear()
+    {
+        return true;
+    }
+
+    @Override
+    public int getRateMultiplierPercent()
+    {
+        return 100;
+    }
+
+    @Override
+    public int getFlatAdjustment()
+    {
+        return this.rebateAmount;
+    }
+}
@@ -0,0 +1,102 @@
+package com.stephengilbane.hotel.deals;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *  Partition holding the FlatRebateThreePlusDeals of one hotel.
+ */
+public final class FlatRebateThreePlusDealPartition
+extends DealPartition
+{
+    private FlatRebateThreePlusDeal[] deals = new FlatRebateThreePlusDeal[indexes.length];
+
+    @Override
+    public DealType getDealType()
+    {
+        return DealType.FLAT_REBATE_3PLUS;
+    }
+
+    @Override
+    public boolean isLinear()
+    {
+        return true;
+    }
+
+    @Override
+    public Deal getDeal(int slot)
+    {
+        return this.deals[slot];
+    }
+
+    @Override
+    public void addAllTo(List<Deal> list)
+    {
+        for (int i = 0; i < this.size; i++)
+        {
+            list.add(this.deals[i]);
+        }
+    }
+
+    @Override
+    public void selectBest(LocalDate checkInDate, int stayLengthDays, int ratePerNight, DealSelection selection)
+    {
+        FlatRebateThreePlusDeal[] ds = this.deals;
+        for (int i = 0; i < this.size; i++)
+        {
+            FlatRebateThreePlusDeal d = ds[i];
+            if (!d.isStayLengthApplicable(stayLengthDays))
+            {
+                continue;
+            }
+            if (!d.isCheckInDateApplicable(checkInDate))
+            {
+                continue;
+            }
+            selection.offer(d, d.calculateFinalValue(ratePerNight, stayLengthDays), this.indexes[i]);
+        }
+    }
+
+    @Override
+    protected void growDeals(int newCapacity)
+    {
+        this.deals = Arrays.copyOf(this.deals, newCapacity);
+    }
+
+    @Override
+    protected void storeDeal(int slot, Deal deal)
+    {
+        this.deals[slot] = (FlatRebateThreePlusDeal) deal;
+    }
+
+    /**
+     * Provider of FlatRebateThreePlusDeals and their partitions.
+     */
+    public static final class Provider implements DealProvider
+    {
+        @Override
+        public DealType getDealType()
+        {
+            return DealType.FLAT_REBATE_3PLUS;
+        }
+
+        @Override
+        public Deal createDeal(String promoTxt, int val, LocalDate startDate, LocalDate endDate)
+        {
+            return new FlatRebateThreePlusDeal(promoTxt, val, startDate, endDate);
+        }
+
+        @Override
+        public Deal createDeal(String promoTxt, int val, LocalDate startDate, LocalDate endDate, DealTerms terms)
+        {
+            return new FlatRebateThreePlusDeal(promoTxt, val, startDate, endDate, terms);
+        }
+
+        @Override
+        public DealPartition createPartition()
+        {
+            return new FlatRebateThreePlusDealPartition();
+        }
+    }
+}
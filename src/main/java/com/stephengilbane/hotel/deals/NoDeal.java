@@ -5,7 +5,7 @@ import java.time.LocalDate;
 /**
  *  Pseudo-deal that represents no discount to the input rate.
  */
-public class NoDeal 
+public final class NoDeal 
 extends Deal
 {
     /**
@@ -39,4 +39,21 @@ extends Deal
         return 0;
     }
 
+    @Override
+    public boolean isLinear()
+    {
+        return true;
+    }
+
+    @Override
+    public int getRateMultiplierPercent()
+    {
+        return 100;
+    }
+
+    @Override
+    public int getFlatAdjustment()
+    {
+        return 0;
+    }
 }
@@ -0,0 +1,102 @@
+package com.stephengilbane.hotel.deals;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *  Partition holding the pseudo-deals of one hotel that represent no discount.
+ */
+public final class NoDealPartition
+extends DealPartition
+{
+    private NoDeal[] deals = new NoDeal[indexes.length];
+
+    @Override
+    public DealType getDealType()
+    {
+        return DealType.NO_DEAL;
+    }
+
+    @Override
+    public boolean isLinear()
+    {
+        return true;
+    }
+
+    @Override
+    public Deal getDeal(int slot)
+    {
+        return this.deals[slot];
+    }
+
+    @Override
+    public void addAllTo(List<Deal> list)
+    {
+        for (int i = 0; i < this.size; i++)
+        {
+            list.add(this.deals[i]);
+        }
+    }
+
+    @Override
+    public void selectBest(LocalDate checkInDate, int stayLengthDays, int ratePerNight, DealSelection selection)
+    {
+        NoDeal[] ds = this.deals;
+        for (int i = 0; i < this.size; i++)
+        {
+            NoDeal d = ds[i];
+            if (!d.isStayLengthApplicable(stayLengthDays))
+            {
+                continue;
+            }
+            if (!d.isCheckInDateApplicable(checkInDate))
+            {
+                continue;
+            }
+            selection.offer(d, d.calculateFinalValue(ratePerNight, stayLengthDays), this.indexes[i]);
+        }
+    }
+
+    @Override
+    protected void growDeals(int newCapacity)
+    {
+        this.deals = Arrays.copyOf(this.deals, newCapacity);
+    }
+
+    @Override
+    protected void storeDeal(int slot, Deal deal)
+    {
+        this.deals[slot] = (NoDeal) deal;
+    }
+
+    /**
+     * Provider for the NO_DEAL pseudo-type. Always creates the Deal.NO_DEAL singleton.
+     */
+    public static final class Provider implements DealProvider
+    {
+        @Override
+        public DealType getDealType()
+        {
+            return DealType.NO_DEAL;
+        }
+
+        @Override
+        public Deal createDeal(String promoTxt, int val, LocalDate startDate, LocalDate endDate)
+        {
+            return Deal.NO_DEAL;
+        }
+
+        @Override
+        public Deal createDeal(String promoTxt, int val, LocalDate startDate, LocalDate endDate, DealTerms terms)
+        {
+            return Deal.NO_DEAL;
+        }
+
+        @Override
+        public DealPartition createPartition()
+        {
+            return new NoDealPartition();
+        }
+    }
+}
@@ -5,7 +5,7 @@ import java.time.LocalDate;
 /**
  *  Deal that represents a straight discount (i.e., fixed amount) off the total price of the stay.
  */
-public class PercentRebateDeal
+public final class PercentRebateDeal
 extends Deal
 {
     private int rebatePercent;
@@ -19,7 +19,20 @@ extends Deal
      */
     public PercentRebateDeal(String pTxt, int pct, LocalDate startDt, LocalDate endDt)
     {
-        super(DealType.REBATE_PERCENT, pTxt, startDt, endDt, 1);
+        this(pTxt, pct, startDt, endDt, DealTerms.NONE);
+    }
+
+    /**
+     * Constructor.
+     * @param pTxt Promotional text to display to user.
+     * @param amt Percentage of discount on full amount.  Must be negative. Invalid values are set to 100%.
+     * @param startDt Start date of discount.
+     * @param endDt End date of discount.
+     * @param terms Optional terms of the deal.
+     */
+    public PercentRebateDeal(String pTxt, int pct, LocalDate startDt, LocalDate endDt, DealTerms terms)
+    {
+        super(DealType.REBATE_PERCENT, pTxt, startDt, endDt, 1, terms);
         
         // We are forgiving here and set any odd values to default to 100% (no actual deal).
         if (pct < -100 || pct > 0)
@@ -27,6 +40,7 @@ extends Deal
             pct = 100;
         }
         this.rebatePercent = pct;
+        checkTerms();
     }
 
     /**
@@ -51,4 +65,22 @@ extends Deal
     {
         return this.rebatePercent;
     }
+
+    @Override
+    public boolean isLinear()
+    {
+        return true;
+    }
+
+    @Override
+    public int getRateMultiplierPercent()
+    {
+        return 100 + this.rebatePercent;
+    }
+
+    @Override
+    public int getFlatAdjustment()
+    {
+        return 0;
+    }
 }
@@ -0,0 +1,43 @@
+package com.stephengilbane.hotel.deals;
+
+/**
+ *  Order in which the deals of a stack are applied to the price of a stay.
+ */
+public enum StackingOrder
+{
+    /** Percentage deals are applied to the base price, then flat rebates are added. */
+    PERCENT_FIRST("percent_first"),
+    /** Flat rebates are added to the base price, then percentage deals are applied. */
+    FLAT_FIRST("flat_first");
+
+    private final String token;
+
+    /**
+     * Constructor
+     * @param t  Token in configuration file indicating the order.
+     */
+    private StackingOrder(String t)
+    {
+        token = t;
+    }
+
+    /** @return Token in configuration file indicating this order. */
+    public String getToken() { return token; }
+
+    /**
+     * Convert a string token to a StackingOrder.
+     * @param s String to convert.
+     * @return  Corresponding StackingOrder or null if not found.
+     */
+    public static StackingOrder fromToken(String s)
+    {
+        for (StackingOrder o : StackingOrder.values())
+        {
+            if (o.token.equals(s))
+            {
+                return o;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,69 @@
+package com.stephengilbane.hotel.deals;
+
+/**
+ *  Rule that lets deals of the same stacking group be combined on one stay.
+ *  All deals of a group within a hotel must have the same rule.
+ */
+public final class StackingRule
+{
+    private final String group;
+    private final int maxPerStay;
+    private final StackingOrder order;
+
+    /**
+     * Constructor.
+     * @param g Name of the stacking group. Deals only stack with deals of the same group.
+     * @param max Maximum number of deals of the group applied to one stay. Must be positive.
+     * @param o Order in which percentage and flat deals of the group are applied.
+     */
+    public StackingRule(String g, int max, StackingOrder o)
+    {
+        if (g == null || g.trim().isEmpty())
+        {
+            throw new IllegalArgumentException("Stacking group must be provided!");
+        }
+        if (max <= 0)
+        {
+            throw new IllegalArgumentException("Invalid maximum deals per stay " + max);
+        }
+        if (o == null)
+        {
+            throw new IllegalArgumentException("Stacking order must be provided!");
+        }
+        this.group = g;
+        this.maxPerStay = max;
+        this.order = o;
+    }
+
+    /** @return name of the stacking group. */
+    public String getGroup() { return group; }
+
+    /** @return maximum number of deals of the group applied to one stay. */
+    public int getMaxPerStay() { return maxPerStay; }
+
+    /** @return order in which percentage and flat deals of the group are applied. */
+    public StackingOrder getOrder() { return order; }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof StackingRule))
+        {
+            return false;
+        }
+        StackingRule other = (StackingRule) o;
+        return this.group.equals(other.group) && this.maxPerStay == other.maxPerStay && this.order == other.order;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (this.group.hashCode() * 31 + this.maxPerStay) * 31 + this.order.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s (up to %d, %s)", this.group, this.maxPerStay, this.order);
+    }
+}
@@ -0,0 +1,36 @@
+package com.stephengilbane.hotel.index;
+
+import java.time.LocalDate;
+
+/**
+ *  Granularity of the date buckets of a {@link HotelDateIndex}.
+ */
+public enum DateBucketing
+{
+    /** One bucket per day. The index is exact. */
+    DAY,
+    /** One bucket per week, starting on Monday. */
+    WEEK,
+    /** One bucket per calendar month. */
+    MONTH;
+
+    // Epoch day 0 was a Thursday, so Monday-based weeks start 3 days earlier.
+    private static final int DAYS_BEFORE_EPOCH_WEEK = 3;
+
+    /**
+     * @param date Date to bucket.
+     * @return number of the bucket holding the date. Consecutive buckets have consecutive numbers.
+     */
+    public int bucketOf(LocalDate date)
+    {
+        switch (this)
+        {
+            case DAY:
+                return (int) date.toEpochDay();
+            case WEEK:
+                return (int) Math.floorDiv(date.toEpochDay() + DAYS_BEFORE_EPOCH_WEEK, 7);
+            default:
+                return date.getYear() * 12 + date.getMonthValue() - 1;
+        }
+    }
+}
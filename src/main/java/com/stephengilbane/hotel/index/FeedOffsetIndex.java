@@ -0,0 +1,483 @@
+package com.stephengilbane.hotel.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.stephengilbane.hotel.ParserUtils;
+
+/**
+ * Sidecar index of a hotel deal CSV file, mapping each hotel to the byte ranges of its lines,
+ * so that the lines of one hotel can be read without scanning the whole file.
+ *
+ * Hotels are keyed by a 64-bit hash of their trimmed name as UTF-8 bytes. Hotels whose hashes
+ * collide share an entry, so readers must still check the name of every line they read.
+ * Consecutive lines of one hotel form a single range.
+ *
+ * The index records the length, modification time and CRC32 checksum of the file it was built
+ * from, and a CRC32 of a sample of its blocks. The length, time and sample are checked every
+ * time the index is opened, so that a rewrite that keeps the length and time is still caught
+ * where it changes a sampled block; the full checksum, which takes a full read of the file,
+ * only by verify().
+ *
+ * File layout, big-endian: magic, version, source length, source modification time, source
+ * CRC32, sample CRC32, hash count, range count; then for each hash in ascending order the hash
+ * and its number of ranges; then the offset and length of every range, grouped by hash.
+ */
+public final class FeedOffsetIndex
+{
+    /** Suffix added to the name of a CSV file to name its index. */
+    public static final String SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x48444649;
+    private static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+    // The sample checksum covers this many blocks of this size, spread evenly over the file.
+    private static final int SAMPLE_BLOCKS = 16;
+    private static final int SAMPLE_BLOCK_SIZE = 4096;
+
+    private final long sourceLength;
+    private final long sourceModified;
+    private final long sourceChecksum;
+    private final long sampleChecksum;
+    private final long[] hashes;
+    // Ranges of hash i are firstRange[i] to firstRange[i + 1], exclusive.
+    private final int[] firstRange;
+    private final long[] rangeOffsets;
+    private final int[] rangeLengths;
+
+    private FeedOffsetIndex(long length, long modified, long checksum, long sample, long[] h, int[] first,
+            long[] offsets, int[] lengths)
+    {
+        this.sourceLength = length;
+        this.sourceModified = modified;
+        this.sourceChecksum = checksum;
+        this.sampleChecksum = sample;
+        this.hashes = h;
+        this.firstRange = first;
+        this.rangeOffsets = offsets;
+        this.rangeLengths = lengths;
+    }
+
+    /**
+     * @param csv Deal CSV file.
+     * @return sidecar index file of the CSV file.
+     */
+    public static File sidecarFor(File csv)
+    {
+        return new File(csv.getPath() + SUFFIX);
+    }
+
+    /**
+     * Build the index of a CSV file by scanning it once.
+     * @param csv File to index.
+     * @return new index.
+     * @throws IOException on any I/O problem.
+     */
+    public static FeedOffsetIndex build(File csv) throws IOException
+    {
+        long modified = csv.lastModified();
+        CRC32 crc = new CRC32();
+        Map<Long, List<long[]>> ranges = new HashMap<Long, List<long[]>>();
+        long length = 0;
+        try (InputStream in = new FileInputStream(csv))
+        {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int start = 0;
+            int end = 0;
+            long bufOffset = 0;
+            long lastHash = 0;
+            long[] lastRange = null;
+            boolean eof = false;
+            while (true)
+            {
+                int nl = -1;
+                for (int i = start; i < end && nl < 0; i++)
+                {
+                    nl = (buf[i] == '\n') ? i : -1;
+                }
+                if (nl >= 0 || (eof && start < end))
+                {
+                    int lineEnd = (nl >= 0) ? nl + 1 : end;
+                    long hash = hashFirstField(buf, start, lineEnd);
+                    long offset = bufOffset + start;
+                    if (lastRange != null && lastHash == hash && lastRange[0] + lastRange[1] == offset
+                            && lastRange[1] + lineEnd - start <= Integer.MAX_VALUE)
+                    {
+                        lastRange[1] += lineEnd - start;
+                    }
+                    else
+                    {
+                        lastRange = new long[] { offset, lineEnd - start };
+                        lastHash = hash;
+                        List<long[]> list = ranges.get(hash);
+                        if (list == null)
+                        {
+                            list = new ArrayList<long[]>(1);
+                            ranges.put(hash, list);
+                        }
+                        list.add(lastRange);
+                    }
+                    start = lineEnd;
+                    continue;
+                }
+                if (eof)
+                {
+                    break;
+                }
+                // No whole line left: make room to read more.
+                if (start > 0)
+                {
+                    System.arraycopy(buf, start, buf, 0, end - start);
+                    bufOffset += start;
+                    end -= start;
+                    start = 0;
+                }
+                else if (end == buf.length)
+                {
+                    buf = Arrays.copyOf(buf, 2 * buf.length);
+                }
+                int n = in.read(buf, end, buf.length - end);
+                if (n < 0)
+                {
+                    eof = true;
+                }
+                else
+                {
+                    crc.update(buf, end, n);
+                    end += n;
+                    length += n;
+                }
+            }
+        }
+
+        long[] h = new long[ranges.size()];
+        int i = 0;
+        for (Long key : ranges.keySet())
+        {
+            h[i++] = key;
+        }
+        Arrays.sort(h);
+        int[] first = new int[h.length + 1];
+        for (i = 0; i < h.length; i++)
+        {
+            first[i + 1] = first[i] + ranges.get(h[i]).size();
+        }
+        long[] offsets = new long[first[h.length]];
+        int[] lengths = new int[first[h.length]];
+        for (i = 0; i < h.length; i++)
+        {
+            List<long[]> list = ranges.get(h[i]);
+            for (int k = 0; k < list.size(); k++)
+            {
+                offsets[first[i] + k] = list.get(k)[0];
+                lengths[first[i] + k] = (int) list.get(k)[1];
+            }
+        }
+        return new FeedOffsetIndex(length, modified, crc.getValue(), sampleChecksum(csv, length), h, first, offsets,
+                lengths);
+    }
+
+    /**
+     * Write this index to a file.
+     * @param idx File to write.
+     * @throws IOException on any I/O problem.
+     */
+    public void write(File idx) throws IOException
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(idx))))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(this.sourceLength);
+            out.writeLong(this.sourceModified);
+            out.writeLong(this.sourceChecksum);
+            out.writeLong(this.sampleChecksum);
+            out.writeInt(this.hashes.length);
+            out.writeInt(this.rangeOffsets.length);
+            for (int i = 0; i < this.hashes.length; i++)
+            {
+                out.writeLong(this.hashes[i]);
+                out.writeInt(this.firstRange[i + 1] - this.firstRange[i]);
+            }
+            for (int r = 0; r < this.rangeOffsets.length; r++)
+            {
+                out.writeLong(this.rangeOffsets[r]);
+                out.writeInt(this.rangeLengths[r]);
+            }
+        }
+    }
+
+    /**
+     * Read an index from a file.
+     * @param idx File to read.
+     * @return the index.
+     * @throws IOException on any I/O problem, or if the file is not an index.
+     */
+    public static FeedOffsetIndex read(File idx) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(idx))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                throw new IOException("Not a deal feed index: " + idx);
+            }
+            long length = in.readLong();
+            long modified = in.readLong();
+            long checksum = in.readLong();
+            long sample = in.readLong();
+            int hashCount = in.readInt();
+            int rangeCount = in.readInt();
+            if (hashCount < 0 || rangeCount < 0)
+            {
+                throw new IOException("Corrupt deal feed index: " + idx);
+            }
+            long[] h = new long[hashCount];
+            int[] first = new int[hashCount + 1];
+            for (int i = 0; i < hashCount; i++)
+            {
+                h[i] = in.readLong();
+                first[i + 1] = first[i] + in.readInt();
+            }
+            if (first[hashCount] != rangeCount)
+            {
+                throw new IOException("Corrupt deal feed index: " + idx);
+            }
+            long[] offsets = new long[rangeCount];
+            int[] lengths = new int[rangeCount];
+            for (int r = 0; r < rangeCount; r++)
+            {
+                offsets[r] = in.readLong();
+                lengths[r] = in.readInt();
+            }
+            return new FeedOffsetIndex(length, modified, checksum, sample, h, first, offsets, lengths);
+        }
+    }
+
+    /**
+     * Open the sidecar index of a CSV file if it is usable.
+     * @param csv Deal CSV file.
+     * @return the index, or null if there is none, it cannot be read, or it is stale by its
+     *         length, modification time or sample checksum.
+     */
+    public static FeedOffsetIndex openFresh(File csv)
+    {
+        File idx = sidecarFor(csv);
+        if (!idx.exists())
+        {
+            return null;
+        }
+        try
+        {
+            FeedOffsetIndex index = read(idx);
+            if (index.isStale(csv) || sampleChecksum(csv, index.sourceLength) != index.sampleChecksum)
+            {
+                return null;
+            }
+            return index;
+        }
+        catch (IOException ex)
+        {
+            System.out.println("Warning: ignoring index " + idx + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Quick staleness check, without reading the CSV file.
+     * @param csv Deal CSV file.
+     * @return true if the file's length or modification time differs from when it was indexed.
+     */
+    public boolean isStale(File csv)
+    {
+        return csv.length() != this.sourceLength || csv.lastModified() != this.sourceModified;
+    }
+
+    /**
+     * Full staleness check, reading the whole CSV file.
+     * @param csv Deal CSV file.
+     * @return true if the file has the length and checksum it was indexed with.
+     * @throws IOException on any I/O problem.
+     */
+    public boolean verify(File csv) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        long length = 0;
+        try (InputStream in = new FileInputStream(csv))
+        {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) > 0)
+            {
+                crc.update(buf, 0, n);
+                length += n;
+            }
+        }
+        return length == this.sourceLength && crc.getValue() == this.sourceChecksum;
+    }
+
+    /**
+     * CRC32 of evenly spaced blocks of a file, or of the whole file if it is no larger than the
+     * blocks. Reads at most SAMPLE_BLOCKS * SAMPLE_BLOCK_SIZE bytes.
+     */
+    private static long sampleChecksum(File csv, long length) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[SAMPLE_BLOCK_SIZE];
+        try (RandomAccessFile raf = new RandomAccessFile(csv, "r"))
+        {
+            long span = Math.max(0, length - SAMPLE_BLOCK_SIZE);
+            for (int b = 0; b < SAMPLE_BLOCKS; b++)
+            {
+                // First and last blocks always; blocks overlap once the file is small.
+                long offset = span * b / (SAMPLE_BLOCKS - 1);
+                int n = (int) Math.min(SAMPLE_BLOCK_SIZE, length - offset);
+                if (n <= 0 || offset + n > raf.length())
+                {
+                    break;
+                }
+                raf.seek(offset);
+                raf.readFully(buf, 0, n);
+                crc.update(buf, 0, n);
+                if (offset + n >= length)
+                {
+                    break;
+                }
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * @param hotelName Name of hotel.
+     * @return true if the index has lines for the hotel, or for a hotel whose name hash
+     *         collides with it.
+     */
+    public boolean mayContain(String hotelName)
+    {
+        byte[] name = hotelName.trim().getBytes(StandardCharsets.UTF_8);
+        return Arrays.binarySearch(this.hashes, hash(name, 0, name.length)) >= 0;
+    }
+
+    /**
+     * @return number of distinct hotel name hashes.
+     */
+    public int getHotelCount()
+    {
+        return this.hashes.length;
+    }
+
+    /**
+     * @return number of byte ranges.
+     */
+    public int getRangeCount()
+    {
+        return this.rangeOffsets.length;
+    }
+
+    /**
+     * Read the lines of a hotel, and of any hotel whose name hash collides with it.
+     * @param csv Deal CSV file this index was built from.
+     * @param hotelName Name of hotel.
+     * @return the lines, each ending in a newline; empty if the hotel is not in the index.
+     * @throws IOException on any I/O problem.
+     */
+    public byte[] readLines(File csv, String hotelName) throws IOException
+    {
+        byte[] name = hotelName.trim().getBytes(StandardCharsets.UTF_8);
+        int i = Arrays.binarySearch(this.hashes, hash(name, 0, name.length));
+        if (i < 0)
+        {
+            return new byte[0];
+        }
+        long total = 0;
+        for (int r = this.firstRange[i]; r < this.firstRange[i + 1]; r++)
+        {
+            total += this.rangeLengths[r] + 1;
+        }
+        if (total > Integer.MAX_VALUE - 8)
+        {
+            throw new IOException("Lines of hotel " + hotelName + " are too large to read");
+        }
+        byte[] lines = new byte[(int) total];
+        int pos = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(csv, "r"))
+        {
+            for (int r = this.firstRange[i]; r < this.firstRange[i + 1]; r++)
+            {
+                raf.seek(this.rangeOffsets[r]);
+                raf.readFully(lines, pos, this.rangeLengths[r]);
+                pos += this.rangeLengths[r];
+                // The last line of the file may have no newline of its own.
+                if (lines[pos - 1] != '\n')
+                {
+                    lines[pos++] = '\n';
+                }
+            }
+        }
+        return (pos == lines.length) ? lines : Arrays.copyOf(lines, pos);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d hotel hashes, %d ranges over %d bytes, crc32 %08x", this.hashes.length,
+                this.rangeOffsets.length, this.sourceLength, this.sourceChecksum);
+    }
+
+    /**
+     * Hash the first field of a line the way a full parse would find it: leading delimiters are
+     * skipped and the field is trimmed.
+     */
+    private static long hashFirstField(byte[] buf, int from, int to)
+    {
+        byte delim = (byte) ParserUtils.FIELD_DELIM.charAt(0);
+        int i = from;
+        while (i < to && buf[i] == delim)
+        {
+            i++;
+        }
+        int end = i;
+        while (end < to && buf[end] != delim && buf[end] != '\n')
+        {
+            end++;
+        }
+        while (i < end && (buf[i] & 0xFF) <= ' ')
+        {
+            i++;
+        }
+        while (end > i && (buf[end - 1] & 0xFF) <= ' ')
+        {
+            end--;
+        }
+        return hash(buf, i, end);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a range of bytes.
+     */
+    private static long hash(byte[] b, int from, int to)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++)
+        {
+            h ^= b[i] & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,250 @@
+package com.stephengilbane.hotel.index;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.stephengilbane.hotel.Hotel;
+import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealType;
+
+/**
+ * Secondary index from check-in date to the hotels that have a deal for it.
+ *
+ * Hotels are numbered in the order given to {@link #build(Collection, DateBucketing)}, and each
+ * date bucket holds a bitmap of hotel ids. Bitmaps are kept separately for each distinct minimum
+ * stay length, so that a stay length filter is applied by only combining the bitmaps of deals the
+ * stay qualifies for. Bitmaps are returned as BitSets that callers may intersect with their own
+ * hotel filters.
+ *
+ * With DAY buckets the index is exact. Coarser buckets give a smaller index whose bitmaps are a
+ * superset of the hotels with a deal on a given date.
+ *
+ * An index is immutable once built; rebuild it after adding deals.
+ */
+public final class HotelDateIndex
+{
+    private final DateBucketing bucketing;
+    private final Hotel[] hotels;
+    private final Map<String, Integer> hotelIds;
+    // Distinct minimum stay lengths, ascending.
+    private final int[] minStays;
+    private final int firstBucket;
+    // bitmaps[stay class][bucket - firstBucket], null where no hotel has a deal.
+    private final BitSet[][] bitmaps;
+
+    private HotelDateIndex(DateBucketing b, Hotel[] h, Map<String, Integer> ids, int[] stays, int first,
+            BitSet[][] maps)
+    {
+        this.bucketing = b;
+        this.hotels = h;
+        this.hotelIds = ids;
+        this.minStays = stays;
+        this.firstBucket = first;
+        this.bitmaps = maps;
+    }
+
+    /**
+     * Build an index of the deals of a set of hotels.
+     * @param allHotels Hotels to index.
+     * @param b Granularity of the date buckets.
+     * @return new index.
+     */
+    public static HotelDateIndex build(Collection<Hotel> allHotels, DateBucketing b)
+    {
+        if (b == null)
+        {
+            throw new IllegalArgumentException("Date bucketing must be provided!");
+        }
+        Hotel[] h = allHotels.toArray(new Hotel[allHotels.size()]);
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        TreeSet<Integer> stays = new TreeSet<Integer>();
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (int id = 0; id < h.length; id++)
+        {
+            ids.put(h[id].getName(), id);
+            for (Deal d : h[id].getAllDeals())
+            {
+                if (d.getDealType() == DealType.NO_DEAL)
+                {
+                    continue;
+                }
+                stays.add(d.getMinStayDays());
+                int startBucket = b.bucketOf(d.getStartDate());
+                int endBucket = b.bucketOf(d.getEndDate());
+                first = Math.min(first, Math.min(startBucket, endBucket));
+                last = Math.max(last, Math.max(startBucket, endBucket));
+            }
+        }
+        int[] stayArray = new int[stays.size()];
+        int i = 0;
+        for (Integer s : stays)
+        {
+            stayArray[i++] = s;
+        }
+        if (stayArray.length == 0)
+        {
+            return new HotelDateIndex(b, h, ids, stayArray, 0, new BitSet[0][]);
+        }
+
+        BitSet[][] maps = new BitSet[stayArray.length][last - first + 1];
+        for (int id = 0; id < h.length; id++)
+        {
+            for (Deal d : h[id].getAllDeals())
+            {
+                if (d.getDealType() == DealType.NO_DEAL)
+                {
+                    continue;
+                }
+                BitSet[] row = maps[Arrays.binarySearch(stayArray, d.getMinStayDays())];
+                int startBucket = b.bucketOf(d.getStartDate());
+                int endBucket = b.bucketOf(d.getEndDate());
+                if (startBucket <= endBucket)
+                {
+                    for (int bucket = startBucket; bucket <= endBucket; bucket++)
+                    {
+                        mark(row, bucket - first, id);
+                    }
+                }
+                else
+                {
+                    // Inverted dates: the deal only applies on its start and end dates.
+                    mark(row, startBucket - first, id);
+                    mark(row, endBucket - first, id);
+                }
+            }
+        }
+        return new HotelDateIndex(b, h, ids, stayArray, first, maps);
+    }
+
+    private static void mark(BitSet[] row, int slot, int id)
+    {
+        if (row[slot] == null)
+        {
+            row[slot] = new BitSet();
+        }
+        row[slot].set(id);
+    }
+
+    /**
+     * @return granularity of the date buckets.
+     */
+    public DateBucketing getBucketing()
+    {
+        return this.bucketing;
+    }
+
+    /**
+     * @return true if bitmaps hold exactly the hotels with an applicable deal.
+     */
+    public boolean isExact()
+    {
+        return this.bucketing == DateBucketing.DAY;
+    }
+
+    /**
+     * @return number of hotels indexed.
+     */
+    public int getHotelCount()
+    {
+        return this.hotels.length;
+    }
+
+    /**
+     * @param id Hotel id.
+     * @return hotel with the id.
+     */
+    public Hotel getHotel(int id)
+    {
+        return this.hotels[id];
+    }
+
+    /**
+     * @param hotelName Name of hotel.
+     * @return id of the hotel, or -1 if it is not indexed.
+     */
+    public int getHotelId(String hotelName)
+    {
+        Integer id = this.hotelIds.get(hotelName);
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * Find the hotels that may have an applicable deal for a stay.
+     * @param checkInDate Check-in date.
+     * @param stayLengthDays Length of stay in days.
+     * @return new bitmap of hotel ids; exact if {@link #isExact()}.
+     */
+    public BitSet candidates(LocalDate checkInDate, int stayLengthDays)
+    {
+        BitSet result = new BitSet(this.hotels.length);
+        int slot = this.bucketing.bucketOf(checkInDate) - this.firstBucket;
+        for (int c = 0; c < this.minStays.length && this.minStays[c] <= stayLengthDays; c++)
+        {
+            BitSet[] row = this.bitmaps[c];
+            if (slot >= 0 && slot < row.length && row[slot] != null)
+            {
+                result.or(row[slot]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the hotels that have an applicable deal for a stay, checking the deals of the
+     * candidates of coarse buckets.
+     * @param checkInDate Check-in date.
+     * @param stayLengthDays Length of stay in days.
+     * @return hotels in id order. Never returns null.
+     */
+    public List<Hotel> findHotelsWithDeals(LocalDate checkInDate, int stayLengthDays)
+    {
+        BitSet ids = candidates(checkInDate, stayLengthDays);
+        List<Hotel> found = new ArrayList<Hotel>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1))
+        {
+            Hotel h = this.hotels[id];
+            if (isExact() || h.findBestDeal(checkInDate, stayLengthDays) != Deal.NO_DEAL)
+            {
+                found.add(h);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param ids Bitmap of hotel ids, such as one from {@link #candidates(LocalDate, int)}.
+     * @return hotels in id order.
+     */
+    public List<Hotel> toHotels(BitSet ids)
+    {
+        List<Hotel> found = new ArrayList<Hotel>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1))
+        {
+            found.add(this.hotels[id]);
+        }
+        return found;
+    }
+
+    @Override
+    public String toString()
+    {
+        int buckets = 0;
+        for (BitSet[] row : this.bitmaps)
+        {
+            for (BitSet bits : row)
+            {
+                buckets += (bits == null) ? 0 : 1;
+            }
+        }
+        return String.format("%d hotels, %d %s buckets for %d minimum stay lengths", this.hotels.length, buckets,
+                this.bucketing.name().toLowerCase(), this.minStays.length);
+    }
+}
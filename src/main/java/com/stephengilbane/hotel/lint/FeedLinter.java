@@ -0,0 +1,798 @@
+package com.stephengilbane.hotel.lint;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.stephengilbane.hotel.ParserUtils;
+import com.stephengilbane.hotel.deals.DealProvider;
+import com.stephengilbane.hotel.deals.DealRegistry;
+import com.stephengilbane.hotel.deals.DealTerms;
+import com.stephengilbane.hotel.deals.DealType;
+import com.stephengilbane.hotel.deals.StackingOrder;
+import com.stephengilbane.hotel.deals.StackingRule;
+
+/**
+ * Checks a deal feed for data that would load silently but change results: lines the parser
+ * skips, rates that are ignored, deals that can never match, coerced percentages, duplicate
+ * deals and overlapping deals that conflict.
+ *
+ * The feed is cut into chunks at line boundaries; each chunk is memory-mapped and checked in
+ * parallel, without creating Strings for its fields. Line-level checks happen in that pass.
+ * Each valid line also yields a compact record, filed by a hash of its hotel name into one of a
+ * fixed number of buckets. The buckets are then checked in parallel for problems between lines
+ * of the same hotel.
+ */
+public class FeedLinter
+{
+    private static final int BUCKETS = 256;
+    private static final long MIN_CHUNK_BYTES = 1L << 20;
+    private static final long MAX_CHUNK_BYTES = 64L << 20;
+    private static final byte DELIM = (byte) ParserUtils.FIELD_DELIM.charAt(0);
+    // Added to epoch days, which are above -2^20 for four-digit years, to make them non-negative.
+    private static final int START_DAY_OFFSET = 1 << 20;
+    private static final DealType[] TYPES = DealType.values();
+    private static final byte[][] TYPE_TOKENS = new byte[TYPES.length][];
+
+    static
+    {
+        for (DealType t : TYPES)
+        {
+            TYPE_TOKENS[t.ordinal()] = t.getToken().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private final int parallelism;
+
+    /**
+     * Constructor for a linter using every available processor.
+     */
+    public FeedLinter()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     * @param parallelism Number of threads the chunks of a feed are sized for.
+     */
+    public FeedLinter(int parallelism)
+    {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Lint a deal feed.
+     * @param f Feed to check.
+     * @return report of all issues found.
+     * @throws IOException if the feed cannot be read.
+     */
+    public LintReport lint(File f) throws IOException
+    {
+        long started = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ))
+        {
+            long[] bounds = findChunkBounds(ch);
+            int chunkCount = bounds.length - 1;
+            Chunk[] chunks;
+            try
+            {
+                chunks = IntStream.range(0, chunkCount).parallel()
+                        .mapToObj(i -> lintChunk(ch, bounds[i], bounds[i + 1]))
+                        .toArray(Chunk[]::new);
+            }
+            catch (UncheckedIOException ex)
+            {
+                throw ex.getCause();
+            }
+
+            long[] lineBase = new long[chunkCount];
+            long lineCount = 0;
+            List<LintIssue> issues = new ArrayList<LintIssue>();
+            for (int i = 0; i < chunkCount; i++)
+            {
+                lineBase[i] = lineCount;
+                for (LintIssue issue : chunks[i].issues)
+                {
+                    issues.add(new LintIssue(lineCount + issue.getLineNumber(), issue.getType(), issue.getMessage()));
+                }
+                lineCount += chunks[i].lineCount;
+            }
+
+            try
+            {
+                issues.addAll(IntStream.range(0, BUCKETS).parallel()
+                        .mapToObj(b -> checkBucket(ch, chunks, lineBase, b))
+                        .flatMap(List::stream)
+                        .collect(Collectors.toList()));
+            }
+            catch (UncheckedIOException ex)
+            {
+                throw ex.getCause();
+            }
+            Collections.sort(issues);
+            return new LintReport(lineCount, issues, (System.nanoTime() - started) / 1000000);
+        }
+    }
+
+    /**
+     * Cut a feed into chunks that each end just after a newline.
+     */
+    private long[] findChunkBounds(FileChannel ch) throws IOException
+    {
+        long size = ch.size();
+        long target = Math.min(MAX_CHUNK_BYTES, Math.max(MIN_CHUNK_BYTES, size / (4L * this.parallelism)));
+        List<Long> bounds = new ArrayList<Long>();
+        bounds.add(0L);
+        long pos = 0;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (size - pos > target)
+        {
+            long next = pos + target;
+            long newline = -1;
+            while (newline < 0 && next < size)
+            {
+                probe.clear();
+                int n = ch.read(probe, next);
+                if (n <= 0)
+                {
+                    break;
+                }
+                for (int i = 0; i < n; i++)
+                {
+                    if (probe.get(i) == '\n')
+                    {
+                        newline = next + i;
+                        break;
+                    }
+                }
+                next += n;
+            }
+            if (newline < 0 || newline + 1 >= size)
+            {
+                break;
+            }
+            pos = newline + 1;
+            bounds.add(pos);
+        }
+        bounds.add(size);
+        long[] a = new long[bounds.size()];
+        for (int i = 0; i < a.length; i++)
+        {
+            a[i] = bounds.get(i);
+        }
+        return a;
+    }
+
+    /**
+     * Check the lines of one chunk and collect their records.
+     */
+    private Chunk lintChunk(FileChannel ch, long start, long end)
+    {
+        Chunk chunk = new Chunk();
+        if (end <= start)
+        {
+            return chunk;
+        }
+        MappedByteBuffer buf;
+        try
+        {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+        int len = (int) (end - start);
+        int[] fields = new int[2 * ParserUtils.MAX_LINE_TOKEN_COUNT];
+        int lineStart = 0;
+        while (lineStart < len)
+        {
+            int lineEnd = lineStart;
+            while (lineEnd < len && buf.get(lineEnd) != '\n')
+            {
+                lineEnd++;
+            }
+            chunk.lineCount++;
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && buf.get(contentEnd - 1) == '\r')
+            {
+                contentEnd--;
+            }
+            lintLine(buf, start, lineStart, contentEnd, chunk.lineCount, fields, chunk);
+            lineStart = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    /**
+     * Check a single line and, if it is valid, record it for the checks between lines.
+     */
+    private static void lintLine(ByteBuffer buf, long chunkOffset, int start, int end, long line, int[] f,
+            Chunk chunk)
+    {
+        int count = splitFields(buf, start, end, f);
+        if (count < ParserUtils.LINE_TOKEN_COUNT || count > ParserUtils.MAX_LINE_TOKEN_COUNT)
+        {
+            chunk.issue(line, LintIssueType.MALFORMED_LINE, "expected " + ParserUtils.LINE_TOKEN_COUNT + " to "
+                    + ParserUtils.MAX_LINE_TOKEN_COUNT + " fields, found " + count);
+            return;
+        }
+        for (int i = 0; i < count; i++)
+        {
+            if (f[2 * i] == f[2 * i + 1])
+            {
+                chunk.issue(line, LintIssueType.MALFORMED_LINE, "blank field " + (i + 1));
+                return;
+            }
+        }
+        long rate = parseInt(buf, f[2], f[3]);
+        long value = parseInt(buf, f[6], f[7]);
+        int type = parseType(buf, f[8], f[9]);
+        long startDay = parseDate(buf, f[10], f[11]);
+        long endDay = parseDate(buf, f[12], f[13]);
+        boolean valid = true;
+        if (rate == Long.MIN_VALUE)
+        {
+            chunk.issue(line, LintIssueType.INVALID_NUMBER, "invalid nightly rate");
+            valid = false;
+        }
+        if (value == Long.MIN_VALUE)
+        {
+            chunk.issue(line, LintIssueType.INVALID_NUMBER, "invalid deal value");
+            valid = false;
+        }
+        if (startDay == Long.MIN_VALUE || endDay == Long.MIN_VALUE)
+        {
+            chunk.issue(line, LintIssueType.INVALID_DATE, "invalid " + (startDay == Long.MIN_VALUE ? "start" : "end")
+                    + " date");
+            valid = false;
+        }
+        // Optional deal terms are rare: decode and check them as the parser does.
+        DealTerms terms = DealTerms.NONE;
+        for (int i = ParserUtils.LINE_TOKEN_COUNT; i < count && valid; i++)
+        {
+            try
+            {
+                terms = ParserUtils.validateDealOption(decode(buf, f[2 * i], f[2 * i + 1]), terms);
+            }
+            catch (IllegalArgumentException ex)
+            {
+                chunk.issue(line, LintIssueType.MALFORMED_LINE, ex.getMessage());
+                valid = false;
+            }
+        }
+        if (!valid)
+        {
+            // The parser skips this line entirely.
+            return;
+        }
+        if (type < 0)
+        {
+            chunk.issue(line, LintIssueType.UNKNOWN_DEAL_TYPE, "unsupported deal type; line loads as no deal");
+        }
+        if (startDay > endDay)
+        {
+            chunk.issue(line, LintIssueType.INVERTED_DATES, "start date after end date");
+        }
+        if (type == DealType.REBATE_PERCENT.ordinal() && (value < -100 || value > 0))
+        {
+            chunk.issue(line, LintIssueType.INVALID_PERCENT, "percentage " + value
+                    + " is outside -100..0 and is treated as a 100% premium");
+        }
+        long hotelHash = hash(buf, f[0], f[1]);
+        // Lines that differ only in their optional terms are different deals.
+        long termsHash = (count > ParserUtils.LINE_TOKEN_COUNT) ? hash(buf, f[2 * ParserUtils.LINE_TOKEN_COUNT],
+                f[2 * count - 1]) : 0;
+        StackingRule rule = terms.getStackingRule();
+        long groupHash = (rule == null) ? 0 : hashGroup(rule.getGroup());
+        int ruleCode = (rule == null) ? 0
+                : rule.getMaxPerStay() * StackingOrder.values().length + rule.getOrder().ordinal();
+        chunk.bucket((int) (hotelHash >>> 56) & (BUCKETS - 1)).add(hotelHash, line, chunkOffset + f[0],
+                f[1] - f[0], (int) rate, type, (int) value, (int) startDay, (int) endDay,
+                hash(buf, f[4], f[5]) ^ (31 * termsHash), groupHash, ruleCode);
+    }
+
+    /**
+     * Check the lines of each hotel whose records are in one bucket.
+     */
+    private static List<LintIssue> checkBucket(FileChannel ch, Chunk[] chunks, long[] lineBase, int b)
+    {
+        // Gather this bucket's records in line order, with line numbers in the whole feed.
+        Records all = new Records();
+        for (int c = 0; c < chunks.length; c++)
+        {
+            Records r = chunks[c].buckets[b];
+            if (r == null)
+            {
+                continue;
+            }
+            for (int i = 0; i < r.size; i++)
+            {
+                all.add(r.hotelHash[i], lineBase[c] + r.line[i], r.nameOffset[i], r.nameLength[i], r.rate[i],
+                        r.type[i], r.value[i], r.start[i], r.end[i], r.promoHash[i], r.groupHash[i], r.ruleCode[i]);
+            }
+        }
+
+        // Number the hotels in order of first appearance, then group the records by hotel with a
+        // counting sort, which keeps each hotel's records in line order.
+        int n = all.size;
+        int mask = tableSize(n) - 1;
+        long[] keys = new long[mask + 1];
+        int[] ids = new int[mask + 1];
+        Arrays.fill(ids, -1);
+        int[] hotelOf = new int[n];
+        int hotelCount = 0;
+        for (int i = 0; i < n; i++)
+        {
+            long h = all.hotelHash[i];
+            int slot = (int) (h ^ (h >>> 32)) & mask;
+            while (ids[slot] >= 0 && keys[slot] != h)
+            {
+                slot = (slot + 1) & mask;
+            }
+            if (ids[slot] < 0)
+            {
+                keys[slot] = h;
+                ids[slot] = hotelCount++;
+            }
+            hotelOf[i] = ids[slot];
+        }
+        int[] groupStart = new int[hotelCount + 1];
+        for (int i = 0; i < n; i++)
+        {
+            groupStart[hotelOf[i] + 1]++;
+        }
+        for (int g = 0; g < hotelCount; g++)
+        {
+            groupStart[g + 1] += groupStart[g];
+        }
+        int[] next = Arrays.copyOf(groupStart, hotelCount);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            order[next[hotelOf[i]]++] = i;
+        }
+
+        List<LintIssue> issues = new ArrayList<LintIssue>();
+        for (int g = 0; g < hotelCount; g++)
+        {
+            if (groupStart[g + 1] - groupStart[g] > 1)
+            {
+                checkHotel(ch, all, order, groupStart[g], groupStart[g + 1], issues);
+            }
+        }
+        return issues;
+    }
+
+    /**
+     * Check the lines of a single hotel, in line order.
+     * @param all Records of a bucket.
+     * @param order Positions of the records, grouped by hotel.
+     * @param from First entry of order for the hotel.
+     * @param to Entry of order just after the hotel.
+     */
+    private static void checkHotel(FileChannel ch, Records all, int[] order, int from, int to, List<LintIssue> issues)
+    {
+        int first = order[from];
+        int count = to - from;
+        String name = null;
+        int mask = tableSize(count) - 1;
+        int[] seen = new int[mask + 1];
+        Arrays.fill(seen, -1);
+        // First deal of each stacking group, whose rule the group takes.
+        int[] groupFirst = new int[mask + 1];
+        Arrays.fill(groupFirst, -1);
+        for (int k = from; k < to; k++)
+        {
+            int r = order[k];
+            if (all.rate[r] != all.rate[first])
+            {
+                name = (name == null) ? readName(ch, all, first) : name;
+                issues.add(new LintIssue(all.line[r], LintIssueType.RATE_CONFLICT, "nightly rate " + all.rate[r] + " of '"
+                        + name + "' is ignored; line " + all.line[first] + " set it to " + all.rate[first]));
+            }
+            int slot = dealHash(all, r) & mask;
+            while (seen[slot] >= 0 && !isSameDeal(all, seen[slot], r))
+            {
+                slot = (slot + 1) & mask;
+            }
+            if (seen[slot] >= 0)
+            {
+                issues.add(new LintIssue(all.line[r], LintIssueType.DUPLICATE_DEAL, "same deal as line "
+                        + all.line[seen[slot]]));
+            }
+            else
+            {
+                seen[slot] = r;
+            }
+            long g = all.groupHash[r];
+            if (g != 0)
+            {
+                slot = (int) (g ^ (g >>> 32)) & mask;
+                while (groupFirst[slot] >= 0 && all.groupHash[groupFirst[slot]] != g)
+                {
+                    slot = (slot + 1) & mask;
+                }
+                if (groupFirst[slot] < 0)
+                {
+                    groupFirst[slot] = r;
+                }
+                else if (all.ruleCode[groupFirst[slot]] != all.ruleCode[r])
+                {
+                    issues.add(new LintIssue(all.line[r], LintIssueType.STACKING_CONFLICT, "stacking rule differs from"
+                            + " that of its group on line " + all.line[groupFirst[slot]] + "; the deal is not stacked"));
+                }
+            }
+        }
+
+        // Conflicting overlaps: sweep the deals of each type in order of start date. Each sort key
+        // packs the type, the start date and the position of the record within the hotel, which
+        // follows line order.
+        long[] sortKeys = new long[count];
+        for (int k = 0; k < count; k++)
+        {
+            int r = order[from + k];
+            sortKeys[k] = ((long) (all.type[r] + 1) << 59) | ((long) (all.start[r] + START_DAY_OFFSET) << 32) | k;
+        }
+        Arrays.sort(sortKeys);
+        int[] active = new int[count];
+        int activeCount = 0;
+        int activeType = Integer.MIN_VALUE;
+        for (long key : sortKeys)
+        {
+            int r = order[from + (int) key];
+            if (all.start[r] > all.end[r] || all.type[r] < 0)
+            {
+                // Reported as inverted dates or unknown type already.
+                continue;
+            }
+            if (all.type[r] != activeType)
+            {
+                activeCount = 0;
+                activeType = all.type[r];
+            }
+            int kept = 0;
+            for (int j = 0; j < activeCount; j++)
+            {
+                if (all.end[active[j]] >= all.start[r])
+                {
+                    active[kept++] = active[j];
+                }
+            }
+            activeCount = kept;
+            for (int j = 0; j < activeCount; j++)
+            {
+                int a = active[j];
+                if (all.value[a] != all.value[r])
+                {
+                    int later = (all.line[a] < all.line[r]) ? r : a;
+                    int earlier = (later == r) ? a : r;
+                    issues.add(new LintIssue(all.line[later], LintIssueType.CONFLICTING_OVERLAP, "value "
+                            + all.value[later] + " overlaps value " + all.value[earlier]
+                            + " of the same deal type on line " + all.line[earlier]));
+                    break;
+                }
+            }
+            active[activeCount++] = r;
+        }
+    }
+
+    /**
+     * @return power of two table size for open addressing with at most half the slots used.
+     */
+    private static int tableSize(int entries)
+    {
+        return Integer.highestOneBit(Math.max(1, 2 * entries - 1)) << 1;
+    }
+
+    private static int dealHash(Records all, int r)
+    {
+        long h = all.promoHash[r];
+        h = 31 * h + all.type[r];
+        h = 31 * h + all.value[r];
+        h = 31 * h + all.start[r];
+        h = 31 * h + all.end[r];
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static boolean isSameDeal(Records all, int a, int b)
+    {
+        return all.type[a] == all.type[b] && all.value[a] == all.value[b] && all.start[a] == all.start[b]
+                && all.end[a] == all.end[b] && all.promoHash[a] == all.promoHash[b];
+    }
+
+    private static String readName(FileChannel ch, Records all, int r)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(all.nameLength[r]);
+        try
+        {
+            while (buf.hasRemaining() && ch.read(buf, all.nameOffset[r] + buf.position()) > 0)
+            {
+                // Keep reading.
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+        return new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Byte-level field parsing.
+     */
+
+    /**
+     * Find fields the way HotelDealParser does: empty fields are skipped, fields are trimmed.
+     * @return number of fields, which may exceed the number recorded.
+     */
+    private static int splitFields(ByteBuffer buf, int start, int end, int[] f)
+    {
+        int count = 0;
+        int i = start;
+        while (i < end)
+        {
+            while (i < end && buf.get(i) == DELIM)
+            {
+                i++;
+            }
+            if (i == end)
+            {
+                break;
+            }
+            int s = i;
+            while (i < end && buf.get(i) != DELIM)
+            {
+                i++;
+            }
+            int e = i;
+            if (2 * count < f.length)
+            {
+                while (s < e && (buf.get(s) & 0xFF) <= ' ')
+                {
+                    s++;
+                }
+                while (e > s && (buf.get(e - 1) & 0xFF) <= ' ')
+                {
+                    e--;
+                }
+                f[2 * count] = s;
+                f[2 * count + 1] = e;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return parsed int value, or Long.MIN_VALUE if invalid.
+     */
+    private static long parseInt(ByteBuffer buf, int start, int end)
+    {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buf.get(i) == '-' || buf.get(i) == '+'))
+        {
+            negative = buf.get(i) == '-';
+            i++;
+        }
+        if (i == end)
+        {
+            return Long.MIN_VALUE;
+        }
+        long v = 0;
+        for (; i < end; i++)
+        {
+            int d = buf.get(i) - '0';
+            if (d < 0 || d > 9)
+            {
+                return Long.MIN_VALUE;
+            }
+            v = 10 * v + d;
+            if (v > Integer.MAX_VALUE + 1L)
+            {
+                return Long.MIN_VALUE;
+            }
+        }
+        v = negative ? -v : v;
+        return (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) ? Long.MIN_VALUE : v;
+    }
+
+    /**
+     * @return epoch day of a yyyy-MM-dd date, or Long.MIN_VALUE if invalid.
+     */
+    private static long parseDate(ByteBuffer buf, int start, int end)
+    {
+        if (end - start != 10 || buf.get(start + 4) != '-' || buf.get(start + 7) != '-')
+        {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(buf, start, 4);
+        int month = digits(buf, start + 5, 2);
+        int day = digits(buf, start + 8, 2);
+        if (year < 0 || month < 0 || day < 0)
+        {
+            return Long.MIN_VALUE;
+        }
+        try
+        {
+            return LocalDate.of(year, month, day).toEpochDay();
+        }
+        catch (DateTimeException ex)
+        {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static int digits(ByteBuffer buf, int start, int n)
+    {
+        int v = 0;
+        for (int i = start; i < start + n; i++)
+        {
+            int d = buf.get(i) - '0';
+            if (d < 0 || d > 9)
+            {
+                return -1;
+            }
+            v = 10 * v + d;
+        }
+        return v;
+    }
+
+    /**
+     * @return ordinal of the supported DealType of a token, or -1 if unsupported.
+     */
+    private static int parseType(ByteBuffer buf, int start, int end)
+    {
+        for (DealType t : TYPES)
+        {
+            byte[] token = TYPE_TOKENS[t.ordinal()];
+            if (token.length != end - start)
+            {
+                continue;
+            }
+            boolean match = true;
+            for (int i = 0; i < token.length && match; i++)
+            {
+                match = buf.get(start + i) == token[i];
+            }
+            if (match)
+            {
+                DealProvider provider = DealRegistry.forType(t);
+                return (provider == null || t == DealType.NO_DEAL) ? -1 : t.ordinal();
+            }
+        }
+        return -1;
+    }
+
+    private static String decode(ByteBuffer buf, int start, int end)
+    {
+        byte[] b = new byte[end - start];
+        for (int i = 0; i < b.length; i++)
+        {
+            b[i] = buf.get(start + i);
+        }
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a byte range.
+     */
+    /**
+     * 64-bit FNV-1a hash of the characters of a stacking group name, never 0.
+     */
+    private static long hashGroup(String group)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < group.length(); i++)
+        {
+            h ^= group.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return (h == 0) ? 1 : h;
+    }
+
+    private static long hash(ByteBuffer buf, int start, int end)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++)
+        {
+            h ^= buf.get(i) & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Results of checking one chunk of the feed. Line numbers are relative to the chunk.
+     */
+    private static final class Chunk
+    {
+        final List<LintIssue> issues = new ArrayList<LintIssue>();
+        final Records[] buckets = new Records[BUCKETS];
+        long lineCount;
+
+        void issue(long line, LintIssueType type, String message)
+        {
+            this.issues.add(new LintIssue(line, type, message));
+        }
+
+        Records bucket(int b)
+        {
+            if (this.buckets[b] == null)
+            {
+                this.buckets[b] = new Records();
+            }
+            return this.buckets[b];
+        }
+    }
+
+    /**
+     * Compact, column-wise records of valid lines. The checks between lines work on these
+     * columns directly, without an object per line.
+     */
+    private static final class Records
+    {
+        long[] hotelHash = new long[16];
+        long[] line = new long[16];
+        long[] nameOffset = new long[16];
+        int[] nameLength = new int[16];
+        int[] rate = new int[16];
+        int[] type = new int[16];
+        int[] value = new int[16];
+        int[] start = new int[16];
+        int[] end = new int[16];
+        long[] promoHash = new long[16];
+        // Hash of the stacking group, or 0 if the deal does not stack, and its rule.
+        long[] groupHash = new long[16];
+        int[] ruleCode = new int[16];
+        int size;
+
+        void add(long hh, long ln, long nOff, int nLen, int r, int t, int v, int s, int e, long ph, long gh, int rc)
+        {
+            if (this.size == this.line.length)
+            {
+                int n = 2 * this.size;
+                this.hotelHash = Arrays.copyOf(this.hotelHash, n);
+                this.line = Arrays.copyOf(this.line, n);
+                this.nameOffset = Arrays.copyOf(this.nameOffset, n);
+                this.nameLength = Arrays.copyOf(this.nameLength, n);
+                this.rate = Arrays.copyOf(this.rate, n);
+                this.type = Arrays.copyOf(this.type, n);
+                this.value = Arrays.copyOf(this.value, n);
+                this.start = Arrays.copyOf(this.start, n);
+                this.end = Arrays.copyOf(this.end, n);
+                this.promoHash = Arrays.copyOf(this.promoHash, n);
+                this.groupHash = Arrays.copyOf(this.groupHash, n);
+                this.ruleCode = Arrays.copyOf(this.ruleCode, n);
+            }
+            int i = this.size++;
+            this.hotelHash[i] = hh;
+            this.line[i] = ln;
+            this.nameOffset[i] = nOff;
+            this.nameLength[i] = nLen;
+            this.rate[i] = r;
+            this.type[i] = t;
+            this.value[i] = v;
+            this.start[i] = s;
+            this.end[i] = e;
+            this.promoHash[i] = ph;
+            this.groupHash[i] = gh;
+            this.ruleCode[i] = rc;
+        }
+    }
+}
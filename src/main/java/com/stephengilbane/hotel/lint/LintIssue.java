@@ -0,0 +1,50 @@
+package com.stephengilbane.hotel.lint;
+
+/**
+ * A single problem found in a deal feed.
+ */
+public class LintIssue
+implements Comparable<LintIssue>
+{
+    private final long lineNumber;
+    private final LintIssueType type;
+    private final String message;
+
+    /**
+     * Constructor.
+     * @param lineNumber Line of the feed, starting at 1.
+     * @param type Kind of problem.
+     * @param message Description for the user.
+     */
+    public LintIssue(long lineNumber, LintIssueType type, String message)
+    {
+        this.lineNumber = lineNumber;
+        this.type = type;
+        this.message = message;
+    }
+
+    /** @return line of the feed, starting at 1. */
+    public long getLineNumber() { return lineNumber; }
+
+    /** @return kind of problem. */
+    public LintIssueType getType() { return type; }
+
+    /** @return description for the user. */
+    public String getMessage() { return message; }
+
+    @Override
+    public int compareTo(LintIssue o)
+    {
+        if (this.lineNumber != o.lineNumber)
+        {
+            return Long.compare(this.lineNumber, o.lineNumber);
+        }
+        return this.type.compareTo(o.type);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "line " + this.lineNumber + ": " + this.type + ": " + this.message;
+    }
+}
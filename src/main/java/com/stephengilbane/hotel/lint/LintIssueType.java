@@ -0,0 +1,28 @@
+package com.stephengilbane.hotel.lint;
+
+/**
+ *  Kinds of problems found by the {@link FeedLinter}.
+ */
+public enum LintIssueType
+{
+    /** Line does not have the expected number of fields, or a field is blank. */
+    MALFORMED_LINE,
+    /** Nightly rate or deal value is not an integer. */
+    INVALID_NUMBER,
+    /** Start or end date is not a valid date. */
+    INVALID_DATE,
+    /** Deal type token is not supported; the line loads as no deal. */
+    UNKNOWN_DEAL_TYPE,
+    /** Start date is after end date; the deal only applies on those two dates. */
+    INVERTED_DATES,
+    /** Percentage outside -100..0; the deal is coerced to a 100% premium. */
+    INVALID_PERCENT,
+    /** Nightly rate differs from the first line of the same hotel, and is ignored. */
+    RATE_CONFLICT,
+    /** Deal repeats an earlier deal of the same hotel exactly. */
+    DUPLICATE_DEAL,
+    /** Deal overlaps an earlier deal of the same hotel and type with a different value. */
+    CONFLICTING_OVERLAP,
+    /** Stacking rule differs from that of an earlier deal of the same hotel and group; the deal is not stacked. */
+    STACKING_CONFLICT;
+}
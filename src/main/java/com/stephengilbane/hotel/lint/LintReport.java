@@ -0,0 +1,64 @@
+package com.stephengilbane.hotel.lint;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of linting a deal feed: every issue found, ordered by line.
+ */
+public class LintReport
+{
+    private final long lineCount;
+    private final List<LintIssue> issues;
+    private final long elapsedMillis;
+
+    /**
+     * Constructor.
+     * @param lineCount Number of lines in the feed.
+     * @param issues Issues found, ordered by line.
+     * @param elapsedMillis Time taken to lint the feed.
+     */
+    public LintReport(long lineCount, List<LintIssue> issues, long elapsedMillis)
+    {
+        this.lineCount = lineCount;
+        this.issues = issues;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /** @return number of lines in the feed. */
+    public long getLineCount() { return lineCount; }
+
+    /** @return issues found, ordered by line. */
+    public List<LintIssue> getIssues() { return Collections.unmodifiableList(issues); }
+
+    /** @return time taken to lint the feed, in milliseconds. */
+    public long getElapsedMillis() { return elapsedMillis; }
+
+    /** @return true if no issues were found. */
+    public boolean isClean() { return issues.isEmpty(); }
+
+    /**
+     * @return number of issues of each type found.
+     */
+    public Map<LintIssueType, Integer> getCounts()
+    {
+        Map<LintIssueType, Integer> counts = new EnumMap<LintIssueType, Integer>(LintIssueType.class);
+        for (LintIssue issue : this.issues)
+        {
+            Integer c = counts.get(issue.getType());
+            counts.put(issue.getType(), (c == null) ? 1 : c + 1);
+        }
+        return counts;
+    }
+
+    /**
+     * @return one-line summary of this report.
+     */
+    public String getSummary()
+    {
+        return String.format("%d lines, %d issues %s, in %d ms", this.lineCount, this.issues.size(), getCounts(),
+                this.elapsedMillis);
+    }
+}
@@ -0,0 +1,126 @@
+package com.stephengilbane.hotel.load;
+
+/**
+ * Histogram of latencies in nanoseconds with a relative precision of better than 2%.
+ *
+ * Values below 128 have a bucket of their own; above that, each power of two is split into 64
+ * buckets of equal width, so the histogram has a fixed size whatever the range of values.
+ * Recording is a few arithmetic operations and one array increment.
+ *
+ * Not thread-safe: record on one thread, then {@link #add(LatencyHistogram)} histograms together.
+ */
+public final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long max;
+    private double sum;
+
+    /**
+     * Record a latency.
+     * @param nanos Latency in nanoseconds; negative values are recorded as 0.
+     */
+    public void record(long nanos)
+    {
+        long v = Math.max(0, nanos);
+        this.counts[indexOf(v)]++;
+        this.totalCount++;
+        this.sum += v;
+        if (v > this.max)
+        {
+            this.max = v;
+        }
+    }
+
+    /**
+     * Add the counts of another histogram to this one.
+     * @param other Histogram to add.
+     */
+    public void add(LatencyHistogram other)
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            this.counts[i] += other.counts[i];
+        }
+        this.totalCount += other.totalCount;
+        this.sum += other.sum;
+        this.max = Math.max(this.max, other.max);
+    }
+
+    /**
+     * @return number of latencies recorded.
+     */
+    public long getCount()
+    {
+        return this.totalCount;
+    }
+
+    /**
+     * @return highest latency recorded, in nanoseconds.
+     */
+    public long getMax()
+    {
+        return this.max;
+    }
+
+    /**
+     * @return mean latency, in nanoseconds, or 0 if nothing was recorded.
+     */
+    public double getMean()
+    {
+        return (this.totalCount == 0) ? 0 : this.sum / this.totalCount;
+    }
+
+    /**
+     * @param percentile Percentile, from 0 to 100.
+     * @return latency in nanoseconds at or below which the given percentage of latencies fall,
+     *          to the precision of the histogram; 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (percentile < 0 || percentile > 100)
+        {
+            throw new IllegalArgumentException("Invalid percentile " + percentile);
+        }
+        if (this.totalCount == 0)
+        {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * this.totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += this.counts[i];
+            if (seen >= target)
+            {
+                return Math.min(highestValueOf(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    static int indexOf(long v)
+    {
+        if (v < 2 * SUB_BUCKETS)
+        {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (v >>> shift);
+    }
+
+    static long highestValueOf(int index)
+    {
+        if (index < 2 * SUB_BUCKETS)
+        {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index - shift * SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,252 @@
+package com.stephengilbane.hotel.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.stephengilbane.hotel.DealResult;
+import com.stephengilbane.hotel.HotelDealFinder;
+import com.stephengilbane.hotel.HotelDealParser;
+import com.stephengilbane.hotel.ParserUtils;
+
+/**
+ * Replays a query log against a {@link QueryTarget} under concurrent load.
+ *
+ * In a closed loop, N threads each issue their next query as soon as the previous one returns,
+ * which measures the highest throughput. In an open loop, queries are due at a fixed rate whatever
+ * the state of the system, as with independent users; N threads issue them when they are due,
+ * and response times count from the due time, so that a stall is charged to every query that
+ * was held up by it rather than to one.
+ *
+ * Usage: LoadDriver [configFile] [queryLog] closed [threads] [csvFile]
+ *        LoadDriver [configFile] [queryLog] open [queriesPerSecond] [threads] [csvFile]
+ *
+ * Set -Dhdf.load.label to label the CSV rows, for example with the build being measured.
+ */
+public final class LoadDriver
+{
+    /** Mode name of closed-loop runs. */
+    public static final String CLOSED_LOOP = "closed";
+
+    /** Mode name of open-loop runs. */
+    public static final String OPEN_LOOP = "open";
+
+    // Waits shorter than this are spun rather than parked, for an accurate start time.
+    private static final long SPIN_NANOS = 50000;
+
+    // Results of queries are folded in here so that they cannot be optimized away.
+    private static volatile int blackhole;
+
+    private final QueryTarget target;
+    private final QueryLog log;
+    private String label = "";
+
+    /**
+     * Constructor.
+     * @param t Target to query.
+     * @param l Queries to replay. Must not be empty.
+     */
+    public LoadDriver(QueryTarget t, QueryLog l)
+    {
+        if (l.size() == 0)
+        {
+            throw new IllegalArgumentException("Query log must not be empty!");
+        }
+        this.target = t;
+        this.log = l;
+    }
+
+    /**
+     * @param finder Finder to query.
+     * @return target that runs findBestValue() queries against the finder.
+     */
+    public static QueryTarget forFinder(final HotelDealFinder finder)
+    {
+        return (hotelName, checkInDate, stayLengthDays) -> {
+            DealResult res = finder.findBestValue(hotelName, checkInDate, stayLengthDays);
+            return (res.getHotel() == null) ? 0 : res.getCustomerPrice();
+        };
+    }
+
+    /**
+     * @param l Label for the reports of this driver.
+     */
+    public void setLabel(String l)
+    {
+        this.label = (l == null) ? "" : l;
+    }
+
+    /**
+     * Run queries on the calling thread without measuring them, to warm up the JIT compiler.
+     * @param queries Number of queries to run.
+     */
+    public void warmUp(int queries)
+    {
+        int sink = 0;
+        for (int i = 0; i < queries; i++)
+        {
+            sink += this.log.run(i, this.target);
+        }
+        consume(sink);
+    }
+
+    /**
+     * Run queries in a closed loop.
+     * @param threads Number of threads issuing queries.
+     * @param queries Number of queries to run; the log is replayed from the start as often as needed.
+     * @return report of the run.
+     */
+    public LoadReport runClosedLoop(int threads, int queries)
+    {
+        return run(CLOSED_LOOP, threads, 0, queries);
+    }
+
+    /**
+     * Run queries in an open loop at a fixed rate.
+     * @param queriesPerSecond Rate at which queries are due.
+     * @param threads Number of threads issuing queries; enough to sustain the rate.
+     * @param queries Number of queries to run; the log is replayed from the start as often as needed.
+     * @return report of the run.
+     */
+    public LoadReport runOpenLoop(double queriesPerSecond, int threads, int queries)
+    {
+        if (queriesPerSecond <= 0)
+        {
+            throw new IllegalArgumentException("Query rate must be positive!");
+        }
+        return run(OPEN_LOOP, threads, queriesPerSecond, queries);
+    }
+
+    private LoadReport run(String mode, int threads, double rate, final int queries)
+    {
+        if (threads <= 0 || queries <= 0)
+        {
+            throw new IllegalArgumentException("Thread and query counts must be positive!");
+        }
+        final double interval = (rate > 0) ? 1e9 / rate : 0;
+        final AtomicInteger next = new AtomicInteger();
+        final LatencyHistogram[] response = new LatencyHistogram[threads];
+        final LatencyHistogram[] service = new LatencyHistogram[threads];
+        List<Thread> workers = new ArrayList<Thread>(threads);
+        final long start = System.nanoTime();
+        for (int t = 0; t < threads; t++)
+        {
+            final LatencyHistogram r = new LatencyHistogram();
+            final LatencyHistogram s = new LatencyHistogram();
+            response[t] = r;
+            service[t] = s;
+            Thread worker = new Thread(() -> {
+                int sink = 0;
+                for (int i = next.getAndIncrement(); i < queries; i = next.getAndIncrement())
+                {
+                    long due = start + (long) (i * interval);
+                    long begin = (interval > 0) ? waitUntil(due) : System.nanoTime();
+                    sink += this.log.run(i, this.target);
+                    long end = System.nanoTime();
+                    r.record(end - ((interval > 0) ? due : begin));
+                    s.record(end - begin);
+                }
+                consume(sink);
+            }, "load-driver-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers)
+        {
+            try
+            {
+                worker.join();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for load threads", ex);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        LatencyHistogram allResponse = new LatencyHistogram();
+        LatencyHistogram allService = new LatencyHistogram();
+        for (int t = 0; t < threads; t++)
+        {
+            allResponse.add(response[t]);
+            allService.add(service[t]);
+        }
+        return new LoadReport(this.label, mode, threads, rate, elapsed, allResponse, allService);
+    }
+
+    private static long waitUntil(long due)
+    {
+        long now = System.nanoTime();
+        while (now < due)
+        {
+            if (due - now > SPIN_NANOS)
+            {
+                LockSupport.parkNanos(due - now - SPIN_NANOS);
+            }
+            else
+            {
+                Thread.yield();
+            }
+            now = System.nanoTime();
+        }
+        return now;
+    }
+
+    private static void consume(int value)
+    {
+        blackhole ^= value;
+    }
+
+    /**
+     * MAIN
+     * 
+     *    Usage: LoadDriver [configFile] [queryLog] closed [threads] [csvFile]
+     *           LoadDriver [configFile] [queryLog] open [queriesPerSecond] [threads] [csvFile]
+     * 
+     * @param args runtime arguments.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        boolean closed = args.length >= 4 && CLOSED_LOOP.equals(args[2]);
+        boolean open = args.length >= 5 && OPEN_LOOP.equals(args[2]);
+        if (!closed && !open)
+        {
+            System.out.println("Usage: LoadDriver [configFile] [queryLog] " + CLOSED_LOOP + " [threads] [csvFile]");
+            System.out.println("       LoadDriver [configFile] [queryLog] " + OPEN_LOOP
+                    + " [queriesPerSecond] [threads] [csvFile]");
+            return;
+        }
+        String filename = ParserUtils.validateStringArg(args[0], "Filename containing hotel deals must be provided!");
+        String logname = ParserUtils.validateStringArg(args[1], "Filename containing queries must be provided!");
+        HotelDealFinder hdf = new HotelDealParser().createFromFile(filename);
+        QueryLog queries = QueryLog.read(new File(logname));
+
+        LoadDriver driver = new LoadDriver(forFinder(hdf), queries);
+        driver.setLabel(System.getProperty("hdf.load.label", ""));
+        driver.warmUp(Math.min(queries.size(), 100000));
+        LoadReport report;
+        String csv;
+        if (closed)
+        {
+            int threads = ParserUtils.validateIntegerArg(args[3], "Thread count must be provided.");
+            report = driver.runClosedLoop(threads, queries.size());
+            csv = (args.length > 4) ? args[4] : null;
+        }
+        else
+        {
+            int rate = ParserUtils.validateIntegerArg(args[3], "Query rate must be provided.");
+            int threads = ParserUtils.validateIntegerArg(args[4], "Thread count must be provided.");
+            report = driver.runOpenLoop(rate, threads, queries.size());
+            csv = (args.length > 5) ? args[5] : null;
+        }
+        System.out.println(report);
+        if (csv != null)
+        {
+            LoadReport.appendCsv(new File(csv), report);
+        }
+    }
+}
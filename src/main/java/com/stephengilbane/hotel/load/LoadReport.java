@@ -0,0 +1,143 @@
+package com.stephengilbane.hotel.load;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Result of one load run: throughput, response times measured from when each query was due,
+ * and service times measured from when it actually started.
+ *
+ * In an open-loop run, a query that has to wait for a busy system is charged for the wait in its
+ * response time, which corrects for coordinated omission. In a closed-loop run both are the same.
+ */
+public final class LoadReport
+{
+    /** Column names of {@link #toCsvRow()}. */
+    public static final String CSV_HEADER = "label,mode,threads,target_qps,queries,elapsed_ms,throughput_qps,"
+            + "p50_us,p99_us,p99.9_us,max_us,service_p50_us,service_p99_us,service_p99.9_us,service_max_us";
+
+    private final String label;
+    private final String mode;
+    private final int threads;
+    private final double targetRate;
+    private final long elapsedNanos;
+    private final LatencyHistogram responseTimes;
+    private final LatencyHistogram serviceTimes;
+
+    LoadReport(String label, String mode, int threads, double targetRate, long elapsedNanos,
+            LatencyHistogram responseTimes, LatencyHistogram serviceTimes)
+    {
+        this.label = label;
+        this.mode = mode;
+        this.threads = threads;
+        this.targetRate = targetRate;
+        this.elapsedNanos = elapsedNanos;
+        this.responseTimes = responseTimes;
+        this.serviceTimes = serviceTimes;
+    }
+
+    /** @return label of the run, such as the build it measured. */
+    public String getLabel() { return label; }
+
+    /** @return "open" or "closed". */
+    public String getMode() { return mode; }
+
+    /** @return number of threads issuing queries. */
+    public int getThreads() { return threads; }
+
+    /** @return target rate of an open-loop run in queries per second, or 0 for a closed-loop run. */
+    public double getTargetRate() { return targetRate; }
+
+    /** @return number of queries run. */
+    public long getQueryCount() { return responseTimes.getCount(); }
+
+    /** @return wall-clock duration of the run in nanoseconds. */
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    /** @return response times, in nanoseconds, measured from when each query was due. */
+    public LatencyHistogram getResponseTimes() { return responseTimes; }
+
+    /** @return service times, in nanoseconds, measured from when each query started. */
+    public LatencyHistogram getServiceTimes() { return serviceTimes; }
+
+    /**
+     * @return queries completed per second.
+     */
+    public double getThroughput()
+    {
+        return (this.elapsedNanos == 0) ? 0 : getQueryCount() * 1e9 / this.elapsedNanos;
+    }
+
+    /**
+     * @return this report as a line of CSV, without line separator. Latencies are in microseconds.
+     */
+    public String toCsvRow()
+    {
+        return String.format(Locale.ROOT, "%s,%s,%d,%.1f,%d,%.1f,%.1f,%s,%s", csvText(this.label), this.mode,
+                this.threads, this.targetRate, getQueryCount(), this.elapsedNanos / 1e6, getThroughput(),
+                csvLatencies(this.responseTimes), csvLatencies(this.serviceTimes));
+    }
+
+    /**
+     * Append reports to a CSV file, writing the header first if the file is new or empty.
+     * @param f File to append to.
+     * @param reports Reports to append.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void appendCsv(File f, LoadReport... reports) throws IOException
+    {
+        boolean header = !f.exists() || f.length() == 0;
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(f, true),
+                StandardCharsets.UTF_8)))
+        {
+            if (header)
+            {
+                out.println(CSV_HEADER);
+            }
+            for (LoadReport r : reports)
+            {
+                out.println(r.toCsvRow());
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(Locale.ROOT,
+                "%s%s loop, %d threads: %d queries in %.1f ms, %.0f queries/s%n"
+                + "  response: p50 %s  p99 %s  p99.9 %s  max %s%n"
+                + "  service:  p50 %s  p99 %s  p99.9 %s  max %s",
+                this.label.isEmpty() ? "" : this.label + ": ", this.mode, this.threads, getQueryCount(),
+                this.elapsedNanos / 1e6, getThroughput(),
+                micros(this.responseTimes.getValueAtPercentile(50)), micros(this.responseTimes.getValueAtPercentile(99)),
+                micros(this.responseTimes.getValueAtPercentile(99.9)), micros(this.responseTimes.getMax()),
+                micros(this.serviceTimes.getValueAtPercentile(50)), micros(this.serviceTimes.getValueAtPercentile(99)),
+                micros(this.serviceTimes.getValueAtPercentile(99.9)), micros(this.serviceTimes.getMax()));
+    }
+
+    private static String csvLatencies(LatencyHistogram h)
+    {
+        return String.format(Locale.ROOT, "%.1f,%.1f,%.1f,%.1f", h.getValueAtPercentile(50) / 1e3,
+                h.getValueAtPercentile(99) / 1e3, h.getValueAtPercentile(99.9) / 1e3, h.getMax() / 1e3);
+    }
+
+    private static String csvText(String s)
+    {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0)
+        {
+            return s;
+        }
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    private static String micros(long nanos)
+    {
+        return String.format(Locale.ROOT, "%.1f us", nanos / 1e3);
+    }
+}
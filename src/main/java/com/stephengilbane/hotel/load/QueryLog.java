@@ -0,0 +1,111 @@
+package com.stephengilbane.hotel.load;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.stephengilbane.hotel.ParserUtils;
+
+/**
+ * Queries to replay, one per line:
+ *      hotel_name, check_in_date, stay_length_days
+ *
+ * Malformed lines are skipped with a warning.
+ */
+public final class QueryLog
+{
+    private final String[] hotelNames;
+    private final LocalDate[] checkInDates;
+    private final int[] stayLengths;
+
+    private QueryLog(List<String> names, List<LocalDate> dates, List<Integer> stays)
+    {
+        this.hotelNames = names.toArray(new String[names.size()]);
+        this.checkInDates = dates.toArray(new LocalDate[dates.size()]);
+        this.stayLengths = new int[stays.size()];
+        for (int i = 0; i < this.stayLengths.length; i++)
+        {
+            this.stayLengths[i] = stays.get(i);
+        }
+    }
+
+    /**
+     * Read a query log file.
+     * @param f File to read.
+     * @return query log.
+     * @throws IOException if the file cannot be read.
+     */
+    public static QueryLog read(File f) throws IOException
+    {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8")))
+        {
+            return parse(in);
+        }
+    }
+
+    /**
+     * Parse query log lines.
+     * @param in Lines to parse.
+     * @return query log.
+     * @throws IOException if the lines cannot be read.
+     */
+    public static QueryLog parse(BufferedReader in) throws IOException
+    {
+        List<String> names = new ArrayList<String>();
+        List<LocalDate> dates = new ArrayList<LocalDate>();
+        List<Integer> stays = new ArrayList<Integer>();
+        String line;
+        while ((line = in.readLine()) != null)
+        {
+            if (line.trim().isEmpty())
+            {
+                continue;
+            }
+            String[] fields = line.split(ParserUtils.FIELD_DELIM);
+            try
+            {
+                if (fields.length != 3)
+                {
+                    throw new IllegalArgumentException("Invalid query line: " + line);
+                }
+                String name = ParserUtils.validateStringArg(fields[0].trim(), "Hotel name must be provided!");
+                LocalDate dt = ParserUtils.validateDateArg(fields[1].trim(),
+                        "Invalid date format: should be " + ParserUtils.DATE_FORMAT);
+                int stay = ParserUtils.validateIntegerArg(fields[2].trim(), "Stay length in days must be provided.");
+                names.add(name);
+                dates.add(dt);
+                stays.add(stay);
+            }
+            catch (Exception ex)
+            {
+                System.out.println("Warning: " + ex.getMessage());
+            }
+        }
+        return new QueryLog(names, dates, stays);
+    }
+
+    /**
+     * @return number of queries.
+     */
+    public int size()
+    {
+        return this.hotelNames.length;
+    }
+
+    /**
+     * Run one query of this log.
+     * @param i Query number; wraps around the end of the log.
+     * @param target Target to run it against.
+     * @return result of the target.
+     */
+    int run(int i, QueryTarget target)
+    {
+        int q = i % this.hotelNames.length;
+        return target.query(this.hotelNames[q], this.checkInDates[q], this.stayLengths[q]);
+    }
+}
@@ -0,0 +1,18 @@
+package com.stephengilbane.hotel.load;
+
+import java.time.LocalDate;
+
+/**
+ * Something that answers best value queries, so that a load driver can replay queries against it.
+ */
+public interface QueryTarget
+{
+    /**
+     * Run one best value query.
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate Check-in date.
+     * @param stayLengthDays Length in days of requested stay.
+     * @return final price of the stay, so that the query cannot be optimized away.
+     */
+    int query(String hotelName, LocalDate checkInDate, int stayLengthDays);
+}
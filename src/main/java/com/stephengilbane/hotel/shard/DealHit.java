@@ -0,0 +1,92 @@
+package com.stephengilbane.hotel.shard;
+
+import com.stephengilbane.hotel.DealResult;
+import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealType;
+
+/**
+ * Deal found by a shard, holding values only, so that it may come from another process.
+ * It stands for a {@link DealResult}, which refers to the hotel itself.
+ */
+public final class DealHit
+{
+    private final String hotelName;
+    private final boolean hotelKnown;
+    private final DealType dealType;
+    private final String promotionalText;
+    private final int price;
+
+    /**
+     * Constructor.
+     * @param name Name of the hotel searched.
+     * @param known False if the hotel was not found.
+     * @param type Type of the deal found, DealType.NO_DEAL if none.
+     * @param text Promotional text of the deal.
+     * @param p Final price of the stay, 0 if the hotel was not found.
+     */
+    public DealHit(String name, boolean known, DealType type, String text, int p)
+    {
+        this.hotelName = name;
+        this.hotelKnown = known;
+        this.dealType = type;
+        this.promotionalText = text;
+        this.price = p;
+    }
+
+    /**
+     * @param hotelName Name of the hotel searched.
+     * @param r Result of a search of that hotel.
+     * @return hit holding the values of the result.
+     */
+    public static DealHit of(String hotelName, DealResult r)
+    {
+        Deal d = r.getDeal();
+        if (r.getHotel() == null)
+        {
+            return new DealHit(hotelName, false, d.getDealType(), d.getPromotionalText(), 0);
+        }
+        return new DealHit(hotelName, true, d.getDealType(), d.getPromotionalText(), r.getCustomerPrice());
+    }
+
+    /** @return name of the hotel searched. */
+    public String getHotelName() { return hotelName; }
+
+    /** @return false if the hotel was not found. */
+    public boolean isHotelKnown() { return hotelKnown; }
+
+    /** @return type of the deal found, DealType.NO_DEAL if none. */
+    public DealType getDealType() { return dealType; }
+
+    /** @return promotional text of the deal found. */
+    public String getPromotionalText() { return promotionalText; }
+
+    /** @return final price of the stay, 0 if the hotel was not found. */
+    public int getPrice() { return price; }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof DealHit))
+        {
+            return false;
+        }
+        DealHit h = (DealHit) o;
+        return this.hotelKnown == h.hotelKnown && this.price == h.price && this.dealType == h.dealType
+                && this.hotelName.equals(h.hotelName) && this.promotionalText.equals(h.promotionalText);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (this.hotelName.hashCode() * 31 + this.promotionalText.hashCode()) * 31 + this.price;
+    }
+
+    /**
+     * Override toString.
+     */
+    @Override
+    public String toString()
+    {
+        return this.promotionalText;
+    }
+}
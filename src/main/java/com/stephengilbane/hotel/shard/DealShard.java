@@ -0,0 +1,61 @@
+package com.stephengilbane.hotel.shard;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+import com.stephengilbane.hotel.deals.DealFilter;
+
+/**
+ * One shard of a {@link ShardedDealFinder}: the hotels the ring assigns to it, in this process
+ * or in another one.
+ */
+public interface DealShard
+extends AutoCloseable
+{
+    /**
+     * Find the best value of a stay at a hotel of this shard.
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate Check-in date.
+     * @param stayLengthDays Stay length in days.
+     * @return best deal, or a hit of an unknown hotel. Never null.
+     * @throws IOException if the shard cannot be reached.
+     */
+    DealHit findBestValue(String hotelName, LocalDate checkInDate, int stayLengthDays) throws IOException;
+
+    /**
+     * Find the best deals for a stay across the hotels of this shard, ordered by price, then by
+     * hotel name, then by rank within the hotel.
+     * @param checkInDate Check-in date.
+     * @param stayLengthDays Stay length in days.
+     * @param k Maximum number of deals to return. Must be positive.
+     * @param filter Filter the deals must pass.
+     * @return up to k deals, best first.
+     * @throws IOException if the shard cannot be reached.
+     */
+    List<DealHit> findTopDeals(LocalDate checkInDate, int stayLengthDays, int k, DealFilter filter)
+            throws IOException;
+
+    /**
+     * @param checkInDate Check-in date.
+     * @param stayLengthDays Stay length in days.
+     * @return names of the hotels of this shard with a deal for the stay, in any order.
+     * @throws IOException if the shard cannot be reached.
+     */
+    List<String> findHotelsWithDeals(LocalDate checkInDate, int stayLengthDays) throws IOException;
+
+    /**
+     * @return number of hotels of this shard.
+     * @throws IOException if the shard cannot be reached.
+     */
+    int getHotelCount() throws IOException;
+
+    /**
+     * Release the resources of this shard. Does nothing by default.
+     */
+    @Override
+    default void close()
+    {
+        // Nothing to do.
+    }
+}
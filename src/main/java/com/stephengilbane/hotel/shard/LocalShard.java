@@ -0,0 +1,72 @@
+package com.stephengilbane.hotel.shard;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.stephengilbane.hotel.DealResult;
+import com.stephengilbane.hotel.Hotel;
+import com.stephengilbane.hotel.HotelDealFinder;
+import com.stephengilbane.hotel.deals.DealFilter;
+
+/**
+ * Shard in this process, owning its own {@link HotelDealFinder}.
+ */
+public final class LocalShard
+implements DealShard
+{
+    private final HotelDealFinder finder;
+
+    /**
+     * Constructor.
+     * @param f Finder holding the hotels of this shard.
+     */
+    public LocalShard(HotelDealFinder f)
+    {
+        this.finder = f;
+    }
+
+    /**
+     * @return finder holding the hotels of this shard.
+     */
+    public HotelDealFinder getFinder()
+    {
+        return this.finder;
+    }
+
+    @Override
+    public DealHit findBestValue(String hotelName, LocalDate checkInDate, int stayLengthDays)
+    {
+        return DealHit.of(hotelName, this.finder.findBestValue(hotelName, checkInDate, stayLengthDays));
+    }
+
+    @Override
+    public List<DealHit> findTopDeals(LocalDate checkInDate, int stayLengthDays, int k, DealFilter filter)
+    {
+        List<DealResult> results = this.finder.findTopDeals(checkInDate, stayLengthDays, k, filter);
+        List<DealHit> hits = new ArrayList<DealHit>(results.size());
+        for (DealResult r : results)
+        {
+            hits.add(DealHit.of(r.getHotel().getName(), r));
+        }
+        return hits;
+    }
+
+    @Override
+    public List<String> findHotelsWithDeals(LocalDate checkInDate, int stayLengthDays)
+    {
+        List<Hotel> hotels = this.finder.findHotelsWithDeals(checkInDate, stayLengthDays);
+        List<String> names = new ArrayList<String>(hotels.size());
+        for (Hotel h : hotels)
+        {
+            names.add(h.getName());
+        }
+        return names;
+    }
+
+    @Override
+    public int getHotelCount()
+    {
+        return this.finder.getAllHotels().size();
+    }
+}
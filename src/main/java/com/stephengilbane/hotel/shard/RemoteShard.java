@@ -0,0 +1,149 @@
+package com.stephengilbane.hotel.shard;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.stephengilbane.hotel.ParserUtils;
+import com.stephengilbane.hotel.deals.DealFilter;
+
+/**
+ * Shard served by a {@link ShardServer}, usually in another process, reached over one socket.
+ * Requests are sent one at a time; concurrent callers wait for each other.
+ */
+public final class RemoteShard
+implements DealShard
+{
+    /** Longest time to wait for a connection or a response, in milliseconds. */
+    public static final int TIMEOUT_MILLIS = 30000;
+
+    private final String host;
+    private final int port;
+    private Socket socket;
+    private BufferedReader in;
+    private Writer out;
+
+    /**
+     * Constructor. The connection is opened on the first request.
+     * @param h Host of the shard server.
+     * @param p Port of the shard server.
+     */
+    public RemoteShard(String h, int p)
+    {
+        this.host = h;
+        this.port = p;
+    }
+
+    @Override
+    public DealHit findBestValue(String hotelName, LocalDate checkInDate, int stayLengthDays) throws IOException
+    {
+        List<String> lines = request(ShardProtocol.BEST, hotelName, ParserUtils.formatDate(checkInDate),
+                Integer.toString(stayLengthDays));
+        if (lines.size() != 1)
+        {
+            throw new IOException("Shard returned " + lines.size() + " deals for one hotel");
+        }
+        return ShardProtocol.decodeHit(lines.get(0));
+    }
+
+    @Override
+    public List<DealHit> findTopDeals(LocalDate checkInDate, int stayLengthDays, int k, DealFilter filter)
+            throws IOException
+    {
+        String[] f = ShardProtocol.encodeFilter(filter);
+        List<String> lines = request(ShardProtocol.TOP, ParserUtils.formatDate(checkInDate),
+                Integer.toString(stayLengthDays), Integer.toString(k), f[0], f[1]);
+        List<DealHit> hits = new ArrayList<DealHit>(lines.size());
+        for (String line : lines)
+        {
+            hits.add(ShardProtocol.decodeHit(line));
+        }
+        return hits;
+    }
+
+    @Override
+    public List<String> findHotelsWithDeals(LocalDate checkInDate, int stayLengthDays) throws IOException
+    {
+        List<String> lines = request(ShardProtocol.HOTELS, ParserUtils.formatDate(checkInDate),
+                Integer.toString(stayLengthDays));
+        List<String> names = new ArrayList<String>(lines.size());
+        for (String line : lines)
+        {
+            names.add(ShardProtocol.split(line)[0]);
+        }
+        return names;
+    }
+
+    @Override
+    public int getHotelCount() throws IOException
+    {
+        List<String> lines = request(ShardProtocol.COUNT);
+        if (lines.size() != 1)
+        {
+            throw new IOException("Shard returned no hotel count");
+        }
+        return ParserUtils.validateIntegerArg(lines.get(0), "Malformed hotel count " + lines.get(0));
+    }
+
+    /**
+     * Close the connection. A later request opens a new one.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (this.socket != null)
+        {
+            try
+            {
+                this.socket.close();
+            }
+            catch (IOException ex)
+            {
+                // Nothing more to release.
+            }
+            this.socket = null;
+        }
+    }
+
+    private synchronized List<String> request(String... fields) throws IOException
+    {
+        if (this.socket == null)
+        {
+            Socket s = new Socket();
+            s.connect(new InetSocketAddress(this.host, this.port), TIMEOUT_MILLIS);
+            s.setSoTimeout(TIMEOUT_MILLIS);
+            s.setTcpNoDelay(true);
+            this.in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            this.out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+            this.socket = s;
+        }
+        try
+        {
+            this.out.write(ShardProtocol.join(fields));
+            this.out.write('\n');
+            this.out.flush();
+            return ShardProtocol.readResponse(this.in);
+        }
+        catch (IOException ex)
+        {
+            // The stream may be out of step; start over with a new connection.
+            close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.host + ":" + this.port;
+    }
+}
@@ -0,0 +1,250 @@
+package com.stephengilbane.hotel.shard;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import com.stephengilbane.hotel.ParserUtils;
+import com.stephengilbane.hotel.deals.DealFilter;
+import com.stephengilbane.hotel.deals.DealType;
+
+/**
+ * Line protocol between a {@link RemoteShard} and a {@link ShardServer}.
+ *
+ * Each request is one line of tab-separated fields, the first naming the request:
+ *   BEST hotel date nights
+ *   TOP date nights k types maxPrice
+ *   HOTELS date nights
+ *   COUNT
+ * where types is a comma-separated list of deal type tokens. A response is "OK n" followed by n
+ * lines, or "ERR message". Dates are in ParserUtils.DATE_FORMAT; tabs, newlines and backslashes
+ * within fields are escaped with a backslash.
+ */
+final class ShardProtocol
+{
+    static final String BEST = "BEST";
+    static final String TOP = "TOP";
+    static final String HOTELS = "HOTELS";
+    static final String COUNT = "COUNT";
+    static final String OK = "OK";
+    static final String ERR = "ERR";
+
+    private static final char SEPARATOR = '\t';
+    private static final int HIT_FIELD_COUNT = 5;
+
+    /**
+     * @param fields Fields of a line.
+     * @return the fields escaped and joined into one line.
+     */
+    static String join(String... fields)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < fields.length; i++)
+        {
+            if (i > 0)
+            {
+                sb.append(SEPARATOR);
+            }
+            escape(fields[i], sb);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param line Line received.
+     * @return the fields of the line, unescaped.
+     */
+    static String[] split(String line)
+    {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+            if (c == SEPARATOR)
+            {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            }
+            else if (c == '\\' && i + 1 < line.length())
+            {
+                char e = line.charAt(++i);
+                sb.append((e == 't') ? '\t' : (e == 'n') ? '\n' : (e == 'r') ? '\r' : e);
+            }
+            else
+            {
+                sb.append(c);
+            }
+        }
+        fields.add(sb.toString());
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    /**
+     * @param h Hit to send.
+     * @return line holding the hit.
+     */
+    static String encodeHit(DealHit h)
+    {
+        return join(h.getHotelName(), h.isHotelKnown() ? "1" : "0", h.getDealType().getToken(),
+                Integer.toString(h.getPrice()), h.getPromotionalText());
+    }
+
+    /**
+     * @param line Line holding a hit.
+     * @return the hit.
+     * @throws IOException if the line is malformed.
+     */
+    static DealHit decodeHit(String line) throws IOException
+    {
+        String[] f = split(line);
+        DealType type = (f.length == HIT_FIELD_COUNT) ? DealType.fromToken(f[2]) : null;
+        if (type == null)
+        {
+            throw new IOException("Malformed deal from shard: " + line);
+        }
+        return new DealHit(f[0], "1".equals(f[1]), type, f[4], parseInt(f[3]));
+    }
+
+    /**
+     * @param f Filter to send.
+     * @return the types and the highest price of the filter, as two fields.
+     */
+    static String[] encodeFilter(DealFilter f)
+    {
+        StringBuilder types = new StringBuilder();
+        for (DealType t : f.getTypes())
+        {
+            if (types.length() > 0)
+            {
+                types.append(',');
+            }
+            types.append(t.getToken());
+        }
+        return new String[] { types.toString(), Integer.toString(f.getMaxPrice()) };
+    }
+
+    /**
+     * @param types Comma-separated deal type tokens.
+     * @param maxPrice Highest price accepted.
+     * @return the filter.
+     * @throws IllegalArgumentException if a type or the price is invalid.
+     */
+    static DealFilter decodeFilter(String types, String maxPrice)
+    {
+        EnumSet<DealType> set = EnumSet.noneOf(DealType.class);
+        for (String token : types.split(","))
+        {
+            if (!token.isEmpty())
+            {
+                DealType t = DealType.fromToken(token);
+                if (t == null)
+                {
+                    throw new IllegalArgumentException("Unknown deal type " + token);
+                }
+                set.add(t);
+            }
+        }
+        // A filter of no types is made by accepting NO_DEAL only, which no ranked deal has.
+        DealType[] accepted = set.isEmpty() ? new DealType[] { DealType.NO_DEAL } : set.toArray(new DealType[0]);
+        return DealFilter.ALL.withTypes(accepted)
+                .withMaxPrice(ParserUtils.validateIntegerArg(maxPrice, "Invalid price " + maxPrice));
+    }
+
+    /**
+     * Write a successful response.
+     * @param w Destination.
+     * @param lines Lines of the response.
+     * @throws IOException on write failure.
+     */
+    static void writeResponse(Writer w, List<String> lines) throws IOException
+    {
+        w.write(join(OK, Integer.toString(lines.size())));
+        w.write('\n');
+        for (String line : lines)
+        {
+            w.write(line);
+            w.write('\n');
+        }
+        w.flush();
+    }
+
+    /**
+     * Write an error response.
+     * @param w Destination.
+     * @param message Description of the error.
+     * @throws IOException on write failure.
+     */
+    static void writeError(Writer w, String message) throws IOException
+    {
+        w.write(join(ERR, String.valueOf(message)));
+        w.write('\n');
+        w.flush();
+    }
+
+    /**
+     * Read a response.
+     * @param in Source.
+     * @return lines of a successful response.
+     * @throws IOException on read failure, on an error response, or if the connection was closed.
+     */
+    static List<String> readResponse(BufferedReader in) throws IOException
+    {
+        String status = in.readLine();
+        if (status == null)
+        {
+            throw new IOException("Shard closed the connection");
+        }
+        String[] f = split(status);
+        if (f.length != 2 || !OK.equals(f[0]))
+        {
+            throw new IOException("Shard failed: " + ((f.length > 1) ? f[1] : status));
+        }
+        int n = parseInt(f[1]);
+        List<String> lines = new ArrayList<String>(n);
+        for (int i = 0; i < n; i++)
+        {
+            String line = in.readLine();
+            if (line == null)
+            {
+                throw new IOException("Shard closed the connection");
+            }
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private static void escape(String s, StringBuilder sb)
+    {
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            switch (c)
+            {
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\\': sb.append("\\\\"); break;
+                default: sb.append(c); break;
+            }
+        }
+    }
+
+    private static int parseInt(String s) throws IOException
+    {
+        try
+        {
+            return Integer.parseInt(s);
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new IOException("Malformed number from shard: " + s);
+        }
+    }
+
+    // Class not instantiatable.
+    private ShardProtocol() {}
+}
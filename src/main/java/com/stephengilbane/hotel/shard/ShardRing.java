@@ -0,0 +1,120 @@
+package com.stephengilbane.hotel.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Consistent hash ring assigning hotels to N shards by name.
+ *
+ * Each shard owns many points of the ring, and a hotel belongs to the shard owning the first
+ * point at or after the hash of its name. Going from N to N + 1 shards therefore moves only
+ * about 1 / (N + 1) of the hotels, all of them to the new shard. The ring depends only on the
+ * number of shards, so that separate processes agree on it without exchanging it.
+ */
+public final class ShardRing
+{
+    /** Points of the ring owned by each shard. */
+    public static final int POINTS_PER_SHARD = 128;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int shardCount;
+    // Points sorted by hash, and the shard owning each.
+    private final long[] points;
+    private final int[] owners;
+
+    /**
+     * Constructor.
+     * @param n Number of shards. Must be positive.
+     * @throws IllegalArgumentException if n is not positive.
+     */
+    public ShardRing(int n)
+    {
+        if (n <= 0)
+        {
+            throw new IllegalArgumentException("Invalid number of shards " + n);
+        }
+        this.shardCount = n;
+        int count = n * POINTS_PER_SHARD;
+        long[] hashes = new long[count];
+        for (int s = 0; s < n; s++)
+        {
+            for (int p = 0; p < POINTS_PER_SHARD; p++)
+            {
+                int i = s * POINTS_PER_SHARD + p;
+                hashes[i] = hash("shard-" + s + "#" + p);
+            }
+        }
+        // Sort the point indexes by hash, breaking ties by index so that the ring is deterministic.
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++)
+        {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = Long.compareUnsigned(hashes[a], hashes[b]);
+            return (c != 0) ? c : Integer.compare(a, b);
+        });
+        this.points = new long[count];
+        this.owners = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            this.points[i] = hashes[order[i]];
+            this.owners[i] = order[i] / POINTS_PER_SHARD;
+        }
+    }
+
+    /**
+     * @return number of shards.
+     */
+    public int getShardCount()
+    {
+        return this.shardCount;
+    }
+
+    /**
+     * @param hotelName Name of a hotel.
+     * @return shard owning the hotel, from 0 to getShardCount() - 1.
+     */
+    public int shardFor(String hotelName)
+    {
+        long h = hash(hotelName);
+        int lo = 0;
+        int hi = this.points.length;
+        // First point at or after h, wrapping to the first point of the ring.
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(this.points[mid], h) < 0)
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+        return this.owners[(lo == this.points.length) ? 0 : lo];
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the UTF-8 bytes of a string, with a final mix so that similar names
+     * spread over the ring.
+     * @param s String to hash.
+     * @return hash.
+     */
+    static long hash(String s)
+    {
+        long h = FNV_OFFSET;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8))
+        {
+            h ^= (b & 0xff);
+            h *= FNV_PRIME;
+        }
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return h;
+    }
+}
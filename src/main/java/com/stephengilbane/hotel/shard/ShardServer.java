@@ -0,0 +1,218 @@
+package com.stephengilbane.hotel.shard;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.stephengilbane.hotel.HotelDealFinder;
+import com.stephengilbane.hotel.ParserUtils;
+
+/**
+ * Serves a {@link DealShard} to {@link RemoteShard} clients over the loopback interface, with
+ * one thread per connection.
+ *
+ * Usage: ShardServer [configFile] [shardIndex] [shardCount] [port]
+ *
+ * loads the hotels of the configuration file that a ring of shardCount shards assigns to
+ * shardIndex, and serves them until the process is stopped. A port of 0 picks a free one.
+ */
+public final class ShardServer
+implements AutoCloseable
+{
+    private final DealShard shard;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> connections = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+    private volatile boolean closed;
+
+    /**
+     * Constructor. Starts serving at once.
+     * @param s Shard to serve.
+     * @param port Port to listen on, or 0 to pick a free one.
+     * @throws IOException if the port cannot be bound.
+     */
+    public ShardServer(DealShard s, int port) throws IOException
+    {
+        this.shard = s;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "shard-server-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return port listened on.
+     */
+    public int getPort()
+    {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stop accepting connections and close the open ones.
+     */
+    @Override
+    public void close()
+    {
+        this.closed = true;
+        closeQuietly(this.serverSocket);
+        for (Socket c : this.connections)
+        {
+            closeQuietly(c);
+        }
+    }
+
+    private void accept()
+    {
+        while (!this.closed)
+        {
+            try
+            {
+                Socket c = this.serverSocket.accept();
+                c.setTcpNoDelay(true);
+                this.connections.add(c);
+                Thread worker = new Thread(() -> serve(c), "shard-connection-" + c.getPort());
+                worker.setDaemon(true);
+                worker.start();
+            }
+            catch (IOException ex)
+            {
+                if (!this.closed)
+                {
+                    System.out.println("Warning: shard server stopped accepting: " + ex.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket c)
+    {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(c.getInputStream(), StandardCharsets.UTF_8));
+                Writer out = new BufferedWriter(new OutputStreamWriter(c.getOutputStream(), StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                List<String> response;
+                try
+                {
+                    response = handle(ShardProtocol.split(line));
+                }
+                catch (IOException | RuntimeException ex)
+                {
+                    ShardProtocol.writeError(out, ex.getMessage());
+                    continue;
+                }
+                ShardProtocol.writeResponse(out, response);
+            }
+        }
+        catch (SocketException ex)
+        {
+            // Closed by either side.
+        }
+        catch (IOException ex)
+        {
+            System.out.println("Warning: shard connection failed: " + ex.getMessage());
+        }
+        finally
+        {
+            this.connections.remove(c);
+            closeQuietly(c);
+        }
+    }
+
+    private List<String> handle(String[] f) throws IOException
+    {
+        String command = f[0];
+        if (ShardProtocol.BEST.equals(command) && f.length == 4)
+        {
+            DealHit hit = this.shard.findBestValue(f[1], date(f[2]), nights(f[3]));
+            return Collections.singletonList(ShardProtocol.encodeHit(hit));
+        }
+        if (ShardProtocol.TOP.equals(command) && f.length == 6)
+        {
+            int k = ParserUtils.validateIntegerArg(f[3], "Invalid number of deals " + f[3]);
+            List<String> lines = new ArrayList<String>();
+            for (DealHit hit : this.shard.findTopDeals(date(f[1]), nights(f[2]), k,
+                    ShardProtocol.decodeFilter(f[4], f[5])))
+            {
+                lines.add(ShardProtocol.encodeHit(hit));
+            }
+            return lines;
+        }
+        if (ShardProtocol.HOTELS.equals(command) && f.length == 3)
+        {
+            List<String> lines = new ArrayList<String>();
+            for (String name : this.shard.findHotelsWithDeals(date(f[1]), nights(f[2])))
+            {
+                lines.add(ShardProtocol.join(name));
+            }
+            return lines;
+        }
+        if (ShardProtocol.COUNT.equals(command) && f.length == 1)
+        {
+            return Collections.singletonList(Integer.toString(this.shard.getHotelCount()));
+        }
+        throw new IllegalArgumentException("Unknown request " + command + " with " + (f.length - 1) + " fields");
+    }
+
+    private static LocalDate date(String s)
+    {
+        return ParserUtils.validateDateArg(s, "Invalid date format: should be " + ParserUtils.DATE_FORMAT);
+    }
+
+    private static int nights(String s)
+    {
+        int n = ParserUtils.validateIntegerArg(s, "Stay length in days must be provided.");
+        if (n <= 0)
+        {
+            throw new IllegalArgumentException("Invalid stay length " + n);
+        }
+        return n;
+    }
+
+    private static void closeQuietly(AutoCloseable c)
+    {
+        try
+        {
+            c.close();
+        }
+        catch (Exception ex)
+        {
+            // Nothing more to release.
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if (args.length != 4)
+        {
+            System.out.println("Usage: ShardServer [configFile] [shardIndex] [shardCount] [port]");
+            return;
+        }
+        String filename = ParserUtils.validateStringArg(args[0], "Filename containing hotel deals must be provided!");
+        int index = ParserUtils.validateIntegerArg(args[1], "Shard index must be provided.");
+        ShardRing ring = new ShardRing(ParserUtils.validateIntegerArg(args[2], "Shard count must be provided."));
+        int port = ParserUtils.validateIntegerArg(args[3], "Port must be provided.");
+
+        HotelDealFinder hdf = ShardedDealFinder.loadShard(filename, ring, index);
+        ShardServer server = new ShardServer(new LocalShard(hdf), port);
+        System.out.println(String.format("Shard %d of %d serving %d hotels on port %d", index,
+                ring.getShardCount(), hdf.getAllHotels().size(), server.getPort()));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,323 @@
+package com.stephengilbane.hotel.shard;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import com.stephengilbane.hotel.DealSink;
+import com.stephengilbane.hotel.HotelDealFinder;
+import com.stephengilbane.hotel.HotelDealParser;
+import com.stephengilbane.hotel.StringDictionary;
+import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealFilter;
+
+/**
+ * Router over hotels partitioned across N {@link DealShard}s by a {@link ShardRing}.
+ *
+ * A query for one hotel goes to the one shard owning it. A query across hotels is sent to every
+ * shard at once, and their partial answers are merged: each shard returns its own top K, and
+ * the K best of those are the K best overall, because every hotel is on exactly one shard.
+ * Results are the same as those of one HotelDealFinder holding every hotel.
+ *
+ * Shards may be in this process ({@link LocalShard}) or in other processes
+ * ({@link RemoteShard}); an unreachable shard fails the query with an UncheckedIOException.
+ * Deals may be loaded through this router as a DealSink only when all shards are local.
+ */
+public final class ShardedDealFinder
+implements DealSink, AutoCloseable
+{
+    // Same order as HotelDealFinder's cross-hotel queries. Ties within a hotel come from one
+    // shard, so a stable sort keeps their order.
+    private static final Comparator<DealHit> TOP_DEAL_ORDER = Comparator.comparingInt(DealHit::getPrice)
+            .thenComparing(DealHit::getHotelName);
+
+    private final ShardRing ring;
+    private final List<DealShard> shards;
+    private final Executor executor;
+
+    /**
+     * Constructor.
+     * @param s Shards, in ring order. At least one must be given.
+     * @param exec Executor to query shards on in parallel.
+     * @throws IllegalArgumentException on invalid input.
+     */
+    public ShardedDealFinder(List<? extends DealShard> s, Executor exec)
+    {
+        if (s == null || s.isEmpty() || exec == null)
+        {
+            throw new IllegalArgumentException("Shards and executor must be provided!");
+        }
+        this.ring = new ShardRing(s.size());
+        this.shards = new ArrayList<DealShard>(s);
+        this.executor = exec;
+    }
+
+    /**
+     * Factory method for a router over N empty shards in this process, to be loaded through it.
+     * @param n Number of shards. Must be positive.
+     * @return the router.
+     */
+    public static ShardedDealFinder createLocal(int n)
+    {
+        List<LocalShard> s = new ArrayList<LocalShard>(n);
+        for (int i = 0; i < n; i++)
+        {
+            s.add(new LocalShard(new HotelDealFinder()));
+        }
+        return new ShardedDealFinder(s, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Load the hotels of a configuration file owned by one shard, skipping the others.
+     * @param configFilename Name of configuration file.
+     * @param r Ring assigning hotels to shards.
+     * @param index Shard to load.
+     * @return finder holding the hotels of the shard.
+     * @throws IllegalArgumentException if the index is out of range or the file does not exist.
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    public static HotelDealFinder loadShard(String configFilename, ShardRing r, int index)
+    {
+        if (index < 0 || index >= r.getShardCount())
+        {
+            throw new IllegalArgumentException("Invalid shard " + index + " of " + r.getShardCount());
+        }
+        File f = new File(configFilename);
+        if (!f.exists())
+        {
+            throw new IllegalArgumentException(String.format("File %s must exist and be readable!", configFilename));
+        }
+        HotelDealFinder hdf = new HotelDealFinder();
+        DealSink owned = new DealSink()
+        {
+            @Override
+            public void beginLoad(StringDictionary dict)
+            {
+                hdf.beginLoad(dict);
+            }
+
+            @Override
+            public void endLoad()
+            {
+                hdf.endLoad();
+            }
+
+            @Override
+            public void addDeal(String hotelName, int rate, Deal deal)
+            {
+                if (r.shardFor(hotelName) == index)
+                {
+                    hdf.addDeal(hotelName, rate, deal);
+                }
+            }
+        };
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)))
+        {
+            new HotelDealParser().parseDeals(in, owned, null);
+            return hdf;
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return ring assigning hotels to shards.
+     */
+    public ShardRing getRing()
+    {
+        return this.ring;
+    }
+
+    /**
+     * @param index Index of a shard.
+     * @return the shard.
+     */
+    public DealShard getShard(int index)
+    {
+        return this.shards.get(index);
+    }
+
+    @Override
+    public void beginLoad(StringDictionary dict)
+    {
+        for (DealShard s : this.shards)
+        {
+            local(s).beginLoad(dict);
+        }
+    }
+
+    @Override
+    public void endLoad()
+    {
+        for (DealShard s : this.shards)
+        {
+            local(s).endLoad();
+        }
+    }
+
+    /**
+     * Add a deal to the shard owning its hotel.
+     * @param hotelName Name of hotel.
+     * @param rate  Nightly rate of this hotel.
+     * @param deal  Deal to add.
+     * @throws IllegalStateException if that shard is not in this process.
+     */
+    @Override
+    public void addDeal(String hotelName, int rate, Deal deal)
+    {
+        local(this.shards.get(this.ring.shardFor(hotelName))).addDeal(hotelName, rate, deal);
+    }
+
+    /**
+     * Find the best value of a stay, asking only the shard owning the hotel.
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate Check-in date.
+     * @param stayLengthDays Stay length in days.
+     * @return best deal. Never null.
+     */
+    public DealHit findBestValue(String hotelName, LocalDate checkInDate, int stayLengthDays)
+    {
+        DealShard s = this.shards.get(this.ring.shardFor(hotelName));
+        try
+        {
+            return s.findBestValue(hotelName, checkInDate, stayLengthDays);
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException("Shard " + s + " failed", ex);
+        }
+    }
+
+    /**
+     * Find the best deals for a stay across all hotels of all shards.
+     * @param checkInDate Check-in date.
+     * @param stayLengthDays Stay length in days.
+     * @param k Maximum number of deals to return. Must be positive.
+     * @param filter Filter the deals must pass, such as DealFilter.ALL.
+     * @return up to k deals, best first, as HotelDealFinder.findTopDeals() would rank them.
+     */
+    public List<DealHit> findTopDeals(LocalDate checkInDate, int stayLengthDays, int k, DealFilter filter)
+    {
+        List<DealHit> merged = new ArrayList<DealHit>();
+        for (List<DealHit> part : scatter(s -> s.findTopDeals(checkInDate, stayLengthDays, k, filter)))
+        {
+            merged.addAll(part);
+        }
+        Collections.sort(merged, TOP_DEAL_ORDER);
+        return (merged.size() <= k) ? merged : new ArrayList<DealHit>(merged.subList(0, k));
+    }
+
+    /**
+     * @param checkInDate Check-in date.
+     * @param stayLengthDays Stay length in days.
+     * @return names of the hotels of all shards with a deal for the stay, sorted.
+     */
+    public List<String> findHotelsWithDeals(LocalDate checkInDate, int stayLengthDays)
+    {
+        List<String> names = new ArrayList<String>();
+        for (List<String> part : scatter(s -> s.findHotelsWithDeals(checkInDate, stayLengthDays)))
+        {
+            names.addAll(part);
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * @return number of hotels of all shards.
+     */
+    public int getHotelCount()
+    {
+        int count = 0;
+        for (int n : scatter(DealShard::getHotelCount))
+        {
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Close every shard.
+     */
+    @Override
+    public void close()
+    {
+        for (DealShard s : this.shards)
+        {
+            s.close();
+        }
+    }
+
+    /**
+     * Query every shard in parallel.
+     * @param call Query of one shard.
+     * @return answers of the shards, in shard order.
+     */
+    private <T> List<T> scatter(ShardCall<T> call)
+    {
+        List<CompletableFuture<T>> futures = new ArrayList<CompletableFuture<T>>(this.shards.size());
+        for (DealShard s : this.shards)
+        {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try
+                {
+                    return call.apply(s);
+                }
+                catch (IOException ex)
+                {
+                    throw new UncheckedIOException("Shard " + s + " failed", ex);
+                }
+            }, this.executor));
+        }
+        List<T> answers = new ArrayList<T>(futures.size());
+        for (CompletableFuture<T> f : futures)
+        {
+            try
+            {
+                answers.add(f.join());
+            }
+            catch (CompletionException ex)
+            {
+                if (ex.getCause() instanceof RuntimeException)
+                {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw ex;
+            }
+        }
+        return answers;
+    }
+
+    private static HotelDealFinder local(DealShard s)
+    {
+        if (!(s instanceof LocalShard))
+        {
+            throw new IllegalStateException("Shard " + s + " is not in this process");
+        }
+        return ((LocalShard) s).getFinder();
+    }
+
+    /**
+     * Query of one shard.
+     */
+    @FunctionalInterface
+    private interface ShardCall<T>
+    {
+        T apply(DealShard s) throws IOException;
+    }
+}
@@ -0,0 +1,152 @@
+package com.stephengilbane.hotel.storage;
+
+import java.time.LocalDate;
+
+import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealProvider;
+import com.stephengilbane.hotel.deals.DealRegistry;
+import com.stephengilbane.hotel.deals.DealType;
+
+/**
+ * Reusable flyweight view of one deal record of an {@link OffHeapDealStore}.
+ *
+ * A view is positioned on a record by the store and reads its fields directly from off-heap
+ * memory. Only the getters for text and dates allocate; a view may be reused across queries.
+ */
+public final class DealView
+{
+    private OffHeapDealStore store;
+    private int record = -1;
+    private int hotel = -1;
+    private int price;
+
+    /**
+     * Position this view on a deal record.
+     * @param s Store holding the record.
+     * @param hotelRecord Hotel the deal belongs to.
+     * @param dealRecord Deal record number.
+     * @param finalPrice Final price computed for the current query.
+     */
+    void moveTo(OffHeapDealStore s, int hotelRecord, int dealRecord, int finalPrice)
+    {
+        this.store = s;
+        this.hotel = hotelRecord;
+        this.record = dealRecord;
+        this.price = finalPrice;
+    }
+
+    /**
+     * Detach this view from any record.
+     */
+    void clear()
+    {
+        this.record = -1;
+        this.hotel = -1;
+        this.price = 0;
+    }
+
+    /**
+     * @return true if this view is positioned on a deal record.
+     */
+    public boolean isPresent()
+    {
+        return this.record >= 0;
+    }
+
+    /**
+     * @return record number of the deal within its store.
+     */
+    public int getRecord()
+    {
+        return this.record;
+    }
+
+    /**
+     * @return the DealType of the deal.
+     */
+    public DealType getDealType()
+    {
+        return this.store.dealType(this.record);
+    }
+
+    /**
+     * @return Original input value of the deal.
+     */
+    public int getValue()
+    {
+        return this.store.dealValue(this.record);
+    }
+
+    /**
+     * @return final price of the stay the view was positioned for.
+     */
+    public int getCustomerPrice()
+    {
+        return this.price;
+    }
+
+    /**
+     * @return nightly rate of the hotel of the deal.
+     */
+    public int getNightlyRate()
+    {
+        return this.store.hotelRate(this.hotel);
+    }
+
+    /**
+     * @return name of the hotel of the deal. Allocates a new String.
+     */
+    public String getHotelName()
+    {
+        return this.store.hotelName(this.hotel);
+    }
+
+    /**
+     * @return Promotional text of the deal. Allocates a new String.
+     */
+    public String getPromotionalText()
+    {
+        return this.store.dealPromoText(this.record);
+    }
+
+    /**
+     * @return start date of the deal. Allocates a new LocalDate.
+     */
+    public LocalDate getStartDate()
+    {
+        return LocalDate.ofEpochDay(this.store.dealStartDay(this.record));
+    }
+
+    /**
+     * @return end date of the deal. Allocates a new LocalDate.
+     */
+    public LocalDate getEndDate()
+    {
+        return LocalDate.ofEpochDay(this.store.dealEndDay(this.record));
+    }
+
+    /**
+     * Create an on-heap Deal equal to the one this view is positioned on.
+     * @return new Deal object, or Deal.NO_DEAL if the view is not positioned.
+     */
+    public Deal toDeal()
+    {
+        if (!isPresent())
+        {
+            return Deal.NO_DEAL;
+        }
+        DealType type = getDealType();
+        DealProvider provider = DealRegistry.forType(type);
+        if (type == DealType.NO_DEAL || provider == null)
+        {
+            return Deal.NO_DEAL;
+        }
+        return provider.createDeal(getPromotionalText(), getValue(), getStartDate(), getEndDate());
+    }
+
+    @Override
+    public String toString()
+    {
+        return isPresent() ? getPromotionalText() : Deal.NO_DEAL.getPromotionalText();
+    }
+}
@@ -0,0 +1,400 @@
+package com.stephengilbane.hotel.storage;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import com.stephengilbane.hotel.DealResult;
+import com.stephengilbane.hotel.DealSink;
+import com.stephengilbane.hotel.Hotel;
+import com.stephengilbane.hotel.StringDictionary;
+import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealType;
+
+/**
+ * Storage for hotels and their deals that keeps all feed data outside the Java heap.
+ *
+ * Hotels and deals are fixed-width records in direct ByteBuffers; names and promotional texts
+ * live in an {@link OffHeapStringTable}, where promotional texts encoded by the dictionary of a
+ * load are stored only once. Hotels are found through an open-addressing hash table,
+ * also off-heap, and the deals of a hotel are chained in the order they were added. Queries
+ * position a caller-supplied {@link DealView} on the winning record, so the heap holds nothing
+ * that grows with the size of the feed.
+ *
+ * Only deal types that are linear in the base price (see {@link Deal#isLinear()}) can be stored,
+ * since prices are computed from the stored coefficients rather than by Deal objects.
+ *
+ * As with HotelDealFinder, a store is configured and used by a single thread.
+ */
+public final class OffHeapDealStore
+implements DealSink
+{
+    // Hotel record: name ref, name hash, nightly rate, first deal, last deal, deal count.
+    private static final int HOTEL_NAME = 0;
+    private static final int HOTEL_HASH = 4;
+    private static final int HOTEL_RATE = 8;
+    private static final int HOTEL_FIRST_DEAL = 12;
+    private static final int HOTEL_LAST_DEAL = 16;
+    private static final int HOTEL_DEAL_COUNT = 20;
+    private static final int HOTEL_RECORD_SIZE = 24;
+
+    // Deal record: type, value, start day, end day, minimum stay, multiplier, adjustment, promo ref, next deal.
+    private static final int DEAL_TYPE = 0;
+    private static final int DEAL_VALUE = 4;
+    private static final int DEAL_START = 8;
+    private static final int DEAL_END = 12;
+    private static final int DEAL_MIN_STAY = 16;
+    private static final int DEAL_MULTIPLIER = 20;
+    private static final int DEAL_ADJUSTMENT = 24;
+    private static final int DEAL_PROMO = 28;
+    private static final int DEAL_NEXT = 32;
+    private static final int DEAL_RECORD_SIZE = 36;
+
+    private static final int NONE = -1;
+    private static final int INITIAL_HOTELS = 1024;
+    private static final int INITIAL_DEALS = 4096;
+    private static final DealType[] TYPES = DealType.values();
+
+    private final OffHeapStringTable strings = new OffHeapStringTable();
+    private ByteBuffer hotels = ByteBuffer.allocateDirect(INITIAL_HOTELS * HOTEL_RECORD_SIZE);
+    private ByteBuffer deals = ByteBuffer.allocateDirect(INITIAL_DEALS * DEAL_RECORD_SIZE);
+    // Hash slots hold hotel record number + 1; 0 marks an empty slot.
+    private ByteBuffer slots = ByteBuffer.allocateDirect(2 * INITIAL_HOTELS * 4);
+    private int hotelCount;
+    private int dealCount;
+    // String table references of the promotional texts of the current load, indexed by dictionary code.
+    private int[] promoRefs = new int[0];
+
+    /**
+     * Start a new load: dictionary codes of earlier loads no longer apply.
+     * @param dictionary Dictionary of the load.
+     */
+    @Override
+    public void beginLoad(StringDictionary dictionary)
+    {
+        this.promoRefs = new int[0];
+    }
+
+    /**
+     * Add a deal to a hotel. If the hotel does not exist, create it with the given rate;
+     * otherwise the rate of its first line is kept, as in HotelDealFinder.
+     * @param hotelName Name of hotel.
+     * @param rate  Nightly rate of this hotel.
+     * @param deal  Deal to add. Only its fields are stored; the object may be discarded afterwards.
+     * @throws IllegalArgumentException if the deal is not linear in the base price.
+     */
+    @Override
+    public void addDeal(String hotelName, int rate, Deal deal)
+    {
+        if (!deal.isLinear())
+        {
+            throw new IllegalArgumentException("Deal type " + deal.getTypeToken() + " cannot be stored off-heap");
+        }
+        int hotel = findHotel(hotelName);
+        if (hotel == NONE)
+        {
+            hotel = createHotel(hotelName, rate);
+        }
+
+        int record = this.dealCount;
+        ensureDealCapacity(record + 1);
+        int base = record * DEAL_RECORD_SIZE;
+        this.deals.putInt(base + DEAL_TYPE, deal.getDealType().ordinal());
+        this.deals.putInt(base + DEAL_VALUE, deal.getValue());
+        this.deals.putInt(base + DEAL_START, (int) deal.getStartDate().toEpochDay());
+        this.deals.putInt(base + DEAL_END, (int) deal.getEndDate().toEpochDay());
+        this.deals.putInt(base + DEAL_MIN_STAY, deal.getMinStayDays());
+        this.deals.putInt(base + DEAL_MULTIPLIER, deal.getRateMultiplierPercent());
+        this.deals.putInt(base + DEAL_ADJUSTMENT, deal.getFlatAdjustment());
+        this.deals.putInt(base + DEAL_PROMO, promoRef(deal));
+        this.deals.putInt(base + DEAL_NEXT, NONE);
+        this.dealCount++;
+
+        int hotelBase = hotel * HOTEL_RECORD_SIZE;
+        int last = this.hotels.getInt(hotelBase + HOTEL_LAST_DEAL);
+        if (last == NONE)
+        {
+            this.hotels.putInt(hotelBase + HOTEL_FIRST_DEAL, record);
+        }
+        else
+        {
+            this.deals.putInt(last * DEAL_RECORD_SIZE + DEAL_NEXT, record);
+        }
+        this.hotels.putInt(hotelBase + HOTEL_LAST_DEAL, record);
+        this.hotels.putInt(hotelBase + HOTEL_DEAL_COUNT, this.hotels.getInt(hotelBase + HOTEL_DEAL_COUNT) + 1);
+    }
+
+    /**
+     * Find the best deal of a hotel for a stay and position a view on it. Ties on price go to
+     * the deal that was added first, as in Hotel.findBestDeal(). Does not allocate.
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Length in days of requested stay.
+     * @param result View to position on the best deal; cleared if there is none.
+     * @return true if a deal was found.
+     */
+    public boolean findBestDeal(String hotelName, LocalDate checkInDate, int stayLengthDays, DealView result)
+    {
+        result.clear();
+        int hotel = findHotel(hotelName);
+        if (hotel == NONE)
+        {
+            return false;
+        }
+        if (checkInDate == null)
+        {
+            throw new IllegalArgumentException("Invalid null check -in date!");
+        }
+        int hotelBase = hotel * HOTEL_RECORD_SIZE;
+        long basePrice = (long) this.hotels.getInt(hotelBase + HOTEL_RATE) * stayLengthDays;
+        long day = checkInDate.toEpochDay();
+
+        int bestRecord = NONE;
+        long bestValue = Long.MAX_VALUE;
+        for (int d = this.hotels.getInt(hotelBase + HOTEL_FIRST_DEAL); d != NONE; d = this.deals.getInt(d
+                * DEAL_RECORD_SIZE + DEAL_NEXT))
+        {
+            int base = d * DEAL_RECORD_SIZE;
+            if (stayLengthDays < this.deals.getInt(base + DEAL_MIN_STAY))
+            {
+                continue;
+            }
+            int start = this.deals.getInt(base + DEAL_START);
+            int end = this.deals.getInt(base + DEAL_END);
+            // Same rule as Deal.isCheckInDateApplicable().
+            if (day != start && day != end && !(day > start && day < end))
+            {
+                continue;
+            }
+            long value = this.deals.getInt(base + DEAL_MULTIPLIER) * basePrice + 100L
+                    * this.deals.getInt(base + DEAL_ADJUSTMENT);
+            if (value / 100 < bestValue)
+            {
+                bestValue = value / 100;
+                bestRecord = d;
+            }
+        }
+        if (bestRecord == NONE)
+        {
+            return false;
+        }
+        result.moveTo(this, hotel, bestRecord, (int) bestValue);
+        return true;
+    }
+
+    /**
+     * Find the best value for a stay, materializing the hotel and deal on the heap. Intended
+     * as a drop-in replacement for HotelDealFinder.findBestValue() where allocation is not a concern.
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate  Input check-in date.
+     * @param stayLengthDays Length in days of requested stay.
+     * @return DealResult of the best deal. Never returns null.
+     */
+    public DealResult findBestValue(String hotelName, LocalDate checkInDate, int stayLengthDays)
+    {
+        DealView view = new DealView();
+        int hotel = findHotel(hotelName);
+        if (hotel == NONE)
+        {
+            return new DealResult(null, Deal.NO_DEAL, checkInDate, stayLengthDays);
+        }
+        Hotel h = new Hotel(hotelName, hotelRate(hotel));
+        findBestDeal(hotelName, checkInDate, stayLengthDays, view);
+        return new DealResult(h, view.toDeal(), checkInDate, stayLengthDays);
+    }
+
+    /**
+     * @return number of hotels in this store.
+     */
+    public int getHotelCount()
+    {
+        return this.hotelCount;
+    }
+
+    /**
+     * @return number of deals in this store.
+     */
+    public int getDealCount()
+    {
+        return this.dealCount;
+    }
+
+    /**
+     * @return number of off-heap bytes allocated by this store.
+     */
+    public long getOffHeapBytes()
+    {
+        return (long) this.hotels.capacity() + this.deals.capacity() + this.slots.capacity()
+                + this.strings.getCapacityBytes();
+    }
+
+    /*
+     * Record accessors for DealView.
+     */
+
+    DealType dealType(int record)
+    {
+        return TYPES[this.deals.getInt(record * DEAL_RECORD_SIZE + DEAL_TYPE)];
+    }
+
+    int dealValue(int record)
+    {
+        return this.deals.getInt(record * DEAL_RECORD_SIZE + DEAL_VALUE);
+    }
+
+    int dealStartDay(int record)
+    {
+        return this.deals.getInt(record * DEAL_RECORD_SIZE + DEAL_START);
+    }
+
+    int dealEndDay(int record)
+    {
+        return this.deals.getInt(record * DEAL_RECORD_SIZE + DEAL_END);
+    }
+
+    String dealPromoText(int record)
+    {
+        return this.strings.get(this.deals.getInt(record * DEAL_RECORD_SIZE + DEAL_PROMO));
+    }
+
+    int hotelRate(int hotel)
+    {
+        return this.hotels.getInt(hotel * HOTEL_RECORD_SIZE + HOTEL_RATE);
+    }
+
+    String hotelName(int hotel)
+    {
+        return this.strings.get(this.hotels.getInt(hotel * HOTEL_RECORD_SIZE + HOTEL_NAME));
+    }
+
+    /**
+     * Find or add the promotional text of a deal in the string table.
+     * @param deal Deal being added.
+     * @return string table reference of its promotional text.
+     */
+    private int promoRef(Deal deal)
+    {
+        int code = deal.getPromoCode();
+        if (code < 0)
+        {
+            return this.strings.add(deal.getPromotionalText());
+        }
+        if (code >= this.promoRefs.length)
+        {
+            int oldLength = this.promoRefs.length;
+            this.promoRefs = Arrays.copyOf(this.promoRefs, Math.max(2 * oldLength, code + 16));
+            Arrays.fill(this.promoRefs, oldLength, this.promoRefs.length, -1);
+        }
+        if (this.promoRefs[code] < 0)
+        {
+            this.promoRefs[code] = this.strings.add(deal.getPromotionalText());
+        }
+        return this.promoRefs[code];
+    }
+
+    /*
+     * Hotel hash table.
+     */
+
+    private int findHotel(String name)
+    {
+        if (name == null)
+        {
+            return NONE;
+        }
+        int hash = name.hashCode();
+        int mask = this.slots.capacity() / 4 - 1;
+        for (int i = mix(hash) & mask;; i = (i + 1) & mask)
+        {
+            int entry = this.slots.getInt(i * 4);
+            if (entry == 0)
+            {
+                return NONE;
+            }
+            int hotel = entry - 1;
+            int hotelBase = hotel * HOTEL_RECORD_SIZE;
+            if (this.hotels.getInt(hotelBase + HOTEL_HASH) == hash
+                    && this.strings.matches(this.hotels.getInt(hotelBase + HOTEL_NAME), name))
+            {
+                return hotel;
+            }
+        }
+    }
+
+    private int createHotel(String name, int rate)
+    {
+        int hotel = this.hotelCount;
+        if ((long) this.hotels.capacity() < (long) (hotel + 1) * HOTEL_RECORD_SIZE)
+        {
+            this.hotels = grow(this.hotels, 2L * this.hotels.capacity());
+        }
+        int hotelBase = hotel * HOTEL_RECORD_SIZE;
+        this.hotels.putInt(hotelBase + HOTEL_NAME, this.strings.add(name));
+        this.hotels.putInt(hotelBase + HOTEL_HASH, name.hashCode());
+        this.hotels.putInt(hotelBase + HOTEL_RATE, rate);
+        this.hotels.putInt(hotelBase + HOTEL_FIRST_DEAL, NONE);
+        this.hotels.putInt(hotelBase + HOTEL_LAST_DEAL, NONE);
+        this.hotels.putInt(hotelBase + HOTEL_DEAL_COUNT, 0);
+        this.hotelCount++;
+
+        // Keep the hash table at most half full.
+        if (2 * this.hotelCount > this.slots.capacity() / 4)
+        {
+            rehash(2 * this.slots.capacity());
+        }
+        else
+        {
+            insertSlot(this.slots, hotel, name.hashCode());
+        }
+        return hotel;
+    }
+
+    private void rehash(int newCapacityBytes)
+    {
+        ByteBuffer newSlots = ByteBuffer.allocateDirect(newCapacityBytes);
+        for (int h = 0; h < this.hotelCount; h++)
+        {
+            insertSlot(newSlots, h, this.hotels.getInt(h * HOTEL_RECORD_SIZE + HOTEL_HASH));
+        }
+        this.slots = newSlots;
+    }
+
+    private static void insertSlot(ByteBuffer table, int hotel, int hash)
+    {
+        int mask = table.capacity() / 4 - 1;
+        int i = mix(hash) & mask;
+        while (table.getInt(i * 4) != 0)
+        {
+            i = (i + 1) & mask;
+        }
+        table.putInt(i * 4, hotel + 1);
+    }
+
+    private static int mix(int hash)
+    {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void ensureDealCapacity(int records)
+    {
+        if ((long) this.deals.capacity() < (long) records * DEAL_RECORD_SIZE)
+        {
+            this.deals = grow(this.deals, 2L * this.deals.capacity());
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buf, long newCapacity)
+    {
+        if (newCapacity > Integer.MAX_VALUE)
+        {
+            throw new IllegalStateException("Off-heap deal store is full!");
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) newCapacity);
+        ByteBuffer src = buf.duplicate();
+        src.clear();
+        grown.put(src);
+        grown.clear();
+        return grown;
+    }
+}
@@ -0,0 +1,130 @@
+package com.stephengilbane.hotel.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Append-only table of strings kept outside the Java heap.
+ *
+ * Each string is stored as a 4-byte length followed by its UTF-8 bytes in a direct ByteBuffer.
+ * A string is referred to by the offset of its record, so callers only hold an int per string.
+ */
+public final class OffHeapStringTable
+{
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private ByteBuffer buffer;
+    private int count;
+
+    /**
+     * Constructor.
+     */
+    public OffHeapStringTable()
+    {
+        this.buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Append a string to this table.
+     * @param s String to add. Must not be null.
+     * @return reference to the stored string.
+     */
+    public int add(String s)
+    {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(4 + bytes.length);
+        int ref = this.buffer.position();
+        this.buffer.putInt(bytes.length);
+        this.buffer.put(bytes);
+        this.count++;
+        return ref;
+    }
+
+    /**
+     * Read a string back from this table. Allocates a new String.
+     * @param ref Reference returned by {@link #add(String)}.
+     * @return stored string.
+     */
+    public String get(int ref)
+    {
+        int len = this.buffer.getInt(ref);
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++)
+        {
+            bytes[i] = this.buffer.get(ref + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compare a stored string to a given one without decoding ASCII strings onto the heap.
+     * @param ref Reference returned by {@link #add(String)}.
+     * @param s String to compare to.
+     * @return True if the stored string equals s.
+     */
+    public boolean matches(int ref, String s)
+    {
+        int len = this.buffer.getInt(ref);
+        if (len < s.length())
+        {
+            // UTF-8 never needs fewer bytes than chars.
+            return false;
+        }
+        for (int i = 0; i < len; i++)
+        {
+            byte b = this.buffer.get(ref + 4 + i);
+            if (b < 0)
+            {
+                // Not ASCII: fall back to full decoding.
+                return get(ref).equals(s);
+            }
+            if (i >= s.length() || s.charAt(i) != b)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of strings in this table.
+     */
+    public int size()
+    {
+        return this.count;
+    }
+
+    /**
+     * @return number of off-heap bytes in use.
+     */
+    public long getUsedBytes()
+    {
+        return this.buffer.position();
+    }
+
+    /**
+     * @return number of off-heap bytes allocated.
+     */
+    public long getCapacityBytes()
+    {
+        return this.buffer.capacity();
+    }
+
+    private void ensureCapacity(int extra)
+    {
+        if (this.buffer.remaining() >= extra)
+        {
+            return;
+        }
+        long needed = (long) this.buffer.position() + extra;
+        long newCapacity = Math.max(needed, 2L * this.buffer.capacity());
+        if (newCapacity > Integer.MAX_VALUE)
+        {
+            throw new IllegalStateException("Off-heap string table is full!");
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) newCapacity);
+        this.buffer.flip();
+        grown.put(this.buffer);
+        this.buffer = grown;
+    }
+}
@@ -0,0 +1,26 @@
+package com.stephengilbane.hotel.trace;
+
+/**
+ *  Outcome of evaluating one deal of a hotel for a query.
+ */
+public enum CandidateOutcome
+{
+    /** Stay is shorter than the minimum stay of the deal. */
+    REJECTED_STAY_LENGTH("stay too short"),
+    /** Check-in date is outside the dates of the deal. */
+    REJECTED_CHECK_IN_DATE("check-in date not covered"),
+    /** Deal applies, but another deal is at least as cheap. */
+    NOT_BEST("not the cheapest"),
+    /** Deal applies and was returned as the best deal. */
+    SELECTED("selected");
+
+    private final String description;
+
+    private CandidateOutcome(String d)
+    {
+        description = d;
+    }
+
+    /** @return Short description of this outcome for reports. */
+    public String getDescription() { return description; }
+}
@@ -0,0 +1,149 @@
+package com.stephengilbane.hotel.trace;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.stephengilbane.hotel.deals.Deal;
+
+/**
+ * Explanation of a single best-deal query: every deal of the hotel that was considered,
+ * what it would have cost, and why it was or was not selected.
+ */
+public class QueryExplanation
+{
+    private final String hotelName;
+    private final LocalDate checkInDate;
+    private final int stayLength;
+    private final boolean hotelFound;
+    private final int nightlyRate;
+    private final List<Candidate> candidates = new ArrayList<Candidate>();
+    private Deal selectedDeal = Deal.NO_DEAL;
+    private int finalPrice;
+
+    /**
+     * Constructor.
+     * @param hotelName Name of the hotel searched.
+     * @param dt Date of check in.
+     * @param stayLength Length of stay in days.
+     * @param hotelFound Whether a hotel of that name is configured.
+     * @param rate Nightly rate of the hotel, or 0 if not found.
+     */
+    public QueryExplanation(String hotelName, LocalDate dt, int stayLength, boolean hotelFound, int rate)
+    {
+        this.hotelName = hotelName;
+        this.checkInDate = dt;
+        this.stayLength = stayLength;
+        this.hotelFound = hotelFound;
+        this.nightlyRate = rate;
+    }
+
+    /**
+     * Record a deal that was considered.
+     * @param deal Deal considered.
+     * @param index Position of the deal within its hotel.
+     * @param outcome Outcome of considering it.
+     * @param price Price the deal computes for the stay, whether or not it applies.
+     */
+    public void addCandidate(Deal deal, int index, CandidateOutcome outcome, int price)
+    {
+        this.candidates.add(new Candidate(deal, index, outcome, price));
+    }
+
+    /**
+     * Record the result of the query.
+     * @param deal Deal returned, or Deal.NO_DEAL.
+     * @param price Final price for the customer.
+     */
+    public void setResult(Deal deal, int price)
+    {
+        this.selectedDeal = deal;
+        this.finalPrice = price;
+    }
+
+    /** @return name of the hotel searched. */
+    public String getHotelName() { return hotelName; }
+
+    /** @return check-in date of the query. */
+    public LocalDate getCheckInDate() { return checkInDate; }
+
+    /** @return stay length in days of the query. */
+    public int getStayLength() { return stayLength; }
+
+    /** @return true if the hotel was found. */
+    public boolean isHotelFound() { return hotelFound; }
+
+    /** @return nightly rate of the hotel, or 0 if not found. */
+    public int getNightlyRate() { return nightlyRate; }
+
+    /** @return the deal returned by the query, or Deal.NO_DEAL. */
+    public Deal getSelectedDeal() { return selectedDeal; }
+
+    /** @return final price for the customer. */
+    public int getFinalPrice() { return finalPrice; }
+
+    /** @return all deals considered, in the order they were configured. */
+    public List<Candidate> getCandidates()
+    {
+        return Collections.unmodifiableList(this.candidates);
+    }
+
+    /**
+     * @return multi-line, human readable report of this explanation.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Query: ").append(this.hotelName).append(", check-in ").append(this.checkInDate)
+                .append(", ").append(this.stayLength).append(" nights\n");
+        if (!this.hotelFound)
+        {
+            sb.append("  Hotel not found\n");
+            return sb.toString();
+        }
+        sb.append("  Nightly rate: $").append(this.nightlyRate).append('\n');
+        for (Candidate c : this.candidates)
+        {
+            sb.append("  #").append(c.getIndex()).append(' ').append(c.getDeal().getTypeToken()).append(' ')
+                    .append(c.getDeal().getStartDate()).append("..").append(c.getDeal().getEndDate())
+                    .append(" \"").append(c.getDeal().getPromotionalText()).append("\" -> $").append(c.getPrice())
+                    .append(": ").append(c.getOutcome().getDescription()).append('\n');
+        }
+        sb.append("  Result: ").append(this.selectedDeal.getPromotionalText()).append(", final price $")
+                .append(this.finalPrice).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * A deal considered by a query.
+     */
+    public static final class Candidate
+    {
+        private final Deal deal;
+        private final int index;
+        private final CandidateOutcome outcome;
+        private final int price;
+
+        Candidate(Deal deal, int index, CandidateOutcome outcome, int price)
+        {
+            this.deal = deal;
+            this.index = index;
+            this.outcome = outcome;
+            this.price = price;
+        }
+
+        /** @return the deal. */
+        public Deal getDeal() { return deal; }
+
+        /** @return position of the deal within its hotel. */
+        public int getIndex() { return index; }
+
+        /** @return outcome of considering the deal. */
+        public CandidateOutcome getOutcome() { return outcome; }
+
+        /** @return price the deal computes for the stay. */
+        public int getPrice() { return price; }
+    }
+}
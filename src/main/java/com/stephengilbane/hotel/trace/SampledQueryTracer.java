@@ -0,0 +1,83 @@
+package com.stephengilbane.hotel.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traces one in every N queries, keeping the most recent explanations in a ring buffer.
+ * Install on a HotelDealFinder with setQueryTracer(); with no tracer installed, queries
+ * only pay for a null check.
+ */
+public class SampledQueryTracer
+{
+    private final int sampleInterval;
+    private final QueryExplanation[] ring;
+    private final AtomicLong queryCount = new AtomicLong();
+    private long recorded;
+
+    /**
+     * Constructor.
+     * @param sampleInterval Trace one query in this many. 1 traces every query.
+     * @param capacity Number of explanations to keep.
+     * @throws IllegalArgumentException if either argument is not positive.
+     */
+    public SampledQueryTracer(int sampleInterval, int capacity)
+    {
+        if (sampleInterval < 1 || capacity < 1)
+        {
+            throw new IllegalArgumentException("Sample interval and capacity must be positive!");
+        }
+        this.sampleInterval = sampleInterval;
+        this.ring = new QueryExplanation[capacity];
+    }
+
+    /**
+     * Count a query and decide whether to trace it.
+     * @return true if this query should be traced.
+     */
+    public boolean shouldSample()
+    {
+        return this.queryCount.getAndIncrement() % this.sampleInterval == 0;
+    }
+
+    /**
+     * Record the explanation of a traced query, overwriting the oldest one if the buffer is full.
+     * @param explanation Explanation to record.
+     */
+    public synchronized void record(QueryExplanation explanation)
+    {
+        this.ring[(int) (this.recorded % this.ring.length)] = explanation;
+        this.recorded++;
+    }
+
+    /**
+     * @return the explanations in the buffer, oldest first.
+     */
+    public synchronized List<QueryExplanation> getRecentTraces()
+    {
+        int n = (int) Math.min(this.recorded, this.ring.length);
+        List<QueryExplanation> traces = new ArrayList<QueryExplanation>(n);
+        for (long i = this.recorded - n; i < this.recorded; i++)
+        {
+            traces.add(this.ring[(int) (i % this.ring.length)]);
+        }
+        return traces;
+    }
+
+    /**
+     * @return number of queries seen.
+     */
+    public long getQueryCount()
+    {
+        return this.queryCount.get();
+    }
+
+    /**
+     * @return number of queries traced.
+     */
+    public synchronized long getTracedCount()
+    {
+        return this.recorded;
+    }
+}
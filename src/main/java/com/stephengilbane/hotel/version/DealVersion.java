@@ -0,0 +1,104 @@
+package com.stephengilbane.hotel.version;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+import com.stephengilbane.hotel.DealResult;
+import com.stephengilbane.hotel.Hotel;
+import com.stephengilbane.hotel.deals.Deal;
+
+/**
+ * Immutable snapshot of every hotel as of one feed load of a {@link VersionedDealFinder}.
+ *
+ * Hotels whose deals did not change since the previous version are the same Hotel objects as in
+ * that version, with their partitions, envelopes and stackers, and the map of hotels shares all
+ * of its nodes but those leading to changed hotels. A version therefore costs memory in
+ * proportion to the changes of its feed.
+ *
+ * The hotels of a version are frozen: changing one throws an IllegalStateException. Deals with a
+ * limited quantity are shared by every version in which they are unchanged, so a unit claimed
+ * under one version is sold in all of them.
+ */
+public final class DealVersion
+{
+    private final long number;
+    private final Instant feedTime;
+    private final PersistentMap<Hotel> hotels;
+    private final int reusedHotelCount;
+    private volatile Instant supersededTime;
+
+    DealVersion(long n, Instant t, PersistentMap<Hotel> h, int reused)
+    {
+        this.number = n;
+        this.feedTime = t;
+        this.hotels = h;
+        this.reusedHotelCount = reused;
+    }
+
+    /** @return number of this version, counting from 1. */
+    public long getNumber() { return number; }
+
+    /** @return time of the feed of this version; it is in effect from then on. */
+    public Instant getFeedTime() { return feedTime; }
+
+    /** @return feed time of the next version, or null if this is the latest. */
+    public Instant getSupersededTime() { return supersededTime; }
+
+    /** @return number of hotels. */
+    public int getHotelCount() { return hotels.size(); }
+
+    /** @return number of hotels shared with the previous version. */
+    public int getReusedHotelCount() { return reusedHotelCount; }
+
+    /**
+     * @param hotelName Name of a hotel.
+     * @return the hotel as of this version, frozen, or null if it had no deals in the feed.
+     */
+    public Hotel getHotel(String hotelName)
+    {
+        return this.hotels.get(hotelName);
+    }
+
+    /**
+     * Visit every hotel of this version, in no particular order.
+     * @param visitor Called once for each hotel. The hotels are frozen.
+     */
+    public void forEachHotel(Consumer<Hotel> visitor)
+    {
+        this.hotels.forEach((name, h) -> visitor.accept(h));
+    }
+
+    /**
+     * Find the best value as of this version, as HotelDealFinder.findBestValue() would.
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Length in days of requested stay.
+     * @return DealResult of the best deal. Never returns null.
+     */
+    public DealResult findBestValue(String hotelName, LocalDate checkInDate, int stayLengthDays)
+    {
+        Hotel h = this.hotels.get(hotelName);
+        if (h == null)
+        {
+            return new DealResult(null, Deal.NO_DEAL, checkInDate, stayLengthDays);
+        }
+        return h.findBestValue(checkInDate, stayLengthDays);
+    }
+
+    PersistentMap<Hotel> getHotels()
+    {
+        return this.hotels;
+    }
+
+    void supersede(Instant t)
+    {
+        this.supersededTime = t;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "version " + this.number + " of " + this.feedTime + ", " + this.hotels.size() + " hotels";
+    }
+}
@@ -0,0 +1,361 @@
+package com.stephengilbane.hotel.version;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable hash map from strings, as a hash array mapped trie.
+ *
+ * put() and remove() return a new map that shares every node of this one except those on the
+ * path to the changed key, so that a new map differing from this one in C keys costs O(C log N)
+ * rather than a copy of all N entries. Each node holds up to 32 children, indexed by 5 bits of
+ * the key's hash, in an array sized by a bitmap of the children present. Keys whose hashes are
+ * equal are kept together in a collision node.
+ *
+ * @param <V> Type of values.
+ */
+final class PersistentMap<V>
+{
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int MAX_SHIFT = 30;
+
+    private static final PersistentMap<Object> EMPTY = new PersistentMap<Object>(new BitmapNode(0, new Object[0]), 0);
+
+    private final BitmapNode root;
+    private final int size;
+
+    private PersistentMap(BitmapNode r, int n)
+    {
+        this.root = r;
+        this.size = n;
+    }
+
+    /**
+     * @return the empty map.
+     */
+    @SuppressWarnings("unchecked")
+    static <V> PersistentMap<V> empty()
+    {
+        return (PersistentMap<V>) EMPTY;
+    }
+
+    /**
+     * @return number of entries.
+     */
+    int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @param key Key to look up.
+     * @return value of the key, or null if absent.
+     */
+    @SuppressWarnings("unchecked")
+    V get(String key)
+    {
+        int hash = spread(key.hashCode());
+        Object node = this.root;
+        for (int shift = 0; ; shift += BITS)
+        {
+            if (node instanceof BitmapNode)
+            {
+                BitmapNode b = (BitmapNode) node;
+                int bit = 1 << ((hash >>> shift) & MASK);
+                if ((b.bitmap & bit) == 0)
+                {
+                    return null;
+                }
+                node = b.children[Integer.bitCount(b.bitmap & (bit - 1))];
+            }
+            else if (node instanceof Leaf)
+            {
+                Leaf leaf = (Leaf) node;
+                return (leaf.hash == hash && leaf.key.equals(key)) ? (V) leaf.value : null;
+            }
+            else
+            {
+                Leaf leaf = ((CollisionNode) node).find(hash, key);
+                return (leaf == null) ? null : (V) leaf.value;
+            }
+        }
+    }
+
+    /**
+     * @param key Key to set.
+     * @param value Value of the key. Must not be null.
+     * @return map with the key set to the value; this map if it already was, by identity.
+     */
+    PersistentMap<V> put(String key, V value)
+    {
+        int hash = spread(key.hashCode());
+        boolean[] added = new boolean[1];
+        Object r = put(this.root, 0, new Leaf(hash, key, value), added);
+        return (r == this.root) ? this : new PersistentMap<V>((BitmapNode) r, this.size + (added[0] ? 1 : 0));
+    }
+
+    /**
+     * @param key Key to remove.
+     * @return map without the key; this map if the key was absent.
+     */
+    PersistentMap<V> remove(String key)
+    {
+        int hash = spread(key.hashCode());
+        Object r = remove(this.root, 0, hash, key);
+        if (r == this.root)
+        {
+            return this;
+        }
+        // The root stays a bitmap node, even when a single leaf is left.
+        BitmapNode newRoot = (r instanceof BitmapNode) ? (BitmapNode) r
+                : (r == null) ? new BitmapNode(0, new Object[0]) : singleton(r, 0);
+        return new PersistentMap<V>(newRoot, this.size - 1);
+    }
+
+    /**
+     * Visit every entry, in no particular order.
+     * @param visitor Called once for each entry.
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<String, V> visitor)
+    {
+        visit(this.root, (BiConsumer<String, Object>) visitor);
+    }
+
+    private static Object put(Object node, int shift, Leaf leaf, boolean[] added)
+    {
+        if (node instanceof Leaf)
+        {
+            Leaf old = (Leaf) node;
+            if (old.hash == leaf.hash && old.key.equals(leaf.key))
+            {
+                return (old.value == leaf.value) ? old : leaf;
+            }
+            added[0] = true;
+            return merge(old, leaf, shift);
+        }
+        if (node instanceof CollisionNode)
+        {
+            CollisionNode c = (CollisionNode) node;
+            if (c.leaves[0].hash == leaf.hash)
+            {
+                return c.put(leaf, added);
+            }
+            // A different hash splits off from the collisions at this level or below.
+            return put(singleton(c, shift), shift, leaf, added);
+        }
+        BitmapNode b = (BitmapNode) node;
+        int bit = 1 << ((leaf.hash >>> shift) & MASK);
+        int index = Integer.bitCount(b.bitmap & (bit - 1));
+        if ((b.bitmap & bit) == 0)
+        {
+            added[0] = true;
+            Object[] children = new Object[b.children.length + 1];
+            System.arraycopy(b.children, 0, children, 0, index);
+            children[index] = leaf;
+            System.arraycopy(b.children, index, children, index + 1, b.children.length - index);
+            return new BitmapNode(b.bitmap | bit, children);
+        }
+        Object child = b.children[index];
+        Object newChild = put(child, shift + BITS, leaf, added);
+        return (newChild == child) ? b : b.with(index, newChild);
+    }
+
+    /**
+     * @return the node without the key: the same node if absent, null if it became empty, or a
+     *         single leaf to be lifted into the parent.
+     */
+    private static Object remove(Object node, int shift, int hash, String key)
+    {
+        if (node instanceof Leaf)
+        {
+            Leaf leaf = (Leaf) node;
+            return (leaf.hash == hash && leaf.key.equals(key)) ? null : leaf;
+        }
+        if (node instanceof CollisionNode)
+        {
+            return ((CollisionNode) node).remove(hash, key);
+        }
+        BitmapNode b = (BitmapNode) node;
+        int bit = 1 << ((hash >>> shift) & MASK);
+        if ((b.bitmap & bit) == 0)
+        {
+            return b;
+        }
+        int index = Integer.bitCount(b.bitmap & (bit - 1));
+        Object child = b.children[index];
+        Object newChild = remove(child, shift + BITS, hash, key);
+        if (newChild == child)
+        {
+            return b;
+        }
+        if (newChild != null)
+        {
+            // A lone leaf below is lifted here; a lone leaf here is lifted further by the parent.
+            if (b.children.length == 1 && !(newChild instanceof BitmapNode))
+            {
+                return newChild;
+            }
+            return b.with(index, newChild);
+        }
+        if (b.children.length == 1)
+        {
+            return null;
+        }
+        Object[] children = new Object[b.children.length - 1];
+        System.arraycopy(b.children, 0, children, 0, index);
+        System.arraycopy(b.children, index + 1, children, index, children.length - index);
+        if (children.length == 1 && !(children[0] instanceof BitmapNode))
+        {
+            return children[0];
+        }
+        return new BitmapNode(b.bitmap & ~bit, children);
+    }
+
+    private static Object merge(Leaf a, Leaf b, int shift)
+    {
+        if (a.hash == b.hash || shift > MAX_SHIFT)
+        {
+            return new CollisionNode(new Leaf[] { a, b });
+        }
+        int ia = (a.hash >>> shift) & MASK;
+        int ib = (b.hash >>> shift) & MASK;
+        if (ia == ib)
+        {
+            return new BitmapNode(1 << ia, new Object[] { merge(a, b, shift + BITS) });
+        }
+        return (ia < ib) ? new BitmapNode((1 << ia) | (1 << ib), new Object[] { a, b })
+                : new BitmapNode((1 << ia) | (1 << ib), new Object[] { b, a });
+    }
+
+    private static BitmapNode singleton(Object node, int shift)
+    {
+        int hash = (node instanceof Leaf) ? ((Leaf) node).hash : ((CollisionNode) node).leaves[0].hash;
+        return new BitmapNode(1 << ((hash >>> shift) & MASK), new Object[] { node });
+    }
+
+    private static void visit(Object node, BiConsumer<String, Object> visitor)
+    {
+        if (node instanceof Leaf)
+        {
+            visitor.accept(((Leaf) node).key, ((Leaf) node).value);
+        }
+        else if (node instanceof CollisionNode)
+        {
+            for (Leaf leaf : ((CollisionNode) node).leaves)
+            {
+                visitor.accept(leaf.key, leaf.value);
+            }
+        }
+        else
+        {
+            for (Object child : ((BitmapNode) node).children)
+            {
+                visit(child, visitor);
+            }
+        }
+    }
+
+    // Mixes the high bits of String.hashCode() into the low ones used by the first levels.
+    private static int spread(int h)
+    {
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Leaf
+    {
+        private final int hash;
+        private final String key;
+        private final Object value;
+
+        Leaf(int h, String k, Object v)
+        {
+            this.hash = h;
+            this.key = k;
+            this.value = v;
+        }
+    }
+
+    private static final class BitmapNode
+    {
+        private final int bitmap;
+        // Leaves, bitmap nodes or collision nodes, in the order of their bits.
+        private final Object[] children;
+
+        BitmapNode(int b, Object[] c)
+        {
+            this.bitmap = b;
+            this.children = c;
+        }
+
+        BitmapNode with(int index, Object child)
+        {
+            Object[] c = this.children.clone();
+            c[index] = child;
+            return new BitmapNode(this.bitmap, c);
+        }
+    }
+
+    private static final class CollisionNode
+    {
+        private final Leaf[] leaves;
+
+        CollisionNode(Leaf[] l)
+        {
+            this.leaves = l;
+        }
+
+        Leaf find(int hash, String key)
+        {
+            for (Leaf leaf : this.leaves)
+            {
+                if (leaf.hash == hash && leaf.key.equals(key))
+                {
+                    return leaf;
+                }
+            }
+            return null;
+        }
+
+        Object put(Leaf leaf, boolean[] added)
+        {
+            for (int i = 0; i < this.leaves.length; i++)
+            {
+                if (this.leaves[i].key.equals(leaf.key))
+                {
+                    if (this.leaves[i].value == leaf.value)
+                    {
+                        return this;
+                    }
+                    Leaf[] l = this.leaves.clone();
+                    l[i] = leaf;
+                    return new CollisionNode(l);
+                }
+            }
+            added[0] = true;
+            Leaf[] l = Arrays.copyOf(this.leaves, this.leaves.length + 1);
+            l[this.leaves.length] = leaf;
+            return new CollisionNode(l);
+        }
+
+        Object remove(int hash, String key)
+        {
+            for (int i = 0; i < this.leaves.length; i++)
+            {
+                if (this.leaves[i].key.equals(key))
+                {
+                    if (this.leaves.length == 2)
+                    {
+                        return this.leaves[1 - i];
+                    }
+                    Leaf[] l = new Leaf[this.leaves.length - 1];
+                    System.arraycopy(this.leaves, 0, l, 0, i);
+                    System.arraycopy(this.leaves, i + 1, l, i, l.length - i);
+                    return new CollisionNode(l);
+                }
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.stephengilbane.hotel.version;
+
+import java.time.Duration;
+
+/**
+ * Decides which versions of a {@link VersionedDealFinder} are kept after each load.
+ * The latest version is always kept, whatever the policy.
+ */
+@FunctionalInterface
+public interface RetentionPolicy
+{
+    /**
+     * @param version A version other than the latest.
+     * @param latest The latest version.
+     * @return true to keep the version; false to retire it for good.
+     */
+    boolean retain(DealVersion version, DealVersion latest);
+
+    /**
+     * @param other Another policy.
+     * @return policy keeping the versions either policy keeps.
+     */
+    default RetentionPolicy or(RetentionPolicy other)
+    {
+        return (v, latest) -> retain(v, latest) || other.retain(v, latest);
+    }
+
+    /**
+     * @param n Number of versions to keep, counting the latest. Must be positive.
+     * @return policy keeping the n most recent versions.
+     */
+    static RetentionPolicy keepLatest(int n)
+    {
+        if (n <= 0)
+        {
+            throw new IllegalArgumentException("Invalid number of versions " + n);
+        }
+        return (v, latest) -> v.getNumber() > latest.getNumber() - n;
+    }
+
+    /**
+     * @param d Length of the history to keep.
+     * @return policy keeping every version that was in effect at some time within d of the
+     *         latest feed time, so that as-of queries that far back can be answered.
+     */
+    static RetentionPolicy keepFor(Duration d)
+    {
+        if (d == null || d.isNegative())
+        {
+            throw new IllegalArgumentException("Invalid retention " + d);
+        }
+        return (v, latest) -> v.getSupersededTime() == null
+                || v.getSupersededTime().isAfter(latest.getFeedTime().minus(d));
+    }
+}
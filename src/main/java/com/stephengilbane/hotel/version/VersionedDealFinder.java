@@ -0,0 +1,280 @@
+package com.stephengilbane.hotel.version;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.stephengilbane.hotel.DealResult;
+import com.stephengilbane.hotel.Hotel;
+import com.stephengilbane.hotel.HotelDealFinder;
+import com.stephengilbane.hotel.HotelDealParser;
+import com.stephengilbane.hotel.deals.Deal;
+
+/**
+ * Keeps the deals of successive feed loads as immutable {@link DealVersion}s, so that a query can
+ * be answered as of any retained version, such as "the best deal under yesterday's 09:00 feed".
+ *
+ * Each load is a whole feed. Hotels whose rate and deals are unchanged from the previous version
+ * are shared with it, and the rest are frozen before the version is published. A changed hotel
+ * keeps the Deal objects of its previous version for deals with a limited quantity whose terms
+ * are unchanged, so that their redemptions carry over, as they do for unchanged hotels. After
+ * each load, versions the retention policy rejects are retired. Queries never wait for a load;
+ * loads wait for each other.
+ */
+public final class VersionedDealFinder
+{
+    private final RetentionPolicy retention;
+    private final ConcurrentSkipListMap<Long, DealVersion> byNumber = new ConcurrentSkipListMap<Long, DealVersion>();
+    private final ConcurrentSkipListMap<Instant, DealVersion> byFeedTime =
+            new ConcurrentSkipListMap<Instant, DealVersion>();
+    private volatile DealVersion latest;
+
+    /**
+     * Constructor. There is no version until the first load.
+     * @param r Policy deciding which versions to keep after each load.
+     * @throws IllegalArgumentException if no policy is given.
+     */
+    public VersionedDealFinder(RetentionPolicy r)
+    {
+        if (r == null)
+        {
+            throw new IllegalArgumentException("Retention policy must be provided!");
+        }
+        this.retention = r;
+    }
+
+    /**
+     * Load a whole feed as a new version.
+     * @param in Feed to parse.
+     * @param feedTime Time of the feed, from which the version is in effect. Must be after that
+     *            of the latest version.
+     * @return the new version.
+     * @throws IllegalArgumentException if the feed time is missing or not after the latest one.
+     */
+    public synchronized DealVersion load(BufferedReader in, Instant feedTime)
+    {
+        DealVersion prev = this.latest;
+        if (feedTime == null || (prev != null && !feedTime.isAfter(prev.getFeedTime())))
+        {
+            throw new IllegalArgumentException("Feed time " + feedTime + " must be after that of " + prev);
+        }
+        HotelDealFinder staging = new HotelDealFinder();
+        new HotelDealParser().parseDeals(in, staging, null);
+
+        PersistentMap<Hotel> hotels = (prev == null) ? PersistentMap.<Hotel>empty() : prev.getHotels();
+        Set<String> names = new HashSet<String>();
+        int reused = 0;
+        for (Hotel h : staging.getAllHotels())
+        {
+            names.add(h.getName());
+            Hotel old = hotels.get(h.getName());
+            if (old != null && old.hasSameContent(h))
+            {
+                reused++;
+            }
+            else
+            {
+                if (old != null)
+                {
+                    carryInventories(old, h);
+                }
+                h.freeze();
+                hotels = hotels.put(h.getName(), h);
+            }
+        }
+        if (prev != null)
+        {
+            List<String> dropped = new ArrayList<String>();
+            prev.getHotels().forEach((name, h) -> {
+                if (!names.contains(name))
+                {
+                    dropped.add(name);
+                }
+            });
+            for (String name : dropped)
+            {
+                hotels = hotels.remove(name);
+            }
+        }
+
+        DealVersion v = new DealVersion((prev == null) ? 1 : prev.getNumber() + 1, feedTime, hotels, reused);
+        if (prev != null)
+        {
+            prev.supersede(feedTime);
+        }
+        this.byNumber.put(v.getNumber(), v);
+        this.byFeedTime.put(feedTime, v);
+        this.latest = v;
+        retire(v);
+        return v;
+    }
+
+    /**
+     * Load a whole feed file as a new version, in effect from the file's modification time.
+     * @param configFilename Name of configuration file.
+     * @return the new version, or null if the file could not be read.
+     * @throws IllegalArgumentException if the file does not exist, or is not newer than the
+     *             latest version.
+     */
+    public DealVersion loadFile(String configFilename)
+    {
+        File f = new File(configFilename);
+        if (!f.exists())
+        {
+            throw new IllegalArgumentException(String.format("File %s must exist and be readable!", configFilename));
+        }
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)))
+        {
+            return load(in, Instant.ofEpochMilli(f.lastModified()));
+        }
+        catch (IOException ex)
+        {
+            System.out.println("Invalid file " + configFilename + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the latest version, or null before the first load.
+     */
+    public DealVersion getLatest()
+    {
+        return this.latest;
+    }
+
+    /**
+     * @param number Number of a version.
+     * @return the version.
+     * @throws IllegalArgumentException if there is no such version, or it was retired.
+     */
+    public DealVersion getVersion(long number)
+    {
+        DealVersion v = this.byNumber.get(number);
+        if (v == null)
+        {
+            throw new IllegalArgumentException("Version " + number + " is not retained");
+        }
+        return v;
+    }
+
+    /**
+     * @param t A time.
+     * @return the version in effect at that time: the last one loaded with a feed time at or
+     *         before it.
+     * @throws IllegalArgumentException if no version was in effect then, or it was retired.
+     */
+    public DealVersion getVersionAsOf(Instant t)
+    {
+        Map.Entry<Instant, DealVersion> e = this.byFeedTime.floorEntry(t);
+        DealVersion v = (e == null) ? null : e.getValue();
+        Instant superseded = (v == null) ? null : v.getSupersededTime();
+        // The floor is not in effect at t if the version that superseded it was retired.
+        if (v == null || (superseded != null && !superseded.isAfter(t)))
+        {
+            throw new IllegalArgumentException("No version retained as of " + t);
+        }
+        return v;
+    }
+
+    /**
+     * @return the retained versions, oldest first.
+     */
+    public List<DealVersion> getRetainedVersions()
+    {
+        return new ArrayList<DealVersion>(this.byNumber.values());
+    }
+
+    /**
+     * Find the best value as of the latest version.
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Length in days of requested stay.
+     * @return DealResult of the best deal. Never returns null.
+     */
+    public DealResult findBestValue(String hotelName, LocalDate checkInDate, int stayLengthDays)
+    {
+        DealVersion v = this.latest;
+        if (v == null)
+        {
+            return new DealResult(null, Deal.NO_DEAL, checkInDate, stayLengthDays);
+        }
+        return v.findBestValue(hotelName, checkInDate, stayLengthDays);
+    }
+
+    /**
+     * Find the best value as of a version.
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Length in days of requested stay.
+     * @param version Number of a retained version.
+     * @return DealResult of the best deal. Never returns null.
+     * @throws IllegalArgumentException if the version is not retained.
+     */
+    public DealResult findBestValue(String hotelName, LocalDate checkInDate, int stayLengthDays, long version)
+    {
+        return getVersion(version).findBestValue(hotelName, checkInDate, stayLengthDays);
+    }
+
+    /**
+     * Find the best value as of the version in effect at a time.
+     * @param hotelName Name of the hotel to search.
+     * @param checkInDate Input check-in date.
+     * @param stayLengthDays Length in days of requested stay.
+     * @param asOf Time of the feed to answer under.
+     * @return DealResult of the best deal. Never returns null.
+     * @throws IllegalArgumentException if no version in effect then is retained.
+     */
+    public DealResult findBestValueAsOf(String hotelName, LocalDate checkInDate, int stayLengthDays, Instant asOf)
+    {
+        return getVersionAsOf(asOf).findBestValue(hotelName, checkInDate, stayLengthDays);
+    }
+
+    /**
+     * Put the deals of the previous version of a hotel in place of new deals with a limited
+     * quantity and the same terms, matching them in order.
+     */
+    private static void carryInventories(Hotel old, Hotel h)
+    {
+        boolean[] used = new boolean[old.getDealCount()];
+        for (int i = 0; i < h.getDealCount(); i++)
+        {
+            Deal d = h.getDeal(i);
+            if (d.getInventory() == null)
+            {
+                continue;
+            }
+            for (int j = 0; j < used.length; j++)
+            {
+                if (!used[j] && old.getDeal(j).hasSameTerms(d))
+                {
+                    used[j] = true;
+                    h.replaceDeal(d, old.getDeal(j));
+                    break;
+                }
+            }
+        }
+    }
+
+    private void retire(DealVersion current)
+    {
+        for (DealVersion v : this.byNumber.headMap(current.getNumber()).values())
+        {
+            if (!this.retention.retain(v, current))
+            {
+                this.byNumber.remove(v.getNumber());
+                this.byFeedTime.remove(v.getFeedTime());
+            }
+        }
+    }
+}
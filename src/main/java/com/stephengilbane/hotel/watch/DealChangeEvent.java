@@ -0,0 +1,41 @@
+package com.stephengilbane.hotel.watch;
+
+import com.stephengilbane.hotel.DealResult;
+
+/**
+ * Change of the best deal of a subscribed stay.
+ */
+public final class DealChangeEvent
+{
+    private final DealSubscription subscription;
+    private final DealResult oldResult;
+    private final DealResult newResult;
+
+    /**
+     * Constructor.
+     * @param sub Subscription whose result changed.
+     * @param oldRes Result before the change.
+     * @param newRes Result after the change.
+     */
+    public DealChangeEvent(DealSubscription sub, DealResult oldRes, DealResult newRes)
+    {
+        this.subscription = sub;
+        this.oldResult = oldRes;
+        this.newResult = newRes;
+    }
+
+    /** @return subscription whose result changed. */
+    public DealSubscription getSubscription() { return subscription; }
+
+    /** @return result before the change. */
+    public DealResult getOldResult() { return oldResult; }
+
+    /** @return result after the change. */
+    public DealResult getNewResult() { return newResult; }
+
+    @Override
+    public String toString()
+    {
+        return this.subscription + ": " + this.oldResult + " -> " + this.newResult;
+    }
+}
@@ -0,0 +1,13 @@
+package com.stephengilbane.hotel.watch;
+
+/**
+ * Receives the changes of the best deal of standing query subscriptions.
+ */
+public interface DealChangeListener
+{
+    /**
+     * Called when the best deal or the price of a subscribed stay changes.
+     * @param event The change.
+     */
+    void onDealChange(DealChangeEvent event);
+}
@@ -0,0 +1,56 @@
+package com.stephengilbane.hotel.watch;
+
+import java.time.LocalDate;
+
+import com.stephengilbane.hotel.DealResult;
+import com.stephengilbane.hotel.ParserUtils;
+
+/**
+ * Standing query for the best deal of one stay at one hotel. Created by a
+ * {@link SubscriptionIndex}, which keeps its current result up to date.
+ */
+public final class DealSubscription
+{
+    private final String hotelName;
+    private final LocalDate checkInDate;
+    private final int stayLength;
+    private final DealChangeListener listener;
+    private volatile DealResult currentResult;
+
+    DealSubscription(String name, LocalDate dt, int stay, DealChangeListener l)
+    {
+        this.hotelName = name;
+        this.checkInDate = dt;
+        this.stayLength = stay;
+        this.listener = l;
+    }
+
+    /** @return name of the subscribed hotel. */
+    public String getHotelName() { return hotelName; }
+
+    /** @return subscribed check-in date. */
+    public LocalDate getCheckInDate() { return checkInDate; }
+
+    /** @return subscribed stay length in days. */
+    public int getStayLength() { return stayLength; }
+
+    /** @return best deal of the stay as of the last change. */
+    public DealResult getCurrentResult() { return currentResult; }
+
+    DealChangeListener getListener()
+    {
+        return this.listener;
+    }
+
+    void setCurrentResult(DealResult res)
+    {
+        this.currentResult = res;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s, %s, %d nights", this.hotelName, ParserUtils.formatDate(this.checkInDate),
+                this.stayLength);
+    }
+}
@@ -0,0 +1,287 @@
+package com.stephengilbane.hotel.watch;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.stephengilbane.hotel.DealResult;
+import com.stephengilbane.hotel.HotelDealFinder;
+
+/**
+ * Standing query subscriptions of a {@link HotelDealFinder}, indexed by hotel and check-in day.
+ *
+ * When deals or rates of a hotel change, the finder reports the range of check-in days that may
+ * be affected, and only the subscriptions of that hotel within the range are evaluated again.
+ * The cost of an update therefore follows the size of the change, not the number of
+ * subscriptions. Listeners are told only when the best deal or the price actually changes.
+ *
+ * Changes reported between beginBatch() and endBatch(), such as all the deals of a feed load, are
+ * merged first, so that each affected subscription is evaluated once.
+ */
+public final class SubscriptionIndex
+{
+    private final HotelDealFinder finder;
+    // Subscriptions by hotel name, then by check-in epoch day.
+    private final Map<String, TreeMap<Long, List<DealSubscription>>> byHotel =
+            new HashMap<String, TreeMap<Long, List<DealSubscription>>>();
+    // Changed ranges of check-in days by hotel name, waiting for the end of a batch.
+    private final Map<String, List<long[]>> pending = new HashMap<String, List<long[]>>();
+    private int batchDepth;
+    private int maxStayLength;
+    private int size;
+    private long evaluations;
+
+    /**
+     * Constructor.
+     * @param f Finder to evaluate subscriptions with.
+     */
+    public SubscriptionIndex(HotelDealFinder f)
+    {
+        this.finder = f;
+    }
+
+    /**
+     * Register a standing query and evaluate it.
+     * @param hotelName Name of the hotel. Need not be known yet.
+     * @param checkInDate Check-in date.
+     * @param stayLengthDays Stay length in days. Must be positive.
+     * @param listener Listener told about changes of the best deal.
+     * @return the subscription, holding the current result.
+     * @throws IllegalArgumentException on invalid input.
+     */
+    public DealSubscription subscribe(String hotelName, LocalDate checkInDate, int stayLengthDays,
+            DealChangeListener listener)
+    {
+        if (hotelName == null || checkInDate == null || listener == null || stayLengthDays <= 0)
+        {
+            throw new IllegalArgumentException("Invalid subscription " + hotelName + ", " + checkInDate + ", "
+                    + stayLengthDays);
+        }
+        DealSubscription sub = new DealSubscription(hotelName, checkInDate, stayLengthDays, listener);
+        sub.setCurrentResult(this.finder.findBestValue(hotelName, checkInDate, stayLengthDays));
+        TreeMap<Long, List<DealSubscription>> days = this.byHotel.get(hotelName);
+        if (days == null)
+        {
+            days = new TreeMap<Long, List<DealSubscription>>();
+            this.byHotel.put(hotelName, days);
+        }
+        List<DealSubscription> subs = days.get(checkInDate.toEpochDay());
+        if (subs == null)
+        {
+            subs = new ArrayList<DealSubscription>(1);
+            days.put(checkInDate.toEpochDay(), subs);
+        }
+        subs.add(sub);
+        this.maxStayLength = Math.max(this.maxStayLength, stayLengthDays);
+        this.size++;
+        return sub;
+    }
+
+    /**
+     * Remove a subscription.
+     * @param sub Subscription to remove.
+     * @return false if it was not registered.
+     */
+    public boolean unsubscribe(DealSubscription sub)
+    {
+        TreeMap<Long, List<DealSubscription>> days = this.byHotel.get(sub.getHotelName());
+        long day = sub.getCheckInDate().toEpochDay();
+        List<DealSubscription> subs = (days == null) ? null : days.get(day);
+        if (subs == null || !subs.remove(sub))
+        {
+            return false;
+        }
+        if (subs.isEmpty())
+        {
+            days.remove(day);
+            if (days.isEmpty())
+            {
+                this.byHotel.remove(sub.getHotelName());
+            }
+        }
+        this.size--;
+        return true;
+    }
+
+    /**
+     * @return number of subscriptions.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return number of subscriptions evaluated again after changes, for monitoring.
+     */
+    public long getEvaluationCount()
+    {
+        return this.evaluations;
+    }
+
+    /**
+     * Hold back evaluation of changes until the matching endBatch(). Batches may nest.
+     */
+    public void beginBatch()
+    {
+        this.batchDepth++;
+    }
+
+    /**
+     * End a batch, evaluating the subscriptions affected by its changes once the outermost
+     * batch ends.
+     */
+    public void endBatch()
+    {
+        if (this.batchDepth > 0 && --this.batchDepth == 0)
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Report that the best deal of some stays at a hotel may have changed.
+     * @param hotelName Name of the hotel.
+     * @param from First check-in date that may be affected, inclusive.
+     * @param to Last check-in date that may be affected, inclusive.
+     */
+    public void changed(String hotelName, LocalDate from, LocalDate to)
+    {
+        changed(hotelName, Math.min(from.toEpochDay(), to.toEpochDay()), Math.max(from.toEpochDay(), to.toEpochDay()));
+    }
+
+    /**
+     * Report that the rates of some nights at a hotel have changed, which affects every stay
+     * that includes one of those nights.
+     * @param hotelName Name of the hotel.
+     * @param from First night changed, inclusive.
+     * @param to Last night changed, inclusive.
+     */
+    public void ratesChanged(String hotelName, LocalDate from, LocalDate to)
+    {
+        changed(hotelName, from.toEpochDay() - Math.max(0, this.maxStayLength - 1), to.toEpochDay());
+    }
+
+    /**
+     * Report that the best deal of any stay at a hotel may have changed, such as when the hotel
+     * is first created.
+     * @param hotelName Name of the hotel.
+     */
+    public void changed(String hotelName)
+    {
+        changed(hotelName, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private void changed(String hotelName, long fromDay, long toDay)
+    {
+        if (!this.byHotel.containsKey(hotelName))
+        {
+            return;
+        }
+        List<long[]> ranges = this.pending.get(hotelName);
+        if (ranges == null)
+        {
+            ranges = new ArrayList<long[]>();
+            this.pending.put(hotelName, ranges);
+        }
+        ranges.add(new long[] { fromDay, toDay });
+        if (this.batchDepth == 0)
+        {
+            flush();
+        }
+    }
+
+    private void flush()
+    {
+        List<DealChangeEvent> events = new ArrayList<DealChangeEvent>();
+        for (Map.Entry<String, List<long[]>> e : this.pending.entrySet())
+        {
+            TreeMap<Long, List<DealSubscription>> days = this.byHotel.get(e.getKey());
+            if (days == null)
+            {
+                continue;
+            }
+            for (long[] range : merge(e.getValue()))
+            {
+                for (List<DealSubscription> subs : days.subMap(range[0], true, range[1], true).values())
+                {
+                    for (DealSubscription sub : subs)
+                    {
+                        evaluate(sub, events);
+                    }
+                }
+            }
+        }
+        this.pending.clear();
+        // Listeners are called last, so that they may subscribe or unsubscribe.
+        for (DealChangeEvent event : events)
+        {
+            event.getSubscription().getListener().onDealChange(event);
+        }
+    }
+
+    private void evaluate(DealSubscription sub, List<DealChangeEvent> events)
+    {
+        this.evaluations++;
+        DealResult old = sub.getCurrentResult();
+        DealResult res = this.finder.findBestValue(sub.getHotelName(), sub.getCheckInDate(), sub.getStayLength());
+        if (!isSame(old, res))
+        {
+            sub.setCurrentResult(res);
+            events.add(new DealChangeEvent(sub, old, res));
+        }
+    }
+
+    /**
+     * @param a A result.
+     * @param b Another result.
+     * @return true if both have the same hotel, deal and price. Hotels are compared by name,
+     *         since concurrent updates publish a new Hotel object for every change.
+     */
+    static boolean isSame(DealResult a, DealResult b)
+    {
+        if ((a.getHotel() == null) != (b.getHotel() == null) || a.getDeal() != b.getDeal())
+        {
+            return false;
+        }
+        return a.getHotel() == null || (a.getHotel().getName().equals(b.getHotel().getName())
+                && a.getCustomerPrice() == b.getCustomerPrice());
+    }
+
+    /**
+     * @param ranges Ranges of days, inclusive.
+     * @return the same days as a sorted list of disjoint ranges.
+     */
+    private static List<long[]> merge(Collection<long[]> ranges)
+    {
+        List<long[]> sorted = new ArrayList<long[]>(ranges);
+        Collections.sort(sorted, new Comparator<long[]>()
+        {
+            @Override
+            public int compare(long[] a, long[] b)
+            {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+        List<long[]> merged = new ArrayList<long[]>();
+        for (long[] r : sorted)
+        {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && (last[1] == Long.MAX_VALUE || r[0] <= last[1] + 1))
+            {
+                last[1] = Math.max(last[1], r[1]);
+            }
+            else
+            {
+                merged.add(new long[] { r[0], r[1] });
+            }
+        }
+        return merged;
+    }
+}
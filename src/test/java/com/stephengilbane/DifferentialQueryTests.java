@@ -0,0 +1,466 @@
+package com.stephengilbane;
+
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.stephengilbane.hotel.DealQueryResult;
+import com.stephengilbane.hotel.DealResult;
+import com.stephengilbane.hotel.Hotel;
+import com.stephengilbane.hotel.HotelDealFinder;
+import com.stephengilbane.hotel.HotelDealParser;
+import com.stephengilbane.hotel.ParserUtils;
+import com.stephengilbane.hotel.SplitStay;
+import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealFilter;
+import com.stephengilbane.hotel.index.HotelDateIndex;
+import com.stephengilbane.hotel.storage.DealView;
+import com.stephengilbane.hotel.storage.OffHeapDealStore;
+import com.stephengilbane.hotel.trace.QueryExplanation;
+
+/**
+ * Randomized differential tests: every query engine must agree with the naive scan of all deals
+ * of a hotel, which is the reference. A disagreement is shrunk to a minimal feed before failing.
+ * Split-stay plans are checked against a brute-force search over every way to cut the stay.
+ *
+ * Runs a fixed set of seeds by default. Set -Dhdf.diff.seed=N to replay one seed, and
+ * -Dhdf.diff.scale=N to run N times as many feeds and queries.
+ *
+ * @author stephengilbane
+ *
+ */
+public class DifferentialQueryTests
+{
+    private static final LocalDate ORIGIN = LocalDate.of(2016, 3, 1);
+    private static final int DAY_SPAN = 60;
+    private static final int FEEDS = 20;
+    private static final int QUERIES_PER_FEED = 2000;
+
+    @Test
+    public void testEnginesAgreeWithNaiveScan()
+    {
+        int scale = Integer.getInteger("hdf.diff.scale", 1);
+        Long seed = Long.getLong("hdf.diff.seed");
+        int feeds = (seed != null) ? 1 : FEEDS * scale;
+        for (int f = 0; f < feeds; f++)
+        {
+            long feedSeed = (seed != null) ? seed : 1000 + f;
+            Random rnd = new Random(feedSeed);
+            int hotelCount = 1 + rnd.nextInt(30);
+            int lineCount = 1 + rnd.nextInt(20 * hotelCount);
+            List<String> lines = HotelDealConfigBuilder.randomLines(rnd, lineCount, hotelCount, ORIGIN, DAY_SPAN);
+            Engines engines = new Engines(lines);
+            for (int q = 0; q < QUERIES_PER_FEED * scale; q++)
+            {
+                Query query = Query.random(rnd, hotelCount);
+                String engine = engines.findDisagreement(query);
+                if (engine != null)
+                {
+                    List<String> minimal = shrink(lines, engine, query);
+                    fail(String.format("Engine %s disagrees with the naive scan (seed %d) for %s%n"
+                            + "  expected %s%n  actual   %s%n  minimal feed:%n%s", engine, feedSeed, query,
+                            new Engines(minimal).reference(query), new Engines(minimal).run(engine, query),
+                            String.join("\n", minimal)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSplitStayAgreesWithBruteForce()
+    {
+        int scale = Integer.getInteger("hdf.diff.scale", 1);
+        for (int f = 0; f < FEEDS * scale; f++)
+        {
+            long feedSeed = 2000 + f;
+            Random rnd = new Random(feedSeed);
+            int hotelCount = 1 + rnd.nextInt(10);
+            List<String> lines = HotelDealConfigBuilder.randomLines(rnd, 1 + rnd.nextInt(12 * hotelCount), hotelCount,
+                    ORIGIN, DAY_SPAN);
+            Engines engines = new Engines(lines);
+            for (int q = 0; q < QUERIES_PER_FEED * scale / 20; q++)
+            {
+                Query query = Query.random(rnd, hotelCount);
+                Hotel h = engines.hotel(query);
+                if (h == null)
+                {
+                    continue;
+                }
+                Query whole = new Query(query.hotelName, query.checkInDate, 1 + rnd.nextInt(10));
+                int maxSegments = 1 + rnd.nextInt(4);
+                SplitStay plan = h.findBestSplitStay(whole.checkInDate, whole.stayLength, maxSegments);
+                String expected = engines.bruteForceSplitStay(whole, maxSegments);
+                String actual = plan.getCustomerPrice() + " in " + plan.getSegments().size();
+                if (!expected.equals(actual) || !engines.isConsistent(plan, maxSegments))
+                {
+                    fail(String.format("Split stay disagrees with brute force (seed %d) for %s, up to %d segments%n"
+                            + "  expected %s%n  actual   %s: %s%n  feed:%n%s", feedSeed, whole, maxSegments, expected,
+                            actual, plan, String.join("\n", lines)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove as many lines as possible from a failing feed while the engine still disagrees,
+     * first in large chunks and then line by line.
+     * @param lines Failing feed.
+     * @param engine Name of the disagreeing engine.
+     * @param query Query it disagrees on.
+     * @return minimal failing feed.
+     */
+    static List<String> shrink(List<String> lines, String engine, Query query)
+    {
+        List<String> current = new ArrayList<String>(lines);
+        int chunk = Math.max(1, current.size() / 2);
+        while (true)
+        {
+            boolean removed = false;
+            for (int start = 0; start < current.size(); )
+            {
+                List<String> candidate = new ArrayList<String>(current.subList(0, start));
+                candidate.addAll(current.subList(Math.min(current.size(), start + chunk), current.size()));
+                if (new Engines(candidate).disagrees(engine, query))
+                {
+                    current = candidate;
+                    removed = true;
+                }
+                else
+                {
+                    start += chunk;
+                }
+            }
+            if (chunk == 1 && !removed)
+            {
+                return current;
+            }
+            chunk = Math.max(1, removed ? chunk : chunk / 2);
+        }
+    }
+
+    /**
+     * A best value query.
+     */
+    static final class Query
+    {
+        final String hotelName;
+        final LocalDate checkInDate;
+        final int stayLength;
+
+        Query(String name, LocalDate dt, int stay)
+        {
+            this.hotelName = name;
+            this.checkInDate = dt;
+            this.stayLength = stay;
+        }
+
+        static Query random(Random rnd, int hotelCount)
+        {
+            // One query in fifty is for an unknown hotel; dates reach just past the deals.
+            String name = "Random Hotel " + rnd.nextInt(hotelCount + hotelCount / 50 + 1);
+            LocalDate dt = ORIGIN.plusDays(rnd.nextInt(2 * DAY_SPAN + 4) - 2);
+            return new Query(name, dt, 1 + rnd.nextInt(6));
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s, %s, %d nights", this.hotelName, ParserUtils.formatDate(this.checkInDate),
+                    this.stayLength);
+        }
+    }
+
+    /**
+     * Result of a query as seen by one engine: the chosen deal and final price, if any.
+     */
+    static final class Outcome
+    {
+        static final Outcome NONE = new Outcome(null, 0);
+
+        final String deal;
+        final int price;
+
+        Outcome(String d, int p)
+        {
+            this.deal = d;
+            this.price = p;
+        }
+
+        static Outcome of(Deal d, int price)
+        {
+            if (d == null || d == Deal.NO_DEAL)
+            {
+                return NONE;
+            }
+            return new Outcome(describe(d.getTypeToken(), d.getValue(), d.getStartDate(), d.getEndDate(),
+                    d.getPromotionalText()), price);
+        }
+
+        static String describe(String type, int value, LocalDate start, LocalDate end, String promo)
+        {
+            return type + " " + value + " " + start + ".." + end + " '" + promo + "'";
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Outcome))
+            {
+                return false;
+            }
+            Outcome other = (Outcome) o;
+            return (this.deal == null) ? other.deal == null : this.deal.equals(other.deal) && this.price == other.price;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (this.deal == null) ? 0 : this.deal.hashCode() * 31 + this.price;
+        }
+
+        @Override
+        public String toString()
+        {
+            return (this.deal == null) ? "no deal" : this.deal + " at " + this.price;
+        }
+    }
+
+    /**
+     * One query engine over a loaded feed.
+     */
+    interface Engine
+    {
+        Outcome query(Query q);
+    }
+
+    /**
+     * The reference naive scan and every engine, loaded from the same feed.
+     */
+    static final class Engines
+    {
+        private final HotelDealFinder finder;
+        private final Map<String, Hotel> hotels = new HashMap<String, Hotel>();
+        private final Map<String, Engine> engines = new LinkedHashMap<String, Engine>();
+
+        Engines(List<String> lines)
+        {
+            String feed = String.join("\n", lines);
+            HotelDealParser parser = new HotelDealParser();
+            this.finder = parser.parseConfigString(feed);
+            for (Hotel h : this.finder.getAllHotels())
+            {
+                this.hotels.put(h.getName(), h);
+            }
+            OffHeapDealStore store = new OffHeapDealStore();
+            parser.parseDeals(new BufferedReader(new StringReader(feed)), store, null);
+            DealQueryResult holder = new DealQueryResult();
+            DealView view = new DealView();
+            HotelDateIndex index = this.finder.getDateIndex();
+
+            this.engines.put("findBestDeal", q -> {
+                Hotel h = hotel(q);
+                if (h == null)
+                {
+                    return Outcome.NONE;
+                }
+                Deal d = h.findBestDeal(q.checkInDate, q.stayLength);
+                return Outcome.of(d, d.calculateFinalValue(h.getNightlyRate(), q.stayLength));
+            });
+            this.engines.put("findBestValue", q -> {
+                DealResult r = this.finder.findBestValue(q.hotelName, q.checkInDate, q.stayLength);
+                if (r.getHotel() == null)
+                {
+                    return Outcome.NONE;
+                }
+                return Outcome.of(r.getDeal(), r.getCustomerPrice());
+            });
+            this.engines.put("findBestValue(holder)", q -> {
+                this.finder.findBestValue(q.hotelName, q.checkInDate, q.stayLength, holder);
+                return Outcome.of(holder.getDeal(), holder.getCustomerPrice());
+            });
+            this.engines.put("findBestValuePacked", q -> {
+                long packed = this.finder.findBestValuePacked(q.hotelName, q.checkInDate, q.stayLength);
+                if (packed == HotelDealFinder.NO_DEAL_PACKED)
+                {
+                    return Outcome.NONE;
+                }
+                Deal d = hotel(q).getDeal(HotelDealFinder.unpackDealIndex(packed));
+                return Outcome.of(d, HotelDealFinder.unpackPrice(packed));
+            });
+            this.engines.put("findTopDeals", q -> {
+                List<DealResult> top = this.finder.findTopDeals(q.hotelName, q.checkInDate, q.stayLength, 3,
+                        DealFilter.ALL);
+                return top.isEmpty() ? Outcome.NONE : Outcome.of(top.get(0).getDeal(), top.get(0).getCustomerPrice());
+            });
+            this.engines.put("explainBestValue", q -> {
+                QueryExplanation e = this.finder.explainBestValue(q.hotelName, q.checkInDate, q.stayLength);
+                return Outcome.of(e.getSelectedDeal(), e.getFinalPrice());
+            });
+            this.engines.put("OffHeapDealStore", q -> {
+                if (!store.findBestDeal(q.hotelName, q.checkInDate, q.stayLength, view))
+                {
+                    return Outcome.NONE;
+                }
+                return new Outcome(Outcome.describe(view.getDealType().getToken(), view.getValue(),
+                        view.getStartDate(), view.getEndDate(), view.getPromotionalText()), view.getCustomerPrice());
+            });
+            // The date index only knows whether a hotel has a deal; report the reference deal if so.
+            this.engines.put("HotelDateIndex", q -> {
+                int id = index.getHotelId(q.hotelName);
+                if (id < 0 || !index.candidates(q.checkInDate, q.stayLength).get(id))
+                {
+                    return Outcome.NONE;
+                }
+                Outcome ref = reference(q);
+                return (ref == Outcome.NONE) ? new Outcome("any deal", 0) : ref;
+            });
+        }
+
+        private Hotel hotel(Query q)
+        {
+            return this.hotels.get(q.hotelName);
+        }
+
+        /**
+         * The reference: scan every deal of the hotel, keeping the first one of the lowest price.
+         * @param q Query.
+         * @return expected outcome.
+         */
+        Outcome reference(Query q)
+        {
+            Hotel h = hotel(q);
+            if (h == null)
+            {
+                return Outcome.NONE;
+            }
+            int bestValue = Integer.MAX_VALUE;
+            Deal bestDeal = Deal.NO_DEAL;
+            for (Deal d : h.getAllDeals())
+            {
+                if (!d.isStayLengthApplicable(q.stayLength) || !d.isCheckInDateApplicable(q.checkInDate))
+                {
+                    continue;
+                }
+                int val = d.calculateFinalValue(h.getNightlyRate(), q.stayLength);
+                if (val < bestValue)
+                {
+                    bestValue = val;
+                    bestDeal = d;
+                }
+            }
+            return Outcome.of(bestDeal, bestValue);
+        }
+
+        /**
+         * Price of one segment of a split stay: the reference deal's price, or the full rate.
+         */
+        int segmentPrice(Query q)
+        {
+            Outcome ref = reference(q);
+            return (ref == Outcome.NONE) ? hotel(q).getNightlyRate() * q.stayLength : ref.price;
+        }
+
+        /**
+         * Cheapest split of a stay into up to k segments, trying every way to cut it: time
+         * proportional to k times the square of the nights, with a naive scan per segment.
+         * @param q Whole stay.
+         * @param k Maximum number of segments.
+         * @return cheapest price, and the fewest segments reaching it.
+         */
+        String bruteForceSplitStay(Query q, int k)
+        {
+            int n = q.stayLength;
+            long none = Long.MAX_VALUE / 4;
+            long[][] cost = new long[k + 1][n + 1];
+            for (long[] row : cost)
+            {
+                Arrays.fill(row, none);
+            }
+            cost[0][0] = 0;
+            for (int s = 1; s <= k; s++)
+            {
+                for (int j = 1; j <= n; j++)
+                {
+                    for (int i = 0; i < j; i++)
+                    {
+                        if (cost[s - 1][i] < none)
+                        {
+                            Query segment = new Query(q.hotelName, q.checkInDate.plusDays(i), j - i);
+                            cost[s][j] = Math.min(cost[s][j], cost[s - 1][i] + segmentPrice(segment));
+                        }
+                    }
+                }
+            }
+            int best = 1;
+            for (int s = 2; s <= k; s++)
+            {
+                if (cost[s][n] < cost[best][n])
+                {
+                    best = s;
+                }
+            }
+            return cost[best][n] + " in " + best;
+        }
+
+        /**
+         * @return true if the segments of a plan are consecutive, cover the stay, and are each
+         *         priced as a separate stay.
+         */
+        boolean isConsistent(SplitStay plan, int k)
+        {
+            LocalDate next = plan.getCheckinDate();
+            int nights = 0;
+            long total = 0;
+            for (DealResult r : plan.getSegments())
+            {
+                Query segment = new Query(plan.getHotel().getName(), r.getCheckinDate(), r.getStayLength());
+                if (!r.getCheckinDate().equals(next) || r.getCustomerPrice() != segmentPrice(segment))
+                {
+                    return false;
+                }
+                next = next.plusDays(r.getStayLength());
+                nights += r.getStayLength();
+                total += r.getCustomerPrice();
+            }
+            return plan.getSegments().size() <= k && nights == plan.getStayLength() && total == plan.getCustomerPrice();
+        }
+
+        Outcome run(String engine, Query q)
+        {
+            return this.engines.get(engine).query(q);
+        }
+
+        boolean disagrees(String engine, Query q)
+        {
+            return !reference(q).equals(run(engine, q));
+        }
+
+        /**
+         * @param q Query.
+         * @return name of the first engine that disagrees with the reference, or null.
+         */
+        String findDisagreement(Query q)
+        {
+            Outcome expected = reference(q);
+            for (Map.Entry<String, Engine> e : this.engines.entrySet())
+            {
+                if (!expected.equals(e.getValue().query(q)))
+                {
+                    return e.getKey();
+                }
+            }
+            return null;
+        }
+    }
+}
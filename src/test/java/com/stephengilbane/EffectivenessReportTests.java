@@ -0,0 +1,114 @@
+package com.stephengilbane;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.stephengilbane.hotel.Hotel;
+import com.stephengilbane.hotel.HotelDealFinder;
+import com.stephengilbane.hotel.HotelDealParser;
+import com.stephengilbane.hotel.analytics.DealEffectiveness;
+import com.stephengilbane.hotel.analytics.EffectivenessReport;
+import com.stephengilbane.hotel.analytics.WinRegion;
+import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealType;
+
+/**
+ * Unit tests for the deal effectiveness report.
+ * @author stephengilbane
+ *
+ */
+public class EffectivenessReportTests
+{
+    private static final LocalDate ORIGIN = LocalDate.of(2016, 3, 1);
+
+    @Test
+    public void testRegionsMatchEveryQuery()
+    {
+        // Set conditions: a random feed of 30 hotels; every stay of up to 12 nights checking in
+        // within and around the deal dates.
+        Random rnd = new Random(50);
+        String config = String.join("\n", HotelDealConfigBuilder.randomLines(rnd, 600, 30, ORIGIN, 60));
+        HotelDealFinder hdf = new HotelDealParser().parseConfigString(config);
+        int maxStay = 12;
+        int days = 110;
+        LocalDate first = ORIGIN.minusDays(10);
+
+        // Run
+        EffectivenessReport report = EffectivenessReport.build(hdf, maxStay);
+
+        // Verify: each stay is in the region of exactly the deal a query finds, and in no other.
+        for (Hotel h : hdf.getAllHotels())
+        {
+            Deal[][] winners = new Deal[days][maxStay + 1];
+            for (DealEffectiveness d : report.getDeals())
+            {
+                if (!d.getHotelName().equals(h.getName()))
+                {
+                    continue;
+                }
+                for (WinRegion r : d.getRegions())
+                {
+                    for (int day = 0; day < days; day++)
+                    {
+                        for (int stay = 1; stay <= maxStay; stay++)
+                        {
+                            if (r.contains(first.plusDays(day), stay))
+                            {
+                                assertThat(winners[day][stay] == null, is(true));
+                                winners[day][stay] = d.getDeal();
+                            }
+                        }
+                    }
+                }
+            }
+            for (int day = 0; day < days; day++)
+            {
+                for (int stay = 1; stay <= maxStay; stay++)
+                {
+                    Deal want = h.findBestDeal(first.plusDays(day), stay);
+                    Deal got = (winners[day][stay] == null) ? Deal.NO_DEAL : winners[day][stay];
+                    assertThat(got, is(sameInstance(want)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNeverWinningDealIsFlagged()
+    {
+        // Set conditions: $20 off, 10% off, and $5 off, over the same week at 100 a night.
+        String config = HotelDealConfigBuilder.newConfiguration().hotelRate(100).endDate(ORIGIN.plusDays(6))
+                .startDate(ORIGIN).promoText("$20 off").dealValue(-20).newLine()
+                .promoText("10% off").dealTypeToken(DealType.REBATE_PERCENT.getToken()).dealValue(-10).newLine()
+                .promoText("$5 off").dealTypeToken(DealType.FLAT_REBATE.getToken()).dealValue(-5).build();
+        HotelDealFinder hdf = new HotelDealParser().parseConfigString(config);
+
+        // Run
+        EffectivenessReport report = EffectivenessReport.build(hdf, 30);
+
+        // Verify: $20 off wins 1 night, and 2 nights on the tie; 10% off wins the rest; $5 off never wins.
+        List<DealEffectiveness> deals = report.getDeals();
+        assertThat(deals.size(), is(3));
+        assertThat(deals.get(0).getRegions().size(), is(1));
+        assertThat(deals.get(0).getRegions().get(0).toString(), is(new WinRegion(ORIGIN, ORIGIN.plusDays(6), 1, 2).toString()));
+        assertThat(deals.get(1).getRegions().get(0).toString(), is(new WinRegion(ORIGIN, ORIGIN.plusDays(6), 3, 30).toString()));
+        assertThat(deals.get(1).getWinningStayCount(), is(7L * 28));
+        assertThat(report.getNeverWinning().size(), is(1));
+        assertThat(report.getNeverWinning().get(0).getDeal().getPromotionalText(), is("$5 off"));
+
+        // Verify: with a rate calendar, the hotel is skipped rather than priced at its flat rate.
+        hdf.setNightlyRate(HotelDealConfigBuilder.TEST_HOTEL_NAME, ORIGIN, ORIGIN.plusDays(1), 150);
+        hdf.prepareHotels();
+        EffectivenessReport calendared = EffectivenessReport.build(hdf, 30);
+        assertThat(calendared.getDeals().isEmpty(), is(true));
+        assertThat(calendared.getSkippedHotels(), is(Collections.singletonList(HotelDealConfigBuilder.TEST_HOTEL_NAME)));
+    }
+}
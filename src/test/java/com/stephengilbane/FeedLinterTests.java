@@ -0,0 +1,110 @@
+package com.stephengilbane;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.stephengilbane.hotel.deals.DealType;
+import com.stephengilbane.hotel.lint.FeedLinter;
+import com.stephengilbane.hotel.lint.LintIssue;
+import com.stephengilbane.hotel.lint.LintIssueType;
+import com.stephengilbane.hotel.lint.LintReport;
+
+/**
+ * Unit tests for the deal feed linter.
+ * @author stephengilbane
+ *
+ */
+public class FeedLinterTests
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCleanFeed() throws IOException
+    {
+        // Set conditions
+        String inString = HotelDealConfigBuilder.newConfiguration()
+                    .newLine()
+                .dealTypeToken(DealType.REBATE_PERCENT.getToken())
+                    .newLine()
+                .dealTerms("stack=spring/2/percent_first")
+                .build();
+
+        // Run
+        LintReport report = new FeedLinter().lint(writeFeed(inString));
+
+        // Verify: the stackable line is a different deal from the one before it.
+        assertThat(report.getLineCount(), is(3L));
+        assertThat(report.isClean(), is(true));
+    }
+
+    @Test
+    public void testInconsistentFeed() throws IOException
+    {
+        // Set conditions
+        String inString = HotelDealConfigBuilder.newConfiguration()
+                .startDate(LocalDate.of(2016, 3, 1))
+                .endDate(LocalDate.of(2016, 3, 31))
+                    .newLine()                          // 1: fine
+                .hotelRate(HotelDealConfigBuilder.TEST_NIGHTLY_RATE + 1)
+                    .newLine()                          // 2: rate ignored, duplicate of 1
+                .hotelRate(HotelDealConfigBuilder.TEST_NIGHTLY_RATE)
+                .dealValue(-20)
+                .startDate(LocalDate.of(2016, 3, 20))
+                    .newLine()                          // 3: overlaps 1 with a different value
+                .dealTypeToken(DealType.REBATE_PERCENT.getToken())
+                .dealValue(-150)
+                    .newLine()                          // 4: invalid percentage
+                .startDate(LocalDate.of(2016, 4, 2))
+                .endDate(LocalDate.of(2016, 4, 1))
+                .dealValue(-10)
+                .build();                               // 5: inverted dates
+        inString = inString + "\nnot,a,deal\n";         // 6: malformed
+        inString = inString + HotelDealConfigBuilder.newConfiguration()
+                .hotelName("Hotel S")
+                .dealTerms("stack=g/2/percent_first")
+                    .newLine()                          // 7: fine
+                .promoText("another")
+                .dealTerms("stack=g/3/percent_first")
+                .build() + "\n";                        // 8: rule differs from that of line 7
+
+        // Run
+        LintReport report = new FeedLinter().lint(writeFeed(inString));
+
+        // Verify
+        List<LintIssue> issues = report.getIssues();
+        assertThat(report.getLineCount(), is(8L));
+        assertThat(issues.size(), is(7));
+        assertIssue(issues.get(0), 2, LintIssueType.RATE_CONFLICT);
+        assertIssue(issues.get(1), 2, LintIssueType.DUPLICATE_DEAL);
+        assertIssue(issues.get(2), 3, LintIssueType.CONFLICTING_OVERLAP);
+        assertIssue(issues.get(3), 4, LintIssueType.INVALID_PERCENT);
+        assertIssue(issues.get(4), 5, LintIssueType.INVERTED_DATES);
+        assertIssue(issues.get(5), 6, LintIssueType.MALFORMED_LINE);
+        assertIssue(issues.get(6), 8, LintIssueType.STACKING_CONFLICT);
+    }
+
+    private static void assertIssue(LintIssue issue, long line, LintIssueType type)
+    {
+        assertThat(issue.getLineNumber(), is(line));
+        assertThat(issue.getType(), is(type));
+    }
+
+    private File writeFeed(String contents) throws IOException
+    {
+        File f = folder.newFile();
+        Files.write(f.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+}
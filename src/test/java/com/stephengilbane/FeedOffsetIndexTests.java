@@ -0,0 +1,113 @@
+package com.stephengilbane;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.stephengilbane.hotel.DealResult;
+import com.stephengilbane.hotel.HotelDealFinder;
+import com.stephengilbane.hotel.HotelDealParser;
+import com.stephengilbane.hotel.index.FeedOffsetIndex;
+
+/**
+ * Unit tests for the sidecar hotel offset index of deal feeds.
+ * @author stephengilbane
+ *
+ */
+public class FeedOffsetIndexTests
+{
+    private static final LocalDate ORIGIN = LocalDate.of(2016, 3, 1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIndexedLoadsMatchFullParse() throws IOException
+    {
+        // Set conditions: a random feed of 40 hotels with its sidecar index; no final newline.
+        Random rnd = new Random(45);
+        List<String> lines = HotelDealConfigBuilder.randomLines(rnd, 3000, 40, ORIGIN, 60);
+        File feed = writeFeed(String.join("\n", lines));
+        FeedOffsetIndex index = FeedOffsetIndex.build(feed);
+        index.write(FeedOffsetIndex.sidecarFor(feed));
+        HotelDealParser parser = new HotelDealParser();
+        HotelDealFinder full = parser.createFromFile(feed.getPath());
+
+        // Run
+        HotelDealFinder lazy = parser.createLazyFromFile(feed.getPath());
+
+        // Verify: every way of loading a hotel gives the same best values as the full parse.
+        assertThat(FeedOffsetIndex.openFresh(feed), is(notNullValue()));
+        assertThat(index.verify(feed), is(true));
+        assertThat(index.getHotelCount(), is(full.getAllHotels().size()));
+        for (int q = 0; q < 500; q++)
+        {
+            String name = "Random Hotel " + rnd.nextInt(42);
+            LocalDate dt = ORIGIN.plusDays(rnd.nextInt(120));
+            int stay = 1 + rnd.nextInt(5);
+            String expected = describe(full.findBestValue(name, dt, stay));
+            assertThat(describe(lazy.findBestValue(name, dt, stay)), is(expected));
+            if (q % 25 == 0)
+            {
+                HotelDealFinder single = parser.createFromFile(feed.getPath(), name);
+                assertThat(describe(single.findBestValue(name, dt, stay)), is(expected));
+            }
+        }
+        assertThat(lazy.getAllHotels().size(), is(full.getAllHotels().size()));
+    }
+
+    @Test
+    public void testChangedFeedMakesIndexStale() throws IOException
+    {
+        // Set conditions
+        String inString = HotelDealConfigBuilder.newConfiguration().build() + "\n";
+        File feed = writeFeed(inString);
+        FeedOffsetIndex.build(feed).write(FeedOffsetIndex.sidecarFor(feed));
+
+        // Run
+        Files.write(feed.toPath(), HotelDealConfigBuilder.newConfiguration().dealValue(-20).build()
+                .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        // Verify: the stale index is ignored, and the appended deal is found by a scan.
+        assertThat(FeedOffsetIndex.openFresh(feed), is(nullValue()));
+        HotelDealFinder single = new HotelDealParser().createFromFile(feed.getPath(),
+                HotelDealConfigBuilder.TEST_HOTEL_NAME);
+        assertThat(single.getAllHotels().get(0).getAllDeals().size(), is(2));
+
+        // Run: rewrite the feed with the same length, keeping its modification time.
+        FeedOffsetIndex.build(feed).write(FeedOffsetIndex.sidecarFor(feed));
+        long modified = feed.lastModified();
+        String rewritten = new String(Files.readAllBytes(feed.toPath()), StandardCharsets.UTF_8).replace("-20", "-30");
+        Files.write(feed.toPath(), rewritten.getBytes(StandardCharsets.UTF_8));
+        assertThat(feed.setLastModified(modified), is(true));
+
+        // Verify: the sample checksum catches what the length and time do not.
+        assertThat(FeedOffsetIndex.openFresh(feed), is(nullValue()));
+    }
+
+    private static String describe(DealResult r)
+    {
+        return (r.getHotel() == null) ? "unknown" : r.getDeal().getPromotionalText() + " " + r.getCustomerPrice();
+    }
+
+    private File writeFeed(String contents) throws IOException
+    {
+        File f = this.folder.newFile("deals.csv");
+        Files.write(f.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+}
@@ -1,6 +1,9 @@
 package com.stephengilbane;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import com.stephengilbane.hotel.ParserUtils;
 import com.stephengilbane.hotel.deals.DealType;
@@ -9,7 +12,7 @@ import com.stephengilbane.hotel.deals.DealType;
  * Class used to build test configuration input for HotelDealFinder.
  * 
  * Data input field order:
- *      hotel_name, nightly_rate, promo_txt, deal_value, deal_type, start_date, end_date
+ *      hotel_name, nightly_rate, promo_txt, deal_value, deal_type, start_date, end_date [, terms]
  * 
  * For single line input, call newConfiguration(), set attributes as needed, and call build().
  * For multi-line input, call newConfiguration(), set attributes for each line, call newLine() for next record,
@@ -41,6 +44,7 @@ public class HotelDealConfigBuilder
     private LocalDate startDate = TEST_START_DATE;
     private LocalDate endDate = LocalDate.now();
     private String dealTypeToken = TEST_TYPE_TOKEN;
+    private String[] dealTerms = new String[0];
 
     /**
      * Constructor for default builder.
@@ -85,6 +89,12 @@ public class HotelDealConfigBuilder
         return this;
     }
     
+    public HotelDealConfigBuilder dealTerms(String... terms)
+    {
+        this.dealTerms = terms;
+        return this;
+    }
+    
     public HotelDealConfigBuilder startDate(LocalDate dt)
     {
         startDate = dt;
@@ -97,6 +107,73 @@ public class HotelDealConfigBuilder
         return this;
     }
     
+    /**
+     * Set every attribute to a random value, favoring the edges of the deal rules: single-day
+     * and inverted date ranges, stays around the 3-night minimum, and out-of-range percentages.
+     * @param rnd Source of randomness.
+     * @param hotelCount Number of distinct hotel names to choose from.
+     * @param origin Earliest start date.
+     * @param daySpan Number of days over which start dates are spread.
+     */
+    public HotelDealConfigBuilder randomize(Random rnd, int hotelCount, LocalDate origin, int daySpan)
+    {
+        hotelName = "Random Hotel " + rnd.nextInt(hotelCount);
+        nightlyRate = 1 + rnd.nextInt(300);
+        promoText = "Random promotion " + rnd.nextInt(20);
+        int kind = rnd.nextInt(10);
+        if (kind < 4)
+        {
+            dealTypeToken = DealType.FLAT_REBATE.getToken();
+            dealValue = rnd.nextInt(71) - 60;
+        }
+        else if (kind < 7)
+        {
+            dealTypeToken = DealType.FLAT_REBATE_3PLUS.getToken();
+            dealValue = rnd.nextInt(71) - 60;
+        }
+        else
+        {
+            dealTypeToken = DealType.REBATE_PERCENT.getToken();
+            dealValue = (rnd.nextInt(20) == 0) ? 5 : -rnd.nextInt(101);
+        }
+        startDate = origin.plusDays(rnd.nextInt(daySpan));
+        int shape = rnd.nextInt(8);
+        if (shape == 0)
+        {
+            endDate = startDate.minusDays(1 + rnd.nextInt(5));
+        }
+        else if (shape == 1)
+        {
+            endDate = startDate;
+        }
+        else
+        {
+            endDate = startDate.plusDays(rnd.nextInt(daySpan / 2 + 1));
+        }
+        return this;
+    }
+
+    /**
+     * Generate the lines of a random configuration.
+     * @param rnd Source of randomness.
+     * @param lineCount Number of lines.
+     * @param hotelCount Number of distinct hotel names.
+     * @param origin Earliest start date.
+     * @param daySpan Number of days over which start dates are spread.
+     * @return configuration lines, without line separators.
+     */
+    public static List<String> randomLines(Random rnd, int lineCount, int hotelCount, LocalDate origin, int daySpan)
+    {
+        HotelDealConfigBuilder builder = newConfiguration();
+        List<String> lines = new ArrayList<String>(lineCount);
+        for (int i = 0; i < lineCount; i++)
+        {
+            lines.add(builder.randomize(rnd, hotelCount, origin, daySpan).buildRecord());
+            builder.buffer.setLength(0);
+        }
+        return lines;
+    }
+
     /**
      * Record the state of the builder.  Reset buffer, leave all values as is.
      * Typically, subsequent calls will only change values that change.
@@ -127,6 +204,11 @@ public class HotelDealConfigBuilder
         buffer.append(ParserUtils.formatDate(startDate));
         buffer.append(DELIM);
         buffer.append(ParserUtils.formatDate(endDate));
+        for (String t : dealTerms)
+        {
+            buffer.append(DELIM);
+            buffer.append(t);
+        }
 
         return  buffer.toString();
     }
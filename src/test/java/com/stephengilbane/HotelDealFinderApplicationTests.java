@@ -1,24 +1,73 @@
 package com.stephengilbane;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.SpringApplicationConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import com.stephengilbane.hotel.DealCombination;
+import com.stephengilbane.hotel.DealQueryResult;
 import com.stephengilbane.hotel.DealResult;
 import com.stephengilbane.hotel.Hotel;
 import com.stephengilbane.hotel.HotelDealFinder;
 import com.stephengilbane.hotel.HotelDealFinderApplication;
 import com.stephengilbane.hotel.HotelDealParser;
+import com.stephengilbane.hotel.ParserUtils;
+import com.stephengilbane.hotel.analytics.DealAnalytics;
+import com.stephengilbane.hotel.batch.DealQueryBatcher;
+import com.stephengilbane.hotel.analytics.DealStats;
+import com.stephengilbane.hotel.analytics.Dimension;
+import com.stephengilbane.hotel.analytics.GroupKey;
+import com.stephengilbane.hotel.analytics.Measure;
+import com.stephengilbane.hotel.SplitStay;
+import com.stephengilbane.hotel.StringDictionary;
 import com.stephengilbane.hotel.deals.Deal;
+import com.stephengilbane.hotel.deals.DealFilter;
+import com.stephengilbane.hotel.deals.DealTerms;
 import com.stephengilbane.hotel.deals.DealType;
+import com.stephengilbane.hotel.deals.FlatRebateDeal;
+import com.stephengilbane.hotel.deals.FlatRebateThreePlusDeal;
+import com.stephengilbane.hotel.deals.PercentRebateDeal;
+import com.stephengilbane.hotel.deals.StackingOrder;
+import com.stephengilbane.hotel.deals.StackingRule;
+import com.stephengilbane.hotel.index.DateBucketing;
+import com.stephengilbane.hotel.index.HotelDateIndex;
+import com.stephengilbane.hotel.storage.DealView;
+import com.stephengilbane.hotel.watch.DealChangeEvent;
+import com.stephengilbane.hotel.watch.DealSubscription;
+import com.stephengilbane.hotel.trace.CandidateOutcome;
+import com.stephengilbane.hotel.trace.QueryExplanation;
+import com.stephengilbane.hotel.trace.SampledQueryTracer;
+import com.stephengilbane.hotel.storage.OffHeapDealStore;
 
 /**
  * Unit tests for HotelDealFinder application.
@@ -208,6 +257,821 @@ public class HotelDealFinderApplicationTests
       assertThat(DealType.fromToken(deal3.getTypeToken()), is(DealType.NO_DEAL));
    }
 	
+   @Test
+   public void  testEqualPricedDealsOfDifferentTypesPreferFirstConfigured() 
+   {
+      // Set conditions: $25 x 4 nights = $100; 10% off and $10 off both give $90.
+      String promoTextPct = HotelDealConfigBuilder.TEST_PROMO_TEXT + " Percent";
+      String promoTextFlat = HotelDealConfigBuilder.TEST_PROMO_TEXT + " Flat";
+      String inString = HotelDealConfigBuilder.newConfiguration()
+               .dealTypeToken(DealType.REBATE_PERCENT.getToken())
+               .promoText(promoTextPct)
+               .dealValue(-10)
+                   .newLine()
+               .dealTypeToken(DealType.FLAT_REBATE.getToken())
+               .promoText(promoTextFlat)
+               .dealValue(-10)
+               .build();
+      HotelDealParser hdParser = new HotelDealParser();
+      HotelDealFinder hdf = hdParser.parseConfigString(inString);
+
+      // Run
+      DealResult res = hdf.findBestValue(HotelDealConfigBuilder.TEST_HOTEL_NAME, 
+              HotelDealConfigBuilder.TEST_START_DATE, 4);
+
+      // Verify
+      assertThat(res.getDeal().getPromotionalText(), is(promoTextPct));
+      assertThat(res.getCustomerPrice(), is(90));
+   }
+	
+   @Test
+   public void  testBestDealSwitchesTypeWithStayLength() 
+   {
+      // Set conditions: at $100 a night, $25 off wins up to 2 nights, 10% off from 3 nights on.
+      String promoTextPct = HotelDealConfigBuilder.TEST_PROMO_TEXT + " Percent";
+      String promoTextFlat = HotelDealConfigBuilder.TEST_PROMO_TEXT + " Flat";
+      String inString = HotelDealConfigBuilder.newConfiguration()
+               .hotelRate(100)
+               .dealTypeToken(DealType.REBATE_PERCENT.getToken())
+               .promoText(promoTextPct)
+               .dealValue(-10)
+               .endDate(HotelDealConfigBuilder.TEST_END_DATE)
+                   .newLine()
+               .dealTypeToken(DealType.FLAT_REBATE.getToken())
+               .promoText(promoTextFlat)
+               .dealValue(-25)
+               .build();
+      HotelDealParser hdParser = new HotelDealParser();
+      HotelDealFinder hdf = hdParser.parseConfigString(inString);
+      LocalDate checkIn = HotelDealConfigBuilder.TEST_START_DATE.plusDays(3);
+
+      // Run
+      DealResult res2 = hdf.findBestValue(HotelDealConfigBuilder.TEST_HOTEL_NAME, checkIn, 2);
+      DealResult res3 = hdf.findBestValue(HotelDealConfigBuilder.TEST_HOTEL_NAME, checkIn, 3);
+      DealResult resAfter = hdf.findBestValue(HotelDealConfigBuilder.TEST_HOTEL_NAME,
+              HotelDealConfigBuilder.TEST_END_DATE.plusDays(1), 3);
+
+      // Verify
+      assertThat(res2.getDeal().getPromotionalText(), is(promoTextFlat));
+      assertThat(res2.getCustomerPrice(), is(175));
+      assertThat(res3.getDeal().getPromotionalText(), is(promoTextPct));
+      assertThat(res3.getCustomerPrice(), is(270));
+      assertThat(resAfter.getDeal(), is(Deal.NO_DEAL));
+   }
+	
+   @Test
+   public void  testOffHeapStoreProblemExample() 
+   {
+      // Set conditions: the three deals of the problem statement.
+      String hotelName = "Hotel Foobar";
+      String inString = HotelDealConfigBuilder.newConfiguration()
+               .hotelName(hotelName)
+               .hotelRate(250)
+               .dealTypeToken(DealType.FLAT_REBATE_3PLUS.getToken())
+               .dealValue(-50)
+               .promoText("$50 off your stay 3 nights or more")
+               .startDate(LocalDate.of(2016, 3, 1))
+               .endDate(LocalDate.of(2016, 3, 31))
+                   .newLine()
+               .dealTypeToken(DealType.REBATE_PERCENT.getToken())
+               .dealValue(-5)
+               .promoText("5% off your stay")
+               .endDate(LocalDate.of(2016, 3, 15))
+                   .newLine()
+               .dealTypeToken(DealType.FLAT_REBATE.getToken())
+               .dealValue(-20)
+               .promoText("$20 off your stay")
+               .startDate(LocalDate.of(2016, 3, 7))
+               .build();
+      OffHeapDealStore store = new OffHeapDealStore();
+      new HotelDealParser().parseDeals(new BufferedReader(new StringReader(inString)), store, null);
+      DealView view = new DealView();
+
+      // Run & verify
+      assertThat(store.getHotelCount(), is(1));
+      assertThat(store.getDealCount(), is(3));
+      assertThat(store.findBestDeal(hotelName, LocalDate.of(2016, 3, 5), 3, view), is(true));
+      assertThat(view.getPromotionalText(), is("$50 off your stay 3 nights or more"));
+      assertThat(view.getCustomerPrice(), is(700));
+      assertThat(store.findBestDeal(hotelName, LocalDate.of(2016, 3, 10), 2, view), is(true));
+      assertThat(view.getDealType(), is(DealType.REBATE_PERCENT));
+      assertThat(store.findBestDeal(hotelName, LocalDate.of(2016, 3, 20), 1, view), is(false));
+      assertThat(store.findBestDeal("Hotel Nowhere", LocalDate.of(2016, 3, 5), 3, view), is(false));
+      assertThat(store.findBestValue(hotelName, LocalDate.of(2016, 3, 5), 3).toString(),
+              is("$50 off your stay 3 nights or more"));
+   }
+	
+   @Test
+   public void  testRepeatedStringsAreDictionaryEncoded() 
+   {
+      // Set conditions: two hotels, three lines, one shared promotional text.
+      String inString = HotelDealConfigBuilder.newConfiguration()
+               .hotelName("Hotel A")
+                   .newLine()
+               .dealValue(-20)
+                   .newLine()
+               .hotelName("Hotel B")
+               .build();
+      HotelDealParser hdParser = new HotelDealParser();
+
+      // Run
+      HotelDealFinder hdf = hdParser.parseConfigString(inString);
+
+      // Verify
+      StringDictionary dict = hdf.getDictionary();
+      assertThat(dict.size(), is(3));
+      assertThat(dict.getLookupCount(), is(6L));
+      assertThat(dict.getBytesSaved() > 0, is(true));
+      Deal dealA = hdf.findBestValue("Hotel A", HotelDealConfigBuilder.TEST_START_DATE, 1).getDeal();
+      Deal dealB = hdf.findBestValue("Hotel B", HotelDealConfigBuilder.TEST_START_DATE, 1).getDeal();
+      assertThat(dealA.getPromoCode(), is(dealB.getPromoCode()));
+      assertThat(dealA.getPromotionalText() == dealB.getPromotionalText(), is(true));
+      assertThat(dict.decode(dealA.getPromoCode()), is(HotelDealConfigBuilder.TEST_PROMO_TEXT));
+   }
+	
+   @Test
+   public void  testAllocationFreeQueries() 
+   {
+      // Set conditions: $25 x 3 nights = $75; the second deal ($50 off) wins.
+      String inString = HotelDealConfigBuilder.newConfiguration()
+                   .newLine()
+               .dealValue(-50)
+               .build();
+      HotelDealParser hdParser = new HotelDealParser();
+      HotelDealFinder hdf = hdParser.parseConfigString(inString);
+      DealQueryResult holder = new DealQueryResult();
+
+      // Run & verify
+      assertThat(hdf.findBestValue(HotelDealConfigBuilder.TEST_HOTEL_NAME, HotelDealConfigBuilder.TEST_START_DATE, 3,
+              holder), is(true));
+      assertThat(holder.getDealIndex(), is(1));
+      assertThat(holder.getCustomerPrice(), is(25));
+      assertThat(holder.getDeal(), is(holder.getHotel().getDeal(1)));
+
+      long packed = hdf.findBestValuePacked(HotelDealConfigBuilder.TEST_HOTEL_NAME,
+              HotelDealConfigBuilder.TEST_START_DATE, 3);
+      assertThat(HotelDealFinder.unpackDealIndex(packed), is(1));
+      assertThat(HotelDealFinder.unpackPrice(packed), is(25));
+
+      // No deal after the end date; unknown hotel.
+      assertThat(hdf.findBestValue(HotelDealConfigBuilder.TEST_HOTEL_NAME,
+              HotelDealConfigBuilder.TEST_START_DATE.plusDays(1), 3, holder), is(false));
+      assertThat(holder.getCustomerPrice(), is(75));
+      assertThat(hdf.findBestValue("Hotel Nowhere", HotelDealConfigBuilder.TEST_START_DATE, 3, holder), is(false));
+      assertThat(holder.getHotel(), is(nullValue()));
+      assertThat(hdf.findBestValuePacked("Hotel Nowhere", HotelDealConfigBuilder.TEST_START_DATE, 3),
+              is(HotelDealFinder.NO_DEAL_PACKED));
+   }
+	
+   @Test
+   public void  testExplainAndSampledTrace() 
+   {
+      // Set conditions: a 3-night-minimum deal and a deal that starts tomorrow.
+      String inString = HotelDealConfigBuilder.newConfiguration()
+               .dealTypeToken(DealType.FLAT_REBATE_3PLUS.getToken())
+                   .newLine()
+               .dealTypeToken(DealType.FLAT_REBATE.getToken())
+               .startDate(HotelDealConfigBuilder.TEST_START_DATE.plusDays(1))
+               .endDate(HotelDealConfigBuilder.TEST_END_DATE)
+               .build();
+      HotelDealParser hdParser = new HotelDealParser();
+      HotelDealFinder hdf = hdParser.parseConfigString(inString);
+
+      // Run
+      QueryExplanation explanation = hdf.explainBestValue(HotelDealConfigBuilder.TEST_HOTEL_NAME,
+              HotelDealConfigBuilder.TEST_START_DATE, 1);
+
+      // Verify
+      assertThat(explanation.isHotelFound(), is(true));
+      assertThat(explanation.getSelectedDeal(), is(Deal.NO_DEAL));
+      assertThat(explanation.getFinalPrice(), is(25));
+      assertThat(explanation.getCandidates().size(), is(2));
+      assertThat(explanation.getCandidates().get(0).getOutcome(), is(CandidateOutcome.REJECTED_STAY_LENGTH));
+      assertThat(explanation.getCandidates().get(1).getOutcome(), is(CandidateOutcome.REJECTED_CHECK_IN_DATE));
+      assertThat(explanation.getCandidates().get(1).getPrice(), is(15));
+      String text = explanation.toString();
+      assertThat(text, containsString("#0 rebate_3plus"));
+      assertThat(text, containsString("stay too short"));
+      assertThat(text, containsString("check-in date not covered"));
+      assertThat(text, containsString("final price $25"));
+
+      // Sampled: one query in three, keeping the last two.
+      SampledQueryTracer tracer = new SampledQueryTracer(3, 2);
+      hdf.setQueryTracer(tracer);
+      for (int i = 0; i < 9; i++)
+      {
+          hdf.findBestValue(HotelDealConfigBuilder.TEST_HOTEL_NAME, HotelDealConfigBuilder.TEST_START_DATE, i + 1);
+      }
+      assertThat(tracer.getQueryCount(), is(9L));
+      assertThat(tracer.getTracedCount(), is(3L));
+      List<QueryExplanation> traces = tracer.getRecentTraces();
+      assertThat(traces.size(), is(2));
+      assertThat(traces.get(0).getStayLength(), is(4));
+      assertThat(traces.get(1).getStayLength(), is(7));
+      assertThat(traces.get(1).getSelectedDeal(), is(hdf.getAllHotels().get(0).getDeal(0)));
+   }
+
+   @Test
+   public void  testHotelDateIndex() 
+   {
+      // Set conditions: three hotels, one with a 3-night-minimum deal and one with no deal.
+      LocalDate start = LocalDate.of(2016, 3, 1);
+      String inString = HotelDealConfigBuilder.newConfiguration()
+               .hotelName("Hotel A")
+               .startDate(start)
+               .endDate(start.plusDays(9))
+                   .newLine()
+               .hotelName("Hotel B")
+               .dealTypeToken(DealType.FLAT_REBATE_3PLUS.getToken())
+               .startDate(start.plusDays(5))
+               .endDate(start.plusDays(30))
+                   .newLine()
+               .hotelName("Hotel C")
+               .dealTypeToken(DealType.NO_DEAL.getToken())
+               .build();
+      HotelDealParser hdParser = new HotelDealParser();
+      HotelDealFinder hdf = hdParser.parseConfigString(inString);
+
+      // Run & verify
+      assertThat(names(hdf.findHotelsWithDeals(start, 5)), is(Arrays.asList("Hotel A")));
+      assertThat(names(hdf.findHotelsWithDeals(start.plusDays(7), 1)), is(Arrays.asList("Hotel A")));
+      assertThat(names(hdf.findHotelsWithDeals(start.plusDays(7), 3)), is(Arrays.asList("Hotel A", "Hotel B")));
+      assertThat(hdf.findHotelsWithDeals(start.plusDays(31), 3).isEmpty(), is(true));
+
+      // Intersect with a filter of the caller, and check coarse buckets.
+      HotelDateIndex index = hdf.getDateIndex();
+      BitSet expensive = new BitSet();
+      expensive.set(index.getHotelId("Hotel B"));
+      BitSet found = index.candidates(start.plusDays(7), 3);
+      found.and(expensive);
+      assertThat(names(index.toHotels(found)), is(Arrays.asList("Hotel B")));
+      HotelDateIndex monthly = HotelDateIndex.build(hdf.getAllHotels(), DateBucketing.MONTH);
+      assertThat(monthly.candidates(start, 3).cardinality(), is(2));
+      assertThat(names(monthly.findHotelsWithDeals(start, 3)), is(Arrays.asList("Hotel A")));
+
+      // Adding a deal rebuilds the index.
+      hdf.addDeal("Hotel C", HotelDealConfigBuilder.TEST_NIGHTLY_RATE, new FlatRebateDeal("One day only", -5, start, start));
+      assertThat(names(hdf.findHotelsWithDeals(start, 5)), is(Arrays.asList("Hotel A", "Hotel C")));
+   }
+
+   private static List<String> names(List<Hotel> hotels)
+   {
+      List<String> result = new ArrayList<String>();
+      for (Hotel h : hotels)
+      {
+          result.add(h.getName());
+      }
+      Collections.sort(result);
+      return result;
+   }
+
+   @Test
+   public void  testBestStackOfDeals() 
+   {
+      // Set conditions: 4 nights at 25 is 100. Two percentages and two rebates may stack, at most 3.
+      LocalDate start = HotelDealConfigBuilder.TEST_START_DATE;
+      LocalDate end = HotelDealConfigBuilder.TEST_END_DATE;
+      StackingRule rule = new StackingRule("spring", 3, StackingOrder.PERCENT_FIRST);
+      HotelDealFinder hdf = new HotelDealFinder();
+      DealTerms stacking = DealTerms.NONE.withStackingRule(rule);
+      Deal single = new FlatRebateDeal("$30 off", -30, start, end);
+      Deal tenPercent = new PercentRebateDeal("10% off", -10, start, end, stacking);
+      Deal twentyPercent = new PercentRebateDeal("20% off", -20, start, end, stacking);
+      Deal fiveOff = new FlatRebateDeal("$5 off", -5, start, end, stacking);
+      Deal fifteenOff = new FlatRebateThreePlusDeal("$15 off 3+", -15, start, end, stacking);
+      for (Deal d : Arrays.asList(single, tenPercent, twentyPercent, fiveOff, fifteenOff))
+      {
+          hdf.addDeal(HotelDealConfigBuilder.TEST_HOTEL_NAME, HotelDealConfigBuilder.TEST_NIGHTLY_RATE, d);
+      }
+
+      // Run
+      DealCombination fourNights = hdf.findBestCombination(HotelDealConfigBuilder.TEST_HOTEL_NAME, start, 4);
+      DealCombination oneNight = hdf.findBestCombination(HotelDealConfigBuilder.TEST_HOTEL_NAME, start, 1);
+
+      // Verify: 100 * 0.8 * 0.9 - 15 = 57, better than 100 * 0.8 - 15 - 5 = 60 and 100 - 30 = 70.
+      assertThat(fourNights.getCustomerPrice(), is(57));
+      assertThat(fourNights.getDeals(), is(Arrays.asList(twentyPercent, tenPercent, fifteenOff)));
+      // 25 - 30 is below any stack, which cannot go below 0: the single deal wins.
+      assertThat(oneNight.getDeals(), is(Arrays.asList(single)));
+      assertThat(oneNight.getCustomerPrice(), is(-5));
+
+      // Flat first, with two equal percentages, loaded from a feed.
+      String inString = HotelDealConfigBuilder.newConfiguration()
+               .startDate(start)
+               .endDate(end)
+               .dealTypeToken(DealType.REBATE_PERCENT.getToken())
+               .dealValue(-10)
+               .dealTerms("stack=spring/3/flat_first")
+                   .newLine()
+                   .newLine()
+               .dealTypeToken(DealType.FLAT_REBATE.getToken())
+               .dealValue(-20)
+               .dealTerms(" stack = spring / 3 / flat_first ")
+                   .newLine()
+               .dealTerms("stack=spring/3/sideways")
+               .build();
+      HotelDealFinder flatFirst = new HotelDealParser().parseConfigString(inString);
+      DealCombination stacked = flatFirst.findBestCombination(HotelDealConfigBuilder.TEST_HOTEL_NAME, start, 4);
+      // (100 - 20) * 0.9 * 0.9 = 64.8, rounded down at each step: 72, then 64. The last line is skipped.
+      assertThat(flatFirst.getAllHotels().get(0).getDealCount(), is(3));
+      assertThat(stacked.getCustomerPrice(), is(64));
+      assertThat(stacked.getDeals().get(0).getValue(), is(-20));
+      assertThat(stacked.getDeals().get(0).getStackingRule(),
+              is(new StackingRule("spring", 3, StackingOrder.FLAT_FIRST)));
+
+      // Two rules for one group: the group keeps the first, and the other hotels still load.
+      String conflicting = HotelDealConfigBuilder.newConfiguration()
+               .startDate(start)
+               .endDate(end)
+               .dealValue(-10)
+               .dealTerms("stack=g/2/percent_first")
+                   .newLine()
+               .dealValue(-5)
+               .dealTerms("stack=g/3/percent_first")
+                   .newLine()
+               .hotelName("Hotel B")
+               .dealTerms()
+               .build();
+      HotelDealFinder partly = new HotelDealParser().parseConfigString(conflicting);
+      DealCombination first = partly.findBestCombination(HotelDealConfigBuilder.TEST_HOTEL_NAME, start, 4);
+      assertThat(partly.getAllHotels().size(), is(2));
+      assertThat(first.getCustomerPrice(), is(90));
+      assertThat(first.getDeals().size(), is(1));
+   }
+
+   @Test
+   public void  testSplitStayAcrossDealWindows() 
+   {
+      // Set conditions: $50 off for check-in on days 0 to 2, half price for check-in on days 3 to 6.
+      LocalDate start = LocalDate.of(2016, 3, 1);
+      String inString = HotelDealConfigBuilder.newConfiguration()
+               .hotelRate(100)
+               .dealValue(-50)
+               .startDate(start)
+               .endDate(start.plusDays(2))
+                   .newLine()
+               .dealTypeToken(DealType.REBATE_PERCENT.getToken())
+               .startDate(start.plusDays(3))
+               .endDate(start.plusDays(6))
+               .build();
+      HotelDealParser hdParser = new HotelDealParser();
+      HotelDealFinder hdf = hdParser.parseConfigString(inString);
+
+      // Run
+      SplitStay whole = hdf.findBestSplitStay(HotelDealConfigBuilder.TEST_HOTEL_NAME, start, 7, 1);
+      SplitStay two = hdf.findBestSplitStay(HotelDealConfigBuilder.TEST_HOTEL_NAME, start, 7, 2);
+      SplitStay four = hdf.findBestSplitStay(HotelDealConfigBuilder.TEST_HOTEL_NAME, start, 7, 7);
+
+      // Verify: 700 - 50; then 300 - 50 + 400 / 2; then three single nights at 100 - 50 + 400 / 2.
+      assertThat(whole.getCustomerPrice(), is(650));
+      assertThat(whole.getSegments().size(), is(1));
+      assertThat(two.getCustomerPrice(), is(450));
+      assertThat(two.getSegments().get(1).getCheckinDate(), is(start.plusDays(3)));
+      assertThat(two.getSegments().get(1).getStayLength(), is(4));
+      assertThat(two.getSegments().get(1).getCustomerPrice(), is(200));
+      assertThat(four.getCustomerPrice(), is(350));
+      assertThat(four.getSegments().size(), is(4));
+   }
+
+   @Test
+   public void  testRateCalendarPricesStaysByNight() throws IOException
+   {
+      // Set conditions: $100 a night, $150 for Saturday and Sunday nights; $50 off for check-in
+      // on Friday, 10% off for check-in on Saturday.
+      LocalDate friday = LocalDate.of(2016, 3, 4);
+      String inString = HotelDealConfigBuilder.newConfiguration()
+               .hotelRate(100)
+               .dealValue(-50)
+               .startDate(friday)
+               .endDate(friday)
+                   .newLine()
+               .dealTypeToken(DealType.REBATE_PERCENT.getToken())
+               .dealValue(-10)
+               .startDate(friday.plusDays(1))
+               .endDate(friday.plusDays(1))
+               .build();
+      HotelDealParser hdParser = new HotelDealParser();
+      HotelDealFinder hdf = hdParser.parseConfigString(inString);
+      String rates = HotelDealConfigBuilder.TEST_HOTEL_NAME + ", 150, 2016-03-05, 2016-03-06\n"
+               + "No Such Hotel, 150, 2016-03-05, 2016-03-06\n"
+               + HotelDealConfigBuilder.TEST_HOTEL_NAME + ", 150, not a date, 2016-03-06\n";
+      int applied = hdParser.parseRates(new BufferedReader(new StringReader(rates)), hdf);
+      HotelDealFinder single = hdParser.parseConfigString(inString);
+      int appliedSingle = hdParser.parseRates(new BufferedReader(new StringReader(rates)), single,
+               HotelDealConfigBuilder.TEST_HOTEL_NAME);
+
+      // Run
+      DealResult fri = hdf.findBestValue(HotelDealConfigBuilder.TEST_HOTEL_NAME, friday, 3);
+      DealResult sat = hdf.findBestValue(HotelDealConfigBuilder.TEST_HOTEL_NAME, friday.plusDays(1), 2);
+      DealResult tue = hdf.findBestValue(HotelDealConfigBuilder.TEST_HOTEL_NAME, friday.plusDays(4), 2);
+
+      // Verify: 100 + 150 + 150 - 50; (150 + 150) * 90%; weekday nights at the default rate.
+      assertThat(applied, is(1));
+      assertThat(appliedSingle, is(1));
+      assertThat(single.findBestValue(HotelDealConfigBuilder.TEST_HOTEL_NAME, friday, 3).getCustomerPrice(), is(350));
+      assertThat(fri.getCustomerPrice(), is(350));
+      assertThat(sat.getCustomerPrice(), is(270));
+      assertThat(tue.getCustomerPrice(), is(200));
+   }
+
+   @Test
+   public void  testLimitedDealFallsBackWhenSoldOut() throws Exception
+   {
+      // Set conditions: 4 nights at 25 is 100; $40 off for the first 100 bookings, else $10 off.
+      LocalDate start = HotelDealConfigBuilder.TEST_START_DATE;
+      LocalDate end = HotelDealConfigBuilder.TEST_END_DATE;
+      String inString = HotelDealConfigBuilder.newConfiguration()
+               .startDate(start)
+               .endDate(end)
+               .promoText("$40 off the first 100")
+               .dealValue(-40)
+               .dealTerms("qty=100")
+                   .newLine()
+               .promoText("$10 off")
+               .dealValue(-10)
+               .dealTerms()
+               .build();
+      HotelDealFinder hdf = new HotelDealParser().parseConfigString(inString);
+      Deal limited = hdf.getAllHotels().get(0).getDeal(0);
+      Deal open = hdf.getAllHotels().get(0).getDeal(1);
+      assertThat(limited.getInventory().getCapacity(), is(100));
+      assertThat(open.getInventory(), is(nullValue()));
+
+      // Run: 300 claimers race for the limited deal.
+      int claimers = 300;
+      ExecutorService pool = Executors.newFixedThreadPool(32);
+      CountDownLatch go = new CountDownLatch(1);
+      List<Future<DealResult>> claims = new ArrayList<Future<DealResult>>();
+      for (int i = 0; i < claimers; i++)
+      {
+          claims.add(pool.submit(() -> {
+              go.await();
+              return hdf.claimBestDeal(HotelDealConfigBuilder.TEST_HOTEL_NAME, start, 4);
+          }));
+      }
+      go.countDown();
+      int limitedCount = 0;
+      for (Future<DealResult> f : claims)
+      {
+          DealResult r = f.get();
+          if (r.getDeal() == limited)
+          {
+              assertThat(r.getCustomerPrice(), is(60));
+              limitedCount++;
+          }
+          else
+          {
+              assertThat(r.getDeal(), is(open));
+              assertThat(r.getCustomerPrice(), is(90));
+          }
+      }
+      pool.shutdown();
+
+      // Verify: exactly 100 units sold, and the plain query still reports the best deal.
+      assertThat(limitedCount, is(100));
+      assertThat(limited.getInventory().isSoldOut(), is(true));
+      assertThat(hdf.findBestValue(HotelDealConfigBuilder.TEST_HOTEL_NAME, start, 4).getDeal(), is(limited));
+      limited.getInventory().release();
+      assertThat(hdf.claimBestDeal(HotelDealConfigBuilder.TEST_HOTEL_NAME, start, 4).getDeal(), is(limited));
+
+      // Releases beyond the units claimed are rejected.
+      for (int i = 0; i < 100; i++)
+      {
+          limited.getInventory().release();
+      }
+      assertThat(limited.getInventory().getRemaining(), is(100));
+      try
+      {
+          limited.getInventory().release();
+          fail("Release above the quantity must be rejected");
+      }
+      catch (IllegalStateException ex)
+      {
+          assertThat(limited.getInventory().getRemaining(), is(100));
+      }
+   }
+
+   @Test
+   public void  testTopDealsWithFilters() 
+   {
+      // Set conditions: 4 nights at 25 is 100, with five deals.
+      LocalDate start = HotelDealConfigBuilder.TEST_START_DATE;
+      LocalDate end = HotelDealConfigBuilder.TEST_END_DATE;
+      HotelDealFinder hdf = new HotelDealFinder();
+      Deal tenOff = new FlatRebateDeal("$10 off", -10, start, end);
+      Deal thirtyOff = new FlatRebateDeal("$30 off", -30, start, end);
+      Deal twentyPercent = new PercentRebateDeal("20% off", -20, start, end);
+      Deal fifteenOff = new FlatRebateThreePlusDeal("$15 off 3+", -15, start, end);
+      Deal otherTwentyOff = new FlatRebateDeal("another $20 off", -20, start, end);
+      for (Deal d : Arrays.asList(tenOff, thirtyOff, twentyPercent, fifteenOff, otherTwentyOff))
+      {
+          hdf.addDeal(HotelDealConfigBuilder.TEST_HOTEL_NAME, HotelDealConfigBuilder.TEST_NIGHTLY_RATE, d);
+      }
+
+      // Run
+      List<DealResult> top = hdf.findTopDeals(HotelDealConfigBuilder.TEST_HOTEL_NAME, start, 4, 3, DealFilter.ALL);
+      List<DealResult> rebates = hdf.findTopDeals(HotelDealConfigBuilder.TEST_HOTEL_NAME, start, 4, 3,
+              DealFilter.ALL.withTypes(DealType.FLAT_REBATE));
+      List<DealResult> cheap = hdf.findTopDeals(HotelDealConfigBuilder.TEST_HOTEL_NAME, start, 4, 10,
+              DealFilter.ALL.withMaxPrice(80));
+
+      // Verify: 70, then 80 twice with the earlier deal first; filters apply before the cut to K.
+      assertThat(top.size(), is(3));
+      assertThat(top.get(0).getDeal(), is(thirtyOff));
+      assertThat(top.get(1).getDeal(), is(twentyPercent));
+      assertThat(top.get(2).getDeal(), is(otherTwentyOff));
+      assertThat(top.get(2).getCustomerPrice(), is(80));
+      assertThat(rebates.get(1).getDeal(), is(otherTwentyOff));
+      assertThat(rebates.get(2).getDeal(), is(tenOff));
+      assertThat(cheap.size(), is(3));
+      assertThat(hdf.findTopDeals("No Such Hotel", start, 4, 3, DealFilter.ALL).isEmpty(), is(true));
+   }
+
+   @Test
+   public void  testSubscriptionsSeeOnlyAffectedChanges() 
+   {
+      // Set conditions: 4 nights at 25 is 100, $10 off; watch a stay in the deal range, one after it,
+      // and one at a hotel not loaded yet.
+      LocalDate start = HotelDealConfigBuilder.TEST_START_DATE;
+      HotelDealFinder hdf = new HotelDealFinder();
+      hdf.addDeal(HotelDealConfigBuilder.TEST_HOTEL_NAME, HotelDealConfigBuilder.TEST_NIGHTLY_RATE,
+              new FlatRebateDeal("$10 off", -10, start, start.plusDays(5)));
+      List<DealChangeEvent> events = new ArrayList<DealChangeEvent>();
+      DealSubscription inRange = hdf.subscribe(HotelDealConfigBuilder.TEST_HOTEL_NAME, start.plusDays(2), 4, events::add);
+      DealSubscription later = hdf.subscribe(HotelDealConfigBuilder.TEST_HOTEL_NAME, start.plusDays(20), 4, events::add);
+      DealSubscription newHotel = hdf.subscribe("Hotel Later", start.plusDays(2), 4, events::add);
+      assertThat(inRange.getCurrentResult().getCustomerPrice(), is(90));
+
+      // Run and verify: a deal for days 0 to 3 only touches the stay in range.
+      Deal thirtyOff = new FlatRebateDeal("$30 off", -30, start, start.plusDays(3));
+      hdf.addDeal(HotelDealConfigBuilder.TEST_HOTEL_NAME, HotelDealConfigBuilder.TEST_NIGHTLY_RATE, thirtyOff);
+      assertThat(events.size(), is(1));
+      assertThat(events.get(0).getSubscription(), is(inRange));
+      assertThat(events.get(0).getOldResult().getCustomerPrice(), is(90));
+      assertThat(events.get(0).getNewResult().getCustomerPrice(), is(70));
+      assertThat(hdf.getSubscriptions().getEvaluationCount(), is(1L));
+
+      hdf.removeDeal(HotelDealConfigBuilder.TEST_HOTEL_NAME, thirtyOff);
+      assertThat(events.size(), is(2));
+      assertThat(inRange.getCurrentResult().getCustomerPrice(), is(90));
+
+      // A worse deal added concurrently publishes a new copy of the hotel, but changes no result.
+      hdf.addDealConcurrently(HotelDealConfigBuilder.TEST_HOTEL_NAME, HotelDealConfigBuilder.TEST_NIGHTLY_RATE,
+              new FlatRebateDeal("$1 off", -1, start, start.plusDays(5)));
+      assertThat(events.size(), is(2));
+
+      // A feed load creating the other hotel is evaluated once, at the end of the load.
+      String feed = HotelDealConfigBuilder.newConfiguration().hotelName("Hotel Later").startDate(start)
+              .endDate(start.plusDays(5)).newLine().dealValue(-20).build();
+      new HotelDealParser().parseDeals(new BufferedReader(new StringReader(feed)), hdf, null);
+      assertThat(events.size(), is(3));
+      assertThat(events.get(2).getSubscription(), is(newHotel));
+      assertThat(events.get(2).getOldResult().getHotel(), is(nullValue()));
+
+      // A rate change only reaches stays that include the changed nights.
+      hdf.setNightlyRate(HotelDealConfigBuilder.TEST_HOTEL_NAME, start.plusDays(10), start.plusDays(12), 40);
+      assertThat(events.size(), is(3));
+      hdf.setNightlyRate(HotelDealConfigBuilder.TEST_HOTEL_NAME, start.plusDays(23), start.plusDays(23), 40);
+      assertThat(events.size(), is(4));
+      assertThat(later.getCurrentResult().getCustomerPrice(), is(115));
+      assertThat(hdf.unsubscribe(later), is(true));
+      assertThat(hdf.getSubscriptions().size(), is(2));
+   }
+
+   @Test
+   public void  testConcurrentUpdatesAlongsideQueries() throws Exception
+   {
+      // Set conditions: four hotels with one $10 off deal each; one writer per hotel keeps
+      // replacing the deal and changing the rate while readers query all hotels.
+      LocalDate start = HotelDealConfigBuilder.TEST_START_DATE;
+      LocalDate end = HotelDealConfigBuilder.TEST_END_DATE;
+      HotelDealFinder hdf = new HotelDealFinder();
+      int hotels = 4;
+      int updates = 2000;
+      Deal[] initial = new Deal[hotels];
+      for (int i = 0; i < hotels; i++)
+      {
+          initial[i] = new FlatRebateDeal("$10 off", -10, start, end);
+          hdf.addDealConcurrently("Hotel " + i, 100, initial[i]);
+      }
+      ExecutorService pool = Executors.newFixedThreadPool(2 * hotels);
+      List<Future<Integer>> tasks = new ArrayList<Future<Integer>>();
+      for (int i = 0; i < hotels; i++)
+      {
+          String name = "Hotel " + i;
+          Deal first = initial[i];
+          tasks.add(pool.submit(() -> {
+              Deal current = first;
+              for (int u = 1; u <= updates; u++)
+              {
+                  Deal next = new FlatRebateDeal("$" + (u % 50) + " off", -(u % 50), start, end);
+                  assertThat(hdf.replaceDealConcurrently(name, current, next), is(true));
+                  current = next;
+                  hdf.updateNightlyRate(name, 100 + u % 7);
+              }
+              return updates;
+          }));
+          tasks.add(pool.submit(() -> {
+              int queries = 0;
+              for (int q = 0; q < updates; q++)
+              {
+                  // Each query sees one whole version of the hotel: one deal, priced at that version's rate.
+                  DealResult r = hdf.findBestValue(name, start, 2);
+                  assertThat(r.getHotel().getAllDeals().size(), is(1));
+                  assertThat(r.getCustomerPrice(), is(2 * r.getHotel().getNightlyRate() + r.getDeal().getValue()));
+                  queries++;
+              }
+              return queries;
+          }));
+      }
+      for (Future<Integer> f : tasks)
+      {
+          assertThat(f.get(), is(updates));
+      }
+      pool.shutdown();
+
+      // Verify: the last update of each hotel won.
+      for (int i = 0; i < hotels; i++)
+      {
+          DealResult r = hdf.findBestValue("Hotel " + i, start, 2);
+          assertThat(r.getDeal().getValue(), is(-(updates % 50)));
+          assertThat(r.getCustomerPrice(), is(2 * (100 + updates % 7) - updates % 50));
+      }
+      assertThat(hdf.removeDealConcurrently("Hotel 0", initial[0]), is(false));
+   }
+
+   @Test
+   public void  testBatchedQueriesMatchDirectQueries() throws Exception
+   {
+      // Set conditions: a random feed of 20 hotels; eight threads each queue the same 500 queries.
+      Random rnd = new Random(47);
+      LocalDate origin = LocalDate.of(2016, 3, 1);
+      String config = String.join("\n", HotelDealConfigBuilder.randomLines(rnd, 1000, 20, origin, 60));
+      HotelDealFinder hdf = new HotelDealParser().parseConfigString(config);
+      List<String> names = new ArrayList<String>();
+      List<LocalDate> dates = new ArrayList<LocalDate>();
+      int[] stays = new int[500];
+      for (int q = 0; q < stays.length; q++)
+      {
+          names.add("Random Hotel " + rnd.nextInt(22));
+          dates.add(origin.plusDays(rnd.nextInt(90)));
+          stays[q] = 1 + rnd.nextInt(5);
+      }
+      int threads = 8;
+      ExecutorService pool = Executors.newFixedThreadPool(threads);
+      CountDownLatch ready = new CountDownLatch(threads);
+      List<Future<List<CompletableFuture<DealResult>>>> tasks = new ArrayList<Future<List<CompletableFuture<DealResult>>>>();
+
+      // Run
+      try (DealQueryBatcher batcher = new DealQueryBatcher(hdf, 256, 2, TimeUnit.MILLISECONDS))
+      {
+          for (int t = 0; t < threads; t++)
+          {
+              tasks.add(pool.submit(() -> {
+                  ready.countDown();
+                  ready.await();
+                  List<CompletableFuture<DealResult>> futures = new ArrayList<CompletableFuture<DealResult>>();
+                  for (int q = 0; q < stays.length; q++)
+                  {
+                      futures.add(batcher.findBestValue(names.get(q), dates.get(q), stays[q]));
+                  }
+                  return futures;
+              }));
+          }
+
+          // Verify: every future gives the direct answer, and duplicates were answered once per batch.
+          for (Future<List<CompletableFuture<DealResult>>> task : tasks)
+          {
+              List<CompletableFuture<DealResult>> futures = task.get();
+              for (int q = 0; q < stays.length; q++)
+              {
+                  DealResult expected = hdf.findBestValue(names.get(q), dates.get(q), stays[q]);
+                  DealResult r = futures.get(q).get(5, TimeUnit.SECONDS);
+                  assertThat(r.getHotel(), is(expected.getHotel()));
+                  assertThat(r.getDeal(), is(expected.getDeal()));
+                  if (expected.getHotel() != null)
+                  {
+                      assertThat(r.getCustomerPrice(), is(expected.getCustomerPrice()));
+                  }
+              }
+          }
+          assertThat(batcher.getQueryCount(), is((long) threads * stays.length));
+          assertThat(batcher.getBatchCount() < batcher.getQueryCount(), is(true));
+          assertThat(batcher.getEvaluationCount() < batcher.getQueryCount(), is(true));
+      }
+      finally
+      {
+          pool.shutdown();
+      }
+   }
+
+   @Test
+   public void  testParallelDealAnalytics() 
+   {
+      // Set conditions: two hotels at 25 a night; A has $10 off and 20% off in March, B has 10%
+      // off from March 30 to April 2; C only has a deal in May.
+      LocalDate march = LocalDate.of(2016, 3, 1);
+      HotelDealFinder hdf = new HotelDealFinder();
+      hdf.addDeal("A", 25, new FlatRebateDeal("$10 off", -10, march, march.plusDays(9)));
+      hdf.addDeal("A", 25, new PercentRebateDeal("20% off", -20, march.plusDays(5), march.plusDays(14)));
+      hdf.addDeal("B", 25, new PercentRebateDeal("10% off", -10, LocalDate.of(2016, 3, 30), LocalDate.of(2016, 4, 2)));
+      hdf.addDeal("C", 25, new FlatRebateDeal("$5 off", -5, LocalDate.of(2016, 5, 1), LocalDate.of(2016, 5, 31)));
+
+      // Run
+      DealAnalytics analytics = DealAnalytics.snapshot(hdf);
+      Map<GroupKey, DealStats> byType = analytics.aggregate(Measure.DISCOUNT, EnumSet.of(Dimension.TYPE));
+      Map<GroupKey, DealStats> byHotelMonth = analytics.aggregate(Measure.VALUE,
+              EnumSet.of(Dimension.HOTEL, Dimension.MONTH));
+      int[] active = analytics.countActiveDealsPerDay(march, march.plusDays(9));
+
+      // Verify: one night discounts are 10 and 5 for rebates, 5 and 3 for percentages.
+      assertThat(analytics.getDealCount(), is(4));
+      DealStats rebates = byType.get(new GroupKey(null, DealType.FLAT_REBATE, null));
+      assertThat(rebates.getCount(), is(2L));
+      assertThat(rebates.getSum(), is(15L));
+      assertThat(rebates.getMax(), is(10L));
+      DealStats percents = byType.get(new GroupKey(null, DealType.REBATE_PERCENT, null));
+      assertThat(percents.getMin(), is(3L));
+      assertThat(percents.getAverage(), is(4.0));
+      // B's deal spans two months and counts in each.
+      assertThat(byHotelMonth.get(new GroupKey("B", null, YearMonth.of(2016, 4))).getSum(), is(-10L));
+      assertThat(byHotelMonth.get(new GroupKey("B", null, YearMonth.of(2016, 3))).getCount(), is(1L));
+      assertThat(byHotelMonth.size(), is(4));
+      assertThat(active[0], is(1));
+      assertThat(active[5], is(2));
+      assertThat(analytics.findHotelsWithoutCoverage(LocalDate.of(2016, 4, 1), LocalDate.of(2016, 4, 7)),
+              is(Arrays.asList("A", "C")));
+
+      // A large random feed agrees with scanning every deal, over enough rows to fork.
+      Random rnd = new Random(43);
+      LocalDate origin = LocalDate.of(2016, 1, 1);
+      String feed = String.join("\n", HotelDealConfigBuilder.randomLines(rnd, 50000, 200, origin, 120));
+      HotelDealFinder big = new HotelDealParser().parseConfigString(feed);
+      int[] counts = DealAnalytics.snapshot(big).countActiveDealsPerDay(origin, origin.plusDays(130));
+      for (int day = 0; day < counts.length; day += 13)
+      {
+          int expected = 0;
+          for (Hotel h : big.getAllHotels())
+          {
+              for (Deal d : h.getAllDeals())
+              {
+                  if (d != Deal.NO_DEAL && d.isCheckInDateApplicable(origin.plusDays(day)))
+                  {
+                      expected++;
+                  }
+              }
+          }
+          assertThat(counts[day], is(expected));
+      }
+   }
+
+   @Test
+   public void  testSingleHotelLoadSkipsOtherLines() throws IOException
+   {
+      // Set conditions: the hotel's lines are mixed with a hotel whose name starts the same, a
+      // malformed line, a line longer than the scan buffer, and no final newline.
+      char[] longText = new char[100000];
+      Arrays.fill(longText, 'x');
+      String inString = HotelDealConfigBuilder.newConfiguration()
+               .hotelName("Test Hotel 2").dealValue(-20)
+                   .newLine()
+               .hotelName("  " + HotelDealConfigBuilder.TEST_HOTEL_NAME).dealValue(-5)
+                   .newLine()
+               .hotelName("Other").promoText(new String(longText))
+                   .newLine()
+               .hotelName(HotelDealConfigBuilder.TEST_HOTEL_NAME).promoText("Caf\u00e9 deal").dealValue(-8)
+               .build()
+               + "\nOther, not a deal line\n" + HotelDealConfigBuilder.TEST_HOTEL_NAME + " , 25, "
+               + new String(longText) + ", -9, rebate, " + ParserUtils.formatDate(HotelDealConfigBuilder.TEST_START_DATE)
+               + ", " + ParserUtils.formatDate(HotelDealConfigBuilder.TEST_END_DATE);
+      HotelDealParser hdParser = new HotelDealParser();
+
+      // Run
+      HotelDealFinder hdf = new HotelDealFinder();
+      hdParser.parseDealsForHotel(new ByteArrayInputStream(inString.getBytes(StandardCharsets.UTF_8)),
+              HotelDealConfigBuilder.TEST_HOTEL_NAME, hdf);
+      HotelDealFinder full = hdParser.parseConfigString(inString);
+
+      // Verify: same deals for the hotel as a full parse, and no other hotel.
+      assertThat(hdf.getAllHotels().size(), is(1));
+      List<Deal> deals = hdf.getAllHotels().get(0).getAllDeals();
+      List<Deal> expected = null;
+      for (Hotel h : full.getAllHotels())
+      {
+          if (h.getName().equals(HotelDealConfigBuilder.TEST_HOTEL_NAME))
+          {
+              expected = h.getAllDeals();
+          }
+      }
+      assertThat(deals.size(), is(3));
+      for (int i = 0; i < deals.size(); i++)
+      {
+          assertThat(deals.get(i).getValue(), is(expected.get(i).getValue()));
+          assertThat(deals.get(i).getPromotionalText(), is(expected.get(i).getPromotionalText()));
+      }
+      assertThat(deals.get(1).getPromotionalText(), is("Caf\u00e9 deal"));
+   }
+	
 	/**
 	 * ... More tests here  for negative input cases.
 	 */
@@ -0,0 +1,95 @@
+package com.stephengilbane;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.stephengilbane.hotel.HotelDealFinder;
+import com.stephengilbane.hotel.HotelDealParser;
+import com.stephengilbane.hotel.load.LatencyHistogram;
+import com.stephengilbane.hotel.load.LoadDriver;
+import com.stephengilbane.hotel.load.LoadReport;
+import com.stephengilbane.hotel.load.QueryLog;
+
+/**
+ * Unit tests for the query log load driver.
+ * @author stephengilbane
+ *
+ */
+public class LoadDriverTests
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHistogramPercentiles()
+    {
+        // Set conditions: 1 to 10000 microseconds.
+        LatencyHistogram h = new LatencyHistogram();
+        for (long us = 1; us <= 10000; us++)
+        {
+            h.record(us * 1000);
+        }
+
+        // Verify: within the 2% precision of the histogram.
+        assertThat(h.getCount(), is(10000L));
+        assertThat(h.getMax(), is(10000000L));
+        assertWithin(h.getValueAtPercentile(50), 5000000);
+        assertWithin(h.getValueAtPercentile(99), 9900000);
+        assertWithin(h.getValueAtPercentile(99.9), 9990000);
+        assertThat(h.getValueAtPercentile(100), is(10000000L));
+    }
+
+    @Test
+    public void testReplayQueryLog() throws IOException
+    {
+        // Set conditions: a one-line feed, and a log with one malformed query.
+        HotelDealFinder hdf = new HotelDealParser().parseConfigString(HotelDealConfigBuilder.newConfiguration().build());
+        String day = HotelDealConfigBuilder.TEST_START_DATE.toString();
+        String queries = HotelDealConfigBuilder.TEST_HOTEL_NAME + "," + day + ",1\n"
+                + "Unknown Hotel," + day + ",3\n"
+                + "not a query\n";
+        QueryLog log = QueryLog.parse(new BufferedReader(new StringReader(queries)));
+        LoadDriver driver = new LoadDriver(LoadDriver.forFinder(hdf), log);
+        driver.setLabel("test");
+
+        // Run
+        LoadReport closed = driver.runClosedLoop(2, 1000);
+        LoadReport open = driver.runOpenLoop(20000, 2, 1000);
+
+        // Verify
+        assertThat(log.size(), is(2));
+        assertThat(closed.getQueryCount(), is(1000L));
+        assertThat(open.getQueryCount(), is(1000L));
+        assertThat(open.getMode(), is(LoadDriver.OPEN_LOOP));
+        // 1000 queries due over 50 ms.
+        assertTrue(open.getElapsedNanos() >= 49000000L);
+        assertTrue(open.getResponseTimes().getMax() >= open.getServiceTimes().getValueAtPercentile(50));
+
+        File csv = new File(folder.getRoot(), "load.csv");
+        LoadReport.appendCsv(csv, closed);
+        LoadReport.appendCsv(csv, open);
+        List<String> lines = Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8);
+        assertThat(lines.size(), is(3));
+        assertThat(lines.get(0), is(LoadReport.CSV_HEADER));
+        assertThat(lines.get(2).split(",").length, is(LoadReport.CSV_HEADER.split(",").length));
+        assertTrue(lines.get(2).startsWith("test,open,2,20000.0,1000,"));
+    }
+
+    private static void assertWithin(long actual, long expected)
+    {
+        assertTrue(actual + " is not near " + expected, Math.abs(actual - expected) <= expected / 50);
+    }
+}
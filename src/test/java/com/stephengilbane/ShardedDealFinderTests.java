@@ -0,0 +1,153 @@
+package com.stephengilbane;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.stephengilbane.hotel.DealResult;
+import com.stephengilbane.hotel.Hotel;
+import com.stephengilbane.hotel.HotelDealFinder;
+import com.stephengilbane.hotel.HotelDealParser;
+import com.stephengilbane.hotel.deals.DealFilter;
+import com.stephengilbane.hotel.deals.DealType;
+import com.stephengilbane.hotel.shard.DealHit;
+import com.stephengilbane.hotel.shard.LocalShard;
+import com.stephengilbane.hotel.shard.RemoteShard;
+import com.stephengilbane.hotel.shard.ShardRing;
+import com.stephengilbane.hotel.shard.ShardServer;
+import com.stephengilbane.hotel.shard.ShardedDealFinder;
+
+/**
+ * Unit tests for hotels partitioned across shards.
+ * @author stephengilbane
+ *
+ */
+public class ShardedDealFinderTests
+{
+    private static final LocalDate ORIGIN = LocalDate.of(2016, 3, 1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testShardedQueriesMatchOneFinder() throws IOException
+    {
+        // Set conditions: a random feed of 30 hotels, loaded whole, into 4 local shards, and into
+        // 3 shards served over sockets.
+        Random rnd = new Random(48);
+        String config = String.join("\n", HotelDealConfigBuilder.randomLines(rnd, 2000, 30, ORIGIN, 60));
+        File feed = this.folder.newFile("deals.csv");
+        Files.write(feed.toPath(), config.getBytes(StandardCharsets.UTF_8));
+        HotelDealParser parser = new HotelDealParser();
+        HotelDealFinder full = parser.createFromFile(feed.getPath());
+        ShardedDealFinder local = ShardedDealFinder.createLocal(4);
+        parser.parseDeals(new BufferedReader(new StringReader(config)), local, null);
+        ShardRing ring = new ShardRing(3);
+        List<ShardServer> servers = new ArrayList<ShardServer>();
+        List<RemoteShard> remotes = new ArrayList<RemoteShard>();
+        for (int i = 0; i < ring.getShardCount(); i++)
+        {
+            ShardServer server = new ShardServer(new LocalShard(ShardedDealFinder.loadShard(feed.getPath(), ring, i)), 0);
+            servers.add(server);
+            remotes.add(new RemoteShard("localhost", server.getPort()));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(ring.getShardCount());
+        DealFilter filter = DealFilter.ALL.withTypes(DealType.FLAT_REBATE, DealType.REBATE_PERCENT).withMaxPrice(400);
+
+        // Run, and verify: every query gives the answer of the one finder.
+        try (ShardedDealFinder remote = new ShardedDealFinder(remotes, pool))
+        {
+            assertThat(local.getHotelCount(), is(full.getAllHotels().size()));
+            assertThat(remote.getHotelCount(), is(full.getAllHotels().size()));
+            for (int q = 0; q < 300; q++)
+            {
+                String name = "Random Hotel " + rnd.nextInt(32);
+                LocalDate dt = ORIGIN.plusDays(rnd.nextInt(90));
+                int stay = 1 + rnd.nextInt(5);
+                DealHit expected = DealHit.of(name, full.findBestValue(name, dt, stay));
+                assertThat(local.findBestValue(name, dt, stay), is(expected));
+                assertThat(remote.findBestValue(name, dt, stay), is(expected));
+                if (q % 10 == 0)
+                {
+                    List<DealHit> top = hits(full.findTopDeals(dt, stay, 7, filter));
+                    assertThat(local.findTopDeals(dt, stay, 7, filter), is(top));
+                    assertThat(remote.findTopDeals(dt, stay, 7, filter), is(top));
+                    List<String> names = names(full.findHotelsWithDeals(dt, stay));
+                    assertThat(local.findHotelsWithDeals(dt, stay), is(names));
+                    assertThat(remote.findHotelsWithDeals(dt, stay), is(names));
+                }
+            }
+        }
+        finally
+        {
+            for (ShardServer server : servers)
+            {
+                server.close();
+            }
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testAddingShardOnlyMovesHotelsToIt()
+    {
+        // Set conditions
+        ShardRing three = new ShardRing(3);
+        ShardRing four = new ShardRing(4);
+        int[] counts = new int[4];
+
+        // Run
+        for (int i = 0; i < 4000; i++)
+        {
+            String name = "Hotel " + i;
+            int before = three.shardFor(name);
+            int after = four.shardFor(name);
+
+            // Verify
+            assertThat(after == before || after == 3, is(true));
+            counts[after]++;
+        }
+        for (int c : counts)
+        {
+            assertThat(c > 500 && c < 1500, is(true));
+        }
+    }
+
+    private static List<DealHit> hits(List<DealResult> results)
+    {
+        List<DealHit> hits = new ArrayList<DealHit>();
+        for (DealResult r : results)
+        {
+            hits.add(DealHit.of(r.getHotel().getName(), r));
+        }
+        return hits;
+    }
+
+    private static List<String> names(List<Hotel> hotels)
+    {
+        List<String> names = new ArrayList<String>();
+        for (Hotel h : hotels)
+        {
+            names.add(h.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -0,0 +1,152 @@
+package com.stephengilbane;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.stephengilbane.hotel.DealResult;
+import com.stephengilbane.hotel.HotelDealFinder;
+import com.stephengilbane.hotel.HotelDealParser;
+import com.stephengilbane.hotel.version.DealVersion;
+import com.stephengilbane.hotel.version.RetentionPolicy;
+import com.stephengilbane.hotel.version.VersionedDealFinder;
+
+/**
+ * Unit tests for versioned snapshots of feed loads.
+ * @author stephengilbane
+ *
+ */
+public class VersionedDealFinderTests
+{
+    private static final LocalDate ORIGIN = LocalDate.of(2016, 3, 1);
+    private static final Instant FIRST_FEED = Instant.parse("2016-02-01T09:00:00Z");
+
+    @Test
+    public void testEveryVersionAnswersLikeItsFeed()
+    {
+        // Set conditions: a feed of 400 hotels; each later feed changes a few lines and drops a hotel.
+        Random rnd = new Random(49);
+        List<String> lines = new ArrayList<String>(HotelDealConfigBuilder.randomLines(rnd, 3000, 400, ORIGIN, 60));
+        VersionedDealFinder vdf = new VersionedDealFinder(RetentionPolicy.keepLatest(100));
+        List<String> feeds = new ArrayList<String>();
+
+        // Run
+        for (int n = 0; n < 12; n++)
+        {
+            if (n > 0)
+            {
+                for (int c = 0; c < 5; c++)
+                {
+                    lines.set(rnd.nextInt(lines.size()), HotelDealConfigBuilder.randomLines(rnd, 1, 400, ORIGIN, 60).get(0));
+                }
+                String dropped = lines.get(rnd.nextInt(lines.size())).split(",")[0];
+                lines.removeIf(line -> line.startsWith(dropped + ","));
+            }
+            String feed = String.join("\n", lines);
+            feeds.add(feed);
+            DealVersion v = vdf.load(new BufferedReader(new StringReader(feed)), FIRST_FEED.plus(Duration.ofDays(n)));
+
+            // Verify: each replaced line changes at most two hotels; the others are shared.
+            assertThat(v.getNumber(), is((long) n + 1));
+            if (n > 0)
+            {
+                assertThat(v.getReusedHotelCount() >= v.getHotelCount() - 10, is(true));
+            }
+        }
+
+        // Verify: every version, by number and by time, answers like a finder of its own feed.
+        for (int n = 0; n < feeds.size(); n++)
+        {
+            HotelDealFinder expected = new HotelDealParser().parseConfigString(feeds.get(n));
+            DealVersion v = vdf.getVersion(n + 1);
+            assertThat(v.getHotelCount(), is(expected.getAllHotels().size()));
+            Instant asOf = FIRST_FEED.plus(Duration.ofDays(n)).plus(Duration.ofHours(3));
+            for (int q = 0; q < 200; q++)
+            {
+                String name = "Random Hotel " + rnd.nextInt(402);
+                LocalDate dt = ORIGIN.plusDays(rnd.nextInt(90));
+                int stay = 1 + rnd.nextInt(5);
+                String want = describe(expected.findBestValue(name, dt, stay));
+                assertThat(describe(vdf.findBestValue(name, dt, stay, n + 1)), is(want));
+                assertThat(describe(vdf.findBestValueAsOf(name, dt, stay, asOf)), is(want));
+            }
+        }
+    }
+
+    @Test
+    public void testRetentionRetiresOldVersions()
+    {
+        // Set conditions: daily feeds where only Hotel B changes, but for its $1 off deal for the
+        // first 5 bookings; keep a day and a half of history.
+        VersionedDealFinder vdf = new VersionedDealFinder(RetentionPolicy.keepFor(Duration.ofHours(36)));
+        String hotelA = HotelDealConfigBuilder.newConfiguration().build();
+        List<DealVersion> versions = new ArrayList<DealVersion>();
+
+        // Run
+        for (int n = 0; n < 4; n++)
+        {
+            String hotelB = HotelDealConfigBuilder.newConfiguration().hotelName("Hotel B").dealValue(-1)
+                    .dealTerms("qty=5").newLine().dealTerms().dealValue(-10 - n).build();
+            versions.add(vdf.load(new BufferedReader(new StringReader(hotelA + "\n" + hotelB)),
+                    FIRST_FEED.plus(Duration.ofDays(n))));
+        }
+
+        // Verify: the unchanged hotel is one object throughout; only versions in effect within
+        // the last 36 hours are kept.
+        String nameA = HotelDealConfigBuilder.TEST_HOTEL_NAME;
+        assertThat(versions.get(3).getHotel(nameA), is(sameInstance(versions.get(0).getHotel(nameA))));
+        assertThat(vdf.getRetainedVersions().size(), is(3));
+        assertThat(vdf.getVersionAsOf(FIRST_FEED.plus(Duration.ofHours(60))).getNumber(), is(3L));
+        assertThat(isRetained(vdf, FIRST_FEED.plus(Duration.ofHours(30))), is(true));
+        assertThat(isRetained(vdf, FIRST_FEED.plus(Duration.ofHours(12))), is(false));
+        assertThat(isRetained(vdf, FIRST_FEED.minus(Duration.ofHours(1))), is(false));
+        LocalDate dt = HotelDealConfigBuilder.TEST_START_DATE;
+        assertThat(vdf.findBestValueAsOf("Hotel B", dt, 1, FIRST_FEED.plus(Duration.ofHours(50))).getDeal().getValue(),
+                is(-12));
+        assertThat(vdf.findBestValue("Hotel B", dt, 1).getDeal().getValue(), is(-13));
+
+        // Verify: the limited deal of the changed hotel is one object, with one inventory, in
+        // every version; hotels of a version cannot be changed.
+        assertThat(versions.get(3).getHotel("Hotel B").getDeal(0),
+                is(sameInstance(versions.get(0).getHotel("Hotel B").getDeal(0))));
+        try
+        {
+            versions.get(3).getHotel("Hotel B").removeDeal(versions.get(3).getHotel("Hotel B").getDeal(1));
+            fail("Hotels of a version must be frozen");
+        }
+        catch (IllegalStateException ex)
+        {
+            // Expected.
+        }
+    }
+
+    private static boolean isRetained(VersionedDealFinder vdf, Instant t)
+    {
+        try
+        {
+            vdf.getVersionAsOf(t);
+            return true;
+        }
+        catch (IllegalArgumentException ex)
+        {
+            return false;
+        }
+    }
+
+    private static String describe(DealResult r)
+    {
+        return (r.getHotel() == null) ? "unknown" : r.getDeal().getPromotionalText() + " " + r.getCustomerPrice();
+    }
+}